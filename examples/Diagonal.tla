@@ -0,0 +1,54 @@
+------------------------- MODULE Diagonal ----------------------------
+EXTENDS Naturals, Sequences, TLC
+CONSTANT N
+
+(* Builds the rows of a 3x3 matrix holding 1 .. N on its diagonal, starting
+   every row from the same zero row and changing one of its entries. *)
+
+(*
+--algorithm Diagonal {
+  variables i = 1;
+            row = <<>>;
+            rows = <<>>;
+  {
+  l:  while (i <= N) {
+        row := <<0, 0, 0>>;
+        row[i] := i;
+        rows := Append(rows, row);
+        i := i + 1;
+      };
+      print <<rows, Len(<<0, 0, 0>>)>>
+  }
+}
+*)
+\* BEGIN TRANSLATION
+VARIABLES i, row, rows, pc
+
+vars == << i, row, rows, pc >>
+
+Init == (* Global variables *)
+        /\ i = 1
+        /\ row = <<>>
+        /\ rows = <<>>
+        /\ pc = "l"
+
+l == /\ pc = "l"
+     /\ IF i <= N
+           THEN /\ row' = [<<0, 0, 0>> EXCEPT ![i] = i]
+                /\ rows' = Append(rows, row')
+                /\ i' = i + 1
+                /\ pc' = "l"
+           ELSE /\ PrintT(<<rows, Len(<<0, 0, 0>>)>>)
+                /\ pc' = "Done"
+                /\ UNCHANGED << i, row, rows >>
+
+Next == l
+           \/ (* Disjunct to prevent deadlock on termination *)
+              (pc = "Done" /\ UNCHANGED vars)
+
+Spec == Init /\ [][Next]_vars
+
+Termination == <>(pc = "Done")
+
+\* END TRANSLATION
+===================================================================
@@ -0,0 +1,172 @@
+package pgo;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Wraps options that tune the shape of the generated Go code without changing its
+// semantics. These are defined in the (optional) +codegen+ section of the JSON
+// configuration file; every option has a default, so existing configuration files
+// keep producing the same output.
+//
+// As with +PGoNetOptions+, semantic errors in this section result in a
+// +PGoOptionException+, which is reported to the user by +PGoOptions+.
+public class PGoCodeGenOptions {
+	// Modular PlusCal local variable strategies. +snapshot+ deep-copies every local
+	// used in an action before it starts; +copy-on-write+ only saves the (shallow)
+	// previous value of each local, copies aggregates right before they are modified
+	// in place, and restores the saved values when the action aborts.
+	public static final String LOCAL_SNAPSHOT = "snapshot";
+	public static final String LOCAL_COPY_ON_WRITE = "copy-on-write";
+
+	private static final String DEFAULT_LOCAL_STRATEGY = LOCAL_SNAPSHOT;
+
+	// Representations of TLA+ sequences. +slices+ uses plain Go slices, which are copied
+	// whenever a sequence is extended; +persistent+ uses the persistent sequences in the
+	// PGo runtime (pgo/datatypes), which share storage between versions so that
+	// repeated Append/Tail/SubSeq/\o run in amortized constant time.
+	public static final String SEQUENCES_SLICES = "slices";
+	public static final String SEQUENCES_PERSISTENT = "persistent";
+
+	private static final String DEFAULT_SEQUENCES = SEQUENCES_SLICES;
+
+	// How multithreaded PlusCal output protects global variables. +lock-groups+ has one
+	// lock for each group of labels that (transitively) share variables; +per-variable+
+	// has one lock per variable, and each label acquires the locks of the variables it
+	// uses, in a fixed order; +optimistic+ runs each label on private copies of the
+	// variables it uses, and commits them at the end of the label unless another label
+	// committed to one of those variables in the meantime, in which case it starts over.
+	public static final String ATOMICITY_LOCK_GROUPS = "lock-groups";
+	public static final String ATOMICITY_PER_VARIABLE = "per-variable";
+	public static final String ATOMICITY_OPTIMISTIC = "optimistic";
+
+	private static final String DEFAULT_ATOMICITY = ATOMICITY_LOCK_GROUPS;
+
+	// How multithreaded PlusCal output schedules process instances. +goroutines+ runs every
+	// instance at once, in a goroutine of its own; the other schedulers use the PGo runtime
+	// (pgo/scheduling) to run at most GOMAXPROCS instances at a time, one label at a time,
+	// choosing the next instance to run in turn (+round-robin+), at random (+random+), or
+	// preferring instances whose last label completed over those retrying a failed await
+	// (+enabled-first+).
+	public static final String SCHEDULER_GOROUTINES = "goroutines";
+	public static final String SCHEDULER_ROUND_ROBIN = "round-robin";
+	public static final String SCHEDULER_RANDOM = "random";
+	public static final String SCHEDULER_ENABLED_FIRST = "enabled-first";
+
+	private static final String DEFAULT_SCHEDULER = SCHEDULER_GOROUTINES;
+
+	// Whether to simplify the generated Go code (constant folding, common subexpression
+	// elimination, copy propagation and removal of unused temporaries) before writing it.
+	// Disabled unless requested, so that the generated code follows the specification
+	// statement by statement.
+	private static final boolean DEFAULT_OPTIMISE = false;
+
+	// How long Modular PlusCal archetypes wait before retrying an aborted step, in
+	// microseconds. The wait starts at +backoff_min+ and doubles (with jitter) on every
+	// consecutive abort, up to +backoff_max+; it goes back to +backoff_min+ once a step
+	// commits.
+	private static final int DEFAULT_BACKOFF_MIN = 10;
+	private static final int DEFAULT_BACKOFF_MAX = 100000;
+
+	// fields to be extracted from the JSON configuration file
+	public static final String CODEGEN_FIELD = "codegen";
+	public static final String LOCAL_STRATEGY_FIELD = "local_strategy";
+	public static final String SEQUENCES_FIELD = "sequences";
+	public static final String OPTIMISE_FIELD = "optimise";
+	public static final String ATOMICITY_FIELD = "atomicity";
+	public static final String SCHEDULER_FIELD = "scheduler";
+	public static final String BACKOFF_MIN_FIELD = "backoff_min";
+	public static final String BACKOFF_MAX_FIELD = "backoff_max";
+
+	public String localStrategy;
+	public String sequences;
+	public boolean optimise;
+	public String atomicity;
+	public String scheduler;
+	public int backoffMin;
+	public int backoffMax;
+
+	public PGoCodeGenOptions(JSONObject config) throws PGoOptionException {
+		this.localStrategy = DEFAULT_LOCAL_STRATEGY;
+		this.sequences = DEFAULT_SEQUENCES;
+		this.optimise = DEFAULT_OPTIMISE;
+		this.atomicity = DEFAULT_ATOMICITY;
+		this.scheduler = DEFAULT_SCHEDULER;
+		this.backoffMin = DEFAULT_BACKOFF_MIN;
+		this.backoffMax = DEFAULT_BACKOFF_MAX;
+
+		if (!config.has(CODEGEN_FIELD)) {
+			return;
+		}
+
+		try {
+			JSONObject codeGenConfig = config.getJSONObject(CODEGEN_FIELD);
+
+			if (codeGenConfig.has(LOCAL_STRATEGY_FIELD)) {
+				this.localStrategy = codeGenConfig.getString(LOCAL_STRATEGY_FIELD);
+			}
+			if (codeGenConfig.has(SEQUENCES_FIELD)) {
+				this.sequences = codeGenConfig.getString(SEQUENCES_FIELD);
+			}
+			if (codeGenConfig.has(OPTIMISE_FIELD)) {
+				this.optimise = codeGenConfig.getBoolean(OPTIMISE_FIELD);
+			}
+			if (codeGenConfig.has(ATOMICITY_FIELD)) {
+				this.atomicity = codeGenConfig.getString(ATOMICITY_FIELD);
+			}
+			if (codeGenConfig.has(SCHEDULER_FIELD)) {
+				this.scheduler = codeGenConfig.getString(SCHEDULER_FIELD);
+			}
+			if (codeGenConfig.has(BACKOFF_MIN_FIELD)) {
+				this.backoffMin = codeGenConfig.getInt(BACKOFF_MIN_FIELD);
+			}
+			if (codeGenConfig.has(BACKOFF_MAX_FIELD)) {
+				this.backoffMax = codeGenConfig.getInt(BACKOFF_MAX_FIELD);
+			}
+		} catch (JSONException e) {
+			throw new PGoOptionException("Configuration is invalid: " + e.getMessage());
+		}
+
+		validate();
+	}
+
+	private void validate() throws PGoOptionException {
+		switch (localStrategy) {
+			case LOCAL_SNAPSHOT:
+			case LOCAL_COPY_ON_WRITE:
+				break;
+			default:
+				throw new PGoOptionException("Invalid local variable strategy: " + localStrategy);
+		}
+		switch (sequences) {
+			case SEQUENCES_SLICES:
+			case SEQUENCES_PERSISTENT:
+				break;
+			default:
+				throw new PGoOptionException("Invalid sequence representation: " + sequences);
+		}
+		switch (atomicity) {
+			case ATOMICITY_LOCK_GROUPS:
+			case ATOMICITY_PER_VARIABLE:
+			case ATOMICITY_OPTIMISTIC:
+				break;
+			default:
+				throw new PGoOptionException("Invalid atomicity mode: " + atomicity);
+		}
+		switch (scheduler) {
+			case SCHEDULER_GOROUTINES:
+			case SCHEDULER_ROUND_ROBIN:
+			case SCHEDULER_RANDOM:
+			case SCHEDULER_ENABLED_FIRST:
+				break;
+			default:
+				throw new PGoOptionException("Invalid scheduler: " + scheduler);
+		}
+		if (backoffMin <= 0) {
+			throw new PGoOptionException("Minimum backoff must be positive: " + backoffMin);
+		}
+		if (backoffMax < backoffMin) {
+			throw new PGoOptionException(
+					"Maximum backoff (" + backoffMax + ") is less than minimum backoff (" + backoffMin + ")");
+		}
+	}
+}
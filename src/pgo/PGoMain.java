@@ -28,6 +28,7 @@ import pgo.trans.passes.constdef.ConstantDefinitionParsingPass;
 import pgo.trans.passes.desugar.mpcal.ModularPlusCalDesugarPass;
 import pgo.trans.passes.expansion.ModularPlusCalMacroExpansionPass;
 import pgo.trans.passes.normalising.CodeNormalisingPass;
+import pgo.trans.passes.optimising.CodeOptimisingPass;
 import pgo.trans.passes.parse.mpcal.ModularPlusCalParsingPass;
 import pgo.trans.passes.parse.option.OptionParserIssue;
 import pgo.trans.passes.parse.option.OptionParsingPass;
@@ -243,7 +244,13 @@ public class PGoMain {
 		if (isMPCal) {
 			ModularPlusCalAtomicityInferencePass.perform(registry, macroExpandedModularPlusCalBlock);
 		} else {
-			AtomicityInferencePass.perform(registry, macroExpandedModularPlusCalBlock);
+			// optimistic atomicity versions each variable separately, using its variable lock,
+			// while the lock-based modes access variables atomically where possible when
+			// processes share memory
+			boolean optimistic = opts.codegen.atomicity.equals(PGoCodeGenOptions.ATOMICITY_OPTIMISTIC);
+			AtomicityInferencePass.perform(registry, typeMap, macroExpandedModularPlusCalBlock,
+					!opts.codegen.atomicity.equals(PGoCodeGenOptions.ATOMICITY_LOCK_GROUPS),
+					!opts.net.isEnabled() && !optimistic);
 		}
 
 		// compilation of (M)PCal -> Go
@@ -258,6 +265,11 @@ public class PGoMain {
 		logger.info("Normalising generated code");
 		GoModule normalisedGoModule = CodeNormalisingPass.perform(goModule);
 
+		if (opts.codegen.optimise) {
+			logger.info("Optimising generated code");
+			normalisedGoModule = CodeOptimisingPass.perform(normalisedGoModule);
+		}
+
 		logger.info("Writing Go module to \"" + destFile + "\"");
 		try(
 				BufferedWriter writer = Files.newBufferedWriter(Paths.get(destFile));
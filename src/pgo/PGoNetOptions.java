@@ -33,13 +33,24 @@ public class PGoNetOptions {
 		public static final String STATE_ETCD = "etcd";
 		public static final String STATE_SERVER = "state-server";
 
+		// when the state server moves a variable to the node requesting it
+		public static final String MIGRATION_NEVER = "never";
+		public static final String MIGRATION_ALWAYS = "always";
+		public static final String MIGRATION_RANDOM = "random";
+		// to a node that made most of the recent accesses to the variable
+		public static final String MIGRATION_ADAPTIVE = "adaptive";
+
 		private static final String DEFAULT_STATE_STRATEGY = STATE_SERVER;
+		private static final String DEFAULT_MIGRATION = MIGRATION_RANDOM;
 		private static final int DEFAULT_TIMEOUT = 3;
 
 		public String strategy;
 		public Vector<String> endpoints;
 		public Vector<String> peers;
 		public int timeout;
+		public String migration;
+		// whether the etcd strategy reads and writes the variables of a lock group in a single request
+		public boolean batch;
 
 		public StateOptions(JSONObject config) {
 			int i;
@@ -69,6 +80,16 @@ public class PGoNetOptions {
 			} else {
 				this.timeout = DEFAULT_TIMEOUT;
 			}
+
+			if (config.has("migration")) {
+				this.migration = config.getString("migration");
+			} else {
+				this.migration = DEFAULT_MIGRATION;
+			}
+
+			if (config.has("batch")) {
+				this.batch = config.getBoolean("batch");
+			}
 		}
 	}
 
@@ -119,11 +140,22 @@ public class PGoNetOptions {
 				}
 				break;
 			case StateOptions.STATE_SERVER:
-				// nothing, for now
+				if (stateOptions.batch) {
+					throw new PGoOptionException("Batched access is only supported by the etcd strategy");
+				}
 				break;
 			default:
 				throw new PGoOptionException("Invalid state strategy: " + stateOptions.strategy);
 		}
+		switch (stateOptions.migration) {
+			case StateOptions.MIGRATION_NEVER:
+			case StateOptions.MIGRATION_ALWAYS:
+			case StateOptions.MIGRATION_RANDOM:
+			case StateOptions.MIGRATION_ADAPTIVE:
+				break;
+			default:
+				throw new PGoOptionException("Invalid migration strategy: " + stateOptions.migration);
+		}
 	}
 
 	public boolean isEnabled() {
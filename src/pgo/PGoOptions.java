@@ -40,6 +40,7 @@ public class PGoOptions {
 	public String buildFile;
 	public String buildPackage;
 	public PGoNetOptions net;
+	public PGoCodeGenOptions codegen;
 	public PGoConstantDefs constants;
 
 	private Options plumeOptions;
@@ -101,6 +102,16 @@ public class PGoOptions {
             }
 
 			net = new PGoNetOptions(config);
+			codegen = new PGoCodeGenOptions(config);
+			if (net.isEnabled() && codegen.atomicity.equals(PGoCodeGenOptions.ATOMICITY_PER_VARIABLE)) {
+				throw new PGoOptionException("Per-variable locking is only supported when networking is disabled");
+			}
+			if (net.isEnabled() && codegen.atomicity.equals(PGoCodeGenOptions.ATOMICITY_OPTIMISTIC)) {
+				throw new PGoOptionException("Optimistic atomicity is only supported when networking is disabled");
+			}
+			if (net.isEnabled() && !codegen.scheduler.equals(PGoCodeGenOptions.SCHEDULER_GOROUTINES)) {
+				throw new PGoOptionException("Process schedulers are only supported when networking is disabled");
+			}
 			constants = new PGoConstantDefs(config, configFilePath);
 		}
 	}
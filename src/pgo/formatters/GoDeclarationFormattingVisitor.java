@@ -1,6 +1,5 @@
 package pgo.formatters;
 
-import pgo.TODO;
 import pgo.model.golang.GoDeclarationVisitor;
 import pgo.model.golang.GoFunctionDeclaration;
 import pgo.model.golang.GoTypeDeclaration;
@@ -43,7 +42,11 @@ public class GoDeclarationFormattingVisitor extends GoDeclarationVisitor<Void, I
 
 	@Override
 	public Void visit(GoTypeDeclaration typeDeclaration) throws IOException {
-		throw new TODO();
+		out.write("type ");
+		out.write(typeDeclaration.getName());
+		out.write(" ");
+		typeDeclaration.getType().accept(new GoTypeFormattingVisitor(out));
+		return null;
 	}
 
 	@Override
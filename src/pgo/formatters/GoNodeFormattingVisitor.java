@@ -101,7 +101,15 @@ public class GoNodeFormattingVisitor extends GoNodeVisitor<Void, IOException> {
 
 	@Override
 	public Void visit(GoSelectCase selectCase) throws IOException {
-		throw new TODO();
+		out.write("case ");
+		selectCase.getCondition().accept(new GoStatementFormattingVisitor(out));
+		out.write(":");
+		out.newLine();
+		for (GoStatement statement : selectCase.getBlock()) {
+			statement.accept(new GoStatementFormattingVisitor(out));
+			out.newLine();
+		}
+		return null;
 	}
 
 	@Override
@@ -1,6 +1,5 @@
 package pgo.formatters;
 
-import pgo.TODO;
 import pgo.model.golang.*;
 
 import java.io.IOException;
@@ -169,7 +168,13 @@ public class GoStatementFormattingVisitor extends GoStatementVisitor<Void, IOExc
 
 	@Override
 	public Void visit(GoSelect select) throws IOException {
-		throw new TODO();
+		out.write("select {");
+		out.newLine();
+		for (GoSelectCase selectCase : select.getCases()) {
+			selectCase.accept(new GoNodeFormattingVisitor(out));
+		}
+		out.write("}");
+		return null;
 	}
 
 	@Override
@@ -73,6 +73,12 @@ public class GoTypeFormattingVisitor extends GoTypeVisitor<Void, IOException> {
 		return null;
 	}
 
+	@Override
+	public Void visit(GoSequenceType sequenceType) throws IOException {
+		out.write("datatypes.Seq");
+		return null;
+	}
+
 	@Override
 	public Void visit(GoChanType chanType) throws IOException {
 		out.write("chan ");
@@ -17,6 +17,7 @@ public class GoFunctionDeclaration extends GoDeclaration {
 	
 	public GoFunctionDeclaration(String name, GoFunctionParameter receiver, List<GoFunctionParameter> arguments, List<GoFunctionParameter> returnTypes, GoBlock body) {
 		this.name = name;
+		this.receiver = receiver;
 		this.arguments = arguments;
 		this.returnTypes = returnTypes;
 		this.body = body;
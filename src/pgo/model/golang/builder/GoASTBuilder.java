@@ -7,11 +7,17 @@ import pgo.model.golang.type.GoType;
 import pgo.model.golang.type.GoTypeName;
 import pgo.scope.UID;
 
+import java.util.function.Function;
+
 public abstract class GoASTBuilder {
 	
 	public abstract GoTypeName defineType(String nameHint, GoType type);
 	
 	public abstract void addImport(String name);
+
+	// Returns the package-level helper (function, type...) registered under +key+, using
+	// +definition+ to declare it the first time the key is requested
+	public abstract <T> T defineHelper(Object key, Function<GoModuleBuilder, T> definition);
 	
 	public abstract GoFunctionDeclarationBuilder defineFunction(UID uid, String nameHint);
 	
@@ -9,6 +9,7 @@ import pgo.trans.passes.codegen.NameCleaner;
 
 import java.io.Closeable;
 import java.util.*;
+import java.util.function.Function;
 
 public class GoBlockBuilder extends GoASTBuilder implements Closeable {
 	private final GoASTBuilder builder;
@@ -185,6 +186,11 @@ public class GoBlockBuilder extends GoASTBuilder implements Closeable {
 		return builder.defineFunction(uid, nameHint);
 	}
 
+	@Override
+	public <T> T defineHelper(Object key, Function<GoModuleBuilder, T> definition) {
+		return builder.defineHelper(key, definition);
+	}
+
 	public GoAnonymousFunctionBuilder anonymousFunction() {
 		return new GoAnonymousFunctionBuilder(this, nameCleaner, nameMap);
 	}
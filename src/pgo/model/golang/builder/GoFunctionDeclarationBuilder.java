@@ -33,6 +33,10 @@ public class GoFunctionDeclarationBuilder {
 		this.returnValues = new ArrayList<>();
 	}
 
+	public GoVariableName getName() {
+		return new GoVariableName(name);
+	}
+
 	public GoVariableName addParameter(String nameHint, GoType type) {
 		String actualName = nameCleaner.cleanName(nameHint);
 		params.add(new GoFunctionParameter(actualName, type));
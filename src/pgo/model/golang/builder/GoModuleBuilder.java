@@ -8,6 +8,7 @@ import pgo.scope.UID;
 import pgo.trans.passes.codegen.NameCleaner;
 
 import java.util.*;
+import java.util.function.Function;
 
 public class GoModuleBuilder extends GoASTBuilder {
 
@@ -16,6 +17,8 @@ public class GoModuleBuilder extends GoASTBuilder {
 	private Set<String> imports;
 	private Map<UID, GoVariableName> nameMap;
 	private List<GoDeclaration> declarations;
+	private Map<Object, Object> helpers;
+	private List<GoDeclaration> helperDeclarations;
 	private NameCleaner nameCleaner;
 
 	public GoModuleBuilder(String name, String pack) {
@@ -50,6 +53,8 @@ public class GoModuleBuilder extends GoASTBuilder {
 		this.imports = new TreeSet<>();
 		this.nameMap = new HashMap<>();
 		this.declarations = new ArrayList<>();
+		this.helpers = new HashMap<>();
+		this.helperDeclarations = new ArrayList<>();
 	}
 
 	@Override
@@ -66,6 +71,27 @@ public class GoModuleBuilder extends GoASTBuilder {
 		return new GoFunctionDeclarationBuilder(this, actualName, nameCleaner.child(), nameMap);
 	}
 
+	// methods live in the namespace of their receiver type, so their names are not cleaned
+	public GoFunctionDeclarationBuilder defineMethod(String name) {
+		return new GoFunctionDeclarationBuilder(this, name, nameCleaner.child(), nameMap);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T defineHelper(Object key, Function<GoModuleBuilder, T> definition) {
+		// helpers may define other helpers (e.g., comparing the fields of a struct), so
+		// computeIfAbsent cannot be used here
+		if (!helpers.containsKey(key)) {
+			int start = declarations.size();
+			helpers.put(key, definition.apply(this));
+			// helpers are emitted after all other declarations
+			List<GoDeclaration> defined = declarations.subList(start, declarations.size());
+			helperDeclarations.addAll(defined);
+			defined.clear();
+		}
+		return (T) helpers.get(key);
+	}
+
 	public GoVariableName defineGlobal(UID uid, String nameHint, GoType type, GoExpression value) {
 		String actualName = nameCleaner.cleanName(nameHint);
 		GoVariableName vName = new GoVariableName(actualName);
@@ -83,7 +109,9 @@ public class GoModuleBuilder extends GoASTBuilder {
 	}
 
 	public GoModule getModule() {
-		return new GoModule(name, new GoVariableName(this.pack), new ArrayList<>(imports), declarations);
+		List<GoDeclaration> allDeclarations = new ArrayList<>(declarations);
+		allDeclarations.addAll(helperDeclarations);
+		return new GoModule(name, new GoVariableName(this.pack), new ArrayList<>(imports), allDeclarations);
 	}
 
 	@Override
@@ -0,0 +1,49 @@
+package pgo.model.golang.type;
+
+/**
+ * The persistent sequence type provided by the PGo runtime (datatypes.Seq).
+ * Elements are stored as interface{} values, so the element type is kept here
+ * in order to cast them back when they are read.
+ */
+public class GoSequenceType extends GoType {
+
+	public static final String PACKAGE = "pgo/datatypes";
+
+	private GoType elementType;
+
+	public GoSequenceType(GoType elementType) {
+		this.elementType = elementType;
+	}
+
+	public GoType getElementType() {
+		return elementType;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(GoTypeVisitor<T, E> v) throws E {
+		return v.visit(this);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 37;
+		int result = 1;
+		result = prime * result + ((elementType == null) ? 0 : elementType.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		GoSequenceType other = (GoSequenceType) obj;
+		if (elementType == null) {
+			return other.elementType == null;
+		} else return elementType.equals(other.elementType);
+	}
+
+}
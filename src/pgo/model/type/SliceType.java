@@ -6,15 +6,29 @@ import java.util.List;
 
 /**
  * Represents a slice.
+ *
+ * A slice can be marked as persistent after type inference, in which case it is
+ * represented by a persistent sequence in the generated Go code rather than by a Go slice.
  */
 public class SliceType extends SimpleContainerType {
+	private final boolean persistent;
+
 	public SliceType(Type elementType, List<Origin> origins) {
+		this(elementType, origins, false);
+	}
+
+	public SliceType(Type elementType, List<Origin> origins, boolean persistent) {
 		super(elementType, origins);
+		this.persistent = persistent;
+	}
+
+	public boolean isPersistent() {
+		return persistent;
 	}
 
 	@Override
 	public int hashCode() {
-		return super.hashCode() * 17 + 7;
+		return super.hashCode() * 17 + (persistent ? 11 : 7);
 	}
 
 	@Override
@@ -22,7 +36,7 @@ public class SliceType extends SimpleContainerType {
 		if (!(p instanceof SliceType)) {
 			return false;
 		}
-		return super.equals(p);
+		return persistent == ((SliceType) p).persistent && super.equals(p);
 	}
 
 	@Override
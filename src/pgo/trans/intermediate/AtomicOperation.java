@@ -0,0 +1,79 @@
+package pgo.trans.intermediate;
+
+import pgo.model.tla.TLAExpression;
+import pgo.scope.UID;
+
+// The single operation a label performs on an atomic global variable (see
+// DefinitionRegistry.addAtomicGlobalVariable), which replaces the lock around the label.
+public class AtomicOperation {
+	public enum Kind {
+		// the label only reads the variable
+		LOAD,
+		// the label assigns a value which does not depend on the variable, before reading it
+		STORE,
+		// the label adds +delta+ (or subtracts it, if +negated+) to the variable, before
+		// reading the result if +resultUsed+
+		ADD,
+		// the label starts by assigning a value computed from the variable
+		COMPARE_AND_SWAP,
+	}
+
+	private final Kind kind;
+	private final UID variableUID;
+	private final UID assignmentUID;
+	private final TLAExpression delta;
+	private final boolean negated;
+	private final boolean resultUsed;
+
+	private AtomicOperation(Kind kind, UID variableUID, UID assignmentUID, TLAExpression delta, boolean negated,
+	                        boolean resultUsed) {
+		this.kind = kind;
+		this.variableUID = variableUID;
+		this.assignmentUID = assignmentUID;
+		this.delta = delta;
+		this.negated = negated;
+		this.resultUsed = resultUsed;
+	}
+
+	public static AtomicOperation load(UID variableUID) {
+		return new AtomicOperation(Kind.LOAD, variableUID, null, null, false, true);
+	}
+
+	public static AtomicOperation store(UID variableUID, UID assignmentUID) {
+		return new AtomicOperation(Kind.STORE, variableUID, assignmentUID, null, false, true);
+	}
+
+	public static AtomicOperation add(UID variableUID, UID assignmentUID, TLAExpression delta, boolean negated,
+	                                  boolean resultUsed) {
+		return new AtomicOperation(Kind.ADD, variableUID, assignmentUID, delta, negated, resultUsed);
+	}
+
+	public static AtomicOperation compareAndSwap(UID variableUID, UID assignmentUID) {
+		return new AtomicOperation(Kind.COMPARE_AND_SWAP, variableUID, assignmentUID, null, false, true);
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public UID getVariableUID() {
+		return variableUID;
+	}
+
+	// the assignment to the variable, unless the label only reads it
+	public UID getAssignmentUID() {
+		return assignmentUID;
+	}
+
+	public TLAExpression getDelta() {
+		return delta;
+	}
+
+	public boolean isNegated() {
+		return negated;
+	}
+
+	public boolean isResultUsed() {
+		return resultUsed;
+	}
+}
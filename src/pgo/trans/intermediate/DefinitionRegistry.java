@@ -28,8 +28,15 @@ public class DefinitionRegistry {
 	private final Map<Integer, Set<TLAExpression>> lockGroupsToResourceReads;
 	private final Map<Integer, Set<TLAExpression>> lockGroupsToResourceWrites;
 	private final Set<UID> protectedGlobalVariables;
+	private final Map<UID, Integer> variableLocks;
 	private final Map<UID, boolean[]> signatures;
 	private final Map<UID, Set<UID>> labelToLocals;
+	private final Set<UID> atomicGlobalVariables;
+	private final Map<UID, AtomicOperation> atomicOperations;
+	private final Map<UID, Set<UID>> labelsToVariableReads;
+	private final Map<UID, Set<UID>> labelsToVariableWrites;
+	private final Set<UID> snapshotReaders;
+	private final Map<Integer, Set<UID>> lockGroupsToSnapshotVariables;
 
 	public DefinitionRegistry() {
 		this.modules = new HashMap<>();
@@ -49,8 +56,15 @@ public class DefinitionRegistry {
 		this.lockGroupsToResourceReads = new HashMap<>();
 		this.lockGroupsToResourceWrites = new HashMap<>();
 		this.protectedGlobalVariables = new HashSet<>();
+		this.variableLocks = new HashMap<>();
 		this.signatures = new HashMap<>();
 		this.labelToLocals = new HashMap<>();
+		this.atomicGlobalVariables = new HashSet<>();
+		this.atomicOperations = new HashMap<>();
+		this.labelsToVariableReads = new HashMap<>();
+		this.labelsToVariableWrites = new HashMap<>();
+		this.snapshotReaders = new HashSet<>();
+		this.lockGroupsToSnapshotVariables = new HashMap<>();
 	}
 
 	public Map<UID, UID> getReferences() {
@@ -244,6 +258,90 @@ public class DefinitionRegistry {
 		return Collections.unmodifiableSet(protectedGlobalVariables);
 	}
 
+	// When each protected global variable has a lock of its own, locks are always acquired in
+	// increasing order of their index to prevent deadlocks. Lock groups then stand for the
+	// set of locks held by a label, rather than a lock.
+	public void addVariableLock(UID varUID, int lock) {
+		if (variableLocks.containsKey(varUID)) {
+			throw new InternalCompilerError();
+		}
+		variableLocks.put(varUID, lock);
+	}
+
+	// Atomic global variables are only accessed through single atomic operations, and so are
+	// not protected by any lock. Each of them has a lock group of its own, numbered after the
+	// lock groups that need locks.
+	public void addAtomicGlobalVariable(UID varUID) {
+		atomicGlobalVariables.add(varUID);
+	}
+
+	public boolean isAtomicGlobalVariable(UID varUID) {
+		return atomicGlobalVariables.contains(varUID);
+	}
+
+	public int getNumberOfAtomicGlobalVariables() {
+		return atomicGlobalVariables.size();
+	}
+
+	public void setAtomicOperation(UID labelUID, AtomicOperation operation) {
+		if (atomicOperations.containsKey(labelUID)) {
+			throw new InternalCompilerError();
+		}
+		atomicOperations.put(labelUID, operation);
+	}
+
+	public Optional<AtomicOperation> getAtomicOperation(UID labelUID) {
+		return Optional.ofNullable(atomicOperations.get(labelUID));
+	}
+
+	public void addVariableReadToLabel(UID varUID, UID labelUID) {
+		labelsToVariableReads.computeIfAbsent(labelUID, ignored -> new HashSet<>()).add(varUID);
+	}
+
+	public void addVariableWriteToLabel(UID varUID, UID labelUID) {
+		labelsToVariableWrites.computeIfAbsent(labelUID, ignored -> new HashSet<>()).add(varUID);
+	}
+
+	public Set<UID> getVariableReadsInLabel(UID labelUID) {
+		return Collections.unmodifiableSet(labelsToVariableReads.getOrDefault(labelUID, Collections.emptySet()));
+	}
+
+	public Set<UID> getVariableWritesInLabel(UID labelUID) {
+		return Collections.unmodifiableSet(labelsToVariableWrites.getOrDefault(labelUID, Collections.emptySet()));
+	}
+
+	// Snapshot readers are labels which only read global variables, and do so from a snapshot
+	// of their lock group published by the labels writing to it, rather than under its lock.
+	public void addSnapshotReader(UID labelUID) {
+		snapshotReaders.add(labelUID);
+	}
+
+	public boolean isSnapshotReader(UID labelUID) {
+		return snapshotReaders.contains(labelUID);
+	}
+
+	// the variables of +lockGroup+ which are part of its snapshots, i.e. those which snapshot
+	// readers read and other labels write to
+	public void addSnapshotVariable(int lockGroup, UID varUID) {
+		lockGroupsToSnapshotVariables.computeIfAbsent(lockGroup, ignored -> new HashSet<>()).add(varUID);
+	}
+
+	public Set<UID> getSnapshotVariables(int lockGroup) {
+		return Collections.unmodifiableSet(lockGroupsToSnapshotVariables.getOrDefault(lockGroup, Collections.emptySet()));
+	}
+
+	public boolean hasVariableLocks() {
+		return !variableLocks.isEmpty();
+	}
+
+	public int getVariableLock(UID varUID) {
+		return variableLocks.get(varUID);
+	}
+
+	public int getNumberOfVariableLocks() {
+		return variableLocks.size();
+	}
+
 	public Optional<boolean[]> getSignature(UID uid) {
 		return Optional.ofNullable(signatures.get(uid));
 	}
@@ -3,7 +3,6 @@ package pgo.trans.intermediate;
 import pgo.InternalCompilerError;
 import pgo.TODO;
 import pgo.model.golang.*;
-import pgo.model.golang.builder.GoAnonymousFunctionBuilder;
 import pgo.model.golang.builder.GoBlockBuilder;
 import pgo.model.golang.builder.GoForRangeBuilder;
 import pgo.model.golang.builder.GoForStatementClauseBuilder;
@@ -15,6 +14,8 @@ import pgo.model.type.constraint.EqualityConstraint;
 import pgo.model.type.constraint.MonomorphicConstraint;
 import pgo.model.type.constraint.PolymorphicConstraint;
 import pgo.scope.UID;
+import pgo.trans.passes.codegen.go.CodeGenUtil;
+import pgo.trans.passes.codegen.go.ComparisonFunctions;
 import pgo.trans.passes.codegen.go.EqCodeGenVisitor;
 import pgo.trans.passes.codegen.go.LessThanCodeGenVisitor;
 import pgo.trans.passes.codegen.go.TypeConversionVisitor;
@@ -32,8 +33,6 @@ public class TLABuiltins {
 	}
 
 	private static GoVariableName getIndexInSet(GoBlockBuilder builder, GoType elementType, GoExpression set, GoExpression val) {
-		builder.addImport("sort");
-
 		String searchFunction;
 		if (elementType.equals(GoBuiltins.Int)) {
 			searchFunction = "SearchInts";
@@ -47,29 +46,13 @@ public class TLABuiltins {
 
 		GoVariableName index;
 		if (searchFunction.equals("Search")) {
-			GoAnonymousFunctionBuilder checkBuilder = builder.anonymousFunction();
-			GoVariableName j = checkBuilder.addArgument("j", GoBuiltins.Int);
-			checkBuilder.addReturn(GoBuiltins.Bool);
-			try (GoBlockBuilder checkBody = checkBuilder.getBlockBuilder()) {
-				checkBody.addStatement(
-						new GoReturn(
-								Collections.singletonList(
-										new GoUnary(
-												GoUnary.Operation.NOT,
-												elementType.accept(new LessThanCodeGenVisitor(
-														checkBody,
-														new GoIndexExpression(set, j),
-														val))))));
-			}
 			index = builder.varDecl(
 					"index",
 					new GoCall(
-							new GoSelectorExpression(
-									new GoVariableName("sort"), "Search"),
-							Arrays.asList(
-									new GoCall(new GoVariableName("len"), Collections.singletonList(set)),
-									checkBuilder.getFunction())));
+							ComparisonFunctions.search(builder, elementType, elementType, null),
+							Arrays.asList(set, val)));
 		} else {
+			builder.addImport("sort");
 			index = builder.varDecl(
 					"index",
 					new GoCall(
@@ -80,6 +63,11 @@ public class TLABuiltins {
 		return index;
 	}
 
+	private static boolean isPersistentSequence(Map<UID, Type> typeMap, TLAExpression expression) {
+		Type type = typeMap.get(expression.getUID());
+		return type instanceof SliceType && ((SliceType) type).isPersistent();
+	}
+
 	public static TypeVariable getPolymorphicNumberType(Origin origin, TypeSolver solver,
 	                                                    TypeGenerator generator) {
 		TypeVariable fresh = generator.getTypeVariable(Collections.singletonList(origin));
@@ -118,28 +106,14 @@ public class TLABuiltins {
 		} else if (elementType.equals(GoBuiltins.String)) {
 			sortFunction = "Strings";
 		} else {
-			sortFunction = "Slice";
+			sortFunction = "Sort";
 		}
-		if (sortFunction.equals("Slice")) {
-			GoAnonymousFunctionBuilder comparatorBuilder = builder.anonymousFunction();
-			GoVariableName i = comparatorBuilder.addArgument("i", GoBuiltins.Int);
-			GoVariableName j = comparatorBuilder.addArgument("j", GoBuiltins.Int);
-			comparatorBuilder.addReturn(GoBuiltins.Bool);
-			try (GoBlockBuilder comparatorBody = comparatorBuilder.getBlockBuilder()) {
-				comparatorBody.addStatement(
-						new GoReturn(
-								Collections.singletonList(
-										elementType.accept(
-												new LessThanCodeGenVisitor(
-														comparatorBody,
-														new GoIndexExpression(set, i),
-														new GoIndexExpression(set, j))))));
-			}
+		if (sortFunction.equals("Sort")) {
 			builder.addStatement(new GoExpressionStatement(new GoCall(
 					new GoSelectorExpression(new GoVariableName("sort"), sortFunction),
-					Arrays.asList(
-							set,
-							comparatorBuilder.getFunction()))));
+					Collections.singletonList(new GoCall(
+							new GoVariableName(ComparisonFunctions.sortable(builder, elementType).getName()),
+							Collections.singletonList(set))))));
 		} else {
 			builder.addStatement(new GoExpressionStatement(new GoCall(
 					new GoSelectorExpression(new GoVariableName("sort"), sortFunction), Collections.singletonList(set))));
@@ -424,7 +398,7 @@ public class TLABuiltins {
 
 		BuiltinModule Sequences = new BuiltinModule();
 		builtinModules.put("Sequences", Sequences);
-		Sequences.addOperator("Len", new TypelessBuiltinOperator(
+		Sequences.addOperator("Len", new BuiltinOperator(
 				1,
 				(origin, args, solver, generator) -> {
 					solver.addConstraint(new PolymorphicConstraint(origin, Arrays.asList(
@@ -437,9 +411,14 @@ public class TLABuiltins {
 									args.get(0), new StringType(Collections.singletonList(origin)))))));
 					return new IntType(Collections.singletonList(origin));
 				},
-				(builder, origin, registry, arguments, typeMap) -> new GoCall(
-						new GoVariableName("len"), Collections.singletonList(arguments.get(0)))
-				));
+				(builder, origin, registry, arguments, typeMap, localStrategy, globalStrategy) -> {
+					GoExpression seq = arguments.get(0).accept(
+							new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy));
+					if (isPersistentSequence(typeMap, arguments.get(0))) {
+						return new GoCall(new GoSelectorExpression(seq, "Len"), Collections.emptyList());
+					}
+					return new GoCall(new GoVariableName("len"), Collections.singletonList(seq));
+				}));
 		Sequences.addOperator("Append", new BuiltinOperator(
 				2,
 				(origin, args, solver, generator) -> {
@@ -456,6 +435,11 @@ public class TLABuiltins {
 					GoExpression extra = arguments.get(1).accept(
 							new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy));
 
+					// persistent sequences share storage with the base sequence whenever possible
+					if (isPersistentSequence(typeMap, arguments.get(0))) {
+						return new GoCall(new GoSelectorExpression(base, "Append"), Collections.singletonList(extra));
+					}
+
 					GoExpression baseLen = new GoCall(new GoVariableName("len"), Collections.singletonList(base));
 					// since append may reuse the underlying slice, it is possible that appending two different
 					// things to the same original slice will causes unintended mutations in the results of previous
@@ -470,7 +454,7 @@ public class TLABuiltins {
 					builder.assign(tmpSlice, new GoCall(new GoVariableName("append"), Arrays.asList(tmpSlice, extra)));
 					return tmpSlice;
 				}));
-		Sequences.addOperator("Head", new TypelessBuiltinOperator(
+		Sequences.addOperator("Head", new BuiltinOperator(
 				1,
 				(origin, args, solver, generator) -> {
 					TypeVariable elementType = generator.getTypeVariable(Collections.singletonList(origin));
@@ -478,9 +462,18 @@ public class TLABuiltins {
 							origin, args.get(0), new SliceType(elementType, Collections.singletonList(origin))));
 					return elementType;
 				},
-				(builder, origin, registry, arguments, typeMap) ->
-						new GoIndexExpression(arguments.get(0), new GoIntLiteral(0))));
-		Sequences.addOperator("Tail", new TypelessBuiltinOperator(
+				(builder, origin, registry, arguments, typeMap, localStrategy, globalStrategy) -> {
+					GoExpression seq = arguments.get(0).accept(
+							new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy));
+					if (isPersistentSequence(typeMap, arguments.get(0))) {
+						return CodeGenUtil.sequenceElement(
+								seq,
+								new GoIntLiteral(0),
+								typeMap.get(origin.getUID()).accept(new TypeConversionVisitor()));
+					}
+					return new GoIndexExpression(seq, new GoIntLiteral(0));
+				}));
+		Sequences.addOperator("Tail", new BuiltinOperator(
 				1,
 				(origin, args, solver, generator) -> {
 					TypeVariable elementType = generator.getTypeVariable(Collections.singletonList(origin));
@@ -488,9 +481,14 @@ public class TLABuiltins {
 					solver.addConstraint(new MonomorphicConstraint(origin, args.get(0), fresh));
 					return fresh;
 				},
-				(builder, origin, registry, arguments, typeMap) -> new GoSliceOperator(
-						arguments.get(0), new GoIntLiteral(1), null, null)
-				));
+				(builder, origin, registry, arguments, typeMap, localStrategy, globalStrategy) -> {
+					GoExpression seq = arguments.get(0).accept(
+							new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy));
+					if (isPersistentSequence(typeMap, arguments.get(0))) {
+						return new GoCall(new GoSelectorExpression(seq, "Tail"), Collections.emptyList());
+					}
+					return new GoSliceOperator(seq, new GoIntLiteral(1), null, null);
+				}));
 		Sequences.addOperator("\\o", new BuiltinOperator(
 				2,
 				(origin, args, solver, generator) -> {
@@ -509,6 +507,10 @@ public class TLABuiltins {
 					GoExpression s1 = arguments.get(0).accept(new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy));
 					GoExpression s2 = arguments.get(1).accept(new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy));
 
+					if (isPersistentSequence(typeMap, arguments.get(0))) {
+						return new GoCall(new GoSelectorExpression(s1, "Concat"), Collections.singletonList(s2));
+					}
+
 					GoVariableName seqName = builder.varDecl("sequence", s1);
 					GoExpression append = new GoCall(new GoVariableName("append"), Arrays.asList(seqName, s2), true);
 					builder.assign(seqName, append);
@@ -545,6 +547,10 @@ public class TLABuiltins {
 							arguments.get(2).accept(new TLAExpressionCodeGenVisitor(
 									builder, registry, typeMap, localStrategy, globalStrategy)));
 
+					// persistent sequences implement SubSeq without copying
+					if (isPersistentSequence(typeMap, arguments.get(0))) {
+						return new GoCall(new GoSelectorExpression(slice, "SubSeq"), Arrays.asList(start, end));
+					}
 
 					GoSliceType sliceType = (GoSliceType) typeMap.get(arguments.get(0).getUID())
 							.accept(new TypeConversionVisitor());
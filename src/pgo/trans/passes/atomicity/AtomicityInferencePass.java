@@ -1,12 +1,17 @@
 package pgo.trans.passes.atomicity;
 
 import pgo.InternalCompilerError;
+import pgo.model.tla.TLABinOp;
 import pgo.model.tla.TLAExpression;
 import pgo.model.tla.TLAGeneralIdentifier;
+import pgo.model.type.BoolType;
+import pgo.model.type.IntType;
+import pgo.model.type.Type;
 import pgo.util.UnionFind;
 import pgo.model.mpcal.ModularPlusCalBlock;
 import pgo.model.pcal.*;
 import pgo.scope.UID;
+import pgo.trans.intermediate.AtomicOperation;
 import pgo.trans.intermediate.DefinitionRegistry;
 
 import java.util.*;
@@ -36,7 +41,269 @@ public class AtomicityInferencePass {
 		}
 	}
 
+	// Gives each protected global variable a lock of its own, numbered in declaration order,
+	// and puts labels accessing the same variables in the same way in the same lock group,
+	// so that a label only excludes the labels that access some of the same variables.
+	private static void assignVariableLocks(DefinitionRegistry registry, ModularPlusCalBlock modularPlusCalBlock,
+	                                        Map<UID, Set<UID>> globalVarReadsToLabel,
+	                                        Map<UID, Set<UID>> globalVarWritesToLabel, Set<UID> foundLabels) {
+		List<UID> lockedVariables = new ArrayList<>();
+		for (PlusCalVariableDeclaration declaration : modularPlusCalBlock.getVariables()) {
+			UID varUID = declaration.getUID();
+			if (globalVarReadsToLabel.containsKey(varUID) || globalVarWritesToLabel.containsKey(varUID)) {
+				registry.addProtectedGlobalVariable(varUID);
+				registry.addVariableLock(varUID, lockedVariables.size());
+				lockedVariables.add(varUID);
+			}
+		}
+		Set<UID> accessedVariables = new HashSet<>(globalVarReadsToLabel.keySet());
+		accessedVariables.addAll(globalVarWritesToLabel.keySet());
+		if (!lockedVariables.containsAll(accessedVariables)) {
+			throw new InternalCompilerError();
+		}
+
+		// lock groups are numbered by the locks they hold, so that the output is deterministic
+		Map<UID, List<List<Integer>>> labelAccesses = new HashMap<>();
+		for (UID labelUID : foundLabels) {
+			List<Integer> reads = new ArrayList<>();
+			List<Integer> writes = new ArrayList<>();
+			for (int lock = 0; lock < lockedVariables.size(); lock++) {
+				UID varUID = lockedVariables.get(lock);
+				if (globalVarReadsToLabel.getOrDefault(varUID, Collections.emptySet()).contains(labelUID)) {
+					reads.add(lock);
+				}
+				if (globalVarWritesToLabel.getOrDefault(varUID, Collections.emptySet()).contains(labelUID)) {
+					writes.add(lock);
+				}
+			}
+			if (!reads.isEmpty() || !writes.isEmpty()) {
+				labelAccesses.put(labelUID, Arrays.asList(reads, writes));
+			}
+		}
+		List<List<List<Integer>>> distinctAccesses = new ArrayList<>(new HashSet<>(labelAccesses.values()));
+		distinctAccesses.sort(Comparator.comparing(Object::toString));
+		for (int lockGroup = 0; lockGroup < distinctAccesses.size(); lockGroup++) {
+			for (int lock : distinctAccesses.get(lockGroup).get(0)) {
+				registry.addVariableReadToLockGroup(lockedVariables.get(lock), lockGroup);
+			}
+			for (int lock : distinctAccesses.get(lockGroup).get(1)) {
+				registry.addVariableWriteToLockGroup(lockedVariables.get(lock), lockGroup);
+			}
+		}
+		for (Map.Entry<UID, List<List<Integer>>> entry : labelAccesses.entrySet()) {
+			registry.addLabelToLockGroup(entry.getKey(), distinctAccesses.indexOf(entry.getValue()));
+		}
+	}
+
+	// Finds the global variables of type Int or Bool which are only accessed by labels that
+	// access no other global variable, and do so with a single atomic operation (see
+	// AtomicOperation), e.g.
+	//
+	//     incCounter: counter := counter + 1;
+	//                 print counter;
+	//
+	// which adds 1 to counter atomically, then prints the result. Labels which may abort, or
+	// contain a loop, may need to access the variable several times, so they keep it locked.
+	// Returns the operation each label performs on its atomic variable.
+	private static Map<UID, AtomicOperation> findAtomicOperations(DefinitionRegistry registry, Map<UID, Type> typeMap,
+	                                                              ModularPlusCalBlock modularPlusCalBlock,
+	                                                              Map<UID, PlusCalLabeledStatements> labels,
+	                                                              Map<UID, Set<UID>> globalVarReadsToLabel,
+	                                                              Map<UID, Set<UID>> globalVarWritesToLabel) {
+		Map<UID, Set<UID>> labelToVariables = new HashMap<>();
+		for (Map<UID, Set<UID>> accesses : Arrays.asList(globalVarReadsToLabel, globalVarWritesToLabel)) {
+			for (Map.Entry<UID, Set<UID>> entry : accesses.entrySet()) {
+				for (UID labelUID : entry.getValue()) {
+					labelToVariables.computeIfAbsent(labelUID, ignored -> new HashSet<>()).add(entry.getKey());
+				}
+			}
+		}
+
+		Map<UID, AtomicOperation> atomicOperations = new HashMap<>();
+		for (PlusCalVariableDeclaration declaration : modularPlusCalBlock.getVariables()) {
+			UID varUID = declaration.getUID();
+			Set<UID> accessingLabels = new HashSet<>();
+			accessingLabels.addAll(globalVarReadsToLabel.getOrDefault(varUID, Collections.emptySet()));
+			accessingLabels.addAll(globalVarWritesToLabel.getOrDefault(varUID, Collections.emptySet()));
+			Type type = typeMap.get(varUID);
+			if (accessingLabels.isEmpty() || !(type instanceof IntType || type instanceof BoolType)) {
+				continue;
+			}
+			Map<UID, AtomicOperation> operations = new HashMap<>();
+			for (UID labelUID : accessingLabels) {
+				if (labelToVariables.get(labelUID).size() != 1 || !labels.containsKey(labelUID)) {
+					break;
+				}
+				Optional<AtomicOperation> operation = findAtomicOperation(
+						registry, varUID, type instanceof IntType, labels.get(labelUID).getStatements());
+				if (!operation.isPresent()) {
+					break;
+				}
+				operations.put(labelUID, operation.get());
+			}
+			if (operations.size() == accessingLabels.size()) {
+				atomicOperations.putAll(operations);
+			}
+		}
+		return atomicOperations;
+	}
+
+	private static boolean isAccessed(DefinitionRegistry registry, UID varUID, TLAExpression expression) {
+		PlusCalStatementAtomicOperationVisitor visitor = new PlusCalStatementAtomicOperationVisitor(registry, varUID);
+		visitor.trackExpression(expression);
+		return visitor.isAccessed();
+	}
+
+	private static boolean isVariable(DefinitionRegistry registry, UID varUID, TLAExpression expression) {
+		return expression instanceof TLAGeneralIdentifier &&
+				registry.followReference(expression.getUID()).equals(varUID);
+	}
+
+	// The atomic operation performed on +varUID+ by a label consisting of +statements+, if any.
+	// After the variable is assigned, the label may read it any number of times, since the
+	// value assigned is known.
+	private static Optional<AtomicOperation> findAtomicOperation(DefinitionRegistry registry, UID varUID,
+	                                                             boolean isInt, List<PlusCalStatement> statements) {
+		PlusCalStatementAtomicOperationVisitor visitor = new PlusCalStatementAtomicOperationVisitor(registry, varUID);
+		statements.forEach(s -> s.accept(visitor));
+		if (visitor.mayAbort() || visitor.containsLoop()) {
+			return Optional.empty();
+		}
+		if (visitor.getWrites().isEmpty()) {
+			return Optional.of(AtomicOperation.load(varUID));
+		}
+		if (visitor.getWrites().size() != 1) {
+			return Optional.empty();
+		}
+		PlusCalAssignment assignment = visitor.getWrites().get(0);
+		int index = 0;
+		while (index < statements.size() && statements.get(index) != assignment) {
+			index++;
+		}
+		// the assignment has to be part of the label itself, rather than e.g. of an if
+		// statement, to be performed exactly once
+		if (index == statements.size() || assignment.getPairs().size() != 1 ||
+				!isVariable(registry, varUID, assignment.getPairs().get(0).getLhs())) {
+			return Optional.empty();
+		}
+		PlusCalStatementAtomicOperationVisitor before = new PlusCalStatementAtomicOperationVisitor(registry, varUID);
+		statements.subList(0, index).forEach(s -> s.accept(before));
+		if (before.isAccessed()) {
+			return Optional.empty();
+		}
+		PlusCalStatementAtomicOperationVisitor after = new PlusCalStatementAtomicOperationVisitor(registry, varUID);
+		statements.subList(index + 1, statements.size()).forEach(s -> s.accept(after));
+		TLAExpression value = assignment.getPairs().get(0).getRhs();
+		if (!isAccessed(registry, varUID, value)) {
+			return Optional.of(AtomicOperation.store(varUID, assignment.getUID()));
+		}
+		if (!isInt) {
+			return Optional.empty();
+		}
+		if (value instanceof TLABinOp && ((TLABinOp) value).getPrefix().isEmpty()) {
+			TLABinOp binOp = (TLABinOp) value;
+			String operation = binOp.getOperation().getValue();
+			if ((operation.equals("+") || operation.equals("-")) &&
+					isVariable(registry, varUID, binOp.getLHS()) && !isAccessed(registry, varUID, binOp.getRHS())) {
+				return Optional.of(AtomicOperation.add(
+						varUID, assignment.getUID(), binOp.getRHS(), operation.equals("-"), after.isAccessed()));
+			}
+			if (operation.equals("+") &&
+					isVariable(registry, varUID, binOp.getRHS()) && !isAccessed(registry, varUID, binOp.getLHS())) {
+				return Optional.of(AtomicOperation.add(
+						varUID, assignment.getUID(), binOp.getLHS(), false, after.isAccessed()));
+			}
+		}
+		// any other update is retried until no other process has changed the variable in the
+		// meantime, which requires that nothing happens before it
+		if (index == 0) {
+			return Optional.of(AtomicOperation.compareAndSwap(varUID, assignment.getUID()));
+		}
+		return Optional.empty();
+	}
+
+	// Finds the labels which only read global variables, and never abort or loop, so that
+	// they can read a snapshot of the variables of their lock group, published by the labels
+	// that write to them, rather than lock them. Records which variables each label of a
+	// lock group reads and writes for that purpose.
+	private static void findSnapshotReaders(DefinitionRegistry registry, Map<UID, PlusCalLabeledStatements> labels,
+	                                        Map<UID, Set<UID>> globalVarReadsToLabel,
+	                                        Map<UID, Set<UID>> globalVarWritesToLabel) {
+		for (Map.Entry<UID, Set<UID>> entry : globalVarReadsToLabel.entrySet()) {
+			entry.getValue().forEach(labelUID -> registry.addVariableReadToLabel(entry.getKey(), labelUID));
+		}
+		Set<UID> writingLabels = new HashSet<>();
+		for (Map.Entry<UID, Set<UID>> entry : globalVarWritesToLabel.entrySet()) {
+			entry.getValue().forEach(labelUID -> registry.addVariableWriteToLabel(entry.getKey(), labelUID));
+			writingLabels.addAll(entry.getValue());
+		}
+		for (Map.Entry<UID, PlusCalLabeledStatements> entry : labels.entrySet()) {
+			UID labelUID = entry.getKey();
+			if (registry.getLockGroupOrDefault(labelUID, -1) < 0 || writingLabels.contains(labelUID)) {
+				continue;
+			}
+			// no variable is of interest, only the statements themselves
+			PlusCalStatementAtomicOperationVisitor visitor = new PlusCalStatementAtomicOperationVisitor(registry, null);
+			entry.getValue().getStatements().forEach(s -> s.accept(visitor));
+			if (visitor.mayAbort() || visitor.containsLoop()) {
+				continue;
+			}
+			registry.addSnapshotReader(labelUID);
+			// the variables nothing writes to need no snapshot
+			for (UID varUID : registry.getVariableReadsInLabel(labelUID)) {
+				if (globalVarWritesToLabel.containsKey(varUID)) {
+					registry.addSnapshotVariable(registry.getLockGroup(labelUID), varUID);
+				}
+			}
+		}
+	}
+
+	// Each atomic variable gets a lock group of its own, numbered after the other lock groups,
+	// so that no lock is allocated for it.
+	private static void assignAtomicLockGroups(DefinitionRegistry registry, ModularPlusCalBlock modularPlusCalBlock,
+	                                           Map<UID, AtomicOperation> atomicOperations) {
+		int lockGroup = registry.getNumberOfLockGroups();
+		for (PlusCalVariableDeclaration declaration : modularPlusCalBlock.getVariables()) {
+			UID varUID = declaration.getUID();
+			boolean found = false;
+			for (Map.Entry<UID, AtomicOperation> entry : atomicOperations.entrySet()) {
+				AtomicOperation operation = entry.getValue();
+				if (!operation.getVariableUID().equals(varUID)) {
+					continue;
+				}
+				found = true;
+				registry.addLabelToLockGroup(entry.getKey(), lockGroup);
+				registry.setAtomicOperation(entry.getKey(), operation);
+				if (operation.getKind() == AtomicOperation.Kind.LOAD) {
+					registry.addVariableReadToLockGroup(varUID, lockGroup);
+				} else {
+					registry.addVariableWriteToLockGroup(varUID, lockGroup);
+				}
+			}
+			if (found) {
+				registry.addAtomicGlobalVariable(varUID);
+				lockGroup++;
+			}
+		}
+	}
+
 	public static void perform(DefinitionRegistry registry, ModularPlusCalBlock modularPlusCalBlock) {
+		perform(registry, modularPlusCalBlock, false);
+	}
+
+	public static void perform(DefinitionRegistry registry, ModularPlusCalBlock modularPlusCalBlock,
+	                           boolean variableLocks) {
+		perform(registry, Collections.emptyMap(), modularPlusCalBlock, variableLocks, false);
+	}
+
+	// When +sharedMemory+ is set, i.e. when processes are threads sharing the global
+	// variables, the global variables of type Int or Bool which every label accesses through
+	// a single atomic operation are found (see findAtomicOperations), and left out of the lock
+	// groups computed for the other variables. Labels that can read from snapshots instead of
+	// taking locks are found as well (see findSnapshotReaders).
+	public static void perform(DefinitionRegistry registry, Map<UID, Type> typeMap,
+	                           ModularPlusCalBlock modularPlusCalBlock, boolean variableLocks,
+	                           boolean sharedMemory) {
 		if (modularPlusCalBlock.getProcesses() instanceof PlusCalMultiProcess) {
 			Map<UID, Set<UID>> globalVarReadsToLabel = new HashMap<>();
 			Map<UID, Set<UID>> globalVarWritesToLabel = new HashMap<>();
@@ -57,40 +324,73 @@ public class AtomicityInferencePass {
 							new UID(), captureLabelRead, captureLabelWrite, foundLabels));
 				}
 			}
-			UnionFind<UID> unionFind = new UnionFind<>();
-			addToUnionFind(unionFind, globalVarReadsToLabel);
-			addToUnionFind(unionFind, globalVarWritesToLabel);
-			Map<UID, Integer> seenRoots = new HashMap<>();
-			for (UID labelUID : foundLabels) {
-				if (unionFind.getRank(labelUID) > 0) {
-					UID rootUID = unionFind.find(labelUID);
-					if (!seenRoots.containsKey(rootUID)) {
-						seenRoots.put(rootUID, seenRoots.size());
-					}
-					registry.addLabelToLockGroup(labelUID, seenRoots.get(rootUID));
-				}
-			}
-			for (UID varUID : registry.globalVariables()) {
-				if (unionFind.getRank(varUID) > 0) {
-					registry.addProtectedGlobalVariable(varUID);
-					int lockGroup = seenRoots.get(unionFind.find(varUID));
-					boolean isRead = globalVarReadsToLabel.getOrDefault(varUID, Collections.emptySet())
-							.stream()
-							.map(registry::getLockGroup)
-							.anyMatch(i -> i.equals(lockGroup));
-					boolean isWritten = globalVarWritesToLabel.getOrDefault(varUID, Collections.emptySet())
-							.stream()
-							.map(registry::getLockGroup)
-							.anyMatch(i -> i.equals(lockGroup));
-					if (!isRead && !isWritten) {
-						throw new InternalCompilerError();
-					}
-					if (isRead) {
-						registry.addVariableReadToLockGroup(varUID, lockGroup);
-					}
-					if (isWritten) {
-						registry.addVariableWriteToLockGroup(varUID, lockGroup);
-					}
+			Map<UID, PlusCalLabeledStatements> labels = new HashMap<>();
+			PlusCalStatementLabelCollectionVisitor labelCollector = new PlusCalStatementLabelCollectionVisitor(labels);
+			for (PlusCalProcedure p : modularPlusCalBlock.getProcedures()) {
+				p.getBody().forEach(s -> s.accept(labelCollector));
+			}
+			for (PlusCalProcess p : ((PlusCalMultiProcess) modularPlusCalBlock.getProcesses()).getProcesses()) {
+				p.getBody().forEach(s -> s.accept(labelCollector));
+			}
+			Map<UID, AtomicOperation> atomicOperations = Collections.emptyMap();
+			if (sharedMemory) {
+				atomicOperations = findAtomicOperations(
+						registry, typeMap, modularPlusCalBlock, labels, globalVarReadsToLabel, globalVarWritesToLabel);
+				Set<UID> atomicVariableUIDs = new HashSet<>();
+				for (AtomicOperation operation : atomicOperations.values()) {
+					atomicVariableUIDs.add(operation.getVariableUID());
+				}
+				globalVarReadsToLabel.keySet().removeAll(atomicVariableUIDs);
+				globalVarWritesToLabel.keySet().removeAll(atomicVariableUIDs);
+			}
+			if (variableLocks) {
+				assignVariableLocks(
+						registry, modularPlusCalBlock, globalVarReadsToLabel, globalVarWritesToLabel, foundLabels);
+			} else {
+				assignLockGroups(registry, globalVarReadsToLabel, globalVarWritesToLabel, foundLabels);
+				if (sharedMemory) {
+					findSnapshotReaders(registry, labels, globalVarReadsToLabel, globalVarWritesToLabel);
+				}
+			}
+			assignAtomicLockGroups(registry, modularPlusCalBlock, atomicOperations);
+		}
+	}
+
+	private static void assignLockGroups(DefinitionRegistry registry, Map<UID, Set<UID>> globalVarReadsToLabel,
+	                                     Map<UID, Set<UID>> globalVarWritesToLabel, Set<UID> foundLabels) {
+		UnionFind<UID> unionFind = new UnionFind<>();
+		addToUnionFind(unionFind, globalVarReadsToLabel);
+		addToUnionFind(unionFind, globalVarWritesToLabel);
+		Map<UID, Integer> seenRoots = new HashMap<>();
+		for (UID labelUID : foundLabels) {
+			if (unionFind.getRank(labelUID) > 0) {
+				UID rootUID = unionFind.find(labelUID);
+				if (!seenRoots.containsKey(rootUID)) {
+					seenRoots.put(rootUID, seenRoots.size());
+				}
+				registry.addLabelToLockGroup(labelUID, seenRoots.get(rootUID));
+			}
+		}
+		for (UID varUID : registry.globalVariables()) {
+			if (unionFind.getRank(varUID) > 0) {
+				registry.addProtectedGlobalVariable(varUID);
+				int lockGroup = seenRoots.get(unionFind.find(varUID));
+				boolean isRead = globalVarReadsToLabel.getOrDefault(varUID, Collections.emptySet())
+						.stream()
+						.map(registry::getLockGroup)
+						.anyMatch(i -> i.equals(lockGroup));
+				boolean isWritten = globalVarWritesToLabel.getOrDefault(varUID, Collections.emptySet())
+						.stream()
+						.map(registry::getLockGroup)
+						.anyMatch(i -> i.equals(lockGroup));
+				if (!isRead && !isWritten) {
+					throw new InternalCompilerError();
+				}
+				if (isRead) {
+					registry.addVariableReadToLockGroup(varUID, lockGroup);
+				}
+				if (isWritten) {
+					registry.addVariableWriteToLockGroup(varUID, lockGroup);
 				}
 			}
 		}
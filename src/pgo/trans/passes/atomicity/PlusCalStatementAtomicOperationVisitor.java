@@ -0,0 +1,168 @@
+package pgo.trans.passes.atomicity;
+
+import pgo.Unreachable;
+import pgo.model.mpcal.ModularPlusCalYield;
+import pgo.model.pcal.*;
+import pgo.model.tla.TLAExpression;
+import pgo.model.tla.TLAGeneralIdentifier;
+import pgo.scope.UID;
+import pgo.trans.intermediate.DefinitionRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Gathers what AtomicityInferencePass needs to know about how some statements access the
+// global variable +varUID+ to decide whether they can do so atomically: whether the
+// variable is accessed at all, which assignments write to it, and whether the statements
+// contain a loop, or may abort, i.e. contain an await or an either. Nested labeled
+// statements are skipped, since they are critical sections of their own. +varUID+ may be
+// null when only loops and aborts are of interest.
+public class PlusCalStatementAtomicOperationVisitor extends PlusCalStatementVisitor<Void, RuntimeException> {
+	private DefinitionRegistry registry;
+	private UID varUID;
+	private TLAExpressionValueAtomicityInferenceVisitor visitor;
+	private boolean accessed = false;
+	private boolean containsLoop = false;
+	private boolean mayAbort = false;
+	private List<PlusCalAssignment> writes = new ArrayList<>();
+
+	public PlusCalStatementAtomicOperationVisitor(DefinitionRegistry registry, UID varUID) {
+		this.registry = registry;
+		this.varUID = varUID;
+		this.visitor = new TLAExpressionValueAtomicityInferenceVisitor(this::track);
+	}
+
+	private void track(TLAExpression expression) {
+		if (expression instanceof TLAGeneralIdentifier && registry.followReference(expression.getUID()).equals(varUID)) {
+			accessed = true;
+		}
+	}
+
+	public void trackExpression(TLAExpression expression) {
+		expression.accept(visitor);
+	}
+
+	public boolean isAccessed() {
+		return accessed;
+	}
+
+	public boolean containsLoop() {
+		return containsLoop;
+	}
+
+	public boolean mayAbort() {
+		return mayAbort;
+	}
+
+	public List<PlusCalAssignment> getWrites() {
+		return writes;
+	}
+
+	@Override
+	public Void visit(PlusCalLabeledStatements plusCalLabeledStatements) throws RuntimeException {
+		// nothing to do
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalWhile plusCalWhile) throws RuntimeException {
+		containsLoop = true;
+		trackExpression(plusCalWhile.getCondition());
+		plusCalWhile.getBody().forEach(s -> s.accept(this));
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalIf plusCalIf) throws RuntimeException {
+		trackExpression(plusCalIf.getCondition());
+		plusCalIf.getYes().forEach(s -> s.accept(this));
+		plusCalIf.getNo().forEach(s -> s.accept(this));
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalEither plusCalEither) throws RuntimeException {
+		mayAbort = true;
+		plusCalEither.getCases().forEach(c -> c.forEach(s -> s.accept(this)));
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAssignment plusCalAssignment) throws RuntimeException {
+		for (PlusCalAssignmentPair pair : plusCalAssignment.getPairs()) {
+			pair.getLhs().accept(new TLAExpressionLHSAtomicityInferenceVisitor(visitor, expression -> {
+				if (expression instanceof TLAGeneralIdentifier &&
+						registry.followReference(expression.getUID()).equals(varUID)) {
+					track(expression);
+					if (writes.isEmpty() || writes.get(writes.size() - 1) != plusCalAssignment) {
+						writes.add(plusCalAssignment);
+					}
+				}
+			}));
+			trackExpression(pair.getRhs());
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalReturn plusCalReturn) throws RuntimeException {
+		// nothing to do
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalSkip plusCalSkip) throws RuntimeException {
+		// nothing to do
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalCall plusCalCall) throws RuntimeException {
+		plusCalCall.getArguments().forEach(this::trackExpression);
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalMacroCall macroCall) throws RuntimeException {
+		throw new Unreachable();
+	}
+
+	@Override
+	public Void visit(PlusCalWith plusCalWith) throws RuntimeException {
+		for (PlusCalVariableDeclaration decl : plusCalWith.getVariables()) {
+			trackExpression(decl.getValue());
+		}
+		plusCalWith.getBody().forEach(s -> s.accept(this));
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalPrint plusCalPrint) throws RuntimeException {
+		trackExpression(plusCalPrint.getValue());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAssert plusCalAssert) throws RuntimeException {
+		trackExpression(plusCalAssert.getCondition());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAwait plusCalAwait) throws RuntimeException {
+		mayAbort = true;
+		trackExpression(plusCalAwait.getCondition());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalGoto plusCalGoto) throws RuntimeException {
+		// nothing to do
+		return null;
+	}
+
+	@Override
+	public Void visit(ModularPlusCalYield modularPlusCalYield) throws RuntimeException {
+		throw new Unreachable();
+	}
+}
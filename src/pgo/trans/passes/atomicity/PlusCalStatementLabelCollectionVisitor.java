@@ -0,0 +1,108 @@
+package pgo.trans.passes.atomicity;
+
+import pgo.Unreachable;
+import pgo.model.mpcal.ModularPlusCalYield;
+import pgo.model.pcal.*;
+import pgo.scope.UID;
+
+import java.util.List;
+import java.util.Map;
+
+// Collects the labeled statements, by the UID of their label
+public class PlusCalStatementLabelCollectionVisitor extends PlusCalStatementVisitor<Void, RuntimeException> {
+	private Map<UID, PlusCalLabeledStatements> labels;
+
+	public PlusCalStatementLabelCollectionVisitor(Map<UID, PlusCalLabeledStatements> labels) {
+		this.labels = labels;
+	}
+
+	private void visitAll(List<PlusCalStatement> statements) {
+		for (PlusCalStatement statement : statements) {
+			statement.accept(this);
+		}
+	}
+
+	@Override
+	public Void visit(PlusCalLabeledStatements plusCalLabeledStatements) throws RuntimeException {
+		labels.put(plusCalLabeledStatements.getLabel().getUID(), plusCalLabeledStatements);
+		visitAll(plusCalLabeledStatements.getStatements());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalWhile plusCalWhile) throws RuntimeException {
+		visitAll(plusCalWhile.getBody());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalIf plusCalIf) throws RuntimeException {
+		visitAll(plusCalIf.getYes());
+		visitAll(plusCalIf.getNo());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalEither plusCalEither) throws RuntimeException {
+		for (List<PlusCalStatement> eitherCase : plusCalEither.getCases()) {
+			visitAll(eitherCase);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAssignment plusCalAssignment) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalReturn plusCalReturn) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalSkip plusCalSkip) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalCall plusCalCall) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalMacroCall macroCall) throws RuntimeException {
+		throw new Unreachable();
+	}
+
+	@Override
+	public Void visit(PlusCalWith plusCalWith) throws RuntimeException {
+		visitAll(plusCalWith.getBody());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalPrint plusCalPrint) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAssert plusCalAssert) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAwait plusCalAwait) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalGoto plusCalGoto) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(ModularPlusCalYield modularPlusCalYield) throws RuntimeException {
+		return null;
+	}
+}
@@ -27,10 +27,13 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
     private Map<UID, Type> typeMap;
     private LocalVariableStrategy localStrategy;
     private UID archetype;
+    private String archetypeName;
     private GoVariableName err;
+    private GoVariableName backoff;
     private GoVariableName acquiredResources;
     private int currentLockGroup;
     private GoLabelName currentLabel;
+    private UID currentLabelUID;
     private boolean functionMaps;
 
     private static final String RELEASE = "ReleaseResources";
@@ -43,6 +46,7 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
         this.localStrategy = localStrategy;
         this.currentLockGroup = -1;
         this.currentLabel = null;
+        this.currentLabelUID = null;
         this.functionMaps = false;
         this.archetype = archetype;
         this.acquiredResources = null;
@@ -55,8 +59,18 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
 
     @Override
     public void processPrelude(GoBlockBuilder builder, PlusCalProcess ignored, String archetypeName, GoVariableName self, GoType selfType) {
+        this.archetypeName = archetypeName;
         this.err = builder.varDecl("err", GoBuiltins.Error);
 
+        // aborted steps are retried after waiting for the backoff (see shouldRetry)
+        this.backoff = builder.varDecl(
+                "backoff",
+                new GoCall(
+                        distsys("NewBackoff"),
+                        Arrays.asList(new GoVariableName("backoffMin"), new GoVariableName("backoffMax"))
+                )
+        );
+
         if (!registry.getSignature(archetype).isPresent()) {
             throw new InternalCompilerError();
         }
@@ -137,6 +151,12 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
         // create a Go label for this action. If we need to retry, we need to
         // come back to this point
         currentLabel = labelName;
+        currentLabelUID = labelUID;
+
+        // record per-label statistics (commits, aborts and latency) in the runtime
+        builder.addStatement(new GoCall(
+                new GoSelectorExpression(backoff, "Step"),
+                Collections.singletonList(new GoStringLiteral(archetypeName + "." + labelName.getName()))));
 
         localStrategy.actionPrelude(builder, labelUID);
 
@@ -147,12 +167,16 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
     @Override
     public void abortCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
         terminateCriticalSection(builder, lockGroup, ABORT, false);
+        localStrategy.actionAbort(builder, labelUID);
     }
 
     @Override
     public void endCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
         terminateCriticalSection(builder, lockGroup, RELEASE, false);
         localStrategy.actionPostlude(builder, labelUID);
+
+        // the step committed: the next abort waits for the minimum backoff again
+        builder.addStatement(new GoCall(new GoSelectorExpression(backoff, "Reset"), Collections.emptyList()));
     }
 
     @Override
@@ -258,7 +282,7 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
 
     private void shouldRetry(GoBlockBuilder builder, boolean abort) {
         Consumer<GoBlockBuilder> checkRetry = b -> {
-            GoExpression check = new GoCall(new GoVariableName("shouldRetry"), Collections.singletonList(err));
+            GoExpression check = new GoCall(new GoVariableName("shouldRetry"), Arrays.asList(err, backoff));
             try (GoIfBuilder ifBuilder = b.ifStmt(check)) {
                 try (GoBlockBuilder yes = ifBuilder.whenTrue()) {
                     // log whenever an action is aborted
@@ -268,6 +292,7 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
                     // );
                     // yes.addStatement(log);
 
+                    localStrategy.actionAbort(yes, currentLabelUID);
                     yes.goTo(currentLabel);
                 }
 
@@ -328,6 +353,14 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
                 .map(e -> this.getResource(builder, e))
                 .collect(Collectors.toList());
 
+        // when committing, release every resource with a single call, so that
+        // resources that release asynchronously (e.g., mailboxes of different
+        // processes) are released concurrently
+        if (method.equals(RELEASE) && !isError && !functionMappedResourceNames.isEmpty()) {
+            releaseAll(builder, varMappedExpressions, functionMappedResourceNames);
+            return;
+        }
+
         if (varMapped.size() > 0) {
             GoExpression release = new GoCall(distsys(method), varMappedExpressions);
 
@@ -367,6 +400,38 @@ public class ArchetypeResourcesGlobalVariableStrategy extends GlobalVariableStra
         }
     }
 
+    // resources := []distsys.ArchetypeResource{...{varMapped}}
+    // for r, _ := range acquiredResources["{name}"] {
+    //     resources = append(resources, {name}.Get(r))
+    // }
+    // err = distsys.ReleaseResources(resources...)
+    private void releaseAll(GoBlockBuilder builder, List<GoExpression> varMapped, Set<String> functionMappedResourceNames) {
+        GoVariableName resources = builder.varDecl(
+                "resources",
+                new GoSliceLiteral(new GoTypeName("distsys.ArchetypeResource"), varMapped)
+        );
+
+        for (String resourceName : functionMappedResourceNames) {
+            GoExpression acquired = new GoIndexExpression(acquiredResources, new GoStringLiteral(resourceName));
+            GoForRangeBuilder rangeBuilder = builder.forRange(acquired);
+            GoVariableName r = rangeBuilder.initVariables(Arrays.asList("r", "_")).get(0);
+            try (GoBlockBuilder rangeBody = rangeBuilder.getBlockBuilder()) {
+                GoExpression resourceGet = new GoCall(
+                        new GoSelectorExpression(new GoVariableName(resourceName), "Get"),
+                        Collections.singletonList(r)
+                );
+
+                rangeBody.assign(
+                        resources,
+                        new GoCall(new GoVariableName("append"), Arrays.asList(resources, resourceGet))
+                );
+            }
+        }
+
+        builder.assign(err, new GoCall(distsys(RELEASE), Collections.singletonList(resources), true));
+        fatalErrorCheck(builder);
+    }
+
     // Ensures that a function-mapped resource has been acquired before use:
     //
     // if ~(arg \in acquiredResources) {
@@ -2,6 +2,10 @@ package pgo.trans.passes.codegen.go;
 
 import pgo.model.golang.*;
 import pgo.model.golang.builder.GoBlockBuilder;
+import pgo.model.golang.type.GoSequenceType;
+import pgo.model.golang.type.GoStructType;
+import pgo.model.golang.type.GoType;
+import pgo.model.golang.type.GoTypeName;
 import pgo.model.tla.TLAExpression;
 import pgo.model.type.Type;
 import pgo.scope.UID;
@@ -33,6 +37,36 @@ public class CodeGenUtil {
 						.collect(Collectors.toList()));
 	}
 
+	// Whether values of +type+ never share mutable state, so that copies of them can be
+	// handed out freely. Persistent sequences are immutable, but may hold elements that
+	// are not, such as slices and maps.
+	public static boolean isValueType(GoType type) {
+		if (type instanceof GoTypeName) {
+			GoTypeName name = (GoTypeName) type;
+			return name.isBuiltin() && !name.equals(GoBuiltins.Error);
+		} else if (type instanceof GoSequenceType) {
+			return isValueType(((GoSequenceType) type).getElementType());
+		} else if (type instanceof GoStructType) {
+			return ((GoStructType) type).getFields().stream().allMatch(f -> isValueType(f.getType()));
+		}
+		return false;
+	}
+
+	// seq.Get(index).(elementType); elements of persistent sequences are stored as interface{}
+	public static GoExpression sequenceElement(GoExpression sequence, GoExpression index, GoType elementType) {
+		return castSequenceElement(
+				new GoCall(new GoSelectorExpression(sequence, "Get"), Collections.singletonList(index)),
+				elementType);
+	}
+
+	// element.(elementType), for an element taken out of a persistent sequence
+	public static GoExpression castSequenceElement(GoExpression element, GoType elementType) {
+		if (elementType.equals(GoBuiltins.Interface)) {
+			return element;
+		}
+		return new GoTypeCast(new GoTypeName(elementType.toString()), element);
+	}
+
 	static void generateArgumentParsing(GoBlockBuilder builder, GoExpression expression, GoVariableName processName,
 										GoVariableName processArgument) {
 		builder.addImport("pgo/distsys");
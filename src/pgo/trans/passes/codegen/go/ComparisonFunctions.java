@@ -0,0 +1,190 @@
+package pgo.trans.passes.codegen.go;
+
+import pgo.model.golang.*;
+import pgo.model.golang.builder.GoASTBuilder;
+import pgo.model.golang.builder.GoBlockBuilder;
+import pgo.model.golang.builder.GoForStatementClauseBuilder;
+import pgo.model.golang.builder.GoFunctionDeclarationBuilder;
+import pgo.model.golang.type.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Package-level functions and types used to compare, sort and search values of composite
+// Go types. Each of them is generated once per distinct type in a module, and every use
+// site calls it, rather than expanding the comparison inline.
+public class ComparisonFunctions {
+	private ComparisonFunctions() {}
+
+	// func pgoLessThan(lhs T, rhs T) bool
+	public static GoVariableName lessThan(GoASTBuilder builder, GoType type) {
+		return builder.defineHelper(Arrays.asList("lessThan", type), module -> {
+			GoFunctionDeclarationBuilder fn = module.defineFunction("pgoLessThan");
+			GoVariableName lhs = fn.addParameter("lhs", type);
+			GoVariableName rhs = fn.addParameter("rhs", type);
+			fn.addReturn(GoBuiltins.Bool);
+			try (GoBlockBuilder body = fn.getBlockBuilder()) {
+				body.addStatement(new GoReturn(Collections.singletonList(
+						type.accept(LessThanCodeGenVisitor.inline(body, lhs, rhs)))));
+			}
+			return fn.getName();
+		});
+	}
+
+	// func pgoEqual(lhs T, rhs T) bool, for struct and slice types
+	public static GoVariableName equal(GoASTBuilder builder, GoType type) {
+		return builder.defineHelper(Arrays.asList("equal", type), module -> {
+			GoFunctionDeclarationBuilder fn = module.defineFunction("pgoEqual");
+			GoVariableName lhs = fn.addParameter("lhs", type);
+			GoVariableName rhs = fn.addParameter("rhs", type);
+			fn.addReturn(GoBuiltins.Bool);
+			try (GoBlockBuilder body = fn.getBlockBuilder()) {
+				if (type instanceof GoStructType) {
+					generateStructEqual(body, ((GoStructType) type).getFields(), lhs, rhs);
+				} else {
+					generateSliceEqual(body, ((GoSliceType) type).getElementType(), lhs, rhs);
+				}
+			}
+			return fn.getName();
+		});
+	}
+
+	private static void generateStructEqual(GoBlockBuilder body, List<GoStructTypeField> fields,
+	                                        GoExpression lhs, GoExpression rhs) {
+		GoExpression eq = GoBuiltins.True;
+		for (int i = fields.size() - 1; i >= 0; i--) {
+			GoStructTypeField field = fields.get(i);
+			GoExpression fieldEq = field.getType().accept(new EqCodeGenVisitor(
+					body,
+					new GoSelectorExpression(lhs, field.getName()),
+					new GoSelectorExpression(rhs, field.getName()),
+					false));
+			eq = i == fields.size() - 1 ? fieldEq : new GoBinop(GoBinop.Operation.AND, fieldEq, eq);
+		}
+		body.addStatement(new GoReturn(Collections.singletonList(eq)));
+	}
+
+	// if len(lhs) != len(rhs) {
+	//     return false
+	// }
+	// for i := 0; i < len(lhs); i++ {
+	//     if !Eq(lhs[i], rhs[i]) {
+	//         return false
+	//     }
+	// }
+	// return true
+	private static void generateSliceEqual(GoBlockBuilder body, GoType elementType,
+	                                       GoExpression lhs, GoExpression rhs) {
+		GoExpression lhsLen = new GoCall(new GoVariableName("len"), Collections.singletonList(lhs));
+		GoExpression rhsLen = new GoCall(new GoVariableName("len"), Collections.singletonList(rhs));
+		GoReturn returnFalse = new GoReturn(Collections.singletonList(GoBuiltins.False));
+		try (GoIfBuilder lengthNEQ = body.ifStmt(new GoBinop(GoBinop.Operation.NEQ, lhsLen, rhsLen))) {
+			try (GoBlockBuilder yes = lengthNEQ.whenTrue()) {
+				yes.addStatement(returnFalse);
+			}
+		}
+		GoForStatementClauseBuilder loopBuilder = body.forLoopWithClauses();
+		GoVariableName i = loopBuilder.initVariable("i", new GoIntLiteral(0));
+		loopBuilder.setCondition(new GoBinop(GoBinop.Operation.LT, i, lhsLen));
+		loopBuilder.setInc(new GoIncDec(true, i));
+		try (GoBlockBuilder loopBody = loopBuilder.getBlockBuilder()) {
+			try (GoIfBuilder different = loopBody.ifStmt(elementType.accept(new EqCodeGenVisitor(
+					loopBody, new GoIndexExpression(lhs, i), new GoIndexExpression(rhs, i), true)))) {
+				try (GoBlockBuilder yes = different.whenTrue()) {
+					yes.addStatement(returnFalse);
+				}
+			}
+		}
+		body.addStatement(new GoReturn(Collections.singletonList(GoBuiltins.True)));
+	}
+
+	// type pgoSortable []T, implementing sort.Interface
+	public static GoTypeName sortable(GoASTBuilder builder, GoType elementType) {
+		return builder.defineHelper(Arrays.asList("sortable", elementType), module -> {
+			GoTypeName sortable = module.defineType("pgoSortable", new GoSliceType(elementType));
+
+			GoFunctionDeclarationBuilder len = module.defineMethod("Len");
+			GoVariableName s = len.setReceiver("s", sortable);
+			len.addReturn(GoBuiltins.Int);
+			try (GoBlockBuilder body = len.getBlockBuilder()) {
+				body.addStatement(new GoReturn(Collections.singletonList(
+						new GoCall(new GoVariableName("len"), Collections.singletonList(s)))));
+			}
+
+			GoFunctionDeclarationBuilder less = module.defineMethod("Less");
+			s = less.setReceiver("s", sortable);
+			GoVariableName i = less.addParameter("i", GoBuiltins.Int);
+			GoVariableName j = less.addParameter("j", GoBuiltins.Int);
+			less.addReturn(GoBuiltins.Bool);
+			try (GoBlockBuilder body = less.getBlockBuilder()) {
+				body.addStatement(new GoReturn(Collections.singletonList(elementType.accept(
+						new LessThanCodeGenVisitor(body, new GoIndexExpression(s, i), new GoIndexExpression(s, j))))));
+			}
+
+			GoFunctionDeclarationBuilder swap = module.defineMethod("Swap");
+			s = swap.setReceiver("s", sortable);
+			i = swap.addParameter("i", GoBuiltins.Int);
+			j = swap.addParameter("j", GoBuiltins.Int);
+			try (GoBlockBuilder body = swap.getBlockBuilder()) {
+				body.assign(
+						Arrays.asList(new GoIndexExpression(s, i), new GoIndexExpression(s, j)),
+						Arrays.asList(new GoIndexExpression(s, j), new GoIndexExpression(s, i)));
+			}
+
+			return sortable;
+		});
+	}
+
+	// Binary search over a sorted []T, returning the smallest index whose key is not less
+	// than +key+ (the same result as sort.Search). If +keyField+ is not null, elements are
+	// compared by that field.
+	//
+	// func pgoSearch(s []T, key K) int {
+	//     low := 0
+	//     high := len(s)
+	//     for low < high {
+	//         middle := (low + high) / 2
+	//         if LessThan(s[middle].keyField, key) {
+	//             low = middle + 1
+	//         } else {
+	//             high = middle
+	//         }
+	//     }
+	//     return low
+	// }
+	public static GoVariableName search(GoASTBuilder builder, GoType elementType, GoType keyType, String keyField) {
+		return builder.defineHelper(Arrays.asList("search", elementType, keyField), module -> {
+			GoFunctionDeclarationBuilder fn = module.defineFunction("pgoSearch");
+			GoVariableName s = fn.addParameter("s", new GoSliceType(elementType));
+			GoVariableName key = fn.addParameter("key", keyType);
+			fn.addReturn(GoBuiltins.Int);
+			try (GoBlockBuilder body = fn.getBlockBuilder()) {
+				GoVariableName low = body.varDecl("low", new GoIntLiteral(0));
+				GoVariableName high = body.varDecl(
+						"high", new GoCall(new GoVariableName("len"), Collections.singletonList(s)));
+				try (GoBlockBuilder loopBody = body.forLoop(new GoBinop(GoBinop.Operation.LT, low, high))) {
+					GoVariableName middle = loopBody.varDecl("middle", new GoBinop(
+							GoBinop.Operation.DIVIDE,
+							new GoBinop(GoBinop.Operation.PLUS, low, high),
+							new GoIntLiteral(2)));
+					GoExpression element = new GoIndexExpression(s, middle);
+					if (keyField != null) {
+						element = new GoSelectorExpression(element, keyField);
+					}
+					try (GoIfBuilder lessThan = loopBody.ifStmt(
+							keyType.accept(new LessThanCodeGenVisitor(loopBody, element, key)))) {
+						try (GoBlockBuilder yes = lessThan.whenTrue()) {
+							yes.assign(low, new GoBinop(GoBinop.Operation.PLUS, middle, new GoIntLiteral(1)));
+						}
+						try (GoBlockBuilder no = lessThan.whenFalse()) {
+							no.assign(high, middle);
+						}
+					}
+				}
+				body.addStatement(new GoReturn(Collections.singletonList(low)));
+			}
+			return fn.getName();
+		});
+	}
+}
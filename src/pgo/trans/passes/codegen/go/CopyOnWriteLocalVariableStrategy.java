@@ -0,0 +1,142 @@
+package pgo.trans.passes.codegen.go;
+
+import pgo.model.golang.GoExpression;
+import pgo.model.golang.GoLabel;
+import pgo.model.golang.GoStatement;
+import pgo.model.golang.GoVariableName;
+import pgo.model.golang.builder.GoBlockBuilder;
+import pgo.model.golang.type.GoType;
+import pgo.model.mpcal.ModularPlusCalArchetype;
+import pgo.model.type.Type;
+import pgo.scope.UID;
+import pgo.trans.intermediate.DefinitionRegistry;
+import pgo.trans.passes.codegen.go.GlobalVariableStrategy.GlobalVariableWrite;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Alternative to SnapshottingLocalVariableStrategy that avoids deep-copying every local
+// at the beginning of every action.
+//
+// Actions read and write locals directly. The prelude saves the previous value of each
+// local used in the action, which for slices and maps only copies the header. Since
+// reassigning a local never touches the memory referenced by the saved value, the only
+// operations that need a deep copy are in-place modifications (e.g., f[x] := v), which
+// copy the local right before the first such modification. If the action aborts, the
+// saved values are assigned back before jumping back to the beginning of the action.
+//
+// A copied local no longer shares memory with its saved value, so later modifications
+// in the same block reuse the copy, unless the local was reassigned or a label was
+// emitted in between: an either statement jumps to the label of its next case after
+// assigning back the values locals had when it started, which they may share memory with.
+public class CopyOnWriteLocalVariableStrategy extends LocalVariableStrategy {
+    private DefinitionRegistry registry;
+    private Map<UID, Type> typeMap;
+    private Map<UID, GoVariableName> localPrevious;
+    private Map<UID, Detachment> detached;
+
+    // where a local was copied in the current action: the block, and the number of
+    // statements in the block right after the copy
+    private static class Detachment {
+        private final GoBlockBuilder block;
+        private final int position;
+
+        Detachment(GoBlockBuilder block) {
+            this.block = block;
+            this.position = block.getBlock().getStatements().size();
+        }
+
+        boolean isValidIn(GoBlockBuilder builder) {
+            if (builder != block) {
+                return false;
+            }
+            List<GoStatement> statements = block.getBlock().getStatements();
+            return statements.subList(position, statements.size()).stream()
+                    .noneMatch(statement -> statement instanceof GoLabel);
+        }
+    }
+
+    public CopyOnWriteLocalVariableStrategy(DefinitionRegistry registry, Map<UID, Type> typeMap) {
+        this.registry = registry;
+        this.typeMap = typeMap;
+        this.localPrevious = new HashMap<>();
+        this.detached = new HashMap<>();
+    }
+
+    public void initArchetype(GoBlockBuilder builder, ModularPlusCalArchetype archetype) {
+        localPrevious.clear();
+        detached.clear();
+        archetype.getVariables().forEach(var -> {
+            GoType localType = typeMap.get(var.getUID()).accept(new TypeConversionVisitor());
+            GoVariableName previous = builder.varDecl(var.getName().getValue() + "Prev", localType);
+            localPrevious.put(var.getUID(), previous);
+
+            // saved values are only read when aborting, which may never happen
+            builder.assign(new GoVariableName("_"), previous);
+        });
+    }
+
+    public void actionPrelude(GoBlockBuilder builder, UID labelUID) {
+        detached.clear();
+
+        // save the previous value of each local variable used in this action
+        registry.getLocalsInLabel(labelUID).forEach(local -> {
+            if (localPrevious.containsKey(local)) {
+                builder.assign(localPrevious.get(local), builder.findUID(local));
+            }
+        });
+    }
+
+    public GoExpression readLocalVariable(GoBlockBuilder builder, UID local) {
+        return builder.findUID(local);
+    }
+
+    public GlobalVariableWrite writeLocalVariable(GoBlockBuilder builder, UID local) {
+        GoVariableName name = builder.findUID(local);
+        // the new value may share memory with the saved value of some local
+        detached.remove(local);
+
+        return new GlobalVariableWrite() {
+            @Override
+            public GoExpression getValueSink(GoBlockBuilder builder) {
+                return name;
+            }
+            @Override
+            public void writeAfter(GoBlockBuilder builder) {
+                // nothing to do
+            }
+        };
+    }
+
+    public void prepareLocalMutation(GoBlockBuilder builder, UID local) {
+        if (!localPrevious.containsKey(local)) {
+            return;
+        }
+        if (detached.containsKey(local) && detached.get(local).isValidIn(builder)) {
+            // already copied
+            return;
+        }
+
+        // the saved value may share memory with the local, so detach the local
+        // from it before modifying it in place
+        GoVariableName goLocal = builder.findUID(local);
+        GoType localType = typeMap.get(local).accept(new TypeConversionVisitor());
+        builder.assign(goLocal, localType.accept(new CopyVisitor(builder, goLocal)));
+        detached.put(local, new Detachment(builder));
+    }
+
+    public void actionAbort(GoBlockBuilder builder, UID labelUID) {
+        // restore the values locals had when the action started
+        registry.getLocalsInLabel(labelUID).forEach(local -> {
+            if (localPrevious.containsKey(local)) {
+                builder.assign(builder.findUID(local), localPrevious.get(local));
+            }
+        });
+    }
+
+    public void actionPostlude(GoBlockBuilder builder, UID labelUID) {
+        // nothing to do: locals were modified directly
+    }
+
+}
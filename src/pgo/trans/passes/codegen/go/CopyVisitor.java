@@ -88,6 +88,33 @@ public class CopyVisitor extends GoTypeVisitor<GoVariableName, RuntimeException>
         return copy;
     }
 
+    @Override
+    public GoVariableName visit(GoSequenceType sequenceType) throws RuntimeException {
+        GoType elementType = sequenceType.getElementType();
+        if (CodeGenUtil.isValueType(elementType)) {
+            // sequences are immutable, and so are their elements
+            return createCopy(source);
+        }
+
+        // elements may be modified in place (e.g., s[i][k] := v), so copy them into a new sequence
+        GoVariableName copy = createCopy(new GoCall(
+                new GoSelectorExpression(new GoVariableName("datatypes"), "NewSeq"), Collections.emptyList()));
+
+        GoForRangeBuilder rangeBuilder = builder.forRange(
+                new GoCall(new GoSelectorExpression(source, "Slice"), Collections.emptyList()));
+        List<GoVariableName> initVars = rangeBuilder.initVariables(Arrays.asList("_", "e"));
+        GoVariableName e = initVars.get(1);
+
+        try (GoBlockBuilder rangeBody = rangeBuilder.getBlockBuilder()) {
+            GoVariableName element = rangeBody.varDecl("element", CodeGenUtil.castSequenceElement(e, elementType));
+            rangeBody.assign(copy, new GoCall(
+                    new GoSelectorExpression(copy, "Append"),
+                    Collections.singletonList(elementType.accept(new CopyVisitor(rangeBody, element)))));
+        }
+
+        return copy;
+    }
+
     @Override
     public GoVariableName visit(GoChanType chanType) throws RuntimeException {
         throw new TODO();
@@ -8,4 +8,13 @@ public interface CriticalSection {
 	void startCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName);
 	void abortCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName);
 	void endCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName);
+
+	// called instead of abortCriticalSection when an await fails in a case of an either
+	// statement which is not the last one; the next case then resumes the critical section
+	void suspendCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName);
+	void resumeCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName);
+
+	// whether a loop with no labels in its body ends and restarts its critical section at the
+	// end of every iteration, rather than running in a single critical section
+	boolean isRestartedEveryIteration();
 }
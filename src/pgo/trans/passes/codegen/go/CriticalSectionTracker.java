@@ -34,6 +34,10 @@ public class CriticalSectionTracker {
 		return currentLabelName;
 	}
 
+	public UID getCurrentLabelUID() {
+		return currentLabelUID;
+	}
+
 	public int getCurrentLockGroup() {
 		return currentLockGroup;
 	}
@@ -63,8 +67,14 @@ public class CriticalSectionTracker {
 
 	public void abort(GoBlockBuilder builder, GoLabelName optionalLabelName) {
 		if (currentLockGroup >= 0) {
-			criticalSection.abortCriticalSection(
-					builder, processUID, currentLockGroup, currentLabelUID, currentLabelName);
+			if (optionalLabelName == null || optionalLabelName.equals(currentLabelName)) {
+				criticalSection.abortCriticalSection(
+						builder, processUID, currentLockGroup, currentLabelUID, currentLabelName);
+			} else {
+				// jumping somewhere other than the label, i.e. to the next case of an either
+				criticalSection.suspendCriticalSection(
+						builder, processUID, currentLockGroup, currentLabelUID, currentLabelName);
+			}
 		}
 		builder.goTo(optionalLabelName == null ? currentLabelName : optionalLabelName);
 		currentLockGroup = -1;
@@ -88,7 +98,7 @@ public class CriticalSectionTracker {
 			// nothing to do
 			return;
 		}
-		criticalSection.startCriticalSection(builder, processUID, currentLockGroup, currentLabelUID, currentLabelName);
+		criticalSection.resumeCriticalSection(builder, processUID, currentLockGroup, currentLabelUID, currentLabelName);
 	}
 
 	public void checkCompatibility(CriticalSectionTracker other) {
@@ -102,13 +112,13 @@ public class CriticalSectionTracker {
 				registry, processUID, criticalSection, currentLockGroup, currentLabelUID, currentLabelName);
 	}
 
-	public Consumer<GoBlockBuilder> actionAtLoopEnd() {
+	public Consumer<GoBlockBuilder> actionAtLoopEnd(boolean loopBodyHasLabel) {
 		// since we're compiling while loops to infinite loops with a conditional break, we have to reacquire
 		// the critical section at loop end
 		int lockGroup = currentLockGroup;
 		UID labelUID = currentLabelUID;
 		GoLabelName labelName = currentLabelName;
-		if (lockGroup < 0) {
+		if (lockGroup < 0 || (!loopBodyHasLabel && !criticalSection.isRestartedEveryIteration())) {
 			return ignored -> {};
 		}
 
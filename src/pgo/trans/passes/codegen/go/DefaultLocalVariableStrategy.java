@@ -3,10 +3,15 @@ package pgo.trans.passes.codegen.go;
 import pgo.model.golang.GoExpression;
 import pgo.model.golang.GoVariableName;
 import pgo.model.golang.builder.GoBlockBuilder;
+import pgo.model.mpcal.ModularPlusCalArchetype;
 import pgo.scope.UID;
 import pgo.trans.passes.codegen.go.GlobalVariableStrategy.GlobalVariableWrite;
 
 public class DefaultLocalVariableStrategy extends LocalVariableStrategy {
+    public void initArchetype(GoBlockBuilder builder, ModularPlusCalArchetype archetype) {
+        // nothing to do
+    }
+
     public void actionPrelude(GoBlockBuilder builder, UID labelUID) {
         // nothing to do
     }
@@ -30,6 +35,14 @@ public class DefaultLocalVariableStrategy extends LocalVariableStrategy {
         };
     }
 
+    public void prepareLocalMutation(GoBlockBuilder builder, UID local) {
+        // nothing to do
+    }
+
+    public void actionAbort(GoBlockBuilder builder, UID labelUID) {
+        // nothing to do
+    }
+
     public void actionPostlude(GoBlockBuilder builder, UID labelUID) {
         // nothing to do
     }
@@ -27,13 +27,51 @@ public class EqCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeExcepti
 		this.invert = invert;
 	}
 
-	private GoExpression deepEqual() {
-		builder.addImport("reflect");
+	// whether values of the given type may contain persistent sequences, which have to be
+	// compared by their elements rather than by their representation
+	private static boolean containsSequence(GoType type) {
+		if (type instanceof GoSequenceType) {
+			return true;
+		} else if (type instanceof GoSliceType) {
+			return containsSequence(((GoSliceType) type).getElementType());
+		} else if (type instanceof GoPtrType) {
+			return containsSequence(((GoPtrType) type).getPointee());
+		} else if (type instanceof GoStructType) {
+			return ((GoStructType) type).getFields().stream().anyMatch(f -> containsSequence(f.getType()));
+		} else if (type instanceof GoMapType) {
+			GoMapType mapType = (GoMapType) type;
+			return containsSequence(mapType.getValueType()) ||
+					mapType.getInferredTypes().values().stream().anyMatch(EqCodeGenVisitor::containsSequence);
+		}
+		return false;
+	}
+
+	private GoExpression deepEqual(GoType type) {
+		GoExpression eq;
+		if (containsSequence(type)) {
+			builder.addImport(GoSequenceType.PACKAGE);
+			eq = new GoCall(
+					new GoSelectorExpression(new GoVariableName("datatypes"), "Equal"),
+					Arrays.asList(lhs, rhs)
+			);
+		} else {
+			builder.addImport("reflect");
+			eq = new GoCall(
+					new GoSelectorExpression(new GoVariableName("reflect"), "DeepEqual"),
+					Arrays.asList(lhs, rhs)
+			);
+		}
+
+		if (invert) {
+			return new GoUnary(GoUnary.Operation.NOT, eq);
+		}
+
+		return eq;
+	}
 
-		GoExpression eq = new GoCall(
-				new GoSelectorExpression(new GoVariableName("reflect"), "DeepEqual"),
-				Arrays.asList(lhs, rhs)
-		);
+	// calls the package-level equality function for the given type (see ComparisonFunctions)
+	private GoExpression callEqual(GoType type) {
+		GoExpression eq = new GoCall(ComparisonFunctions.equal(builder, type), Arrays.asList(lhs, rhs));
 
 		if (invert) {
 			return new GoUnary(GoUnary.Operation.NOT, eq);
@@ -62,7 +100,7 @@ public class EqCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeExcepti
 
 	@Override
 	public GoExpression visit(GoStructType structType) throws RuntimeException {
-		return deepEqual();
+		return callEqual(structType);
 	}
 
 	@Override
@@ -75,7 +113,18 @@ public class EqCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeExcepti
 
 	@Override
 	public GoExpression visit(GoSliceType sliceType) throws RuntimeException {
-		return deepEqual();
+		return callEqual(sliceType);
+	}
+
+	@Override
+	public GoExpression visit(GoSequenceType sequenceType) throws RuntimeException {
+		GoExpression eq = new GoCall(new GoSelectorExpression(lhs, "Equal"), Collections.singletonList(rhs));
+
+		if (invert) {
+			return new GoUnary(GoUnary.Operation.NOT, eq);
+		}
+
+		return eq;
 	}
 
 	@Override
@@ -85,12 +134,12 @@ public class EqCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeExcepti
 
 	@Override
 	public GoExpression visit(GoMapType mapType) throws RuntimeException {
-		return deepEqual();
+		return deepEqual(mapType);
 	}
 
 	@Override
 	public GoExpression visit(GoInterfaceType interfaceType) throws RuntimeException {
-		return deepEqual();
+		return deepEqual(interfaceType);
 	}
 
 }
@@ -14,6 +14,7 @@ import pgo.scope.UID;
 import pgo.trans.intermediate.DefinitionRegistry;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class EtcdGlobalVariableStrategy extends GlobalVariableStrategy {
@@ -84,7 +85,10 @@ public class EtcdGlobalVariableStrategy extends GlobalVariableStrategy {
 										GoBuiltins.String,
 										GoBuiltins.Interface,
 										new HashMap<GoExpression, GoExpression>() {{
-											for (UID varUID : registry.protectedGlobalVariables()) {
+											// in batched mode, variables are initialized by lock group below
+											for (UID varUID : stateOptions.batch
+													? Collections.<UID>emptySet()
+													: registry.protectedGlobalVariables()) {
 												GoVariableName variableName = initBuilder.findUID(varUID);
 												put(new GoStringLiteral(variableName.getName()), variableName);
 											}
@@ -94,6 +98,41 @@ public class EtcdGlobalVariableStrategy extends GlobalVariableStrategy {
 				yes.addPanic(err);
 			}
 		}
+		if (stateOptions.batch) {
+			for (int lockGroup = 0; lockGroup < registry.getNumberOfLockGroups(); lockGroup++) {
+				List<GoVariableName> variableNames = lockGroupVariables(initBuilder, lockGroup);
+				if (variableNames.isEmpty()) {
+					continue;
+				}
+				initBuilder.addStatement(new GoCall(
+						new GoSelectorExpression(globalState, "InitGroup"),
+						Arrays.asList(
+								new GoStringLiteral(Integer.toString(lockGroup)),
+								groupValues(variableNames, v -> v))));
+			}
+		}
+	}
+
+	// In batched mode, the variables of each lock group are stored together, and always read and
+	// written together, so that each critical section makes one request for each. Lock groups do
+	// not share variables when networking is enabled.
+	private List<GoVariableName> lockGroupVariables(GoBlockBuilder builder, int lockGroup) {
+		Set<UID> variables = new HashSet<>(registry.getVariableReadsInLockGroup(lockGroup));
+		variables.addAll(registry.getVariableWritesInLockGroup(lockGroup));
+		return variables.stream()
+				.map(builder::findUID)
+				.sorted(Comparator.comparing(GoVariableName::getName))
+				.collect(Collectors.toList());
+	}
+
+	// map[string]interface{}{"name": value(name), ...}, in the order of the variables given
+	private static GoExpression groupValues(List<GoVariableName> variableNames,
+	                                        Function<GoVariableName, GoExpression> value) {
+		Map<GoExpression, GoExpression> pairs = new LinkedHashMap<>();
+		for (GoVariableName variableName : variableNames) {
+			pairs.put(new GoStringLiteral(variableName.getName()), value.apply(variableName));
+		}
+		return new GoMapLiteral(GoBuiltins.String, GoBuiltins.Interface, pairs);
 	}
 
 	@Override
@@ -132,6 +171,7 @@ public class EtcdGlobalVariableStrategy extends GlobalVariableStrategy {
 
 	@Override
 	public void mainPrelude(GoBlockBuilder builder) {
+		StateServerGlobalVariableStrategy.generateMetricsSetup(builder);
 		StateServerGlobalVariableStrategy.generateProcessSwitch(
 				typeMap, modularPlusCalBlock, builder, findVariable(processNameUID), findVariable(processArgumentUID));
 	}
@@ -145,6 +185,16 @@ public class EtcdGlobalVariableStrategy extends GlobalVariableStrategy {
 		builder.addStatement(new GoCall(
 				new GoSelectorExpression(findVariable(globalStateUID), "Lock"),
 				Arrays.asList(findVariable(processUID), new GoStringLiteral(Integer.toString(lockGroup)))));
+		if (stateOptions.batch) {
+			builder.addStatement(new GoCall(
+					new GoSelectorExpression(globalState, "GetGroup"),
+					Arrays.asList(
+							new GoStringLiteral(Integer.toString(lockGroup)),
+							groupValues(
+									lockGroupVariables(builder, lockGroup),
+									v -> new GoUnary(GoUnary.Operation.ADDR, v)))));
+			return;
+		}
 		for (UID varUID : writeSet) {
 			GoVariableName variableName = builder.findUID(varUID);
 			builder.addStatement(new GoCall(
@@ -173,13 +223,24 @@ public class EtcdGlobalVariableStrategy extends GlobalVariableStrategy {
 	@Override
 	public void endCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
 		GoVariableName globalState = findVariable(globalStateUID);
-		for (UID varUID : registry.getVariableWritesInLockGroup(lockGroup)) {
-			GoVariableName variableName = builder.findUID(varUID);
-			builder.addStatement(new GoCall(
-					new GoSelectorExpression(globalState, "Set"),
-					Arrays.asList(
-							new GoStringLiteral(variableName.getName()),
-							variableName)));
+		Set<UID> writeSet = registry.getVariableWritesInLockGroup(lockGroup);
+		if (stateOptions.batch) {
+			if (!writeSet.isEmpty()) {
+				builder.addStatement(new GoCall(
+						new GoSelectorExpression(globalState, "SetGroup"),
+						Arrays.asList(
+								new GoStringLiteral(Integer.toString(lockGroup)),
+								groupValues(lockGroupVariables(builder, lockGroup), v -> v))));
+			}
+		} else {
+			for (UID varUID : writeSet) {
+				GoVariableName variableName = builder.findUID(varUID);
+				builder.addStatement(new GoCall(
+						new GoSelectorExpression(globalState, "Set"),
+						Arrays.asList(
+								new GoStringLiteral(variableName.getName()),
+								variableName)));
+			}
 		}
 		builder.addStatement(new GoCall(
 				new GoSelectorExpression(findVariable(globalStateUID), "Unlock"),
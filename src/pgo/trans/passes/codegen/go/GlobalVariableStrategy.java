@@ -49,6 +49,21 @@ public abstract class GlobalVariableStrategy implements CriticalSection {
 	@Override
 	public abstract void endCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName);
 
+	@Override
+	public void suspendCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
+		abortCriticalSection(builder, processUID, lockGroup, labelUID, labelName);
+	}
+
+	@Override
+	public void resumeCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
+		startCriticalSection(builder, processUID, lockGroup, labelUID, labelName);
+	}
+
+	@Override
+	public boolean isRestartedEveryIteration() {
+		return true;
+	}
+
 	public GoExpression readArchetypeResource(GoBlockBuilder builder, TLAExpression expression) {
 		throw new Unreachable();
 	}
@@ -57,8 +72,29 @@ public abstract class GlobalVariableStrategy implements CriticalSection {
 		throw new Unreachable();
 	}
 
+	// defines the global variable +uid+ of type +type+, which initGlobalVariable then sets to
+	// its initial value in the init function
+	public GoVariableName defineGlobalVariable(GoModuleBuilder moduleBuilder, UID uid, String nameHint, GoType type) {
+		return moduleBuilder.defineGlobal(uid, nameHint, type);
+	}
+
+	public void initGlobalVariable(GoBlockBuilder initBuilder, UID uid, GoExpression value) {
+		initBuilder.assign(initBuilder.findUID(uid), value);
+	}
+
 	public abstract GoExpression readGlobalVariable(GoBlockBuilder builder, UID uid);
 
+	// adds +delta+ to the global variable +uid+, for the assignments which
+	// AtomicityInferencePass found to be atomic additions
+	public void incrementGlobalVariable(GoBlockBuilder builder, UID uid, GoExpression delta) {
+		throw new Unreachable();
+	}
+
+	// prints +value+, for the print statements of the critical sections
+	public void print(GoBlockBuilder builder, GoExpression value) {
+		builder.print(value);
+	}
+
 	public interface GlobalVariableWrite {
 		GoExpression getValueSink(GoBlockBuilder builder);
 		void writeAfter(GoBlockBuilder builder);
@@ -20,11 +20,28 @@ public class LessThanCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeE
 	private GoBlockBuilder builder;
 	private GoExpression lhs;
 	private GoExpression rhs;
+	// whether composite types are compared in place, rather than by calling the
+	// package-level comparison function for their type (see ComparisonFunctions)
+	private boolean inline;
 
 	public LessThanCodeGenVisitor(GoBlockBuilder builder, GoExpression lhs, GoExpression rhs) {
+		this(builder, lhs, rhs, false);
+	}
+
+	private LessThanCodeGenVisitor(GoBlockBuilder builder, GoExpression lhs, GoExpression rhs, boolean inline) {
 		this.builder = builder;
 		this.lhs = lhs;
 		this.rhs = rhs;
+		this.inline = inline;
+	}
+
+	// used to generate the body of the comparison functions themselves
+	static LessThanCodeGenVisitor inline(GoBlockBuilder builder, GoExpression lhs, GoExpression rhs) {
+		return new LessThanCodeGenVisitor(builder, lhs, rhs, true);
+	}
+
+	private GoExpression callLessThan(GoType type) {
+		return new GoCall(ComparisonFunctions.lessThan(builder, type), Arrays.asList(lhs, rhs));
 	}
 
 	@Override
@@ -73,6 +90,9 @@ public class LessThanCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeE
 
 	@Override
 	public GoExpression visit(GoStructType structType) throws RuntimeException {
+		if (!inline) {
+			return callLessThan(structType);
+		}
 		return constructStructComparison(0, structType.getFields());
 	}
 
@@ -87,6 +107,9 @@ public class LessThanCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeE
 
 	@Override
 	public GoExpression visit(GoSliceType sliceType) throws RuntimeException {
+		if (!inline) {
+			return callLessThan(sliceType);
+		}
 		GoVariableName less = builder.varDecl("less", new GoBinop(
 				GoBinop.Operation.LT,
 				new GoCall(new GoVariableName("len"), Collections.singletonList(lhs)),
@@ -126,6 +149,40 @@ public class LessThanCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeE
 		return less;
 	}
 
+	@Override
+	public GoExpression visit(GoSequenceType sequenceType) throws RuntimeException {
+		if (!inline) {
+			return callLessThan(sequenceType);
+		}
+		// same as slices, reading elements through Get
+		GoExpression lhsLen = new GoCall(new GoSelectorExpression(lhs, "Len"), Collections.emptyList());
+		GoExpression rhsLen = new GoCall(new GoSelectorExpression(rhs, "Len"), Collections.emptyList());
+		GoVariableName less = builder.varDecl("less", new GoBinop(GoBinop.Operation.LT, lhsLen, rhsLen));
+		try(GoIfBuilder lengthEQ = builder.ifStmt(new GoBinop(GoBinop.Operation.EQ, lhsLen, rhsLen))){
+			try(GoBlockBuilder yes = lengthEQ.whenTrue()){
+				GoForStatementClauseBuilder loopBuilder = yes.forLoopWithClauses();
+				GoVariableName i = loopBuilder.initVariable("i", new GoIntLiteral(0));
+				loopBuilder.setCondition(new GoBinop(GoBinop.Operation.LT, i, lhsLen));
+				loopBuilder.setInc(new GoIncDec(true, i));
+				try(GoBlockBuilder loopBody = loopBuilder.getBlockBuilder()) {
+					GoType elementType = sequenceType.getElementType();
+					GoExpression lhsElement = CodeGenUtil.sequenceElement(lhs, i, elementType);
+					GoExpression rhsElement = CodeGenUtil.sequenceElement(rhs, i, elementType);
+					loopBody.assign(
+							less,
+							elementType.accept(new LessThanCodeGenVisitor(loopBody, lhsElement, rhsElement)));
+					try(GoIfBuilder shouldStop = loopBody.ifStmt(
+							elementType.accept(new EqCodeGenVisitor(loopBody, lhsElement, rhsElement, true)))){
+						try(GoBlockBuilder body = shouldStop.whenTrue()){
+							body.addStatement(new GoBreak());
+						}
+					}
+				}
+			}
+		}
+		return less;
+	}
+
 	@Override
 	public GoExpression visit(GoChanType chanType) throws RuntimeException {
 		throw new TODO();
@@ -137,6 +194,9 @@ public class LessThanCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeE
 		if (!mapType.isRecord()) {
 			throw new TODO();
 		}
+		if (!inline) {
+			return callLessThan(mapType);
+		}
 
 		// Go pseudo-code:
 		//
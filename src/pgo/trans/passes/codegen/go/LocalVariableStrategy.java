@@ -2,12 +2,18 @@ package pgo.trans.passes.codegen.go;
 
 import pgo.model.golang.GoExpression;
 import pgo.model.golang.builder.GoBlockBuilder;
+import pgo.model.mpcal.ModularPlusCalArchetype;
 import pgo.scope.UID;
 import pgo.trans.passes.codegen.go.GlobalVariableStrategy.GlobalVariableWrite;
 
 public abstract class LocalVariableStrategy {
+    public abstract void initArchetype(GoBlockBuilder builder, ModularPlusCalArchetype archetype);
     public abstract void actionPrelude(GoBlockBuilder builder, UID labelUID);
     public abstract GoExpression readLocalVariable(GoBlockBuilder builder, UID local);
     public abstract GlobalVariableWrite writeLocalVariable(GoBlockBuilder builder, UID local);
+    // called before a local is modified in place (e.g., f[x] := v) rather than reassigned
+    public abstract void prepareLocalMutation(GoBlockBuilder builder, UID local);
+    // called before control goes back to the beginning of an aborted action
+    public abstract void actionAbort(GoBlockBuilder builder, UID labelUID);
     public abstract void actionPostlude(GoBlockBuilder builder, UID labelUID);
 }
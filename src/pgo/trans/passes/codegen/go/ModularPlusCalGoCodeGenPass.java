@@ -1,12 +1,14 @@
 package pgo.trans.passes.codegen.go;
 
 import pgo.InternalCompilerError;
+import pgo.PGoCodeGenOptions;
 import pgo.PGoOptions;
 import pgo.model.golang.*;
 import pgo.model.golang.builder.GoBlockBuilder;
 import pgo.model.golang.builder.GoFunctionDeclarationBuilder;
 import pgo.model.golang.builder.GoModuleBuilder;
 import pgo.model.golang.type.GoMapType;
+import pgo.model.golang.type.GoSequenceType;
 import pgo.model.golang.type.GoType;
 import pgo.model.golang.type.GoTypeName;
 import pgo.model.mpcal.ModularPlusCalArchetype;
@@ -52,6 +54,26 @@ public class ModularPlusCalGoCodeGenPass {
         }
     }
 
+    // Adds the (sorted) field names of the records read or written by an archetype resource of the
+    // given type to `recordFields`, including records nested in the fields of other records.
+    private static void collectRecordFields(Type type, Set<List<String>> recordFields) {
+        if (type instanceof ArchetypeResourceType) {
+            collectRecordFields(((ArchetypeResourceType) type).getReadType(), recordFields);
+            collectRecordFields(((ArchetypeResourceType) type).getWriteType(), recordFields);
+        } else if (type instanceof ArchetypeResourceCollectionType) {
+            collectRecordFields(((ArchetypeResourceCollectionType) type).getReadType(), recordFields);
+            collectRecordFields(((ArchetypeResourceCollectionType) type).getWriteType(), recordFields);
+        } else if (type instanceof RecordType) {
+            List<String> fields = new ArrayList<>();
+            for (RecordType.Field field : ((RecordType) type).getFields()) {
+                fields.add(field.getName());
+                collectRecordFields(field.getType(), recordFields);
+            }
+            Collections.sort(fields);
+            recordFields.add(fields);
+        }
+    }
+
     private static void generateInit(ModularPlusCalBlock modularPlusCalBlock, GoModuleBuilder module,
                                      DefinitionRegistry registry, Map<UID, Type> typeMap,
                                      LocalVariableStrategy localStrategy, GlobalVariableStrategy globalStrategy) {
@@ -124,9 +146,28 @@ public class ModularPlusCalGoCodeGenPass {
 
                 initBuilder.addStatement(registerRecord);
                 initBuilder.addStatement(registerListOfRecords);
+
+                // define the fields of every record passed through archetype resources, so that the
+                // runtime does not need to send field names along with each record. Record types are
+                // identified by the order they are defined in, which is deterministic
+                Set<List<String>> recordFields = new LinkedHashSet<>();
+                modularPlusCalBlock
+                        .getInstantiatedArchetypes()
+                        .stream()
+                        .map(ModularPlusCalArchetype::getParams)
+                        .flatMap(Collection::stream)
+                        .map(param -> typeMap.get(param.getUID()))
+                        .forEach(type -> collectRecordFields(type, recordFields));
+
+                for (List<String> fields : recordFields) {
+                    initBuilder.addStatement(new GoCall(
+                            new GoSelectorExpression(new GoVariableName("distsys"), "DefineRecordType"),
+                            fields.stream().map(GoStringLiteral::new).collect(Collectors.toList())));
+                }
             }
 
             // sets rand seed for unique random numbers on every execution
+            module.addImport("math/rand");
             GoExpression timeNow = new GoCall(
                     new GoSelectorExpression(new GoVariableName("time"), "Now"),
                     Collections.emptyList()
@@ -148,11 +189,10 @@ public class ModularPlusCalGoCodeGenPass {
     // returned by an archetype resource implementation should cause the
     // running action to abort, or the entire process should terminate.
 
-    // func shouldRetry(err error) bool {
+    // func shouldRetry(err error, backoff *distsys.Backoff) bool {
     // 	switch err.(type) {
     // 	case *distsys.AbortRetryError:
-    //     t := rand.Intn(sleepMax - sleepMin) + sleepMin
-    //     time.Sleep(time.Duration(t) * time.Millisecond)
+    //     backoff.Wait()
     //
     // 		return true
     // 	case *distsys.ResourceInternalError:
@@ -162,13 +202,12 @@ public class ModularPlusCalGoCodeGenPass {
     // 		panic(fmt.Sprintf("Invalid error returned by Archetype Resource: %v", err))
     // 	}
     // }
-    private static void defineShouldRetry(GoModuleBuilder module, GoVariableName sleepMin, GoVariableName sleepMax) {
+    private static void defineShouldRetry(GoModuleBuilder module) {
         module.addImport("fmt");
-        module.addImport("time");
-        module.addImport("math/rand");
 
         GoFunctionDeclarationBuilder builder = module.defineFunction("shouldRetry");
         GoVariableName err = builder.addParameter("err", GoBuiltins.Error);
+        GoVariableName backoff = builder.addParameter("backoff", new GoPtrType(new GoTypeName("distsys.Backoff")));
         builder.addReturn(GoBuiltins.Bool);
 
         GoExpression sprintf = new GoCall(
@@ -184,30 +223,20 @@ public class ModularPlusCalGoCodeGenPass {
         GoType internalError = new GoPtrType(new GoTypeName("distsys.ResourceInternalError"));
 
         try (GoBlockBuilder fnBody = builder.getBlockBuilder()) {
-            GoExpression rand = new GoCall(
-                    new GoSelectorExpression(new GoVariableName("rand"), "Intn"),
-                    Collections.singletonList(new GoBinop(GoBinop.Operation.MINUS, sleepMax, sleepMin))
-            );
-            GoVariableName t = fnBody.varDecl("t", new GoBinop(GoBinop.Operation.PLUS, rand, sleepMin));
-            GoExpression tDuration = new GoCall(
-                    new GoSelectorExpression(new GoVariableName("time"), "Duration"),
-                    Collections.singletonList(t)
-            );
-            GoExpression millisecond = new GoSelectorExpression(new GoVariableName("time"), "Millisecond");
-            GoStatement sleep = new GoExpressionStatement(new GoCall(
-                    new GoSelectorExpression(new GoVariableName("time"), "Sleep"),
-                    Collections.singletonList(new GoBinop(GoBinop.Operation.TIMES, tDuration, millisecond))
+            GoStatement wait = new GoExpressionStatement(new GoCall(
+                    new GoSelectorExpression(backoff, "Wait"),
+                    Collections.emptyList()
             ));
 
-            List<GoStatement> sleepAndReturn = Arrays.asList(
-                    sleep,
+            List<GoStatement> waitAndReturn = Arrays.asList(
+                    wait,
                     new GoReturn(Collections.singletonList(GoBuiltins.True))
             );
 
             fnBody.addStatement(GoSwitch.typeSwitch(
                     err,
                     Arrays.asList(
-                            new GoSwitchCase(abortRetry, sleepAndReturn),
+                            new GoSwitchCase(abortRetry, waitAndReturn),
                             new GoSwitchCase(internalError, Collections.singletonList(new GoReturn(Collections.singletonList(GoBuiltins.False))))
                     ),
                     Collections.singletonList(new GoExpressionStatement(panic))
@@ -216,17 +245,46 @@ public class ModularPlusCalGoCodeGenPass {
         }
     }
 
+    // Defines a global holding the given number of microseconds, as a time.Duration
+    private static void defineMicroseconds(GoModuleBuilder module, String name, int microseconds) {
+        module.addImport("time");
+        module.defineGlobal(new UID(), name, new GoBinop(
+                GoBinop.Operation.TIMES,
+                new GoIntLiteral(microseconds),
+                new GoSelectorExpression(new GoVariableName("time"), "Microsecond")
+        ));
+    }
+
     public static GoModule perform(DefinitionRegistry registry, Map<UID, Type> typeMap, PGoOptions opts,
                                    ModularPlusCalBlock modularPlusCalBlock) {
         GoModuleBuilder module = new GoModuleBuilder(modularPlusCalBlock.getName().getValue(), opts.buildPackage);
-        SnapshottingLocalVariableStrategy localStrategy = new SnapshottingLocalVariableStrategy(registry, typeMap);
+        if (opts.codegen.sequences.equals(PGoCodeGenOptions.SEQUENCES_PERSISTENT)) {
+            PersistentSequenceTypeVisitor persistentSequences = new PersistentSequenceTypeVisitor();
+            typeMap = persistentSequences.apply(typeMap);
+            if (persistentSequences.foundSequences()) {
+                module.addImport(GoSequenceType.PACKAGE);
+            }
+        }
+
+        LocalVariableStrategy localStrategy;
+        switch (opts.codegen.localStrategy) {
+            case PGoCodeGenOptions.LOCAL_SNAPSHOT:
+                localStrategy = new SnapshottingLocalVariableStrategy(registry, typeMap);
+                break;
+            case PGoCodeGenOptions.LOCAL_COPY_ON_WRITE:
+                localStrategy = new CopyOnWriteLocalVariableStrategy(registry, typeMap);
+                break;
+            default:
+                throw new InternalCompilerError();
+        }
         GlobalVariableStrategy globalStrategy = new ArchetypeResourcesGlobalVariableStrategy(registry, typeMap, localStrategy, null);
 
-        GoVariableName sleepMin = module.defineGlobal(new UID(), "sleepMin", new GoIntLiteral(100));
-        GoVariableName sleepMax = module.defineGlobal(new UID(), "sleepMax", new GoIntLiteral(300));
+        // bounds of the backoff of every archetype; see distsys.Backoff
+        defineMicroseconds(module, "backoffMin", opts.codegen.backoffMin);
+        defineMicroseconds(module, "backoffMax", opts.codegen.backoffMax);
 
         generateInit(modularPlusCalBlock, module, registry, typeMap, localStrategy, globalStrategy);
-        defineShouldRetry(module, sleepMin, sleepMax);
+        defineShouldRetry(module);
 
         for (ModularPlusCalArchetype archetype : modularPlusCalBlock.getInstantiatedArchetypes()) {
             globalStrategy = new ArchetypeResourcesGlobalVariableStrategy(registry, typeMap, localStrategy, archetype.getUID());
@@ -1,26 +1,62 @@
 package pgo.trans.passes.codegen.go;
 
+import pgo.InternalCompilerError;
+import pgo.PGoCodeGenOptions;
+import pgo.Unreachable;
 import pgo.model.golang.*;
+import pgo.model.golang.builder.GoASTBuilder;
 import pgo.model.golang.builder.GoBlockBuilder;
 import pgo.model.golang.builder.GoForRangeBuilder;
+import pgo.model.golang.builder.GoFunctionDeclarationBuilder;
 import pgo.model.golang.builder.GoModuleBuilder;
 import pgo.model.golang.type.GoChanType;
 import pgo.model.golang.type.GoSliceType;
+import pgo.model.golang.type.GoStructType;
+import pgo.model.golang.type.GoStructTypeField;
 import pgo.model.golang.type.GoType;
 import pgo.model.golang.type.GoTypeName;
 import pgo.model.mpcal.ModularPlusCalBlock;
 import pgo.model.pcal.PlusCalMultiProcess;
+import pgo.model.pcal.PlusCalProcedure;
 import pgo.model.pcal.PlusCalProcess;
+import pgo.model.pcal.PlusCalStatement;
+import pgo.model.pcal.PlusCalVariableDeclaration;
+import pgo.model.type.IntType;
 import pgo.model.type.Type;
 import pgo.scope.UID;
+import pgo.trans.intermediate.AtomicOperation;
 import pgo.trans.intermediate.DefinitionRegistry;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 
-// FIXME this strategy, for efficiency reasons, does not implement abortCriticalSection correctly
+// Each lock group that is written to has a condition variable associated with its lock.
+// A process whose await fails waits on it before retrying, rather than repeatedly
+// re-acquiring the lock, and every critical section in that group wakes the waiting
+// processes up when it ends, since it may have changed the awaited condition.
+//
+// When each variable has a lock of its own (see DefinitionRegistry.addVariableLock), a
+// critical section acquires the locks of the variables it uses in increasing order, and
+// releases them in the opposite order. A failed await may involve several locks, so each
+// lock that an await reads under has instead a channel, which the critical sections
+// writing to its variable close (and replace) before releasing the lock. The await takes
+// the channels of the locks it holds, and waits for any of them to be closed once it has
+// released the locks.
+//
+// Atomic global variables (see AtomicityInferencePass) have no lock at all. Integers are
+// stored as int64s and accessed with the functions of sync/atomic, and booleans are stored
+// in atomic.Values. The critical sections accessing them perform their single atomic
+// operation where the label accesses the variable, and use its result for any later read.
+//
+// Snapshot readers (see DefinitionRegistry.addSnapshotReader) take no lock either. The
+// variables of their lock group which are written to are also kept in an immutable
+// snapshot, a struct which the labels writing to them replace with an updated copy through
+// an atomic.Value before releasing the lock. Snapshot readers load that struct once, and
+// read the variables from it, and the other variables, which never change, directly.
+//
+// Unless +scheduler+ is +goroutines+, process instances run on a fixed number of workers
+// managed by the PGo runtime (pgo/scheduling). An instance gives its worker up to the next
+// one at the end of each critical section, and while it waits for a failed await to be
+// worth retrying.
 public class MultithreadedProcessGlobalVariableStrategy extends GlobalVariableStrategy {
 	private DefinitionRegistry registry;
 	private Map<UID, Type> typeMap;
@@ -29,11 +65,30 @@ public class MultithreadedProcessGlobalVariableStrategy extends GlobalVariableSt
 	private UID pGoLockUID;
 	private UID pGoWaitUID;
 	private UID pGoStartUID;
+	private UID pGoCondUID;
+	private UID pGoChangeUID;
+	private UID pGoSnapshotUID;
+	private UID pGoSchedulerUID;
+	// the scheduling policy of the PGo runtime, or null when each process runs on its own
+	private String schedulingPolicy;
+	// the variable locks which have a channel signalling changes to their variables, i.e.
+	// those of the variables read by labels with an await
+	private Set<Integer> watchedLocks;
+	// the label whose critical section was started last in each block
+	private Map<GoASTBuilder, UID> currentLabels;
+	private Map<UID, AtomicSection> atomicSections;
+	// the snapshot loaded by each snapshot reader
+	private Map<UID, GoVariableName> snapshots;
+	private Map<Integer, GoTypeName> snapshotTypes;
 
 	private static final GoType PGO_LOCK_TYPE = new GoSliceType(new GoTypeName("sync.RWMutex"));
+	private static final GoType PGO_COND_TYPE = new GoSliceType(new GoPtrType(new GoTypeName("sync.Cond")));
+	private static final GoType PGO_CHANGE_TYPE = new GoSliceType(new GoChanType(GoBuiltins.Bool));
+	private static final String SCHEDULING_PACKAGE = "pgo/scheduling";
 
 	public MultithreadedProcessGlobalVariableStrategy(DefinitionRegistry registry, Map<UID, Type> typeMap,
-	                                                  LocalVariableStrategy localStrategy, ModularPlusCalBlock modularPlusCalBlock) {
+	                                                  LocalVariableStrategy localStrategy, ModularPlusCalBlock modularPlusCalBlock,
+	                                                  String scheduler) {
 		this.registry = registry;
 		this.typeMap = typeMap;
 		this.localStrategy = localStrategy;
@@ -41,24 +96,299 @@ public class MultithreadedProcessGlobalVariableStrategy extends GlobalVariableSt
 		this.pGoLockUID = new UID();
 		this.pGoWaitUID = new UID();
 		this.pGoStartUID = new UID();
+		this.pGoCondUID = new UID();
+		this.pGoChangeUID = new UID();
+		this.pGoSnapshotUID = new UID();
+		this.pGoSchedulerUID = new UID();
+		switch (scheduler) {
+			case PGoCodeGenOptions.SCHEDULER_GOROUTINES:
+				this.schedulingPolicy = null;
+				break;
+			case PGoCodeGenOptions.SCHEDULER_ROUND_ROBIN:
+				this.schedulingPolicy = "RoundRobin";
+				break;
+			case PGoCodeGenOptions.SCHEDULER_RANDOM:
+				this.schedulingPolicy = "Random";
+				break;
+			case PGoCodeGenOptions.SCHEDULER_ENABLED_FIRST:
+				this.schedulingPolicy = "EnabledFirst";
+				break;
+			default:
+				throw new Unreachable();
+		}
+		this.currentLabels = new IdentityHashMap<>();
+		this.atomicSections = new HashMap<>();
+		this.snapshots = new HashMap<>();
+		this.snapshotTypes = new HashMap<>();
+		this.watchedLocks = new HashSet<>();
+	}
+
+	// the statements of every procedure and process
+	protected static List<PlusCalStatement> getStatements(ModularPlusCalBlock modularPlusCalBlock) {
+		List<PlusCalStatement> statements = new ArrayList<>();
+		for (PlusCalProcedure procedure : modularPlusCalBlock.getProcedures()) {
+			statements.addAll(procedure.getBody());
+		}
+		for (PlusCalProcess process : ((PlusCalMultiProcess) modularPlusCalBlock.getProcesses()).getProcesses()) {
+			statements.addAll(process.getBody());
+		}
+		return statements;
+	}
+
+	private static class AtomicSection {
+		private final AtomicOperation operation;
+		private final GoLabelName labelName;
+		// the value of the variable loaded by a compare-and-swap
+		private GoVariableName loaded;
+		// the current value of the variable, once it has been loaded or assigned
+		private GoExpression value;
+
+		private AtomicSection(AtomicOperation operation, GoLabelName labelName) {
+			this.operation = operation;
+			this.labelName = labelName;
+		}
 	}
 
 	@Override
 	public void initPostlude(GoModuleBuilder moduleBuilder, GoBlockBuilder initBuilder) {
+		defineProcessSynchronisation(moduleBuilder, initBuilder);
+		defineSnapshots(moduleBuilder, initBuilder);
+		// the lock groups of atomic global variables come last, and need no lock
+		int nLock = registry.hasVariableLocks()
+				? registry.getNumberOfVariableLocks()
+				: registry.getNumberOfLockGroups() - registry.getNumberOfAtomicGlobalVariables();
+		if (nLock <= 0) {
+			// no lock to allocate
+			return;
+		}
+		GoVariableName pGoLock = moduleBuilder.defineGlobal(pGoLockUID, "pGoLock", PGO_LOCK_TYPE);
+		addVariable(pGoLockUID, pGoLock);
+		initBuilder.assign(pGoLock, new GoMakeExpression(PGO_LOCK_TYPE, new GoIntLiteral(nLock), null));
+		if (registry.hasVariableLocks()) {
+			defineChangeTracking(moduleBuilder, initBuilder);
+			return;
+		}
+		GoVariableName pGoCond = moduleBuilder.defineGlobal(pGoCondUID, "pGoCond", PGO_COND_TYPE);
+		addVariable(pGoCondUID, pGoCond);
+		initBuilder.assign(pGoCond, new GoMakeExpression(PGO_COND_TYPE, new GoIntLiteral(nLock), null));
+		for (int lockGroup = 0; lockGroup < nLock; lockGroup++) {
+			if (isReadOnly(lockGroup)) {
+				// nothing can change the value of an await in this lock group
+				continue;
+			}
+			initBuilder.assign(
+					new GoIndexExpression(pGoCond, new GoIntLiteral(lockGroup)),
+					new GoCall(
+							new GoVariableName("sync.NewCond"),
+							Collections.singletonList(new GoUnary(
+									GoUnary.Operation.ADDR,
+									new GoIndexExpression(pGoLock, new GoIntLiteral(lockGroup))))));
+		}
+	}
+
+	// defines the channel which starts every process at once, and the wait group which main
+	// uses to wait for all of them to finish
+	protected void defineProcessSynchronisation(GoModuleBuilder moduleBuilder, GoBlockBuilder initBuilder) {
 		moduleBuilder.addImport("sync");
 		GoVariableName pGoStart = moduleBuilder.defineGlobal(pGoStartUID, "pGoStart", new GoChanType(GoBuiltins.Bool));
 		addVariable(pGoStartUID, pGoStart);
 		initBuilder.assign(pGoStart, new GoMakeExpression(new GoChanType(GoBuiltins.Bool), null, null));
 		GoVariableName pGoWait = moduleBuilder.defineGlobal(pGoWaitUID, "pGoWait", new GoTypeName("sync.WaitGroup"));
 		addVariable(pGoWaitUID, pGoWait);
-		int nLock = registry.getNumberOfLockGroups();
-		if (nLock <= 0) {
-			// no lock to allocate
+		if (schedulingPolicy == null) {
 			return;
 		}
-		GoVariableName pGoLock = moduleBuilder.defineGlobal(pGoLockUID, "pGoLock", PGO_LOCK_TYPE);
-		addVariable(pGoLockUID, pGoLock);
-		initBuilder.assign(pGoLock, new GoMakeExpression(PGO_LOCK_TYPE, new GoIntLiteral(nLock), null));
+		moduleBuilder.addImport("runtime");
+		moduleBuilder.addImport(SCHEDULING_PACKAGE);
+		GoVariableName pGoScheduler = moduleBuilder.defineGlobal(
+				pGoSchedulerUID, "pGoScheduler", new GoPtrType(new GoTypeName("scheduling.Scheduler")));
+		addVariable(pGoSchedulerUID, pGoScheduler);
+		initBuilder.assign(pGoScheduler, new GoCall(
+				new GoVariableName("scheduling.NewScheduler"),
+				Arrays.asList(
+						new GoCall(new GoVariableName("runtime.GOMAXPROCS"), Collections.singletonList(new GoIntLiteral(0))),
+						new GoVariableName("scheduling." + schedulingPolicy))));
+	}
+
+	private void schedulerCall(GoBlockBuilder builder, String functionName) {
+		if (schedulingPolicy == null) {
+			return;
+		}
+		builder.addStatement(new GoCall(
+				new GoSelectorExpression(findVariable(pGoSchedulerUID), functionName), Collections.emptyList()));
+	}
+
+	// lets the next process instance run, if the scheduler has one waiting, at the end of a
+	// critical section
+	protected void yieldProcess(GoBlockBuilder builder) {
+		schedulerCall(builder, "Yield");
+	}
+
+	// gives up the worker of the process instance before it waits for a failed await to be
+	// worth retrying, and gets one back afterwards
+	protected void blockProcess(GoBlockBuilder builder) {
+		schedulerCall(builder, "Block");
+	}
+
+	protected void unblockProcess(GoBlockBuilder builder) {
+		schedulerCall(builder, "Unblock");
+	}
+
+	// the variables in the snapshots of +lockGroup+, in declaration order
+	private List<UID> getSnapshotVariables(int lockGroup) {
+		Set<UID> snapshotVariables = registry.getSnapshotVariables(lockGroup);
+		List<UID> variables = new ArrayList<>();
+		for (PlusCalVariableDeclaration declaration : modularPlusCalBlock.getVariables()) {
+			if (snapshotVariables.contains(declaration.getUID())) {
+				variables.add(declaration.getUID());
+			}
+		}
+		return variables;
+	}
+
+	private GoType getGoType(UID varUID) {
+		return typeMap.get(varUID).accept(new TypeConversionVisitor());
+	}
+
+	private void defineSnapshots(GoModuleBuilder moduleBuilder, GoBlockBuilder initBuilder) {
+		int nLockGroup = registry.getNumberOfLockGroups();
+		GoVariableName pGoSnapshot = null;
+		for (int lockGroup = 0; lockGroup < nLockGroup; lockGroup++) {
+			List<UID> variables = getSnapshotVariables(lockGroup);
+			if (variables.isEmpty()) {
+				continue;
+			}
+			if (pGoSnapshot == null) {
+				GoType snapshotsType = new GoSliceType(new GoTypeName("atomic.Value"));
+				moduleBuilder.addImport("sync/atomic");
+				pGoSnapshot = moduleBuilder.defineGlobal(pGoSnapshotUID, "pGoSnapshot", snapshotsType);
+				addVariable(pGoSnapshotUID, pGoSnapshot);
+				initBuilder.assign(pGoSnapshot, new GoMakeExpression(snapshotsType, new GoIntLiteral(nLockGroup), null));
+			}
+			List<GoStructTypeField> fields = new ArrayList<>();
+			List<GoStructLiteralField> values = new ArrayList<>();
+			for (UID varUID : variables) {
+				GoVariableName name = initBuilder.findUID(varUID);
+				GoType type = getGoType(varUID);
+				fields.add(new GoStructTypeField(name.getName(), type));
+				values.add(new GoStructLiteralField(name.getName(), type.accept(new CopyVisitor(initBuilder, name))));
+			}
+			GoTypeName snapshotType = moduleBuilder.defineType("pGoSnapshot" + lockGroup, new GoStructType(fields));
+			snapshotTypes.put(lockGroup, snapshotType);
+			initBuilder.addStatement(new GoCall(
+					new GoSelectorExpression(new GoIndexExpression(pGoSnapshot, new GoIntLiteral(lockGroup)), "Store"),
+					Collections.singletonList(new GoUnary(
+							GoUnary.Operation.ADDR, new GoStructLiteral(snapshotType, values)))));
+		}
+	}
+
+	private GoExpression loadSnapshot(int lockGroup) {
+		return new GoTypeAssertion(
+				new GoCall(
+						new GoSelectorExpression(
+								new GoIndexExpression(findVariable(pGoSnapshotUID), new GoIntLiteral(lockGroup)),
+								"Load"),
+						Collections.emptyList()),
+				new GoPtrType(snapshotTypes.get(lockGroup)));
+	}
+
+	// replaces the snapshot of +lockGroup+ with a copy in which the variables the label writes
+	// to are updated, while the label still holds the lock, so that snapshots are published
+	// in the same order as the writes
+	private void publishSnapshot(GoBlockBuilder builder, int lockGroup, UID labelUID) {
+		Set<UID> writes = registry.getVariableWritesInLabel(labelUID);
+		List<UID> variables = new ArrayList<>(getSnapshotVariables(lockGroup));
+		variables.retainAll(writes);
+		if (variables.isEmpty()) {
+			return;
+		}
+		GoVariableName snapshot = builder.varDecl(
+				"snapshot", new GoUnary(GoUnary.Operation.DEREF, loadSnapshot(lockGroup)));
+		for (UID varUID : variables) {
+			GoVariableName name = builder.findUID(varUID);
+			builder.assign(
+					new GoSelectorExpression(snapshot, name.getName()),
+					getGoType(varUID).accept(new CopyVisitor(builder, name)));
+		}
+		builder.addStatement(new GoCall(
+				new GoSelectorExpression(
+						new GoIndexExpression(findVariable(pGoSnapshotUID), new GoIntLiteral(lockGroup)), "Store"),
+				Collections.singletonList(new GoUnary(GoUnary.Operation.ADDR, snapshot))));
+	}
+
+	private void defineChangeTracking(GoModuleBuilder moduleBuilder, GoBlockBuilder initBuilder) {
+		Set<UID> awaitingLabels = new HashSet<>();
+		for (PlusCalStatement statement : getStatements(modularPlusCalBlock)) {
+			statement.accept(new PlusCalStatementAwaitingLabelsVisitor(awaitingLabels, new HashSet<>()));
+		}
+		for (UID labelUID : awaitingLabels) {
+			watchedLocks.addAll(getReadLocks(registry.getLockGroup(labelUID)));
+		}
+		if (watchedLocks.isEmpty()) {
+			return;
+		}
+		GoVariableName pGoChange = moduleBuilder.defineGlobal(pGoChangeUID, "pGoChange", PGO_CHANGE_TYPE);
+		addVariable(pGoChangeUID, pGoChange);
+		initBuilder.assign(pGoChange, new GoMakeExpression(
+				PGO_CHANGE_TYPE, new GoIntLiteral(registry.getNumberOfVariableLocks()), null));
+		for (int lock : new TreeSet<>(watchedLocks)) {
+			initBuilder.assign(
+					new GoIndexExpression(pGoChange, new GoIntLiteral(lock)),
+					new GoMakeExpression(new GoChanType(GoBuiltins.Bool), null, null));
+		}
+	}
+
+	// the variable locks of the variables +lockGroup+ reads, in acquisition order
+	private SortedSet<Integer> getReadLocks(int lockGroup) {
+		SortedSet<Integer> locks = new TreeSet<>();
+		for (UID varUID : registry.getVariableReadsInLockGroup(lockGroup)) {
+			locks.add(registry.getVariableLock(varUID));
+		}
+		return locks;
+	}
+
+	// wakes up the awaits which read the variables +lockGroup+ writes to, while it still
+	// holds their locks
+	private void notifyChanges(GoBlockBuilder builder, int lockGroup) {
+		for (Map.Entry<Integer, Boolean> lock : getVariableLocks(lockGroup).entrySet()) {
+			if (!lock.getValue() || !watchedLocks.contains(lock.getKey())) {
+				continue;
+			}
+			GoExpression change = new GoIndexExpression(findVariable(pGoChangeUID), new GoIntLiteral(lock.getKey()));
+			builder.addStatement(new GoCall(new GoVariableName("close"), Collections.singletonList(change)));
+			builder.assign(change, new GoMakeExpression(new GoChanType(GoBuiltins.Bool), null, null));
+		}
+	}
+
+	// the variable locks held by +lockGroup+, in acquisition order, mapped to whether the
+	// lock group writes to the variable
+	private SortedMap<Integer, Boolean> getVariableLocks(int lockGroup) {
+		SortedMap<Integer, Boolean> locks = new TreeMap<>();
+		for (UID varUID : registry.getVariableReadsInLockGroup(lockGroup)) {
+			locks.put(registry.getVariableLock(varUID), false);
+		}
+		for (UID varUID : registry.getVariableWritesInLockGroup(lockGroup)) {
+			locks.put(registry.getVariableLock(varUID), true);
+		}
+		return locks;
+	}
+
+	private void releaseVariableLocks(GoBlockBuilder builder, int lockGroup) {
+		List<Map.Entry<Integer, Boolean>> locks = new ArrayList<>(getVariableLocks(lockGroup).entrySet());
+		Collections.reverse(locks);
+		for (Map.Entry<Integer, Boolean> lock : locks) {
+			builder.addStatement(lockGroupCall(pGoLockUID, lock.getKey(), lock.getValue() ? "Unlock" : "RUnlock"));
+		}
+	}
+
+	private boolean isReadOnly(int lockGroup) {
+		return registry.getVariableWritesInLockGroup(lockGroup).isEmpty();
+	}
+
+	private GoExpression lockGroupCall(UID uid, int lockGroup, String functionName) {
+		return new GoCall(
+				new GoSelectorExpression(new GoIndexExpression(findVariable(uid), new GoIntLiteral(lockGroup)), functionName),
+				Collections.emptyList());
 	}
 
 	@Override
@@ -68,6 +398,11 @@ public class MultithreadedProcessGlobalVariableStrategy extends GlobalVariableSt
 				new GoSelectorExpression(findVariable(pGoWaitUID), "Done"),
 				Collections.emptyList()));
 		processBody.addStatement(new GoUnary(GoUnary.Operation.RECV, findVariable(pGoStartUID)));
+		if (schedulingPolicy != null) {
+			schedulerCall(processBody, "Enter");
+			processBody.deferStmt(new GoCall(
+					new GoSelectorExpression(findVariable(pGoSchedulerUID), "Exit"), Collections.emptyList()));
+		}
 	}
 
 	@Override
@@ -101,39 +436,297 @@ public class MultithreadedProcessGlobalVariableStrategy extends GlobalVariableSt
 
 	@Override
 	public void startCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
-		String functionName = "Lock";
-		if (registry.getVariableWritesInLockGroup(lockGroup).isEmpty()) {
-			functionName = "RLock";
+		currentLabels.put(builder, labelUID);
+		Optional<AtomicOperation> atomicOperation = registry.getAtomicOperation(labelUID);
+		if (atomicOperation.isPresent()) {
+			startAtomicSection(builder, atomicOperation.get(), labelUID, labelName);
+			return;
 		}
-		builder.addStatement(new GoCall(
-				new GoSelectorExpression(new GoIndexExpression(findVariable(pGoLockUID), new GoIntLiteral(lockGroup)), functionName),
-				Collections.emptyList()));
+		if (registry.isSnapshotReader(labelUID)) {
+			Set<UID> reads = new HashSet<>(registry.getVariableReadsInLabel(labelUID));
+			reads.retainAll(registry.getSnapshotVariables(lockGroup));
+			if (!reads.isEmpty()) {
+				snapshots.put(labelUID, builder.varDecl("snapshot", loadSnapshot(lockGroup)));
+			}
+			return;
+		}
+		if (registry.hasVariableLocks()) {
+			for (Map.Entry<Integer, Boolean> lock : getVariableLocks(lockGroup).entrySet()) {
+				builder.addStatement(lockGroupCall(pGoLockUID, lock.getKey(), lock.getValue() ? "Lock" : "RLock"));
+			}
+			return;
+		}
+		builder.addStatement(lockGroupCall(pGoLockUID, lockGroup, isReadOnly(lockGroup) ? "RLock" : "Lock"));
 	}
 
 	@Override
 	public void abortCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
-		// FIXME
-		endCriticalSection(builder, processUID, lockGroup, labelUID, labelName);
+		if (registry.getAtomicOperation(labelUID).isPresent() || registry.isSnapshotReader(labelUID)) {
+			// atomic operations and snapshot reads are never performed by labels which may abort
+			throw new InternalCompilerError();
+		}
+		if (registry.hasVariableLocks()) {
+			// a write that may change the outcome of the await can only happen once the locks
+			// are released, and closes the channels taken here
+			List<GoSelectCase> changes = new ArrayList<>();
+			for (int lock : getReadLocks(lockGroup)) {
+				if (!watchedLocks.contains(lock)) {
+					throw new InternalCompilerError();
+				}
+				GoVariableName change = builder.varDecl("change", new GoIndexExpression(
+						findVariable(pGoChangeUID), new GoIntLiteral(lock)));
+				changes.add(new GoSelectCase(
+						new GoExpressionStatement(new GoUnary(GoUnary.Operation.RECV, change)),
+						Collections.emptyList()));
+			}
+			releaseVariableLocks(builder, lockGroup);
+			blockProcess(builder);
+			if (changes.size() == 1) {
+				builder.addStatement(changes.get(0).getCondition());
+			} else {
+				builder.addStatement(new GoSelect(changes));
+			}
+			unblockProcess(builder);
+			return;
+		}
+		if (isReadOnly(lockGroup)) {
+			builder.addStatement(lockGroupCall(pGoLockUID, lockGroup, "RUnlock"));
+			return;
+		}
+		// the label is aborted when an await fails and no other case of an either statement
+		// is left to try, so wait for a change to this lock group before retrying; Wait
+		// reacquires the lock, which the retry acquires again
+		publishSnapshot(builder, lockGroup, labelUID);
+		blockProcess(builder);
+		builder.addStatement(lockGroupCall(pGoCondUID, lockGroup, "Wait"));
+		builder.addStatement(lockGroupCall(pGoLockUID, lockGroup, "Unlock"));
+		unblockProcess(builder);
+	}
+
+	@Override
+	public void suspendCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
+		// the next case of the either statement may succeed without any change, so there is
+		// nothing to wait for
+		if (registry.getAtomicOperation(labelUID).isPresent() || registry.isSnapshotReader(labelUID)) {
+			throw new InternalCompilerError();
+		}
+		if (registry.hasVariableLocks()) {
+			releaseVariableLocks(builder, lockGroup);
+			return;
+		}
+		publishSnapshot(builder, lockGroup, labelUID);
+		builder.addStatement(lockGroupCall(pGoLockUID, lockGroup, isReadOnly(lockGroup) ? "RUnlock" : "Unlock"));
 	}
 
 	@Override
 	public void endCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
-		String functionName = "Unlock";
-		if (registry.getVariableWritesInLockGroup(lockGroup).isEmpty()) {
-			functionName = "RUnlock";
+		releaseCriticalSection(builder, lockGroup, labelUID);
+		yieldProcess(builder);
+	}
+
+	private void releaseCriticalSection(GoBlockBuilder builder, int lockGroup, UID labelUID) {
+		if (registry.getAtomicOperation(labelUID).isPresent() || registry.isSnapshotReader(labelUID)) {
+			// the atomic operation has been performed already, or there is no lock to release
+			return;
+		}
+		if (registry.hasVariableLocks()) {
+			notifyChanges(builder, lockGroup);
+			releaseVariableLocks(builder, lockGroup);
+			return;
+		}
+		if (isReadOnly(lockGroup)) {
+			builder.addStatement(lockGroupCall(pGoLockUID, lockGroup, "RUnlock"));
+			return;
+		}
+		publishSnapshot(builder, lockGroup, labelUID);
+		builder.addStatement(lockGroupCall(pGoCondUID, lockGroup, "Broadcast"));
+		builder.addStatement(lockGroupCall(pGoLockUID, lockGroup, "Unlock"));
+	}
+
+	private void startAtomicSection(GoBlockBuilder builder, AtomicOperation operation, UID labelUID,
+	                                GoLabelName labelName) {
+		AtomicSection section = new AtomicSection(operation, labelName);
+		atomicSections.put(labelUID, section);
+		UID varUID = operation.getVariableUID();
+		String name = builder.findUID(varUID).getName();
+		switch (operation.getKind()) {
+			case LOAD:
+				section.value = builder.varDecl(name + "Value", loadAtomic(builder, varUID));
+				break;
+			case COMPARE_AND_SWAP:
+				section.loaded = builder.varDecl(name + "Old", new GoCall(
+						new GoVariableName("atomic.LoadInt64"),
+						Collections.singletonList(new GoUnary(GoUnary.Operation.ADDR, builder.findUID(varUID)))));
+				section.value = toInt(section.loaded);
+				break;
+			case STORE:
+			case ADD:
+				// nothing is read before the variable is assigned
+				break;
+		}
+	}
+
+	// the label whose critical section +builder+ is in, if any
+	private UID findCurrentLabel(GoBlockBuilder builder) {
+		GoASTBuilder current = builder;
+		while (current instanceof GoBlockBuilder) {
+			if (currentLabels.containsKey(current)) {
+				return currentLabels.get(current);
+			}
+			current = ((GoBlockBuilder) current).getParent();
+		}
+		return null;
+	}
+
+	// the atomic section +builder+ is in, if it accesses +uid+
+	private AtomicSection findAtomicSection(GoBlockBuilder builder, UID uid) {
+		AtomicSection section = atomicSections.get(findCurrentLabel(builder));
+		if (section == null || !section.operation.getVariableUID().equals(uid)) {
+			return null;
+		}
+		return section;
+	}
+
+	private boolean isAtomicInt(UID uid) {
+		return typeMap.get(uid) instanceof IntType;
+	}
+
+	private GoExpression loadAtomic(GoBlockBuilder builder, UID uid) {
+		GoVariableName name = builder.findUID(uid);
+		if (isAtomicInt(uid)) {
+			return toInt(new GoCall(
+					new GoVariableName("atomic.LoadInt64"),
+					Collections.singletonList(new GoUnary(GoUnary.Operation.ADDR, name))));
+		}
+		return new GoTypeAssertion(
+				new GoCall(new GoSelectorExpression(name, "Load"), Collections.emptyList()), GoBuiltins.Bool);
+	}
+
+	private GoExpression storeAtomic(GoBlockBuilder builder, UID uid, GoExpression value) {
+		GoVariableName name = builder.findUID(uid);
+		if (isAtomicInt(uid)) {
+			return new GoCall(
+					new GoVariableName("atomic.StoreInt64"),
+					Arrays.asList(new GoUnary(GoUnary.Operation.ADDR, name), toInt64(value)));
+		}
+		return new GoCall(new GoSelectorExpression(name, "Store"), Collections.singletonList(value));
+	}
+
+	// GoTypeCast is a type assertion, so conversions are written as calls
+	private static GoExpression toInt(GoExpression value) {
+		return new GoCall(new GoVariableName("int"), Collections.singletonList(value));
+	}
+
+	private static GoExpression toInt64(GoExpression value) {
+		if (value instanceof GoIntLiteral) {
+			// untyped constants need no conversion
+			return value;
+		}
+		return new GoCall(new GoVariableName("int64"), Collections.singletonList(value));
+	}
+
+	@Override
+	public GoVariableName defineGlobalVariable(GoModuleBuilder moduleBuilder, UID uid, String nameHint, GoType type) {
+		if (!registry.isAtomicGlobalVariable(uid)) {
+			return super.defineGlobalVariable(moduleBuilder, uid, nameHint, type);
+		}
+		moduleBuilder.addImport("sync/atomic");
+		return moduleBuilder.defineGlobal(
+				uid, nameHint, isAtomicInt(uid) ? GoBuiltins.Int64 : new GoTypeName("atomic.Value"));
+	}
+
+	@Override
+	public void initGlobalVariable(GoBlockBuilder initBuilder, UID uid, GoExpression value) {
+		if (!registry.isAtomicGlobalVariable(uid)) {
+			super.initGlobalVariable(initBuilder, uid, value);
+			return;
+		}
+		// no process has started yet, but an atomic.Value can only be set by storing to it
+		if (isAtomicInt(uid)) {
+			initBuilder.assign(initBuilder.findUID(uid), toInt64(value));
+		} else {
+			initBuilder.addStatement(storeAtomic(initBuilder, uid, value));
 		}
-		builder.addStatement(new GoCall(
-				new GoSelectorExpression(new GoIndexExpression(findVariable(pGoLockUID), new GoIntLiteral(lockGroup)), functionName),
-				Collections.emptyList()));
 	}
 
 	@Override
 	public GoExpression readGlobalVariable(GoBlockBuilder builder, UID uid) {
+		if (registry.isAtomicGlobalVariable(uid)) {
+			AtomicSection section = findAtomicSection(builder, uid);
+			if (section == null) {
+				// outside of processes, e.g. in the initial values of local variables
+				return loadAtomic(builder, uid);
+			}
+			if (section.value == null) {
+				throw new InternalCompilerError();
+			}
+			return section.value;
+		}
+		UID labelUID = findCurrentLabel(builder);
+		if (snapshots.containsKey(labelUID) &&
+				registry.getSnapshotVariables(registry.getLockGroup(labelUID)).contains(uid)) {
+			return new GoSelectorExpression(snapshots.get(labelUID), builder.findUID(uid).getName());
+		}
 		return builder.findUID(uid);
 	}
 
+	@Override
+	public void incrementGlobalVariable(GoBlockBuilder builder, UID uid, GoExpression delta) {
+		AtomicSection section = findAtomicSection(builder, uid);
+		if (section == null) {
+			throw new InternalCompilerError();
+		}
+		GoExpression add = new GoCall(
+				new GoVariableName("atomic.AddInt64"),
+				Arrays.asList(new GoUnary(GoUnary.Operation.ADDR, builder.findUID(uid)), toInt64(delta)));
+		if (!section.operation.isResultUsed()) {
+			builder.addStatement(add);
+			return;
+		}
+		section.value = builder.varDecl(
+				builder.findUID(uid).getName() + "New", toInt(add));
+	}
+
 	@Override
 	public GlobalVariableWrite writeGlobalVariable(UID uid) {
+		if (registry.isAtomicGlobalVariable(uid)) {
+			return new GlobalVariableWrite() {
+				private GoVariableName value;
+
+				@Override
+				public GoExpression getValueSink(GoBlockBuilder builder) {
+					value = builder.varDecl(
+							builder.findUID(uid).getName() + "New",
+							typeMap.get(uid).accept(new TypeConversionVisitor()));
+					return value;
+				}
+
+				@Override
+				public void writeAfter(GoBlockBuilder builder) {
+					AtomicSection section = findAtomicSection(builder, uid);
+					if (section == null) {
+						throw new InternalCompilerError();
+					}
+					if (section.operation.getKind() == AtomicOperation.Kind.COMPARE_AND_SWAP) {
+						// start over if another process changed the variable in the meantime
+						GoExpression swap = new GoCall(
+								new GoVariableName("atomic.CompareAndSwapInt64"),
+								Arrays.asList(
+										new GoUnary(GoUnary.Operation.ADDR, builder.findUID(uid)),
+										section.loaded,
+										toInt64(value)));
+						try (GoIfBuilder ifBuilder = builder.ifStmt(new GoUnary(GoUnary.Operation.NOT, swap))) {
+							try (GoBlockBuilder retry = ifBuilder.whenTrue()) {
+								retry.goTo(section.labelName);
+							}
+						}
+					} else {
+						builder.addStatement(storeAtomic(builder, uid, value));
+					}
+					section.value = value;
+				}
+			};
+		}
 		return new GlobalVariableWrite() {
 			@Override
 			public GoExpression getValueSink(GoBlockBuilder builder) {
@@ -0,0 +1,362 @@
+package pgo.trans.passes.codegen.go;
+
+import pgo.InternalCompilerError;
+import pgo.model.golang.*;
+import pgo.model.golang.builder.GoASTBuilder;
+import pgo.model.golang.builder.GoBlockBuilder;
+import pgo.model.golang.builder.GoModuleBuilder;
+import pgo.model.golang.type.GoSliceType;
+import pgo.model.golang.type.GoType;
+import pgo.model.golang.type.GoTypeName;
+import pgo.model.mpcal.ModularPlusCalBlock;
+import pgo.model.pcal.PlusCalStatement;
+import pgo.model.tla.TLAGeneralIdentifier;
+import pgo.model.type.Type;
+import pgo.scope.UID;
+import pgo.trans.intermediate.DefinitionRegistry;
+import pgo.trans.passes.atomicity.PlusCalStatementAtomicityInferenceVisitor;
+
+import java.util.*;
+
+// Runs critical sections optimistically, i.e. without holding any lock while their statements
+// run. Each global variable has a version, incremented whenever a new value is committed
+// to it. A critical section starts by copying the variables it uses, along with their
+// versions, to local variables, which its statements then use instead of the globals.
+// Variables that are written are deep-copied, so that committed values are never modified
+// in place and the other variables can be shared.
+//
+// A critical section that writes to variables commits its copies when it ends, provided
+// that none of the versions it read have changed in the meantime. Otherwise, it starts over
+// from its label. Copying and committing both happen under pGoCommitLock, which is only
+// held for as long as this takes. Since the copies are consistent with each other, a
+// critical section that only reads never needs to start over.
+//
+// When an await fails, the critical section drops its copies and waits for one of the
+// variables it read to change before starting over. Starting over also restores the local
+// variables written by the label to the values they had when it started. A critical section
+// that may start over buffers what it prints, and only writes it out once it commits, while
+// still holding pGoCommitLock, so that output appears once and in the order of the commits.
+//
+// This relies on each lock group corresponding to the variables used by a single label,
+// as with per-variable locking (see DefinitionRegistry.addVariableLock), the lock of each
+// variable being the index of its version.
+public class OptimisticMultithreadedProcessGlobalVariableStrategy extends MultithreadedProcessGlobalVariableStrategy {
+	private DefinitionRegistry registry;
+	private Map<UID, Type> typeMap;
+	private Set<UID> awaitingLabels;
+	private Set<UID> printingLabels;
+	// the local variables written by each label
+	private Map<UID, Set<UID>> localWrites;
+	private UID pGoCommitLockUID;
+	private UID pGoCommitUID;
+	private UID pGoVersionsUID;
+	// the local copies of the variables used by each label, and the versions they were
+	// copied at
+	private Map<UID, Map<UID, GoVariableName>> copies;
+	private Map<UID, Map<UID, GoVariableName>> versions;
+	// the values the local variables written by each label had when it started
+	private Map<UID, Map<UID, GoVariableName>> savedLocals;
+	// the output buffered by each label that prints and may start over
+	private Map<UID, GoVariableName> outputs;
+	// the label whose critical section was started last in each block
+	private Map<GoASTBuilder, UID> currentLabels;
+
+	private static final GoType PGO_VERSIONS_TYPE = new GoSliceType(GoBuiltins.Int);
+
+	public OptimisticMultithreadedProcessGlobalVariableStrategy(DefinitionRegistry registry, Map<UID, Type> typeMap,
+	                                                            LocalVariableStrategy localStrategy,
+	                                                            ModularPlusCalBlock modularPlusCalBlock,
+	                                                            String scheduler) {
+		super(registry, typeMap, localStrategy, modularPlusCalBlock, scheduler);
+		this.registry = registry;
+		this.typeMap = typeMap;
+		this.pGoCommitLockUID = new UID();
+		this.pGoCommitUID = new UID();
+		this.pGoVersionsUID = new UID();
+		this.copies = new HashMap<>();
+		this.versions = new HashMap<>();
+		this.currentLabels = new IdentityHashMap<>();
+
+		this.awaitingLabels = new HashSet<>();
+		this.printingLabels = new HashSet<>();
+		this.outputs = new HashMap<>();
+		this.localWrites = new HashMap<>();
+		this.savedLocals = new HashMap<>();
+		for (PlusCalStatement statement : getStatements(modularPlusCalBlock)) {
+			statement.accept(new PlusCalStatementAwaitingLabelsVisitor(awaitingLabels, printingLabels));
+			statement.accept(new PlusCalStatementAtomicityInferenceVisitor(
+					new UID(),
+					(ignored1, ignored2) -> {},
+					(expression, labelUID) -> {
+						if (!(expression instanceof TLAGeneralIdentifier)) {
+							return;
+						}
+						UID ref = registry.followReference(expression.getUID());
+						if (registry.isLocalVariable(ref)) {
+							localWrites.computeIfAbsent(labelUID, ignored -> new LinkedHashSet<>()).add(ref);
+						}
+					},
+					new HashSet<>()));
+		}
+	}
+
+	@Override
+	public void initPostlude(GoModuleBuilder moduleBuilder, GoBlockBuilder initBuilder) {
+		defineProcessSynchronisation(moduleBuilder, initBuilder);
+		if (!registry.hasVariableLocks()) {
+			// no variable to keep track of
+			return;
+		}
+		GoVariableName pGoCommitLock = moduleBuilder.defineGlobal(
+				pGoCommitLockUID, "pGoCommitLock", new GoTypeName("sync.RWMutex"));
+		addVariable(pGoCommitLockUID, pGoCommitLock);
+		GoVariableName pGoCommit = moduleBuilder.defineGlobal(
+				pGoCommitUID, "pGoCommit", new GoPtrType(new GoTypeName("sync.Cond")));
+		addVariable(pGoCommitUID, pGoCommit);
+		GoVariableName pGoVersions = moduleBuilder.defineGlobal(pGoVersionsUID, "pGoVersions", PGO_VERSIONS_TYPE);
+		addVariable(pGoVersionsUID, pGoVersions);
+		initBuilder.assign(pGoCommit, new GoCall(
+				new GoVariableName("sync.NewCond"),
+				Collections.singletonList(new GoUnary(GoUnary.Operation.ADDR, pGoCommitLock))));
+		initBuilder.assign(pGoVersions, new GoMakeExpression(
+				PGO_VERSIONS_TYPE, new GoIntLiteral(registry.getNumberOfVariableLocks()), null));
+	}
+
+	// the variables used by +lockGroup+, in the order of their versions
+	private Collection<UID> getVariables(int lockGroup) {
+		SortedMap<Integer, UID> variables = new TreeMap<>();
+		for (UID varUID : registry.getVariableReadsInLockGroup(lockGroup)) {
+			variables.put(registry.getVariableLock(varUID), varUID);
+		}
+		for (UID varUID : registry.getVariableWritesInLockGroup(lockGroup)) {
+			variables.put(registry.getVariableLock(varUID), varUID);
+		}
+		return variables.values();
+	}
+
+	private GoExpression getVersion(UID varUID) {
+		return new GoIndexExpression(findVariable(pGoVersionsUID), new GoIntLiteral(registry.getVariableLock(varUID)));
+	}
+
+	private GoExpression commitLockCall(String functionName) {
+		return new GoCall(
+				new GoSelectorExpression(findVariable(pGoCommitLockUID), functionName), Collections.emptyList());
+	}
+
+	// whether any of the variables used by +lockGroup+ has a different version from the one
+	// it was copied at, or, if +changed+ is false, whether none of them has
+	private GoExpression compareVersions(UID labelUID, int lockGroup, boolean changed) {
+		GoExpression result = null;
+		for (UID varUID : getVariables(lockGroup)) {
+			GoExpression comparison = new GoBinop(
+					changed ? GoBinop.Operation.NEQ : GoBinop.Operation.EQ,
+					getVersion(varUID),
+					versions.get(labelUID).get(varUID));
+			result = result == null ? comparison : new GoBinop(
+					changed ? GoBinop.Operation.OR : GoBinop.Operation.AND, result, comparison);
+		}
+		if (result == null) {
+			throw new InternalCompilerError();
+		}
+		return result;
+	}
+
+	@Override
+	public void startCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
+		currentLabels.put(builder, labelUID);
+		Set<UID> writes = registry.getVariableWritesInLockGroup(lockGroup);
+		// a critical section that only reads may only start over when an await fails
+		boolean retried = !writes.isEmpty() || awaitingLabels.contains(labelUID);
+		// when restarting a critical section, e.g. at the end of a loop, the copies made at the
+		// start of the label are still in use, and are updated rather than declared again
+		boolean restart = copies.containsKey(labelUID);
+		Map<UID, GoVariableName> labelCopies = copies.computeIfAbsent(labelUID, ignored -> new HashMap<>());
+		Map<UID, GoVariableName> labelVersions = versions.computeIfAbsent(labelUID, ignored -> new HashMap<>());
+		Map<UID, GoVariableName> labelSavedLocals = savedLocals.computeIfAbsent(labelUID, ignored -> new LinkedHashMap<>());
+
+		// starting over has to undo the changes made to local variables as well
+		Set<UID> savedLocalUIDs = retried ? localWrites.getOrDefault(labelUID, Collections.emptySet()) : Collections.emptySet();
+		for (UID localUID : savedLocalUIDs) {
+			GoVariableName saved = deepCopy(builder, localUID, builder.findUID(localUID));
+			if (restart) {
+				builder.assign(labelSavedLocals.get(localUID), saved);
+			} else {
+				labelSavedLocals.put(localUID, saved);
+			}
+		}
+		if (retried && printingLabels.contains(labelUID)) {
+			if (restart) {
+				builder.assign(outputs.get(labelUID), new GoStringLiteral(""));
+			} else {
+				outputs.put(labelUID, builder.varDecl("output", new GoStringLiteral("")));
+			}
+		}
+		builder.addStatement(commitLockCall("RLock"));
+		for (UID varUID : getVariables(lockGroup)) {
+			GoVariableName variable = builder.findUID(varUID);
+			if (restart) {
+				builder.assign(
+						labelCopies.get(varUID),
+						writes.contains(varUID) ? deepCopy(builder, varUID, variable) : variable);
+			} else {
+				labelCopies.put(varUID, writes.contains(varUID) ?
+						deepCopy(builder, varUID, variable) :
+						builder.varDecl(variable.getName() + "Copy", variable));
+			}
+			if (!retried) {
+				continue;
+			}
+			if (restart) {
+				builder.assign(labelVersions.get(varUID), getVersion(varUID));
+			} else {
+				labelVersions.put(varUID, builder.varDecl(variable.getName() + "Version", getVersion(varUID)));
+			}
+		}
+		builder.addStatement(commitLockCall("RUnlock"));
+	}
+
+	// copies that are modified in place must not share anything with the committed values
+	private GoVariableName deepCopy(GoBlockBuilder builder, UID varUID, GoVariableName variable) {
+		return typeMap.get(varUID).accept(new TypeConversionVisitor()).accept(new CopyVisitor(builder, variable));
+	}
+
+	private void restoreLocals(GoBlockBuilder builder, UID labelUID) {
+		for (Map.Entry<UID, GoVariableName> saved : savedLocals.get(labelUID).entrySet()) {
+			builder.assign(builder.findUID(saved.getKey()), saved.getValue());
+		}
+	}
+
+	// writes out what the critical section of +labelUID+ printed, once it can no longer start over
+	private void flushOutput(GoBlockBuilder builder, UID labelUID) {
+		if (!outputs.containsKey(labelUID)) {
+			return;
+		}
+		builder.addImport("fmt");
+		builder.addStatement(new GoCall(
+				new GoSelectorExpression(new GoVariableName("fmt"), "Print"),
+				Collections.singletonList(outputs.get(labelUID))));
+	}
+
+	@Override
+	public void abortCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
+		restoreLocals(builder, labelUID);
+		// retrying before one of the variables read changes would fail the same way
+		blockProcess(builder);
+		builder.addStatement(commitLockCall("Lock"));
+		try (GoBlockBuilder loop = builder.forLoop(compareVersions(labelUID, lockGroup, false))) {
+			loop.addStatement(new GoCall(
+					new GoSelectorExpression(findVariable(pGoCommitUID), "Wait"), Collections.emptyList()));
+		}
+		builder.addStatement(commitLockCall("Unlock"));
+		unblockProcess(builder);
+	}
+
+	@Override
+	public void suspendCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
+		// the copies are still valid, and the next case of the either statement keeps using them
+	}
+
+	@Override
+	public void resumeCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
+		// see suspendCriticalSection
+	}
+
+	@Override
+	public void endCriticalSection(GoBlockBuilder builder, UID processUID, int lockGroup, UID labelUID, GoLabelName labelName) {
+		Set<UID> writes = registry.getVariableWritesInLockGroup(lockGroup);
+		if (writes.isEmpty()) {
+			// nothing to commit
+			flushOutput(builder, labelUID);
+			yieldProcess(builder);
+			return;
+		}
+		builder.addStatement(commitLockCall("Lock"));
+		try (GoIfBuilder ifBuilder = builder.ifStmt(compareVersions(labelUID, lockGroup, true))) {
+			try (GoBlockBuilder yes = ifBuilder.whenTrue()) {
+				yes.addStatement(commitLockCall("Unlock"));
+				restoreLocals(yes, labelUID);
+				yes.goTo(labelName);
+			}
+		}
+		for (UID varUID : getVariables(lockGroup)) {
+			if (writes.contains(varUID)) {
+				builder.assign(builder.findUID(varUID), copies.get(labelUID).get(varUID));
+				builder.addStatement(new GoIncDec(true, getVersion(varUID)));
+			}
+		}
+		builder.addStatement(new GoCall(
+				new GoSelectorExpression(findVariable(pGoCommitUID), "Broadcast"), Collections.emptyList()));
+		flushOutput(builder, labelUID);
+		builder.addStatement(commitLockCall("Unlock"));
+		yieldProcess(builder);
+	}
+
+	@Override
+	public boolean isRestartedEveryIteration() {
+		// committing at the end of an iteration would make the critical section start over
+		// from its label, repeating the iterations already committed
+		return false;
+	}
+
+	// the label of the critical section +builder+ is in, or null outside of processes, e.g. in
+	// init
+	private UID findLabel(GoBlockBuilder builder) {
+		GoASTBuilder current = builder;
+		while (current instanceof GoBlockBuilder) {
+			if (currentLabels.containsKey(current)) {
+				return currentLabels.get(current);
+			}
+			current = ((GoBlockBuilder) current).getParent();
+		}
+		return null;
+	}
+
+	// the copy of +uid+ made by the critical section +builder+ is in, or the global itself
+	// outside of processes
+	private GoVariableName findCopy(GoBlockBuilder builder, UID uid) {
+		UID labelUID = findLabel(builder);
+		if (labelUID == null) {
+			return builder.findUID(uid);
+		}
+		Map<UID, GoVariableName> labelCopies = copies.get(labelUID);
+		if (!labelCopies.containsKey(uid)) {
+			throw new InternalCompilerError();
+		}
+		return labelCopies.get(uid);
+	}
+
+	@Override
+	public void print(GoBlockBuilder builder, GoExpression value) {
+		UID labelUID = findLabel(builder);
+		if (labelUID == null || !outputs.containsKey(labelUID)) {
+			super.print(builder, value);
+			return;
+		}
+		// values are formatted right away, since the copies they refer to may still change
+		GoVariableName output = outputs.get(labelUID);
+		builder.addImport("fmt");
+		builder.assign(output, new GoBinop(GoBinop.Operation.PLUS, output, new GoCall(
+				new GoSelectorExpression(new GoVariableName("fmt"), "Sprintf"),
+				Arrays.asList(new GoStringLiteral("%v\\n"), value))));
+	}
+
+	@Override
+	public GoExpression readGlobalVariable(GoBlockBuilder builder, UID uid) {
+		return findCopy(builder, uid);
+	}
+
+	@Override
+	public GlobalVariableWrite writeGlobalVariable(UID uid) {
+		return new GlobalVariableWrite() {
+			@Override
+			public GoExpression getValueSink(GoBlockBuilder builder) {
+				return findCopy(builder, uid);
+			}
+
+			@Override
+			public void writeAfter(GoBlockBuilder builder) {
+				// pass
+			}
+		};
+	}
+}
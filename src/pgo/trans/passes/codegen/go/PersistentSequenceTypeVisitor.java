@@ -0,0 +1,42 @@
+package pgo.trans.passes.codegen.go;
+
+import pgo.model.type.*;
+import pgo.scope.UID;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Marks every slice type as persistent, so that TypeConversionVisitor maps TLA+ sequences to the
+ * persistent sequences provided by the PGo runtime instead of Go slices.
+ */
+public class PersistentSequenceTypeVisitor extends TypeCopyVisitor {
+	private boolean foundSequences = false;
+
+	public boolean foundSequences() {
+		return foundSequences;
+	}
+
+	public Map<UID, Type> apply(Map<UID, Type> typeMap) {
+		Map<UID, Type> result = new HashMap<>();
+		typeMap.forEach((uid, type) -> result.put(uid, type.accept(this)));
+		return result;
+	}
+
+	@Override
+	public Type visit(SliceType sliceType) throws RuntimeException {
+		foundSequences = true;
+		return new SliceType(sliceType.getElementType().accept(this), sliceType.getOrigins(), true);
+	}
+
+	@Override
+	public Type visit(RecordType recordType) throws RuntimeException {
+		return new RecordType(
+				recordType.getFields()
+						.stream()
+						.map(f -> new RecordType.Field(f.getName(), f.getType().accept(this)))
+						.collect(Collectors.toList()),
+				recordType.getOrigins());
+	}
+}
@@ -1,10 +1,12 @@
 package pgo.trans.passes.codegen.go;
 
+import pgo.PGoCodeGenOptions;
 import pgo.PGoNetOptions;
 import pgo.PGoOptions;
 import pgo.Unreachable;
 import pgo.model.golang.GoModule;
 import pgo.model.golang.builder.GoModuleBuilder;
+import pgo.model.golang.type.GoSequenceType;
 import pgo.model.mpcal.ModularPlusCalBlock;
 import pgo.model.pcal.PlusCalProcesses;
 import pgo.model.pcal.PlusCalSingleProcess;
@@ -20,14 +22,24 @@ public class PlusCalGoCodeGenPass {
 	public static GoModule perform(DefinitionRegistry registry, Map<UID, Type> typeMap, PGoOptions opts,
 	                               ModularPlusCalBlock modularPlusCalBlock) {
 		GoModuleBuilder moduleBuilder = new GoModuleBuilder(modularPlusCalBlock.getName().getValue(), "main");
+		if (opts.codegen.sequences.equals(PGoCodeGenOptions.SEQUENCES_PERSISTENT)) {
+			PersistentSequenceTypeVisitor persistentSequences = new PersistentSequenceTypeVisitor();
+			typeMap = persistentSequences.apply(typeMap);
+			if (persistentSequences.foundSequences()) {
+				moduleBuilder.addImport(GoSequenceType.PACKAGE);
+			}
+		}
 		PlusCalProcesses processes = modularPlusCalBlock.getProcesses();
 		LocalVariableStrategy localStrategy = new DefaultLocalVariableStrategy();
 		GlobalVariableStrategy globalVariableStrategy;
 		if (processes instanceof PlusCalSingleProcess) {
 			globalVariableStrategy = new SingleThreadedProcessGlobalVariableStrategy();
+		} else if (!opts.net.isEnabled() && opts.codegen.atomicity.equals(PGoCodeGenOptions.ATOMICITY_OPTIMISTIC)) {
+			globalVariableStrategy = new OptimisticMultithreadedProcessGlobalVariableStrategy(
+					registry, typeMap, localStrategy, modularPlusCalBlock, opts.codegen.scheduler);
 		} else if (!opts.net.isEnabled()) {
 			globalVariableStrategy = new MultithreadedProcessGlobalVariableStrategy(
-					registry, typeMap, localStrategy, modularPlusCalBlock);
+					registry, typeMap, localStrategy, modularPlusCalBlock, opts.codegen.scheduler);
 		} else {
 			switch (opts.net.getStateOptions().strategy) {
 				case PGoNetOptions.StateOptions.STATE_ETCD:
@@ -132,18 +132,20 @@ public class PlusCalProcessesCodeGenVisitor extends PlusCalProcessesVisitor<Void
 			for (PlusCalVariableDeclaration variableDeclaration : modularPlusCalBlock.getVariables()) {
 				TLAExpression value = variableDeclaration.getValue();
 				GoType type = typeMap.get(variableDeclaration.getUID()).accept(new TypeConversionVisitor());
-				GoVariableName name = moduleBuilder.defineGlobal(
-						variableDeclaration.getUID(), variableDeclaration.getName().getValue(), type);
+				globalStrategy.defineGlobalVariable(
+						moduleBuilder, variableDeclaration.getUID(), variableDeclaration.getName().getValue(), type);
 				if (variableDeclaration.isSet()) {
-					initBuilder.assign(
-							name,
+					globalStrategy.initGlobalVariable(
+							initBuilder,
+							variableDeclaration.getUID(),
 							new GoIndexExpression(
 									value.accept(new TLAExpressionCodeGenVisitor(
 											initBuilder,registry, typeMap, localStrategy, globalStrategy)),
 									new GoIntLiteral(0)));
 				} else {
-					initBuilder.assign(
-							name,
+					globalStrategy.initGlobalVariable(
+							initBuilder,
+							variableDeclaration.getUID(),
 							value.accept(new TLAExpressionCodeGenVisitor(
 									initBuilder, registry, typeMap, localStrategy, globalStrategy)));
 				}
@@ -0,0 +1,120 @@
+package pgo.trans.passes.codegen.go;
+
+import pgo.Unreachable;
+import pgo.model.mpcal.ModularPlusCalYield;
+import pgo.model.pcal.*;
+import pgo.scope.UID;
+
+import java.util.List;
+import java.util.Set;
+
+// Collects the UIDs of the labels whose critical sections contain an await, i.e. the
+// labels whose critical sections may be aborted, and of those which print
+public class PlusCalStatementAwaitingLabelsVisitor extends PlusCalStatementVisitor<Void, RuntimeException> {
+	private Set<UID> awaitingLabels;
+	private Set<UID> printingLabels;
+	private UID currentLabel;
+
+	public PlusCalStatementAwaitingLabelsVisitor(Set<UID> awaitingLabels, Set<UID> printingLabels) {
+		this.awaitingLabels = awaitingLabels;
+		this.printingLabels = printingLabels;
+	}
+
+	private void visitAll(List<PlusCalStatement> statements) {
+		for (PlusCalStatement statement : statements) {
+			statement.accept(this);
+		}
+	}
+
+	@Override
+	public Void visit(PlusCalLabeledStatements plusCalLabeledStatements) throws RuntimeException {
+		UID previousLabel = currentLabel;
+		currentLabel = plusCalLabeledStatements.getLabel().getUID();
+		visitAll(plusCalLabeledStatements.getStatements());
+		currentLabel = previousLabel;
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalWhile plusCalWhile) throws RuntimeException {
+		visitAll(plusCalWhile.getBody());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalIf plusCalIf) throws RuntimeException {
+		visitAll(plusCalIf.getYes());
+		visitAll(plusCalIf.getNo());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalEither plusCalEither) throws RuntimeException {
+		for (List<PlusCalStatement> eitherCase : plusCalEither.getCases()) {
+			visitAll(eitherCase);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAssignment plusCalAssignment) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalReturn plusCalReturn) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalSkip plusCalSkip) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalCall plusCalCall) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalMacroCall macroCall) throws RuntimeException {
+		throw new Unreachable();
+	}
+
+	@Override
+	public Void visit(PlusCalWith plusCalWith) throws RuntimeException {
+		visitAll(plusCalWith.getBody());
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalPrint plusCalPrint) throws RuntimeException {
+		if (currentLabel != null) {
+			printingLabels.add(currentLabel);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAssert plusCalAssert) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalAwait plusCalAwait) throws RuntimeException {
+		if (currentLabel != null) {
+			awaitingLabels.add(currentLabel);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(PlusCalGoto plusCalGoto) throws RuntimeException {
+		return null;
+	}
+
+	@Override
+	public Void visit(ModularPlusCalYield modularPlusCalYield) throws RuntimeException {
+		return null;
+	}
+}
@@ -11,6 +11,7 @@ import pgo.model.tla.TLAExpression;
 import pgo.model.tla.TLAGeneralIdentifier;
 import pgo.model.type.Type;
 import pgo.scope.UID;
+import pgo.trans.intermediate.AtomicOperation;
 import pgo.trans.intermediate.DefinitionRegistry;
 import pgo.trans.passes.atomicity.PlusCalStatementAtomicityInferenceVisitor;
 
@@ -76,8 +77,8 @@ public class PlusCalStatementCodeGenVisitor extends PlusCalStatementVisitor<Void
 		// difficulties with intermediate variables and critical sections (if the condition is false
 		// we may have to end the critical section after checking the condition)
 		CriticalSectionTracker loopConditionCriticalSectionTracker = criticalSectionTracker.copy();
-		Consumer<GoBlockBuilder> actionAtLoopEnd = criticalSectionTracker.actionAtLoopEnd();
 		boolean loopBodyHasLabel = plusCalWhile.accept(new PlusCalStatementContainsLabelVisitor());
+		Consumer<GoBlockBuilder> actionAtLoopEnd = criticalSectionTracker.actionAtLoopEnd(loopBodyHasLabel);
 		try (GoBlockBuilder fb = builder.forLoop(null)) {
 			try(GoIfBuilder loopCondition = fb.ifStmt(CodeGenUtil.invertCondition(
 					fb, registry, typeMap, localStrategy, globalStrategy, plusCalWhile.getCondition()))) {
@@ -195,11 +196,12 @@ public class PlusCalStatementCodeGenVisitor extends PlusCalStatementVisitor<Void
 			}
 		}
 		// make copies of global variables which are written to
-		Map<GoVariableName, GoVariableName> globalVarNames = new HashMap<>();
+		Map<GoExpression, GoVariableName> globalVarNames = new HashMap<>();
 		for (UID varUID : registry.getVariableWritesInLockGroup(criticalSectionTracker.getCurrentLockGroup())) {
 			GoVariableName name = builder.findUID(varUID);
-			GoVariableName copyName = builder.varDecl(name.getName() + "Copy", name);
-			globalVarNames.put(name, copyName);
+			GoExpression value = globalStrategy.readGlobalVariable(builder, varUID);
+			GoVariableName copyName = builder.varDecl(name.getName() + "Copy", value);
+			globalVarNames.put(value, copyName);
 		}
 		// generate labels
 		List<GoLabelName> labels = new ArrayList<>();
@@ -278,6 +280,20 @@ public class PlusCalStatementCodeGenVisitor extends PlusCalStatementVisitor<Void
 
 	@Override
 	public Void visit(PlusCalAssignment plusCalAssignment) throws RuntimeException {
+		Optional<AtomicOperation> atomicOperation = registry.getAtomicOperation(criticalSectionTracker.getCurrentLabelUID());
+		if (atomicOperation.isPresent() && atomicOperation.get().getKind() == AtomicOperation.Kind.ADD &&
+				atomicOperation.get().getAssignmentUID().equals(plusCalAssignment.getUID())) {
+			// the label only adds to the variable, so only the amount added is computed
+			GoExpression delta = atomicOperation.get().getDelta().accept(
+					new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy));
+			if (atomicOperation.get().isNegated()) {
+				delta = delta instanceof GoIntLiteral
+						? new GoIntLiteral(-((GoIntLiteral) delta).getValue())
+						: new GoUnary(GoUnary.Operation.NEG, delta);
+			}
+			globalStrategy.incrementGlobalVariable(builder, atomicOperation.get().getVariableUID(), delta);
+			return null;
+		}
 		List<GoExpression> lhs = new ArrayList<>();
 		List<GoExpression> rhs = new ArrayList<>();
 		List<GlobalVariableStrategy.GlobalVariableWrite> lhsWrites = new ArrayList<>();
@@ -348,7 +364,7 @@ public class PlusCalStatementCodeGenVisitor extends PlusCalStatementVisitor<Void
 
 	@Override
 	public Void visit(PlusCalPrint plusCalPrint) throws RuntimeException {
-		builder.print(plusCalPrint.getValue().accept(
+		globalStrategy.print(builder, plusCalPrint.getValue().accept(
 				new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy)));
 		return null;
 	}
@@ -67,6 +67,14 @@ public class SnapshottingLocalVariableStrategy extends LocalVariableStrategy {
         };
     }
 
+    public void prepareLocalMutation(GoBlockBuilder builder, UID local) {
+        // nothing to do: mutations are applied to the copy
+    }
+
+    public void actionAbort(GoBlockBuilder builder, UID labelUID) {
+        // nothing to do: copies are discarded and taken again in the prelude
+    }
+
     public void actionPostlude(GoBlockBuilder builder, UID labelUID) {
         // assign the original locals to their potentially modified copies
         registry.getLocalsInLabel(labelUID).forEach(local -> {
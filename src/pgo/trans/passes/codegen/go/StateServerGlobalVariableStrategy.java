@@ -45,6 +45,15 @@ public class StateServerGlobalVariableStrategy extends GlobalVariableStrategy {
 		this.refsUID = new UID();
 	}
 
+	// defer metrics.Start()()
+	// exposes runtime metrics if the environment asks for it (see package pgo/metrics)
+	static void generateMetricsSetup(GoBlockBuilder builder) {
+		builder.addImport("pgo/metrics");
+		builder.deferStmt(new GoCall(
+				new GoCall(new GoSelectorExpression(new GoVariableName("metrics"), "Start"), Collections.emptyList()),
+				Collections.emptyList()));
+	}
+
 	static void generateProcessSwitch(Map<UID, Type> typeMap, ModularPlusCalBlock modularPlusCalBlock,
 	                                  GoBlockBuilder builder, GoVariableName processName,
 	                                  GoVariableName processArgument) {
@@ -103,6 +112,22 @@ public class StateServerGlobalVariableStrategy extends GlobalVariableStrategy {
 		}
 	}
 
+	// the distsys function creating the migration strategy given the address of the running node
+	private String migrationStrategy() {
+		switch (stateOptions.migration) {
+			case PGoNetOptions.StateOptions.MIGRATION_NEVER:
+				return "NeverMigrate";
+			case PGoNetOptions.StateOptions.MIGRATION_ALWAYS:
+				return "AlwaysMigrate";
+			case PGoNetOptions.StateOptions.MIGRATION_RANDOM:
+				return "NewRandomMigrate";
+			case PGoNetOptions.StateOptions.MIGRATION_ADAPTIVE:
+				return "NewAdaptiveMigrate";
+			default:
+				throw new Unreachable();
+		}
+	}
+
 	@Override
 	public void initPostlude(GoModuleBuilder moduleBuilder, GoBlockBuilder initBuilder) {
 		GoVariableName processName = moduleBuilder.defineGlobal(processNameUID, "processName", GoBuiltins.String);
@@ -147,7 +172,7 @@ public class StateServerGlobalVariableStrategy extends GlobalVariableStrategy {
 											}
 										}}),
 								new GoCall(
-										new GoSelectorExpression(new GoVariableName("distsys"), "NewRandomMigrate"),
+										new GoSelectorExpression(new GoVariableName("distsys"), migrationStrategy()),
 										Collections.singletonList(ipPort)))));
 		try (GoIfBuilder ifBuilder = initBuilder.ifStmt(new GoBinop(GoBinop.Operation.NEQ, err, GoBuiltins.Nil))) {
 			try (GoBlockBuilder yes = ifBuilder.whenTrue()) {
@@ -166,6 +191,7 @@ public class StateServerGlobalVariableStrategy extends GlobalVariableStrategy {
 
 	@Override
 	public void mainPrelude(GoBlockBuilder builder) {
+		generateMetricsSetup(builder);
 		GoVariableName err = findVariable(errUID);
 		builder.assign(
 				err,
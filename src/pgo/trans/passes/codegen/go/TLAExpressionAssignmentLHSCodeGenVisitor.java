@@ -1,18 +1,20 @@
 package pgo.trans.passes.codegen.go;
 
+import pgo.InternalCompilerError;
 import pgo.TODO;
 import pgo.Unreachable;
-import pgo.model.golang.GoExpression;
-import pgo.model.golang.GoVariableName;
+import pgo.model.golang.*;
 import pgo.model.golang.builder.GoBlockBuilder;
 import pgo.model.tla.*;
 import pgo.model.type.ArchetypeResourceCollectionType;
 import pgo.model.type.ArchetypeResourceType;
+import pgo.model.type.SliceType;
 import pgo.model.type.Type;
 import pgo.scope.UID;
 import pgo.trans.intermediate.DefinitionRegistry;
 import pgo.trans.passes.codegen.go.GlobalVariableStrategy.GlobalVariableWrite;
 
+import java.util.Arrays;
 import java.util.Map;
 
 public class TLAExpressionAssignmentLHSCodeGenVisitor extends TLAExpressionVisitor<GlobalVariableWrite, RuntimeException> {
@@ -64,6 +66,23 @@ public class TLAExpressionAssignmentLHSCodeGenVisitor extends TLAExpressionVisit
 			return globalStrategy.writeArchetypeResource(builder, tlaFunctionCall);
 		}
 
+		Type functionType = typeMap.get(tlaFunctionCall.getFunction().getUID());
+		if (functionType instanceof SliceType && ((SliceType) functionType).isPersistent()) {
+			return writePersistentSequenceElement(tlaFunctionCall, (SliceType) functionType);
+		}
+
+		// the function being assigned to is modified in place
+		TLAExpression root = tlaFunctionCall.getFunction();
+		while (root instanceof TLAFunctionCall) {
+			root = ((TLAFunctionCall) root).getFunction();
+		}
+		if (root instanceof TLAGeneralIdentifier) {
+			UID ref = registry.followReference(root.getUID());
+			if (registry.isLocalVariable(ref)) {
+				localStrategy.prepareLocalMutation(builder, ref);
+			}
+		}
+
 		GoExpression expression = tlaFunctionCall
 				.accept(new TLAExpressionCodeGenVisitor(builder, registry, typeMap, localStrategy, globalStrategy));
 		return new GlobalVariableWrite() {
@@ -79,6 +98,40 @@ public class TLAExpressionAssignmentLHSCodeGenVisitor extends TLAExpressionVisit
 		};
 	}
 
+	// persistent sequences cannot be modified in place: write the element to a temporary variable,
+	// then write seq.Set(index, temporary) back to wherever the sequence itself came from
+	private GlobalVariableWrite writePersistentSequenceElement(TLAFunctionCall tlaFunctionCall, SliceType sequenceType) {
+		if (tlaFunctionCall.getParams().size() != 1) {
+			throw new InternalCompilerError();
+		}
+
+		TLAExpressionCodeGenVisitor codegen = new TLAExpressionCodeGenVisitor(
+				builder, registry, typeMap, localStrategy, globalStrategy);
+		GoExpression sequence = tlaFunctionCall.getFunction().accept(codegen);
+		GoExpression index = new GoBinop(
+				GoBinop.Operation.MINUS,
+				tlaFunctionCall.getParams().get(0).accept(codegen),
+				new GoIntLiteral(1));
+		GlobalVariableWrite sequenceWrite = tlaFunctionCall.getFunction().accept(this);
+		GoVariableName element = builder.varDecl(
+				"element", sequenceType.getElementType().accept(new TypeConversionVisitor()));
+
+		return new GlobalVariableWrite() {
+			@Override
+			public GoExpression getValueSink(GoBlockBuilder builder) {
+				return element;
+			}
+
+			@Override
+			public void writeAfter(GoBlockBuilder builder) {
+				builder.assign(
+						sequenceWrite.getValueSink(builder),
+						new GoCall(new GoSelectorExpression(sequence, "Set"), Arrays.asList(index, element)));
+				sequenceWrite.writeAfter(builder);
+			}
+		};
+	}
+
 	@Override
 	public GlobalVariableWrite visit(TLABinOp tlaBinOp) throws RuntimeException {
 		throw new TODO();
@@ -3,9 +3,9 @@ package pgo.trans.passes.codegen.go;
 import pgo.InternalCompilerError;
 import pgo.TODO;
 import pgo.model.golang.*;
-import pgo.model.golang.builder.GoAnonymousFunctionBuilder;
 import pgo.model.golang.builder.GoBlockBuilder;
 import pgo.model.golang.builder.GoForRangeBuilder;
+import pgo.model.golang.type.GoSequenceType;
 import pgo.model.golang.type.GoSliceType;
 import pgo.model.golang.type.GoStructType;
 import pgo.model.golang.type.GoType;
@@ -67,9 +67,26 @@ public class TLAExpressionCodeGenVisitor extends TLAExpressionVisitor<GoExpressi
 				// useful for some internal codegen, not needed by user code
 				currentBuilder.linkUID(bound.getUID(), v);
 
+				// tuples represented as persistent sequences are read through Get
+				Type setType = typeMap.get(bound.getSet().getUID());
+				SliceType sequenceType = null;
+				if (setType instanceof SetType && ((SetType) setType).getElementType() instanceof SliceType &&
+						((SliceType) ((SetType) setType).getElementType()).isPersistent()) {
+					sequenceType = (SliceType) ((SetType) setType).getElementType();
+				}
+
 				List<TLAIdentifier> ids = bound.getIds();
 				for(int j = 0; j < ids.size(); ++j) {
-					GoVariableName name = currentBuilder.varDecl(ids.get(j).getId(), new GoIndexExpression(v, new GoIntLiteral(j)));
+					GoExpression element;
+					if (sequenceType != null) {
+						element = CodeGenUtil.sequenceElement(
+								v,
+								new GoIntLiteral(j),
+								sequenceType.getElementType().accept(new TypeConversionVisitor()));
+					} else {
+						element = new GoIndexExpression(v, new GoIntLiteral(j));
+					}
+					GoVariableName name = currentBuilder.varDecl(ids.get(j).getId(), element);
 					currentBuilder.linkUID(ids.get(j).getUID(), name);
 				}
 			} else {
@@ -101,7 +118,6 @@ public class TLAExpressionCodeGenVisitor extends TLAExpressionVisitor<GoExpressi
 
 		Type type = typeMap.get(tlaFunctionCall.getFunction().getUID());
 		if (type instanceof MapType) {
-			builder.addImport("sort");
 			GoExpression function = tlaFunctionCall.getFunction().accept(this);
 			List<GoExpression> params = new ArrayList<>();
 			for(TLAExpression param : tlaFunctionCall.getParams()) {
@@ -116,6 +132,8 @@ public class TLAExpressionCodeGenVisitor extends TLAExpressionVisitor<GoExpressi
 				if (keyType instanceof GoSliceType) {
 					GoType elementType = ((GoSliceType)keyType).getElementType();
 					key = builder.varDecl("key", new GoSliceLiteral(elementType, params));
+				} else if (keyType instanceof GoSequenceType) {
+					key = builder.varDecl("key", keyType.accept(new TLATupleCodeGenVisitor(params)));
 				} else if (keyType instanceof GoStructType) {
 					List<GoStructLiteralField> fields = new ArrayList<>();
 					for(GoExpression param : params) {
@@ -127,29 +145,24 @@ public class TLAExpressionCodeGenVisitor extends TLAExpressionVisitor<GoExpressi
 				}
 			}
 
-			GoAnonymousFunctionBuilder comparatorBuilder = builder.anonymousFunction();
-			GoVariableName i = comparatorBuilder.addArgument("i", GoBuiltins.Int);
-			comparatorBuilder.addReturn(GoBuiltins.Bool);
-			try (GoBlockBuilder comparatorBody = comparatorBuilder.getBlockBuilder()) {
-				comparatorBody.addStatement(
-						new GoReturn(Collections.singletonList(
-								new GoUnary(
-										GoUnary.Operation.NOT,
-										keyType.accept(new LessThanCodeGenVisitor(
-												comparatorBody,
-												new GoSelectorExpression(new GoIndexExpression(function, i), "key"),
-												key))))));
-			}
+			GoType entryType = ((GoSliceType) type.accept(new TypeConversionVisitor())).getElementType();
 			GoVariableName index = builder.varDecl("index", new GoCall(
-					new GoSelectorExpression(new GoVariableName("sort"), "Search"),
-					Arrays.asList(
-							new GoCall(new GoVariableName("len"), Collections.singletonList(function)),
-							comparatorBuilder.getFunction())));
+					ComparisonFunctions.search(builder, entryType, keyType, "key"),
+					Arrays.asList(function, key)));
 			return new GoSelectorExpression(new GoIndexExpression(function, index), "value");
 		} else if (type instanceof SliceType) {
 			if (tlaFunctionCall.getParams().size() != 1) {
 				throw new InternalCompilerError(); // slices fundamentally cannot be indexed by multiple parameters
 			}
+			if (((SliceType) type).isPersistent()) {
+				return CodeGenUtil.sequenceElement(
+						tlaFunctionCall.getFunction().accept(this),
+						new GoBinop(
+								GoBinop.Operation.MINUS,
+								tlaFunctionCall.getParams().get(0).accept(this),
+								new GoIntLiteral(1)),
+						((SliceType) type).getElementType().accept(new TypeConversionVisitor()));
+			}
 			return new GoIndexExpression(
 					tlaFunctionCall.getFunction().accept(this),
 					new GoBinop(
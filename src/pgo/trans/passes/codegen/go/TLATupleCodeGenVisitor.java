@@ -50,6 +50,11 @@ public class TLATupleCodeGenVisitor extends GoTypeVisitor<GoExpression, RuntimeE
 		return new GoSliceLiteral(sliceType.getElementType(), elements);
 	}
 
+	@Override
+	public GoExpression visit(GoSequenceType sequenceType) throws RuntimeException {
+		return new GoCall(new GoSelectorExpression(new GoVariableName("datatypes"), "NewSeq"), elements);
+	}
+
 	@Override
 	public GoExpression visit(GoChanType chanType) throws RuntimeException {
 		throw new TODO();
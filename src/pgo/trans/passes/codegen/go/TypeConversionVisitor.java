@@ -107,6 +107,9 @@ public class TypeConversionVisitor extends TypeVisitor<GoType, RuntimeException>
 
 	@Override
 	public GoType visit(SliceType sliceType) throws RuntimeException {
+		if (sliceType.isPersistent()) {
+			return new GoSequenceType(sliceType.getElementType().accept(this));
+		}
 		return new GoSliceType(sliceType.getElementType().accept(this));
 	}
 
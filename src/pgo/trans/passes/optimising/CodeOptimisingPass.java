@@ -0,0 +1,26 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.GoDeclaration;
+import pgo.model.golang.GoModule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Simplifies the code produced by the code generator: folds constants, shares repeated pure
+// subexpressions, propagates copies and removes the declarations made unnecessary by the
+// above. Each optimisation works on one function at a time, and leaves the bodies of
+// anonymous functions as they are. Finally, constant literals are moved out of the functions
+// that use them (see LiteralHoisting).
+public class CodeOptimisingPass {
+
+	private CodeOptimisingPass() {}
+
+	public static GoModule perform(GoModule module) {
+		List<GoDeclaration> decls = new ArrayList<>();
+		for(GoDeclaration decl : module.getDeclarations()) {
+			decls.add(decl.accept(new GoDeclarationOptimisingVisitor()));
+		}
+		return LiteralHoisting.perform(new GoModule(module.getName(), module.getPackage(), module.getImports(), decls));
+	}
+
+}
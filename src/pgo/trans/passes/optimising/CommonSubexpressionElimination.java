@@ -0,0 +1,191 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+
+import java.util.*;
+
+// Evaluates pure expressions that occur several times among the statements of a block only
+// once, storing them in a temporary variable declared right before the first statement that
+// uses them, e.g.
+//
+//     less := len(lhs) < len(rhs)       tmp := len(lhs)
+//     if len(lhs) == len(rhs) {    =>   tmp0 := len(rhs)
+//                                       less := tmp < tmp0
+//                                       if tmp == tmp0 {
+//
+// Only expressions that cannot panic or have side effects (see OptimisationUtil.isSafe),
+// and whose variables are never modified, are considered. Expressions nested in inner
+// blocks are not shared with the enclosing block, and blocks containing labels are left
+// alone, since a goto must not jump over a variable declaration.
+public class CommonSubexpressionElimination {
+
+	private CommonSubexpressionElimination() {}
+
+	public static GoFunctionDeclaration perform(GoFunctionDeclaration functionDeclaration) {
+		VariableUsage usage = VariableUsage.of(functionDeclaration);
+		Set<String> temporaries = new HashSet<>();
+
+		GoBlock body = (GoBlock) functionDeclaration.getBody().accept(
+				new GoStatementRewritingVisitor(new GoExpressionRewritingVisitor()) {
+					@Override
+					protected List<GoStatement> rewriteStatements(List<GoStatement> statements) {
+						return eliminate(usage, temporaries, super.rewriteStatements(statements));
+					}
+				});
+		return OptimisationUtil.withBody(functionDeclaration, body);
+	}
+
+	private static List<GoStatement> eliminate(VariableUsage usage, Set<String> temporaries,
+	                                           List<GoStatement> statements) {
+		if (statements.stream().anyMatch(s -> s instanceof GoLabel)) {
+			return statements;
+		}
+
+		List<GoStatement> result = new ArrayList<>(statements);
+		while (true) {
+			// count occurrences of candidate expressions, keeping the statement each one
+			// first appears in
+			Map<GoExpression, Integer> counts = new HashMap<>();
+			Map<GoExpression, Integer> firstStatement = new HashMap<>();
+			for (int i = 0; i < result.size(); i++) {
+				int index = i;
+				GoExpressionRewritingVisitor count = new GoExpressionRewritingVisitor() {
+					@Override
+					protected GoExpression rewrite(GoExpression e) {
+						if (isCandidate(usage, e)) {
+							counts.merge(e, 1, Integer::sum);
+							firstStatement.putIfAbsent(e, index);
+						}
+						return super.rewrite(e);
+					}
+				};
+				for (GoExpression expression : getShallowExpressions(result.get(i))) {
+					count.rewrite(expression);
+				}
+			}
+
+			// pick the largest repeated expression, so that its subexpressions are shared too
+			GoExpression common = null;
+			for (Map.Entry<GoExpression, Integer> entry : counts.entrySet()) {
+				if (entry.getValue() < 2) {
+					continue;
+				}
+				GoExpression candidate = entry.getKey();
+				if (common == null || size(candidate) > size(common) ||
+						(size(candidate) == size(common) && firstStatement.get(candidate) < firstStatement.get(common))) {
+					common = candidate;
+				}
+			}
+			if (common == null) {
+				return result;
+			}
+
+			GoVariableName temporary = new GoVariableName(OptimisationUtil.freshName(usage, temporaries, "tmp"));
+			GoExpression replaced = common;
+			GoExpressionRewritingVisitor replace = new GoExpressionRewritingVisitor() {
+				@Override
+				protected GoExpression rewrite(GoExpression e) {
+					return replaced.equals(e) ? temporary : super.rewrite(e);
+				}
+			};
+			int first = firstStatement.get(common);
+			for (int i = first; i < result.size(); i++) {
+				result.set(i, replaceShallowExpressions(result.get(i), replace));
+			}
+			result.add(first, new GoAssignmentStatement(
+					Collections.singletonList(temporary), true, Collections.singletonList(common)));
+		}
+	}
+
+	private static boolean isCandidate(VariableUsage usage, GoExpression expression) {
+		if (expression instanceof GoVariableName || !OptimisationUtil.isSafe(expression)) {
+			return false;
+		}
+		if (expression instanceof GoIntLiteral || expression instanceof GoStringLiteral ||
+				expression instanceof GoBuiltins.BuiltinConstant) {
+			return false;
+		}
+		List<String> variables = new ArrayList<>();
+		expression.accept(new GoExpressionRewritingVisitor() {
+			@Override
+			public GoExpression visit(GoVariableName v) throws RuntimeException {
+				variables.add(v.getName());
+				return v;
+			}
+
+			@Override
+			public GoExpression visit(GoCall call) throws RuntimeException {
+				// skip the name of the builtin (len, cap)
+				rewrite(call.getArguments());
+				return call;
+			}
+		});
+		return variables.stream().allMatch(usage::isImmutableLocal);
+	}
+
+	private static int size(GoExpression expression) {
+		int[] size = {0};
+		expression.accept(new GoExpressionRewritingVisitor() {
+			@Override
+			protected GoExpression rewrite(GoExpression e) {
+				if (e != null) {
+					size[0]++;
+				}
+				return super.rewrite(e);
+			}
+		});
+		return size[0] + 1;
+	}
+
+	// expressions evaluated by +statement+ itself, in the scope of the enclosing block
+	private static List<GoExpression> getShallowExpressions(GoStatement statement) {
+		if (statement instanceof GoAssignmentStatement) {
+			return ((GoAssignmentStatement) statement).getValues();
+		} else if (statement instanceof GoExpressionStatement) {
+			return Collections.singletonList(((GoExpressionStatement) statement).getExpression());
+		} else if (statement instanceof GoReturn) {
+			return ((GoReturn) statement).getValues();
+		} else if (statement instanceof GoIf && !hasInitialVariables((GoIf) statement)) {
+			return Collections.singletonList(((GoIf) statement).getCond());
+		} else if (statement instanceof GoVariableDeclarationStatement) {
+			GoExpression value = ((GoVariableDeclarationStatement) statement).getVariableDeclaration().getValue();
+			return value != null ? Collections.singletonList(value) : Collections.emptyList();
+		}
+		return Collections.emptyList();
+	}
+
+	private static GoStatement replaceShallowExpressions(GoStatement statement, GoExpressionRewritingVisitor replace) {
+		if (statement instanceof GoAssignmentStatement) {
+			GoAssignmentStatement assignment = (GoAssignmentStatement) statement;
+			List<GoExpression> values = new ArrayList<>();
+			for (GoExpression value : assignment.getValues()) {
+				values.add(replace.rewrite(value));
+			}
+			return new GoAssignmentStatement(assignment.getNames(), assignment.isDefinition(), values);
+		} else if (statement instanceof GoExpressionStatement) {
+			return new GoExpressionStatement(replace.rewrite(((GoExpressionStatement) statement).getExpression()));
+		} else if (statement instanceof GoReturn) {
+			List<GoExpression> values = new ArrayList<>();
+			for (GoExpression value : ((GoReturn) statement).getValues()) {
+				values.add(replace.rewrite(value));
+			}
+			return new GoReturn(values);
+		} else if (statement instanceof GoIf && !hasInitialVariables((GoIf) statement)) {
+			GoIf goIf = (GoIf) statement;
+			return new GoIf(replace.rewrite(goIf.getCond()), goIf.getInitialVariables(), goIf.getInitialExpression(),
+					goIf.getThen(), goIf.getElse());
+		} else if (statement instanceof GoVariableDeclarationStatement) {
+			GoVariableDeclaration declaration = ((GoVariableDeclarationStatement) statement).getVariableDeclaration();
+			if (declaration.getValue() == null) {
+				return statement;
+			}
+			return new GoVariableDeclarationStatement(new GoVariableDeclaration(
+					declaration.getName(), declaration.getType(), replace.rewrite(declaration.getValue())));
+		}
+		return statement;
+	}
+
+	private static boolean hasInitialVariables(GoIf goIf) {
+		return goIf.getInitialVariables() != null && !goIf.getInitialVariables().isEmpty();
+	}
+}
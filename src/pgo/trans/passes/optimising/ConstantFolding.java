@@ -0,0 +1,15 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.GoBlock;
+import pgo.model.golang.GoFunctionDeclaration;
+
+public class ConstantFolding {
+
+	private ConstantFolding() {}
+
+	public static GoFunctionDeclaration perform(GoFunctionDeclaration functionDeclaration) {
+		GoBlock body = (GoBlock) functionDeclaration.getBody().accept(
+				new GoStatementRewritingVisitor(new ConstantFoldingVisitor()));
+		return OptimisationUtil.withBody(functionDeclaration, body);
+	}
+}
@@ -0,0 +1,141 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+import pgo.trans.passes.codegen.go.GoExpressionStaticComparisonVisitor;
+
+// Evaluates operations whose operands are literals, and simplifies boolean operations with
+// a constant operand, e.g.
+//
+//     N - 1 + 1 < 2 * 3      =>  N - 1 + 1 < 6
+//     !!reflect.DeepEqual(a, b)  =>  reflect.DeepEqual(a, b)
+//     true && x              =>  x
+//
+// Operations that could fail at run time (division by zero) or whose result does not fit
+// in an int literal are left alone.
+public class ConstantFoldingVisitor extends GoExpressionRewritingVisitor {
+
+	private static boolean isBool(GoExpression expression) {
+		return GoBuiltins.True.equals(expression) || GoBuiltins.False.equals(expression);
+	}
+
+	private static GoExpression bool(boolean value) {
+		return value ? GoBuiltins.True : GoBuiltins.False;
+	}
+
+	private static GoExpression foldInts(GoBinop.Operation operation, int lhs, int rhs) {
+		try {
+			switch (operation) {
+				case PLUS:
+					return new GoIntLiteral(Math.addExact(lhs, rhs));
+				case MINUS:
+					return new GoIntLiteral(Math.subtractExact(lhs, rhs));
+				case TIMES:
+					return new GoIntLiteral(Math.multiplyExact(lhs, rhs));
+				case DIVIDE:
+					// Go and Java both truncate towards zero
+					return rhs == 0 || (lhs == Integer.MIN_VALUE && rhs == -1) ? null : new GoIntLiteral(lhs / rhs);
+				case MOD:
+					return rhs == 0 ? null : new GoIntLiteral(lhs % rhs);
+				case EQ:
+					return bool(lhs == rhs);
+				case NEQ:
+					return bool(lhs != rhs);
+				case LT:
+					return bool(lhs < rhs);
+				case LEQ:
+					return bool(lhs <= rhs);
+				case GT:
+					return bool(lhs > rhs);
+				case GEQ:
+					return bool(lhs >= rhs);
+				default:
+					return null;
+			}
+		} catch (ArithmeticException e) {
+			return null;
+		}
+	}
+
+	private static GoExpression foldEquality(GoBinop.Operation operation, GoExpression lhs, GoExpression rhs) {
+		boolean equal = lhs.accept(new GoExpressionStaticComparisonVisitor(rhs)) == 0;
+		switch (operation) {
+			case EQ:
+				return bool(equal);
+			case NEQ:
+				return bool(!equal);
+			default:
+				return null;
+		}
+	}
+
+	private static GoExpression foldBoolean(GoBinop.Operation operation, GoExpression lhs, GoExpression rhs) {
+		if (isBool(lhs)) {
+			boolean value = lhs.equals(GoBuiltins.True);
+			switch (operation) {
+				case AND:
+					return value ? rhs : GoBuiltins.False;
+				case OR:
+					return value ? GoBuiltins.True : rhs;
+			}
+		}
+		// the left-hand side is always evaluated, so it cannot be dropped
+		if (isBool(rhs)) {
+			boolean value = rhs.equals(GoBuiltins.True);
+			if (operation == GoBinop.Operation.AND && value) {
+				return lhs;
+			}
+			if (operation == GoBinop.Operation.OR && !value) {
+				return lhs;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public GoExpression visit(GoBinop binop) throws RuntimeException {
+		GoBinop rewritten = (GoBinop) super.visit(binop);
+		GoBinop.Operation operation = rewritten.getOperation();
+		GoExpression lhs = rewritten.getLHS();
+		GoExpression rhs = rewritten.getRHS();
+
+		GoExpression folded = null;
+		if (lhs instanceof GoIntLiteral && rhs instanceof GoIntLiteral) {
+			folded = foldInts(operation, ((GoIntLiteral) lhs).getValue(), ((GoIntLiteral) rhs).getValue());
+		} else if (lhs instanceof GoStringLiteral && rhs instanceof GoStringLiteral) {
+			if (operation == GoBinop.Operation.PLUS) {
+				folded = new GoStringLiteral(((GoStringLiteral) lhs).getValue() + ((GoStringLiteral) rhs).getValue());
+			} else {
+				folded = foldEquality(operation, lhs, rhs);
+			}
+		} else if (isBool(lhs) && isBool(rhs)) {
+			folded = foldEquality(operation, lhs, rhs);
+		}
+		if (folded == null && (operation == GoBinop.Operation.AND || operation == GoBinop.Operation.OR)) {
+			folded = foldBoolean(operation, lhs, rhs);
+		}
+
+		return folded != null ? folded : rewritten;
+	}
+
+	@Override
+	public GoExpression visit(GoUnary unary) throws RuntimeException {
+		GoUnary rewritten = (GoUnary) super.visit(unary);
+		GoExpression target = rewritten.getTarget();
+		switch (rewritten.getOperation()) {
+			case NOT:
+				if (isBool(target)) {
+					return bool(!target.equals(GoBuiltins.True));
+				}
+				if (target instanceof GoUnary && ((GoUnary) target).getOperation() == GoUnary.Operation.NOT) {
+					return ((GoUnary) target).getTarget();
+				}
+				break;
+			case NEG:
+				if (target instanceof GoIntLiteral && ((GoIntLiteral) target).getValue() != Integer.MIN_VALUE) {
+					return new GoIntLiteral(-((GoIntLiteral) target).getValue());
+				}
+				break;
+		}
+		return rewritten;
+	}
+}
@@ -0,0 +1,114 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+
+import java.util.*;
+
+// Replaces variables that are only ever a copy of another variable, or of a literal, by
+// that variable or literal, and removes their declarations, e.g.
+//
+//     exts := tmpSet0              ...
+//     sols = append(sols, exts...) => sols = append(sols, tmpSet0...)
+//
+// This only applies when neither variable is ever modified after the copy (see
+// VariableUsage), so both always hold the same value.
+public class CopyPropagation {
+
+	private CopyPropagation() {}
+
+	public static GoFunctionDeclaration perform(GoFunctionDeclaration functionDeclaration) {
+		VariableUsage usage = VariableUsage.of(functionDeclaration);
+
+		// duplicate constant keys in a map literal are a compile error, so variables used as
+		// keys are not replaced by literals
+		Set<String> mapKeys = new HashSet<>();
+		GoExpressionRewritingVisitor findMapKeys = new GoExpressionRewritingVisitor() {
+			@Override
+			public GoExpression visit(GoMapLiteral mapConstructor) throws RuntimeException {
+				for (GoExpression key : mapConstructor.getPairs().keySet()) {
+					if (key instanceof GoVariableName) {
+						mapKeys.add(((GoVariableName) key).getName());
+					}
+				}
+				return super.visit(mapConstructor);
+			}
+		};
+		functionDeclaration.getBody().accept(new GoStatementRewritingVisitor(findMapKeys));
+
+		Map<String, GoExpression> copies = new HashMap<>();
+		functionDeclaration.getBody().accept(new GoStatementRewritingVisitor(new GoExpressionRewritingVisitor()) {
+			@Override
+			protected List<GoStatement> rewriteStatements(List<GoStatement> statements) {
+				for (GoStatement statement : statements) {
+					GoExpression value = getPropagatedValue(usage, mapKeys, statement);
+					if (value != null) {
+						String name = ((GoVariableName) ((GoAssignmentStatement) statement).getNames().get(0)).getName();
+						copies.put(name, value);
+					}
+				}
+				return super.rewriteStatements(statements);
+			}
+		});
+		if (copies.isEmpty()) {
+			return functionDeclaration;
+		}
+
+		GoExpressionRewritingVisitor substitution = new GoExpressionRewritingVisitor() {
+			@Override
+			public GoExpression visit(GoVariableName v) throws RuntimeException {
+				GoExpression result = v;
+				// copies of copies
+				while (result instanceof GoVariableName && copies.containsKey(((GoVariableName) result).getName())) {
+					result = copies.get(((GoVariableName) result).getName());
+				}
+				return result;
+			}
+		};
+		GoBlock body = (GoBlock) functionDeclaration.getBody().accept(new GoStatementRewritingVisitor(substitution) {
+			@Override
+			protected List<GoStatement> rewriteStatements(List<GoStatement> statements) {
+				List<GoStatement> result = new ArrayList<>();
+				for (GoStatement statement : statements) {
+					if (getPropagatedValue(usage, mapKeys, statement) == null) {
+						result.add(rewrite(statement));
+					}
+				}
+				return result;
+			}
+		});
+		return OptimisationUtil.withBody(functionDeclaration, body);
+	}
+
+	// If +statement+ is a declaration name := value that can be propagated, returns value
+	private static GoExpression getPropagatedValue(VariableUsage usage, Set<String> mapKeys, GoStatement statement) {
+		if (!(statement instanceof GoAssignmentStatement)) {
+			return null;
+		}
+		GoAssignmentStatement assignment = (GoAssignmentStatement) statement;
+		if (!assignment.isDefinition() || assignment.getNames().size() != 1 || assignment.getValues().size() != 1) {
+			return null;
+		}
+		GoExpression name = assignment.getNames().get(0);
+		GoExpression value = assignment.getValues().get(0);
+		if (!(name instanceof GoVariableName)) {
+			return null;
+		}
+		String copy = ((GoVariableName) name).getName();
+		// the copy is not rewritten inside anonymous functions, so it has to stay if used there
+		if (!usage.isImmutableLocal(copy) || usage.isCaptured(copy)) {
+			return null;
+		}
+		if (value instanceof GoVariableName) {
+			String original = ((GoVariableName) value).getName();
+			return usage.isImmutableLocal(original) ? value : null;
+		}
+		if (mapKeys.contains(copy)) {
+			return null;
+		}
+		if (value instanceof GoIntLiteral || value instanceof GoStringLiteral ||
+				GoBuiltins.True.equals(value) || GoBuiltins.False.equals(value)) {
+			return value;
+		}
+		return null;
+	}
+}
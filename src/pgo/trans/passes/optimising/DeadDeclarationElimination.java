@@ -0,0 +1,63 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Removes declarations of variables that are never referenced and whose initial value has
+// no side effects, such as the temporaries left over by the other optimisations. Go rejects
+// programs with unused variables, so these must not survive to the generated code.
+public class DeadDeclarationElimination {
+
+	private DeadDeclarationElimination() {}
+
+	public static GoFunctionDeclaration perform(GoFunctionDeclaration functionDeclaration) {
+		// removing a declaration may leave the variables in its initial value unreferenced
+		while (true) {
+			VariableUsage usage = VariableUsage.of(functionDeclaration);
+			boolean[] changed = {false};
+			GoBlock body = (GoBlock) functionDeclaration.getBody().accept(
+					new GoStatementRewritingVisitor(new GoExpressionRewritingVisitor()) {
+						@Override
+						protected List<GoStatement> rewriteStatements(List<GoStatement> statements) {
+							List<GoStatement> result = new ArrayList<>();
+							for (GoStatement statement : super.rewriteStatements(statements)) {
+								if (isDead(usage, statement)) {
+									changed[0] = true;
+								} else {
+									result.add(statement);
+								}
+							}
+							return result;
+						}
+					});
+			if (!changed[0]) {
+				return functionDeclaration;
+			}
+			functionDeclaration = OptimisationUtil.withBody(functionDeclaration, body);
+		}
+	}
+
+	private static boolean isDead(VariableUsage usage, GoStatement statement) {
+		String name;
+		GoExpression value;
+		if (statement instanceof GoAssignmentStatement) {
+			GoAssignmentStatement assignment = (GoAssignmentStatement) statement;
+			if (!assignment.isDefinition() || assignment.getNames().size() != 1 ||
+					assignment.getValues().size() != 1 || !(assignment.getNames().get(0) instanceof GoVariableName)) {
+				return false;
+			}
+			name = ((GoVariableName) assignment.getNames().get(0)).getName();
+			value = assignment.getValues().get(0);
+		} else if (statement instanceof GoVariableDeclarationStatement) {
+			GoVariableDeclaration declaration = ((GoVariableDeclarationStatement) statement).getVariableDeclaration();
+			name = declaration.getName();
+			value = declaration.getValue();
+		} else {
+			return false;
+		}
+		return !name.equals("_") && usage.getReferenceCount(name) == 0 &&
+				(value == null || OptimisationUtil.isSideEffectFree(value));
+	}
+}
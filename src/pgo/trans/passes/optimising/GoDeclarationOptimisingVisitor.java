@@ -0,0 +1,27 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+
+public class GoDeclarationOptimisingVisitor extends GoDeclarationVisitor<GoDeclaration, RuntimeException> {
+
+	@Override
+	public GoDeclaration visit(GoFunctionDeclaration functionDeclaration) throws RuntimeException {
+		functionDeclaration = ConstantFolding.perform(functionDeclaration);
+		functionDeclaration = CommonSubexpressionElimination.perform(functionDeclaration);
+		// copies of literals may enable further folding
+		functionDeclaration = CopyPropagation.perform(functionDeclaration);
+		functionDeclaration = ConstantFolding.perform(functionDeclaration);
+		return DeadDeclarationElimination.perform(functionDeclaration);
+	}
+
+	@Override
+	public GoDeclaration visit(GoTypeDeclaration typeDeclaration) throws RuntimeException {
+		return typeDeclaration;
+	}
+
+	@Override
+	public GoDeclaration visit(GoVariableDeclaration variableDeclaration) throws RuntimeException {
+		return variableDeclaration;
+	}
+
+}
@@ -0,0 +1,119 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Rebuilds an expression bottom-up. Subclasses override the cases they rewrite, usually
+// calling the inherited implementation first so that subexpressions are rewritten too.
+//
+// The bodies of anonymous functions are left untouched.
+public class GoExpressionRewritingVisitor extends GoExpressionVisitor<GoExpression, RuntimeException> {
+
+	protected GoExpression rewrite(GoExpression expression) {
+		return expression == null ? null : expression.accept(this);
+	}
+
+	protected List<GoExpression> rewrite(List<GoExpression> expressions) {
+		List<GoExpression> result = new ArrayList<>();
+		for (GoExpression expression : expressions) {
+			result.add(rewrite(expression));
+		}
+		return result;
+	}
+
+	@Override
+	public GoExpression visit(GoVariableName v) throws RuntimeException {
+		return v;
+	}
+
+	@Override
+	public GoExpression visit(GoBuiltins.BuiltinConstant v) throws RuntimeException {
+		return v;
+	}
+
+	@Override
+	public GoExpression visit(GoIntLiteral intLiteral) throws RuntimeException {
+		return intLiteral;
+	}
+
+	@Override
+	public GoExpression visit(GoMapLiteral mapConstructor) throws RuntimeException {
+		Map<GoExpression, GoExpression> pairs = new LinkedHashMap<>();
+		mapConstructor.getPairs().forEach((k, v) -> pairs.put(rewrite(k), rewrite(v)));
+		return new GoMapLiteral(mapConstructor.getKeyType(), mapConstructor.getValueType(), pairs);
+	}
+
+	@Override
+	public GoExpression visit(GoStringLiteral stringLiteral) throws RuntimeException {
+		return stringLiteral;
+	}
+
+	@Override
+	public GoExpression visit(GoIndexExpression index) throws RuntimeException {
+		return new GoIndexExpression(rewrite(index.getTarget()), rewrite(index.getIndex()));
+	}
+
+	@Override
+	public GoExpression visit(GoSliceOperator slice) throws RuntimeException {
+		return new GoSliceOperator(
+				rewrite(slice.getTarget()), rewrite(slice.getLow()), rewrite(slice.getHigh()), rewrite(slice.getMax()));
+	}
+
+	@Override
+	public GoExpression visit(GoSliceLiteral sliceConstructor) throws RuntimeException {
+		return new GoSliceLiteral(sliceConstructor.getElementType(), rewrite(sliceConstructor.getInitializers()));
+	}
+
+	@Override
+	public GoExpression visit(GoTypeAssertion typeAssertion) throws RuntimeException {
+		return new GoTypeAssertion(rewrite(typeAssertion.getTarget()), typeAssertion.getType());
+	}
+
+	@Override
+	public GoExpression visit(GoAnonymousFunction anonymousFunction) throws RuntimeException {
+		return anonymousFunction;
+	}
+
+	@Override
+	public GoExpression visit(GoCall call) throws RuntimeException {
+		return new GoCall(rewrite(call.getTarget()), rewrite(call.getArguments()), call.hasEllipsis());
+	}
+
+	@Override
+	public GoExpression visit(GoTypeCast typeCast) throws RuntimeException {
+		return new GoTypeCast(typeCast.getTypeName(), rewrite(typeCast.getTarget()));
+	}
+
+	@Override
+	public GoExpression visit(GoStructLiteral structLiteral) throws RuntimeException {
+		List<GoStructLiteralField> fields = new ArrayList<>();
+		for (GoStructLiteralField field : structLiteral.getFields()) {
+			fields.add(new GoStructLiteralField(field.getName(), rewrite(field.getValue())));
+		}
+		return new GoStructLiteral(structLiteral.getType(), fields);
+	}
+
+	@Override
+	public GoExpression visit(GoBinop binop) throws RuntimeException {
+		return new GoBinop(binop.getOperation(), rewrite(binop.getLHS()), rewrite(binop.getRHS()));
+	}
+
+	@Override
+	public GoExpression visit(GoUnary unary) throws RuntimeException {
+		return new GoUnary(unary.getOperation(), rewrite(unary.getTarget()));
+	}
+
+	@Override
+	public GoExpression visit(GoSelectorExpression dot) throws RuntimeException {
+		return new GoSelectorExpression(rewrite(dot.getLHS()), dot.getName());
+	}
+
+	@Override
+	public GoExpression visit(GoMakeExpression make) throws RuntimeException {
+		return new GoMakeExpression(make.getType(), rewrite(make.getSize()), rewrite(make.getCapacity()));
+	}
+}
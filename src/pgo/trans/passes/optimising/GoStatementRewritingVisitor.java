@@ -0,0 +1,167 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Rebuilds a statement, rewriting every expression it contains with +expressionRewriter+
+// (anonymous function bodies excepted) and every list of statements with rewriteStatements,
+// which subclasses may override to transform whole blocks at once.
+public class GoStatementRewritingVisitor extends GoStatementVisitor<GoStatement, RuntimeException> {
+
+	private final GoExpressionVisitor<GoExpression, RuntimeException> expressionRewriter;
+
+	public GoStatementRewritingVisitor(GoExpressionVisitor<GoExpression, RuntimeException> expressionRewriter) {
+		this.expressionRewriter = expressionRewriter;
+	}
+
+	protected GoExpression rewrite(GoExpression expression) {
+		return expression == null ? null : expression.accept(expressionRewriter);
+	}
+
+	protected List<GoExpression> rewrite(List<GoExpression> expressions) {
+		List<GoExpression> result = new ArrayList<>();
+		for (GoExpression expression : expressions) {
+			result.add(rewrite(expression));
+		}
+		return result;
+	}
+
+	protected GoStatement rewrite(GoStatement statement) {
+		return statement == null ? null : statement.accept(this);
+	}
+
+	protected List<GoStatement> rewriteStatements(List<GoStatement> statements) {
+		List<GoStatement> result = new ArrayList<>();
+		for (GoStatement statement : statements) {
+			result.add(rewrite(statement));
+		}
+		return result;
+	}
+
+	protected GoBlock rewriteBlock(GoBlock block) {
+		return block == null ? null : new GoBlock(rewriteStatements(block.getStatements()));
+	}
+
+	@Override
+	public GoStatement visit(GoComment comment) throws RuntimeException {
+		return comment;
+	}
+
+	@Override
+	public GoStatement visit(GoAssignmentStatement assignment) throws RuntimeException {
+		return new GoAssignmentStatement(
+				rewrite(assignment.getNames()), assignment.isDefinition(), rewrite(assignment.getValues()));
+	}
+
+	@Override
+	public GoStatement visit(GoReturn goReturn) throws RuntimeException {
+		return new GoReturn(rewrite(goReturn.getValues()));
+	}
+
+	@Override
+	public GoStatement visit(GoBlock block) throws RuntimeException {
+		return rewriteBlock(block);
+	}
+
+	@Override
+	public GoStatement visit(GoFor goFor) throws RuntimeException {
+		return new GoFor(
+				rewrite(goFor.getInit()),
+				rewrite(goFor.getCondition()),
+				rewrite(goFor.getIncrement()),
+				rewriteBlock(goFor.getBody()));
+	}
+
+	@Override
+	public GoStatement visit(GoForRange forRange) throws RuntimeException {
+		return new GoForRange(
+				forRange.getLhs(),
+				forRange.isDefinition(),
+				rewrite(forRange.getRangeExpr()),
+				rewriteBlock(forRange.getBody()));
+	}
+
+	@Override
+	public GoStatement visit(GoIf goIf) throws RuntimeException {
+		return new GoIf(
+				rewrite(goIf.getCond()),
+				goIf.getInitialVariables(),
+				rewrite(goIf.getInitialExpression()),
+				rewriteBlock(goIf.getThen()),
+				rewriteBlock(goIf.getElse()));
+	}
+
+	@Override
+	public GoStatement visit(GoSwitch goSwitch) throws RuntimeException {
+		List<GoSwitchCase> cases = new ArrayList<>();
+		for (GoSwitchCase c : goSwitch.getCases()) {
+			if (c.isTypeCase()) {
+				cases.add(new GoSwitchCase(c.getType(), rewriteStatements(c.getBlock())));
+			} else {
+				cases.add(new GoSwitchCase(rewrite(c.getCondition()), rewriteStatements(c.getBlock())));
+			}
+		}
+		return new GoSwitch(
+				rewrite(goSwitch.getCondition()),
+				cases,
+				goSwitch.getDefaultBlock() != null ? rewriteStatements(goSwitch.getDefaultBlock()) : null);
+	}
+
+	@Override
+	public GoStatement visit(GoLabel label) throws RuntimeException {
+		return label;
+	}
+
+	@Override
+	public GoStatement visit(GoSelect select) throws RuntimeException {
+		List<GoSelectCase> cases = new ArrayList<>();
+		for (GoSelectCase c : select.getCases()) {
+			cases.add(new GoSelectCase(rewrite(c.getCondition()), rewriteStatements(c.getBlock())));
+		}
+		return new GoSelect(cases);
+	}
+
+	@Override
+	public GoStatement visit(GoTo goTo) throws RuntimeException {
+		return goTo;
+	}
+
+	@Override
+	public GoStatement visit(GoIncDec incDec) throws RuntimeException {
+		return new GoIncDec(incDec.isInc(), rewrite(incDec.getExpression()));
+	}
+
+	@Override
+	public GoStatement visit(GoExpressionStatement expressionStatement) throws RuntimeException {
+		return new GoExpressionStatement(rewrite(expressionStatement.getExpression()));
+	}
+
+	@Override
+	public GoStatement visit(GoBreak break1) throws RuntimeException {
+		return break1;
+	}
+
+	@Override
+	public GoStatement visit(GoContinue continue1) throws RuntimeException {
+		return continue1;
+	}
+
+	@Override
+	public GoStatement visit(GoDefer defer) throws RuntimeException {
+		return new GoDefer(rewrite(defer.getExpression()));
+	}
+
+	@Override
+	public GoStatement visit(GoRoutineStatement go) throws RuntimeException {
+		return new GoRoutineStatement(rewrite(go.getExpression()));
+	}
+
+	@Override
+	public GoStatement visit(GoVariableDeclarationStatement variableDeclarationStatement) throws RuntimeException {
+		GoVariableDeclaration declaration = variableDeclarationStatement.getVariableDeclaration();
+		return new GoVariableDeclarationStatement(new GoVariableDeclaration(
+				declaration.getName(), declaration.getType(), rewrite(declaration.getValue())));
+	}
+}
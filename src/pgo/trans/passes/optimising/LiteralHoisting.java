@@ -0,0 +1,250 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+import pgo.model.golang.type.GoMapType;
+import pgo.model.golang.type.GoSliceType;
+import pgo.model.golang.type.GoType;
+
+import java.util.*;
+
+// Moves slice, map and struct literals whose contents are fixed (they only contain
+// literals and TLA+ constants) to package-level variables, initialised once in an init
+// function that runs after the constants are defined, e.g.
+//
+//     for {                                  var pgoLiteral []int
+//         for _, x := range []int{1, 2, 3} {  func init() { pgoLiteral = []int{1, 2, 3} }
+//                                       =>   for {
+//                                                for _, x := range pgoLiteral {
+//
+// Since the same value is then shared by every evaluation, only literals in read-only
+// positions (see ReadOnlyContextVisitor) are hoisted, including arguments of functions
+// that only read them. A literal that escapes anywhere else would need to be copied at
+// every use, which costs as much as building it, so it is left as is. Struct literals are
+// only hoisted if they contain slices or maps, since Go does not allocate them otherwise.
+//
+// Package-level variables count as constants if they are only assigned in init functions.
+public class LiteralHoisting {
+
+	private LiteralHoisting() {}
+
+	public static GoModule perform(GoModule module) {
+		List<GoFunctionDeclaration> functions = new ArrayList<>();
+		Map<String, GoType> packageVariables = new HashMap<>();
+		Set<String> taken = new HashSet<>();
+		for (GoDeclaration declaration : module.getDeclarations()) {
+			if (declaration instanceof GoFunctionDeclaration) {
+				functions.add((GoFunctionDeclaration) declaration);
+				taken.add(((GoFunctionDeclaration) declaration).getName());
+			} else if (declaration instanceof GoVariableDeclaration) {
+				GoVariableDeclaration variable = (GoVariableDeclaration) declaration;
+				packageVariables.put(variable.getName(), variable.getType());
+				taken.add(variable.getName());
+			} else if (declaration instanceof GoTypeDeclaration) {
+				taken.add(((GoTypeDeclaration) declaration).getName());
+			}
+		}
+
+		Map<GoFunctionDeclaration, VariableUsage> usages = new IdentityHashMap<>();
+		for (GoFunctionDeclaration function : functions) {
+			usages.put(function, VariableUsage.of(function));
+		}
+
+		Map<String, GoType> constants = new HashMap<>(packageVariables);
+		for (GoFunctionDeclaration function : functions) {
+			if (isInit(function)) {
+				continue;
+			}
+			VariableUsage usage = usages.get(function);
+			constants.keySet().removeIf(name -> !usage.isDeclared(name) && usage.isMutated(name));
+		}
+
+		Map<String, boolean[]> readOnlyParameters = findReadOnlyParameters(functions, usages);
+
+		Map<GoExpression, GoVariableName> hoisted = new LinkedHashMap<>();
+		List<GoDeclaration> declarations = new ArrayList<>();
+		for (GoDeclaration declaration : module.getDeclarations()) {
+			if (!(declaration instanceof GoFunctionDeclaration) || isInit((GoFunctionDeclaration) declaration)) {
+				declarations.add(declaration);
+				continue;
+			}
+			GoFunctionDeclaration function = (GoFunctionDeclaration) declaration;
+			VariableUsage usage = usages.get(function);
+			Map<String, GoType> visible = new HashMap<>();
+			for (Map.Entry<String, GoType> constant : constants.entrySet()) {
+				if (!usage.isDeclared(constant.getKey())) {
+					visible.put(constant.getKey(), constant.getValue());
+				}
+			}
+			ReadOnlyContextVisitor hoist = new ReadOnlyContextVisitor(visible, readOnlyParameters) {
+				private GoExpression hoist(GoExpression literal) {
+					if (!isReadOnly() || !allocates(literal) || !isClosed(visible.keySet(), literal)) {
+						return null;
+					}
+					return hoisted.computeIfAbsent(literal, l -> {
+						String name = "pgoLiteral";
+						for (int i = 0; taken.contains(name) || isNameUsed(usages.values(), name); i++) {
+							name = "pgoLiteral" + i;
+						}
+						taken.add(name);
+						return new GoVariableName(name);
+					});
+				}
+
+				@Override
+				public GoExpression visit(GoSliceLiteral sliceConstructor) throws RuntimeException {
+					GoExpression result = hoist(sliceConstructor);
+					return result != null ? result : super.visit(sliceConstructor);
+				}
+
+				@Override
+				public GoExpression visit(GoMapLiteral mapConstructor) throws RuntimeException {
+					GoExpression result = hoist(mapConstructor);
+					return result != null ? result : super.visit(mapConstructor);
+				}
+
+				@Override
+				public GoExpression visit(GoStructLiteral structLiteral) throws RuntimeException {
+					GoExpression result = hoist(structLiteral);
+					return result != null ? result : super.visit(structLiteral);
+				}
+			};
+			declarations.add(OptimisationUtil.withBody(function, hoist.rewriteBody(function.getBody())));
+		}
+		if (hoisted.isEmpty()) {
+			return module;
+		}
+
+		// the hoisted variables are declared after the other package-level variables, and
+		// initialised after the existing init functions, which define the constants
+		int lastVariable = -1;
+		int lastInit = -1;
+		for (int i = 0; i < declarations.size(); i++) {
+			if (declarations.get(i) instanceof GoVariableDeclaration) {
+				lastVariable = i;
+			} else if (declarations.get(i) instanceof GoFunctionDeclaration &&
+					isInit((GoFunctionDeclaration) declarations.get(i))) {
+				lastInit = i;
+			}
+		}
+		List<GoStatement> initialisation = new ArrayList<>();
+		List<GoDeclaration> variables = new ArrayList<>();
+		for (Map.Entry<GoExpression, GoVariableName> entry : hoisted.entrySet()) {
+			variables.add(new GoVariableDeclaration(entry.getValue().getName(), typeOf(entry.getKey()), null));
+			initialisation.add(new GoAssignmentStatement(
+					Collections.singletonList(entry.getValue()), false, Collections.singletonList(entry.getKey())));
+		}
+		declarations.add(Math.max(lastVariable, lastInit) + 1, new GoFunctionDeclaration(
+				"init", null, Collections.emptyList(), Collections.emptyList(), new GoBlock(initialisation)));
+		declarations.addAll(lastVariable + 1, variables);
+		return new GoModule(module.getName(), module.getPackage(), module.getImports(), declarations);
+	}
+
+	// For each function, which of its parameters it only reads. A parameter is read-only if
+	// it is never modified, and every reference to it is in a read-only position, which
+	// includes being passed as a read-only argument to another function; this is iterated
+	// until no more parameters are found to be read-only.
+	private static Map<String, boolean[]> findReadOnlyParameters(List<GoFunctionDeclaration> functions,
+	                                                             Map<GoFunctionDeclaration, VariableUsage> usages) {
+		Map<String, Long> nameCounts = new HashMap<>();
+		for (GoFunctionDeclaration function : functions) {
+			nameCounts.merge(function.getName(), 1L, Long::sum);
+		}
+
+		Map<String, boolean[]> readOnlyParameters = new HashMap<>();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (GoFunctionDeclaration function : functions) {
+				if (function.getReceiver() != null || nameCounts.get(function.getName()) != 1) {
+					continue;
+				}
+				VariableUsage usage = usages.get(function);
+				Map<String, GoType> types = new HashMap<>();
+				for (GoFunctionParameter parameter : function.getArguments()) {
+					if (parameter.getName() != null) {
+						types.put(parameter.getName(), parameter.getType());
+					}
+				}
+				Set<String> escaping = new HashSet<>();
+				new ReadOnlyContextVisitor(types, readOnlyParameters) {
+					@Override
+					public GoExpression visit(GoVariableName v) throws RuntimeException {
+						if (!isReadOnly()) {
+							escaping.add(v.getName());
+						}
+						return v;
+					}
+				}.rewriteBody(function.getBody());
+
+				List<GoFunctionParameter> parameters = function.getArguments();
+				boolean[] readOnly = new boolean[parameters.size()];
+				for (int i = 0; i < parameters.size(); i++) {
+					String name = parameters.get(i).getName();
+					readOnly[i] = name != null && usage.isLocal(name) && !usage.isMutated(name) &&
+							!usage.isCaptured(name) && !escaping.contains(name);
+				}
+				if (!Arrays.equals(readOnly, readOnlyParameters.get(function.getName()))) {
+					readOnlyParameters.put(function.getName(), readOnly);
+					changed = true;
+				}
+			}
+		}
+		return readOnlyParameters;
+	}
+
+	// whether +expression+ only depends on literals and +constants+, and evaluating it has no
+	// side effects and cannot panic
+	private static boolean isClosed(Set<String> constants, GoExpression expression) {
+		if (expression instanceof GoSliceLiteral) {
+			return ((GoSliceLiteral) expression).getInitializers().stream().allMatch(e -> isClosed(constants, e));
+		} else if (expression instanceof GoStructLiteral) {
+			return ((GoStructLiteral) expression).getFields().stream().allMatch(f -> isClosed(constants, f.getValue()));
+		} else if (expression instanceof GoMapLiteral) {
+			return ((GoMapLiteral) expression).getPairs().entrySet().stream()
+					.allMatch(e -> isClosed(constants, e.getKey()) && isClosed(constants, e.getValue()));
+		} else if (!OptimisationUtil.isSafe(expression)) {
+			return false;
+		}
+		boolean[] closed = {true};
+		expression.accept(new GoExpressionRewritingVisitor() {
+			@Override
+			public GoExpression visit(GoVariableName v) throws RuntimeException {
+				closed[0] &= constants.contains(v.getName());
+				return v;
+			}
+
+			@Override
+			public GoExpression visit(GoCall call) throws RuntimeException {
+				// the name of the builtin (len, cap)
+				rewrite(call.getArguments());
+				return call;
+			}
+		});
+		return closed[0];
+	}
+
+	private static boolean allocates(GoExpression literal) {
+		if (literal instanceof GoStructLiteral) {
+			return ((GoStructLiteral) literal).getFields().stream().anyMatch(f -> allocates(f.getValue()));
+		}
+		return literal instanceof GoSliceLiteral || literal instanceof GoMapLiteral;
+	}
+
+	private static GoType typeOf(GoExpression literal) {
+		if (literal instanceof GoSliceLiteral) {
+			return new GoSliceType(((GoSliceLiteral) literal).getElementType());
+		} else if (literal instanceof GoMapLiteral) {
+			GoMapLiteral map = (GoMapLiteral) literal;
+			return new GoMapType(map.getKeyType(), map.getValueType());
+		}
+		return ((GoStructLiteral) literal).getType();
+	}
+
+	private static boolean isInit(GoFunctionDeclaration function) {
+		return function.getName().equals("init") && function.getReceiver() == null;
+	}
+
+	private static boolean isNameUsed(Collection<VariableUsage> usages, String name) {
+		return usages.stream().anyMatch(usage -> usage.isNameUsed(name));
+	}
+}
@@ -0,0 +1,94 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+
+import java.util.Arrays;
+import java.util.Set;
+
+public class OptimisationUtil {
+
+	private OptimisationUtil() {}
+
+	static GoFunctionDeclaration withBody(GoFunctionDeclaration functionDeclaration, GoBlock body) {
+		return new GoFunctionDeclaration(
+				functionDeclaration.getName(),
+				functionDeclaration.getReceiver(),
+				functionDeclaration.getArguments(),
+				functionDeclaration.getReturnTypes(),
+				body);
+	}
+
+	// Whether evaluating +expression+ can neither panic nor have side effects, so that it
+	// can be evaluated earlier, or not at all, without changing the program. Expressions
+	// reading memory through pointers, indices or selectors are excluded, since they may
+	// panic (and selectors may dereference pointers implicitly), and so are equality tests,
+	// which panic when comparing interfaces holding values that are not comparable.
+	static boolean isSafe(GoExpression expression) {
+		if (expression instanceof GoVariableName ||
+				expression instanceof GoIntLiteral ||
+				expression instanceof GoStringLiteral ||
+				expression instanceof GoBuiltins.BuiltinConstant) {
+			return true;
+		} else if (expression instanceof GoBinop) {
+			GoBinop binop = (GoBinop) expression;
+			switch (binop.getOperation()) {
+				case EQ:
+				case NEQ:
+				case DIVIDE:
+				case MOD:
+				case LSHIFT:
+				case RSHIFT:
+					return false;
+				default:
+					return isSafe(binop.getLHS()) && isSafe(binop.getRHS());
+			}
+		} else if (expression instanceof GoUnary) {
+			GoUnary unary = (GoUnary) expression;
+			switch (unary.getOperation()) {
+				case POS:
+				case NEG:
+				case NOT:
+				case COMPLEMENT:
+					return isSafe(unary.getTarget());
+				default:
+					return false;
+			}
+		} else if (expression instanceof GoCall) {
+			GoCall call = (GoCall) expression;
+			return call.getTarget() instanceof GoVariableName &&
+					Arrays.asList("len", "cap").contains(((GoVariableName) call.getTarget()).getName()) &&
+					call.getArguments().size() == 1 &&
+					call.getArguments().get(0) instanceof GoVariableName;
+		}
+		return false;
+	}
+
+	// Like isSafe, additionally allowing expressions that allocate, which may be dropped
+	// when their result is unused. This includes closures, which only run when called.
+	static boolean isSideEffectFree(GoExpression expression) {
+		if (isSafe(expression) || expression instanceof GoAnonymousFunction) {
+			return true;
+		} else if (expression instanceof GoSliceLiteral) {
+			return ((GoSliceLiteral) expression).getInitializers().stream()
+					.allMatch(OptimisationUtil::isSideEffectFree);
+		} else if (expression instanceof GoStructLiteral) {
+			return ((GoStructLiteral) expression).getFields().stream()
+					.allMatch(f -> isSideEffectFree(f.getValue()));
+		} else if (expression instanceof GoMapLiteral) {
+			return ((GoMapLiteral) expression).getPairs().entrySet().stream()
+					.allMatch(e -> isSideEffectFree(e.getKey()) && isSideEffectFree(e.getValue()));
+		}
+		return false;
+	}
+
+	static String freshName(VariableUsage usage, Set<String> taken, String nameHint) {
+		String name = nameHint;
+		int count = 0;
+		while (usage.isNameUsed(name) || taken.contains(name)) {
+			name = nameHint + count;
+			++count;
+		}
+		taken.add(name);
+		return name;
+	}
+}
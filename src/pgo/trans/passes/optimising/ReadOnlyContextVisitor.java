@@ -0,0 +1,163 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+import pgo.model.golang.type.*;
+import pgo.trans.passes.codegen.go.CodeGenUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Rewrites the expressions of a function body while keeping track of whether the value of
+// the expression being rewritten is only read, i.e. neither it nor anything reachable
+// from it can be modified, stored or returned from that position. Subclasses check
+// isReadOnly() when visiting the expressions they are interested in.
+//
+// The read-only positions are the operands of operators, the arguments of len and cap,
+// the arguments of functions passed in +readOnlyParameters+, and the targets of index
+// expressions that are themselves read-only. Ranging over, copying from or spreading a
+// slice into append are read-only when the elements are values (see CodeGenUtil.isValueType), since
+// the elements are copied out. Every other position, e.g. the right-hand side of an
+// assignment, is conservatively assumed to let the value escape.
+public abstract class ReadOnlyContextVisitor extends GoExpressionRewritingVisitor {
+
+	private final Map<String, GoType> types;
+	private final Map<String, boolean[]> readOnlyParameters;
+	private boolean readOnly = false;
+
+	// +types+ gives the types of the variables whose elements may be read through index
+	// expressions, and +readOnlyParameters+ marks, for each function, the arguments that
+	// the function only reads
+	protected ReadOnlyContextVisitor(Map<String, GoType> types, Map<String, boolean[]> readOnlyParameters) {
+		this.types = types;
+		this.readOnlyParameters = readOnlyParameters;
+	}
+
+	protected boolean isReadOnly() {
+		return readOnly;
+	}
+
+	@Override
+	protected GoExpression rewrite(GoExpression expression) {
+		return rewrite(expression, false);
+	}
+
+	protected GoExpression rewrite(GoExpression expression, boolean readOnly) {
+		boolean saved = this.readOnly;
+		this.readOnly = readOnly;
+		try {
+			return super.rewrite(expression);
+		} finally {
+			this.readOnly = saved;
+		}
+	}
+
+	public GoBlock rewriteBody(GoBlock body) {
+		return (GoBlock) body.accept(new GoStatementRewritingVisitor(this) {
+			@Override
+			public GoStatement visit(GoForRange forRange) throws RuntimeException {
+				List<GoExpression> lhs = forRange.getLhs();
+				boolean valueUnused = lhs.size() < 2 ||
+						(lhs.get(1) instanceof GoVariableName && ((GoVariableName) lhs.get(1)).getName().equals("_"));
+				return new GoForRange(
+						lhs,
+						forRange.isDefinition(),
+						ReadOnlyContextVisitor.this.rewrite(
+								forRange.getRangeExpr(), valueUnused || hasValueElements(forRange.getRangeExpr())),
+						rewriteBlock(forRange.getBody()));
+			}
+		});
+	}
+
+	@Override
+	public GoExpression visit(GoIndexExpression index) throws RuntimeException {
+		return new GoIndexExpression(
+				rewrite(index.getTarget(), readOnly || hasValueElements(index.getTarget())),
+				rewrite(index.getIndex(), true));
+	}
+
+	@Override
+	public GoExpression visit(GoCall call) throws RuntimeException {
+		List<GoExpression> arguments = call.getArguments();
+		boolean[] readOnlyArguments = new boolean[arguments.size()];
+		if (call.getTarget() instanceof GoVariableName) {
+			String name = ((GoVariableName) call.getTarget()).getName();
+			switch (name) {
+				case "len":
+				case "cap":
+					Arrays.fill(readOnlyArguments, true);
+					break;
+				case "copy":
+					if (arguments.size() == 2) {
+						readOnlyArguments[1] = hasValueElements(arguments.get(1));
+					}
+					break;
+				case "append":
+					if (call.hasEllipsis() && arguments.size() == 2) {
+						readOnlyArguments[1] = hasValueElements(arguments.get(1));
+					}
+					break;
+				default:
+					if (readOnlyParameters.containsKey(name) && readOnlyParameters.get(name).length == arguments.size()) {
+						readOnlyArguments = readOnlyParameters.get(name);
+					}
+			}
+		}
+		List<GoExpression> rewritten = new ArrayList<>();
+		for (int i = 0; i < arguments.size(); i++) {
+			rewritten.add(rewrite(arguments.get(i), readOnlyArguments[i]));
+		}
+		return new GoCall(rewrite(call.getTarget()), rewritten, call.hasEllipsis());
+	}
+
+	@Override
+	public GoExpression visit(GoBinop binop) throws RuntimeException {
+		return new GoBinop(binop.getOperation(), rewrite(binop.getLHS(), true), rewrite(binop.getRHS(), true));
+	}
+
+	@Override
+	public GoExpression visit(GoUnary unary) throws RuntimeException {
+		switch (unary.getOperation()) {
+			case POS:
+			case NEG:
+			case NOT:
+			case COMPLEMENT:
+				return new GoUnary(unary.getOperation(), rewrite(unary.getTarget(), true));
+			default:
+				return super.visit(unary);
+		}
+	}
+
+	private boolean hasValueElements(GoExpression expression) {
+		GoType type = typeOf(expression);
+		if (type instanceof GoSliceType) {
+			return CodeGenUtil.isValueType(((GoSliceType) type).getElementType());
+		} else if (type instanceof GoMapType) {
+			return CodeGenUtil.isValueType(((GoMapType) type).getValueType());
+		}
+		return false;
+	}
+
+	// the type of +expression+, if it can be determined without type inference
+	private GoType typeOf(GoExpression expression) {
+		if (expression instanceof GoVariableName) {
+			return types.get(((GoVariableName) expression).getName());
+		} else if (expression instanceof GoSliceLiteral) {
+			return new GoSliceType(((GoSliceLiteral) expression).getElementType());
+		} else if (expression instanceof GoMapLiteral) {
+			GoMapLiteral map = (GoMapLiteral) expression;
+			return new GoMapType(map.getKeyType(), map.getValueType());
+		} else if (expression instanceof GoStructLiteral) {
+			return ((GoStructLiteral) expression).getType();
+		} else if (expression instanceof GoIndexExpression) {
+			GoType type = typeOf(((GoIndexExpression) expression).getTarget());
+			if (type instanceof GoSliceType) {
+				return ((GoSliceType) type).getElementType();
+			} else if (type instanceof GoMapType) {
+				return ((GoMapType) type).getValueType();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,221 @@
+package pgo.trans.passes.optimising;
+
+import pgo.model.golang.*;
+
+import java.util.*;
+
+// Conservative facts about how the variables of one function are used, which the
+// optimisations rely on to decide whether a rewrite preserves the meaning of the function.
+//
+// A variable is considered mutated if it is assigned to (as a whole or in part), incremented,
+// has its address taken, is passed to a function that may modify it (e.g., delete on a map)
+// or is the receiver of a method call. Anonymous function bodies are included in the
+// analysis, so writes performed by closures and goroutines are accounted for.
+public class VariableUsage {
+
+	private final Map<String, Integer> references = new HashMap<>();
+	private final Map<String, Integer> declarations = new HashMap<>();
+	private final Set<String> mutated = new HashSet<>();
+	private final Set<String> captured = new HashSet<>();
+
+	private int anonymousFunctionDepth = 0;
+
+	private VariableUsage() {}
+
+	public static VariableUsage of(GoFunctionDeclaration functionDeclaration) {
+		VariableUsage usage = new VariableUsage();
+		if (functionDeclaration.getReceiver() != null) {
+			usage.declare(functionDeclaration.getReceiver().getName());
+		}
+		for (GoFunctionParameter parameter : functionDeclaration.getArguments()) {
+			usage.declare(parameter.getName());
+		}
+		for (GoFunctionParameter returnValue : functionDeclaration.getReturnTypes()) {
+			usage.declare(returnValue.getName());
+		}
+		functionDeclaration.getBody().accept(usage.new StatementWalker());
+		return usage;
+	}
+
+	// the variable named +name+ is declared exactly once in this function, so every
+	// reference to that name refers to the same variable
+	public boolean isLocal(String name) {
+		return declarations.getOrDefault(name, 0) == 1;
+	}
+
+	// whether +name+ is declared anywhere in this function, shadowing any package-level
+	// variable with the same name
+	public boolean isDeclared(String name) {
+		return declarations.containsKey(name);
+	}
+
+	public boolean isMutated(String name) {
+		return mutated.contains(name);
+	}
+
+	// whether +name+ is referenced from inside an anonymous function
+	public boolean isCaptured(String name) {
+		return captured.contains(name);
+	}
+
+	// number of references to +name+, not counting its declarations
+	public int getReferenceCount(String name) {
+		return references.getOrDefault(name, 0);
+	}
+
+	// the local variable holds the same value from its declaration onwards
+	public boolean isImmutableLocal(String name) {
+		return isLocal(name) && !isMutated(name);
+	}
+
+	public boolean isNameUsed(String name) {
+		return references.containsKey(name) || declarations.containsKey(name);
+	}
+
+	static GoVariableName getRoot(GoExpression expression) {
+		while (true) {
+			if (expression instanceof GoVariableName) {
+				return (GoVariableName) expression;
+			} else if (expression instanceof GoIndexExpression) {
+				expression = ((GoIndexExpression) expression).getTarget();
+			} else if (expression instanceof GoSelectorExpression) {
+				expression = ((GoSelectorExpression) expression).getLHS();
+			} else if (expression instanceof GoSliceOperator) {
+				expression = ((GoSliceOperator) expression).getTarget();
+			} else if (expression instanceof GoTypeAssertion) {
+				expression = ((GoTypeAssertion) expression).getTarget();
+			} else if (expression instanceof GoTypeCast) {
+				expression = ((GoTypeCast) expression).getTarget();
+			} else if (expression instanceof GoUnary &&
+					((GoUnary) expression).getOperation() == GoUnary.Operation.DEREF) {
+				expression = ((GoUnary) expression).getTarget();
+			} else {
+				return null;
+			}
+		}
+	}
+
+	private void declare(String name) {
+		if (name != null && !name.equals("_")) {
+			declarations.merge(name, 1, Integer::sum);
+		}
+	}
+
+	private void mutate(GoExpression expression) {
+		GoVariableName root = getRoot(expression);
+		if (root != null) {
+			mutated.add(root.getName());
+		}
+	}
+
+	private class ExpressionWalker extends GoExpressionRewritingVisitor {
+
+		@Override
+		public GoExpression visit(GoVariableName v) throws RuntimeException {
+			references.merge(v.getName(), 1, Integer::sum);
+			if (anonymousFunctionDepth > 0) {
+				captured.add(v.getName());
+			}
+			return v;
+		}
+
+		@Override
+		public GoExpression visit(GoUnary unary) throws RuntimeException {
+			if (unary.getOperation() == GoUnary.Operation.ADDR) {
+				mutate(unary.getTarget());
+			}
+			return super.visit(unary);
+		}
+
+		@Override
+		public GoExpression visit(GoCall call) throws RuntimeException {
+			GoExpression target = call.getTarget();
+			if (target instanceof GoSelectorExpression) {
+				// methods may have pointer receivers
+				mutate(((GoSelectorExpression) target).getLHS());
+			}
+			boolean mayModifyArguments = !(target instanceof GoVariableName) || !Arrays.asList(
+					"len", "cap", "append", "copy").contains(((GoVariableName) target).getName());
+			if (mayModifyArguments) {
+				for (GoExpression argument : call.getArguments()) {
+					if (argument instanceof GoVariableName) {
+						mutate(argument);
+					}
+				}
+			}
+			return super.visit(call);
+		}
+
+		@Override
+		public GoExpression visit(GoAnonymousFunction anonymousFunction) throws RuntimeException {
+			anonymousFunctionDepth++;
+			for (GoFunctionParameter parameter : anonymousFunction.getParams()) {
+				declare(parameter.getName());
+			}
+			for (GoFunctionParameter returnValue : anonymousFunction.getReturnTypes()) {
+				declare(returnValue.getName());
+			}
+			anonymousFunction.getBody().accept(new StatementWalker());
+			anonymousFunctionDepth--;
+			return anonymousFunction;
+		}
+	}
+
+	private class StatementWalker extends GoStatementRewritingVisitor {
+
+		StatementWalker() {
+			super(new ExpressionWalker());
+		}
+
+		@Override
+		public GoStatement visit(GoAssignmentStatement assignment) throws RuntimeException {
+			for (GoExpression name : assignment.getNames()) {
+				if (assignment.isDefinition() && name instanceof GoVariableName) {
+					declare(((GoVariableName) name).getName());
+				} else {
+					mutate(name);
+					rewrite(name);
+				}
+			}
+			rewrite(assignment.getValues());
+			return assignment;
+		}
+
+		@Override
+		public GoStatement visit(GoForRange forRange) throws RuntimeException {
+			for (GoExpression name : forRange.getLhs()) {
+				if (forRange.isDefinition() && name instanceof GoVariableName) {
+					declare(((GoVariableName) name).getName());
+				} else {
+					mutate(name);
+					rewrite(name);
+				}
+			}
+			rewrite(forRange.getRangeExpr());
+			rewriteBlock(forRange.getBody());
+			return forRange;
+		}
+
+		@Override
+		public GoStatement visit(GoIf goIf) throws RuntimeException {
+			if (goIf.getInitialVariables() != null) {
+				for (GoVariableName name : goIf.getInitialVariables()) {
+					declare(name.getName());
+				}
+			}
+			return super.visit(goIf);
+		}
+
+		@Override
+		public GoStatement visit(GoIncDec incDec) throws RuntimeException {
+			mutate(incDec.getExpression());
+			return super.visit(incDec);
+		}
+
+		@Override
+		public GoStatement visit(GoVariableDeclarationStatement variableDeclarationStatement) throws RuntimeException {
+			declare(variableDeclarationStatement.getVariableDeclaration().getName());
+			return super.visit(variableDeclarationStatement);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package datatypes
+
+import (
+	"reflect"
+)
+
+var seqType = reflect.TypeOf(Seq{})
+
+// Equal reports whether `a` and `b` represent the same TLA+ value. It
+// behaves like reflect.DeepEqual, except that sequences are compared
+// by their elements (two equal sequences may share storage differently)
+// and nil slices and maps are equal to empty ones.
+func Equal(a, b interface{}) bool {
+	return deepEqual(reflect.ValueOf(a), reflect.ValueOf(b))
+}
+
+func deepEqual(a, b reflect.Value) bool {
+	if !a.IsValid() || !b.IsValid() {
+		return a.IsValid() == b.IsValid()
+	}
+	if a.Type() != b.Type() {
+		return false
+	}
+	if a.Type() == seqType {
+		return seqEqual(a, b)
+	}
+
+	switch a.Kind() {
+	case reflect.Interface, reflect.Ptr:
+		if a.IsNil() || b.IsNil() {
+			return a.IsNil() == b.IsNil()
+		}
+		return deepEqual(a.Elem(), b.Elem())
+	case reflect.Struct:
+		for i := 0; i < a.NumField(); i++ {
+			if !deepEqual(a.Field(i), b.Field(i)) {
+				return false
+			}
+		}
+		return true
+	case reflect.Slice, reflect.Array:
+		if a.Len() != b.Len() {
+			return false
+		}
+		for i := 0; i < a.Len(); i++ {
+			if !deepEqual(a.Index(i), b.Index(i)) {
+				return false
+			}
+		}
+		return true
+	case reflect.Map:
+		if a.Len() != b.Len() {
+			return false
+		}
+		for _, k := range a.MapKeys() {
+			v := b.MapIndex(k)
+			if !v.IsValid() || !deepEqual(a.MapIndex(k), v) {
+				return false
+			}
+		}
+		return true
+	case reflect.Bool:
+		return a.Bool() == b.Bool()
+	case reflect.Int, reflect.Int8, reflect.Int16, reflect.Int32, reflect.Int64:
+		return a.Int() == b.Int()
+	case reflect.Uint, reflect.Uint8, reflect.Uint16, reflect.Uint32, reflect.Uint64, reflect.Uintptr:
+		return a.Uint() == b.Uint()
+	case reflect.Float32, reflect.Float64:
+		return a.Float() == b.Float()
+	case reflect.Complex64, reflect.Complex128:
+		return a.Complex() == b.Complex()
+	case reflect.String:
+		return a.String() == b.String()
+	default:
+		// channels, functions and unsafe pointers: identity
+		return a.Pointer() == b.Pointer()
+	}
+}
+
+// seqEqual compares two sequences through reflection, since they may
+// have been reached through unexported fields (e.g., the fields of
+// tuples in generated code), whose values cannot be converted back to
+// a Seq.
+func seqEqual(a, b reflect.Value) bool {
+	aElems, aStart, aLen := seqParts(a)
+	bElems, bStart, bLen := seqParts(b)
+	if aLen != bLen {
+		return false
+	}
+
+	for i := 0; i < aLen; i++ {
+		if !deepEqual(aElems.Index(aStart+i), bElems.Index(bStart+i)) {
+			return false
+		}
+	}
+
+	return true
+}
+
+func seqParts(v reflect.Value) (elems reflect.Value, start, length int) {
+	buf := v.FieldByName("buf")
+	start = int(v.FieldByName("start").Int())
+	length = int(v.FieldByName("end").Int()) - start
+	if buf.IsNil() {
+		return reflect.Value{}, 0, 0
+	}
+
+	return buf.Elem().FieldByName("elems"), start, length
+}
@@ -0,0 +1,215 @@
+// Package datatypes implements immutable data structures that code
+// generated by PGo can use to represent TLA+ values.
+package datatypes
+
+import (
+	"bytes"
+	"encoding/gob"
+	"fmt"
+	"sync/atomic"
+)
+
+func init() {
+	// sequences may be sent over the wire as part of interface{} values
+	gob.Register(Seq{})
+}
+
+// seqBuffer is the storage shared by sequences derived from one
+// another. Elements in `elems[:used]` are never modified once they
+// are written. A sequence that ends exactly at `used` may claim the
+// free slots that follow it, which is what makes Append (and
+// Append-after-Tail, the typical queue usage) amortized O(1).
+type seqBuffer struct {
+	used  int64 // accessed atomically; kept first for 64-bit alignment
+	elems []interface{}
+}
+
+// Seq is an immutable TLA+ sequence. Operations that derive a new
+// sequence (Append, Tail, SubSeq, Concat) share storage with their
+// argument instead of copying it whenever that is safe, so generated
+// code no longer needs to copy a sequence every time it is extended
+// or shortened. The zero value is the empty sequence, and sequences
+// are safe for concurrent use.
+type Seq struct {
+	buf        *seqBuffer
+	start, end int
+}
+
+// NewSeq creates a sequence containing the given elements, in order.
+func NewSeq(elems ...interface{}) Seq {
+	return Seq{}.extend(elems)
+}
+
+// Len returns the number of elements in the sequence.
+func (s Seq) Len() int {
+	return s.end - s.start
+}
+
+// Get returns the element at (zero-based) index `i`. Panics if `i` is
+// out of range.
+func (s Seq) Get(i int) interface{} {
+	if i < 0 || i >= s.Len() {
+		panic(fmt.Sprintf("datatypes: index %d out of range for sequence of length %d", i, s.Len()))
+	}
+
+	return s.buf.elems[s.start+i]
+}
+
+// Head returns the first element of the sequence.
+func (s Seq) Head() interface{} {
+	return s.Get(0)
+}
+
+// Tail returns the sequence without its first element. Does not copy.
+func (s Seq) Tail() Seq {
+	if s.Len() == 0 {
+		panic("datatypes: Tail of empty sequence")
+	}
+
+	return Seq{buf: s.buf, start: s.start + 1, end: s.end}
+}
+
+// SubSeq returns the elements from (one-based) positions `m` to `n`,
+// inclusive, following the semantics of TLA+'s SubSeq: the result is
+// empty if `m > n`. Does not copy.
+func (s Seq) SubSeq(m, n int) Seq {
+	if m > n {
+		return Seq{}
+	}
+	if m < 1 || n > s.Len() {
+		panic(fmt.Sprintf("datatypes: SubSeq(%d, %d) out of range for sequence of length %d", m, n, s.Len()))
+	}
+
+	return Seq{buf: s.buf, start: s.start + m - 1, end: s.start + n}
+}
+
+// Append returns the sequence with `e` added at the end.
+func (s Seq) Append(e interface{}) Seq {
+	if s.claim(1) {
+		s.buf.elems[s.end] = e
+		return Seq{buf: s.buf, start: s.start, end: s.end + 1}
+	}
+
+	next := s.copyWithCapacity(s.Len() + 1)
+	next.buf.elems[next.end] = e
+	next.buf.used++
+	next.end++
+	return next
+}
+
+// Concat returns the concatenation of `s` and `t` (TLA+'s \o).
+func (s Seq) Concat(t Seq) Seq {
+	if t.Len() == 0 {
+		return s
+	}
+	if s.Len() == 0 {
+		return t
+	}
+
+	return s.extend(t.buf.elems[t.start:t.end])
+}
+
+// Set returns a copy of the sequence where the element at (zero-based)
+// index `i` is replaced by `v`. This is the only operation that always
+// copies.
+func (s Seq) Set(i int, v interface{}) Seq {
+	if i < 0 || i >= s.Len() {
+		panic(fmt.Sprintf("datatypes: index %d out of range for sequence of length %d", i, s.Len()))
+	}
+
+	next := s.copyWithCapacity(s.Len())
+	next.buf.elems[i] = v
+	return next
+}
+
+// Slice returns a fresh slice with the elements of the sequence.
+func (s Seq) Slice() []interface{} {
+	elems := make([]interface{}, s.Len())
+	if s.Len() > 0 {
+		copy(elems, s.buf.elems[s.start:s.end])
+	}
+
+	return elems
+}
+
+// Equal returns whether `s` and `t` have equal elements, in the sense
+// of the package-level Equal function.
+func (s Seq) Equal(t Seq) bool {
+	if s.Len() != t.Len() {
+		return false
+	}
+
+	for i := 0; i < s.Len(); i++ {
+		if !Equal(s.buf.elems[s.start+i], t.buf.elems[t.start+i]) {
+			return false
+		}
+	}
+
+	return true
+}
+
+// String formats the sequence the same way fmt formats a slice.
+func (s Seq) String() string {
+	return fmt.Sprint(s.Slice())
+}
+
+// GobEncode encodes the sequence as a list of elements, without any
+// of the sharing information.
+func (s Seq) GobEncode() ([]byte, error) {
+	var buf bytes.Buffer
+	if err := gob.NewEncoder(&buf).Encode(s.Slice()); err != nil {
+		return nil, err
+	}
+
+	return buf.Bytes(), nil
+}
+
+// GobDecode decodes a sequence encoded by GobEncode.
+func (s *Seq) GobDecode(data []byte) error {
+	var elems []interface{}
+	if err := gob.NewDecoder(bytes.NewReader(data)).Decode(&elems); err != nil {
+		return err
+	}
+
+	*s = NewSeq(elems...)
+	return nil
+}
+
+// claim tries to reserve the `n` slots following the end of the
+// sequence in its buffer. This only succeeds if no other sequence
+// sharing the same buffer has claimed them before.
+func (s Seq) claim(n int) bool {
+	return s.buf != nil &&
+		s.end+n <= len(s.buf.elems) &&
+		atomic.CompareAndSwapInt64(&s.buf.used, int64(s.end), int64(s.end+n))
+}
+
+// copyWithCapacity copies the elements of the sequence to a new buffer
+// with room for (at least) `size` elements, plus some slack so that
+// subsequent appends can happen in place.
+func (s Seq) copyWithCapacity(size int) Seq {
+	buf := &seqBuffer{elems: make([]interface{}, 2*size)}
+	if s.Len() > 0 {
+		copy(buf.elems, s.buf.elems[s.start:s.end])
+	}
+	buf.used = int64(s.Len())
+
+	return Seq{buf: buf, start: 0, end: s.Len()}
+}
+
+func (s Seq) extend(extra []interface{}) Seq {
+	if len(extra) == 0 {
+		return s
+	}
+
+	if s.claim(len(extra)) {
+		copy(s.buf.elems[s.end:], extra)
+		return Seq{buf: s.buf, start: s.start, end: s.end + len(extra)}
+	}
+
+	next := s.copyWithCapacity(s.Len() + len(extra))
+	copy(next.buf.elems[next.end:], extra)
+	next.buf.used += int64(len(extra))
+	next.end += len(extra)
+	return next
+}
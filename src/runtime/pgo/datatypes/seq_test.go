@@ -0,0 +1,186 @@
+package datatypes
+
+import (
+	"bytes"
+	"encoding/gob"
+	"sync"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+var _ = Describe("Seq", func() {
+	It("has an empty zero value", func() {
+		var s Seq
+		Expect(s.Len()).To(Equal(0))
+		Expect(s.Slice()).To(Equal([]interface{}{}))
+		Expect(s.String()).To(Equal("[]"))
+	})
+
+	It("appends elements", func() {
+		s := NewSeq(1, 2)
+		t := s.Append(3)
+
+		Expect(s.Slice()).To(Equal([]interface{}{1, 2}))
+		Expect(t.Slice()).To(Equal([]interface{}{1, 2, 3}))
+		Expect(t.Head()).To(Equal(1))
+		Expect(t.Get(2)).To(Equal(3))
+	})
+
+	It("does not let appends to the same sequence interfere", func() {
+		s := NewSeq(1, 2)
+		a := s.Append(3)
+		b := s.Append(4)
+
+		Expect(a.Slice()).To(Equal([]interface{}{1, 2, 3}))
+		Expect(b.Slice()).To(Equal([]interface{}{1, 2, 4}))
+	})
+
+	It("shares storage when appending to the latest version", func() {
+		s := NewSeq(1, 2)
+		t := s.Append(3)
+		u := t.Append(4)
+
+		Expect(t.buf).To(BeIdenticalTo(s.buf))
+		Expect(u.buf).To(BeIdenticalTo(s.buf))
+	})
+
+	It("implements Tail and SubSeq without copying", func() {
+		s := NewSeq(1, 2, 3, 4)
+
+		Expect(s.Tail().Slice()).To(Equal([]interface{}{2, 3, 4}))
+		Expect(s.Tail().buf).To(BeIdenticalTo(s.buf))
+		Expect(s.SubSeq(2, 3).Slice()).To(Equal([]interface{}{2, 3}))
+		Expect(s.SubSeq(3, 2).Len()).To(Equal(0))
+		Expect(func() { Seq{}.Tail() }).To(Panic())
+		Expect(func() { s.SubSeq(0, 2) }).To(Panic())
+	})
+
+	It("works as a queue", func() {
+		q := NewSeq()
+		for i := 0; i < 100; i++ {
+			q = q.Append(i)
+			if i%2 == 1 {
+				q = q.Tail()
+			}
+		}
+
+		Expect(q.Len()).To(Equal(50))
+		Expect(q.Head()).To(Equal(50))
+		Expect(q.Get(49)).To(Equal(99))
+	})
+
+	It("concatenates sequences", func() {
+		s := NewSeq(1, 2)
+		t := NewSeq(3)
+
+		Expect(s.Concat(t).Slice()).To(Equal([]interface{}{1, 2, 3}))
+		Expect(s.Concat(Seq{}).Slice()).To(Equal([]interface{}{1, 2}))
+		Expect(Seq{}.Concat(t).Slice()).To(Equal([]interface{}{3}))
+		Expect(s.Slice()).To(Equal([]interface{}{1, 2}))
+	})
+
+	It("copies on Set", func() {
+		s := NewSeq(1, 2, 3)
+		t := s.Set(1, 20)
+
+		Expect(s.Slice()).To(Equal([]interface{}{1, 2, 3}))
+		Expect(t.Slice()).To(Equal([]interface{}{1, 20, 3}))
+	})
+
+	It("compares sequences by their elements", func() {
+		s := NewSeq(1, 2, 3)
+		t := NewSeq(0, 1, 2).Tail().Append(3)
+
+		Expect(s.Equal(t)).To(BeTrue())
+		Expect(s.Equal(t.Append(4))).To(BeFalse())
+		Expect(Equal(NewSeq(s), NewSeq(t))).To(BeTrue())
+		Expect(Equal(struct{ e0 Seq }{s}, struct{ e0 Seq }{t})).To(BeTrue())
+		Expect(Equal(map[string]interface{}{"log": s}, map[string]interface{}{"log": t})).To(BeTrue())
+		Expect(Equal(map[string]interface{}{"log": s}, map[string]interface{}{"log": NewSeq(1)})).To(BeFalse())
+	})
+
+	It("is encoded as a list of elements", func() {
+		var buf bytes.Buffer
+		var decoded interface{}
+
+		original := interface{}(NewSeq(0, 1, 2).Tail())
+		Expect(gob.NewEncoder(&buf).Encode(&original)).To(Succeed())
+		Expect(gob.NewDecoder(&buf).Decode(&decoded)).To(Succeed())
+		Expect(decoded.(Seq).Slice()).To(Equal([]interface{}{1, 2}))
+	})
+
+	It("can be appended to concurrently", func() {
+		s := NewSeq(0)
+		results := make([]Seq, 10)
+
+		var wg sync.WaitGroup
+		for i := range results {
+			wg.Add(1)
+			go func(i int) {
+				defer wg.Done()
+				results[i] = s.Append(i)
+			}(i)
+		}
+		wg.Wait()
+
+		for i, r := range results {
+			Expect(r.Slice()).To(Equal([]interface{}{0, i}))
+		}
+	})
+})
+
+func TestSeq(t *testing.T) {
+	RegisterFailHandler(Fail)
+	RunSpecs(t, "Seq")
+}
+
+// The benchmarks below compare sequences against the code PGo generates
+// for plain slices, where Append copies its argument and Tail reslices.
+
+const benchmarkLength = 1000
+
+func BenchmarkSliceAppend(b *testing.B) {
+	for n := 0; n < b.N; n++ {
+		var log []int
+		for i := 0; i < benchmarkLength; i++ {
+			tmpSlice := make([]int, len(log), len(log)+1)
+			copy(tmpSlice, log)
+			log = append(tmpSlice, i)
+		}
+	}
+}
+
+func BenchmarkSeqAppend(b *testing.B) {
+	for n := 0; n < b.N; n++ {
+		var log Seq
+		for i := 0; i < benchmarkLength; i++ {
+			log = log.Append(i)
+		}
+	}
+}
+
+func BenchmarkSliceQueue(b *testing.B) {
+	queue := make([]int, benchmarkLength)
+	for n := 0; n < b.N; n++ {
+		for i := 0; i < benchmarkLength; i++ {
+			tmpSlice := make([]int, len(queue), len(queue)+1)
+			copy(tmpSlice, queue)
+			queue = append(tmpSlice, i)[1:]
+		}
+	}
+}
+
+func BenchmarkSeqQueue(b *testing.B) {
+	var queue Seq
+	for i := 0; i < benchmarkLength; i++ {
+		queue = queue.Append(i)
+	}
+	for n := 0; n < b.N; n++ {
+		for i := 0; i < benchmarkLength; i++ {
+			queue = queue.Append(i).Tail()
+		}
+	}
+}
@@ -13,6 +13,15 @@ import (
 	"sync"
 	"sync/atomic"
 	"time"
+
+	"pgo/metrics"
+)
+
+// metrics recorded for archetypes and their resources
+var (
+	acquireLatency = metrics.Default.Histogram("archetype.acquire")
+	releaseLatency = metrics.Default.Histogram("archetype.release")
+	mailboxFull    = metrics.Default.Counter("mailbox.full")
 )
 
 // ResourceAccess indicates what type of access the a caller is requesting.
@@ -47,8 +56,7 @@ const (
 	READ_ACCESS = iota + 1
 	WRITE_ACCESS
 
-	LOCK_NUM_RETRIES = 150
-	LOCK_WAIT        = 10 // ms
+	LOCK_TIMEOUT = 1500 // ms
 
 	RPC_SUCCESS = iota
 	MAILBOX_IS_FULL_ERROR
@@ -74,6 +82,8 @@ func init() {
 	RegisterResource(&LocallySharedResource{})
 	RegisterResource(&AtomicInteger{})
 	RegisterResource(&SleepResource{})
+	RegisterResource(&LogStoreEntry{})
+	RegisterResource(&MappedFileResource{})
 }
 
 // RegisterResource assigns a priority to the type of the resource
@@ -89,42 +99,87 @@ func RegisterResource(resource interface{}) {
 	priorityMap[reflect.TypeOf(resource).Elem()] = atomic.AddUint64(&priorityCounter, 1)
 }
 
-// newLock creates a new synchronization lock based on Go channels.
-func newLock() chan int {
-	ch := make(chan int, 1)
-	ch <- 0 // lock starts out unlocked
+// fifoLock is a mutual exclusion lock that grants access in the order
+// it was requested, and lets waiters give up after a timeout. When the
+// lock is released while there are waiters, it is handed directly to
+// the first of them.
+type fifoLock struct {
+	mu      sync.Mutex      // protects the fields below
+	held    bool            // whether the lock is currently held
+	waiters []chan struct{} // closed when the lock is handed to the corresponding waiter
+}
 
-	return ch
+// newLock creates a new, unlocked, synchronization lock.
+func newLock() *fifoLock {
+	return &fifoLock{}
 }
 
-// tryLock attempts to get access to a lock. Attempt is tried
-// LOCK_NUM_RETRIES waiting LOCK_WAIT milliseconds between each
-// attempt. Returns a boolean indicating whether access was
-// acquired or not.
-func tryLock(lock <-chan int) bool {
-	for i := 0; i < LOCK_NUM_RETRIES; i++ {
+// tryLock attempts to get access to a lock, waiting for at most
+// LOCK_TIMEOUT milliseconds. Returns a boolean indicating whether
+// access was acquired or not.
+func tryLock(lock *fifoLock) bool {
+	return lock.tryLockFor(time.Duration(LOCK_TIMEOUT) * time.Millisecond)
+}
+
+// tryLockFor attempts to get access to the lock, waiting for at most
+// `timeout`. Returns a boolean indicating whether access was acquired.
+func (lock *fifoLock) tryLockFor(timeout time.Duration) bool {
+	lock.mu.Lock()
+	if !lock.held {
+		lock.held = true
+		lock.mu.Unlock()
+		return true
+	}
+
+	ready := make(chan struct{})
+	lock.waiters = append(lock.waiters, ready)
+	lock.mu.Unlock()
+
+	timer := time.NewTimer(timeout)
+	defer timer.Stop()
+
+	select {
+	case <-ready:
+		return true
+
+	case <-timer.C:
+		lock.mu.Lock()
+		defer lock.mu.Unlock()
+
+		// the lock may have been handed to us as the timer expired
 		select {
-		case <-lock:
+		case <-ready:
 			return true
-
 		default:
-			time.Sleep(time.Duration(LOCK_WAIT) * time.Millisecond)
 		}
-	}
 
-	return false
+		for i, waiter := range lock.waiters {
+			if waiter == ready {
+				lock.waiters = append(lock.waiters[:i], lock.waiters[i+1:]...)
+				break
+			}
+		}
+
+		return false
+	}
 }
 
-// releaseLock releases a previously acquired lock (with
-// tryLock). Panics if the lock is not currently locked.
-func releaseLock(lock chan<- int) {
-	select {
-	case lock <- 0:
+// releaseLock releases a previously acquired lock (with tryLock),
+// handing it to the longest waiting caller of tryLock, if any. Does
+// nothing if the lock is not currently locked.
+func releaseLock(lock *fifoLock) {
+	lock.mu.Lock()
+	defer lock.mu.Unlock()
+
+	if len(lock.waiters) == 0 {
+		lock.held = false
 		return
-	default:
-		// fmt.Printf("Warning: Attempt to release unlocked lock\n")
-		// panic("Attempt to release unlocked lock")
 	}
+
+	// the lock remains held, now by the first waiter
+	next := lock.waiters[0]
+	lock.waiters = lock.waiters[1:]
+	close(next)
 }
 
 // ArchetypeResource defines the interface that parameters passed to functions
@@ -161,6 +216,31 @@ type ArchetypeResource interface {
 	Less(other ArchetypeResource) bool
 }
 
+// asyncResource is implemented by archetype resources whose release
+// involves waiting for other nodes. ReleaseResources starts releasing
+// consecutive resources of this kind before waiting for any of them.
+type asyncResource interface {
+	// startRelease starts releasing the resource, and returns a function
+	// that waits for the release to complete, returning the same result
+	// as Release() would.
+	startRelease() func() error
+}
+
+// groupedResource is implemented by archetype resources whose changes
+// in a step must be committed together, such as the entries of a
+// LogStore. ReleaseResources releases consecutive resources of the same
+// group with a single call, which may be asynchronous.
+type groupedResource interface {
+	// releaseGroup identifies the resources released along with this
+	// one.
+	releaseGroup() interface{}
+
+	// startGroupRelease starts releasing `resources`, which includes
+	// this resource and belongs to its group, and returns a function
+	// that waits for the release to complete.
+	startGroupRelease(resources []ArchetypeResource) func() error
+}
+
 // ArchetypeResourceCollection represents archetype resources that are
 // mapped via function calls in Modular PlusCal. Instead of using
 // regular indexing operations, the Get allows implementations to
@@ -178,6 +258,78 @@ type ArchetypeResourceCollection interface {
 	Get(value interface{}) ArchetypeResource
 }
 
+// resourceRank determines the order in which an archetype resource is
+// acquired: by the priority of its type, then by a key that orders
+// resources of the same type as their implementation of `Less` does.
+type resourceRank struct {
+	priority uint64 // priority of the type of the resource; 0 if unknown
+	key      string // orders resources of the same type
+}
+
+// ranked is embedded in the archetype resources provided by the
+// runtime, which compute their rank when they are created, so that
+// ordering them involves no reflection nor allocation.
+type ranked struct {
+	rank resourceRank
+}
+
+func (r *ranked) resourceRank() resourceRank {
+	return r.rank
+}
+
+// rankedResource is implemented by resources that embed `ranked`.
+type rankedResource interface {
+	resourceRank() resourceRank
+}
+
+// rankOf computes the rank of a resource being created, whose `Less`
+// orders resources by the given key.
+func rankOf(resource ArchetypeResource, key string) ranked {
+	return ranked{resourceRank{priority: priorityMap[reflect.TypeOf(resource).Elem()], key: key}}
+}
+
+// lessResource indicates whether resource `a` must be acquired before
+// resource `b`.
+func lessResource(a, b ArchetypeResource) bool {
+	if rankedA, ok := a.(rankedResource); ok {
+		if rankedB, ok := b.(rankedResource); ok {
+			rankA, rankB := rankedA.resourceRank(), rankedB.resourceRank()
+
+			// resources not created by their constructors have no rank
+			if rankA.priority != 0 && rankB.priority != 0 {
+				if rankA.priority != rankB.priority {
+					return rankA.priority < rankB.priority
+				}
+
+				return rankA.key < rankB.key
+			}
+		}
+	}
+
+	return SortableArchetypeResource{a, b}.Less(0, 1)
+}
+
+// maxInsertionSort is the largest number of resources sorted with an
+// insertion sort; larger collections use `sort.Sort`.
+const maxInsertionSort = 16
+
+// sortResources sorts a collection of resources, in place, in the
+// order they must be acquired. Steps use few resources, which are
+// usually passed in the same order every time: an insertion sort
+// then checks they are ordered in a single pass, without allocating.
+func sortResources(resources []ArchetypeResource) {
+	if len(resources) > maxInsertionSort {
+		sort.Sort(SortableArchetypeResource(resources))
+		return
+	}
+
+	for i := 1; i < len(resources); i++ {
+		for j := i; j > 0 && lessResource(resources[j], resources[j-1]); j-- {
+			resources[j], resources[j-1] = resources[j-1], resources[j]
+		}
+	}
+}
+
 // SortableArchetypeResource represents a collection of archetype
 // resources.  This type implements the functions necessary to enable
 // a collection of archetype resources to be sorted using Go's
@@ -194,6 +346,12 @@ func (s SortableArchetypeResource) Swap(i, j int) {
 }
 
 func (s SortableArchetypeResource) Less(i, j int) bool {
+	if rankedI, ok := s[i].(rankedResource); ok && rankedI.resourceRank().priority != 0 {
+		if rankedJ, ok := s[j].(rankedResource); ok && rankedJ.resourceRank().priority != 0 {
+			return lessResource(s[i], s[j])
+		}
+	}
+
 	// if the resource was not registered, panic
 	typeI := reflect.TypeOf(s[i]).Elem()
 	if _, exists := priorityMap[typeI]; !exists {
@@ -224,9 +382,11 @@ func (s SortableArchetypeResource) Less(i, j int) bool {
 // function makes sure that resources are acquired in proper order
 // (i.e., according to the resource's implementation of `Less`).
 func AcquireResources(access ResourceAccess, resources ...ArchetypeResource) error {
+	defer acquireLatency.Since(time.Now())
+
 	// sort the resources to be acquired according to their
 	// implementation of `Less`
-	sort.Sort(SortableArchetypeResource(resources))
+	sortResources(resources)
 	numAcquired := 0
 
 	// resources are now ordered
@@ -254,23 +414,70 @@ func AcquireResources(access ResourceAccess, resources ...ArchetypeResource) err
 // updated (via Write calls on the archetypes), this will make the
 // changes visible (committed). It makes sure that resources are
 // released according to the order defined by the resource's
-// implementation of `Less`.
+// implementation of `Less`. Consecutive resources that release
+// asynchronously (such as mailboxes to different destinations) are
+// released concurrently, and consecutive resources of the same group
+// (such as the entries of a LogStore) are released together.
 func ReleaseResources(resources ...ArchetypeResource) error {
-	sort.Sort(SortableArchetypeResource(resources))
-	numAcquired := 0
+	defer releaseLatency.Since(time.Now())
+
+	sortResources(resources)
+	var started []func() error
+	failed := -1
+
+	// waits for the releases started so far to complete. If any of
+	// them failed, resources from `next` onwards are aborted
+	finish := func(next int) {
+		for _, wait := range started {
+			if err := wait(); err != nil && failed < 0 {
+				failed = next
+			}
+		}
 
-	for _, r := range resources {
-		err := r.Release()
+		started = nil
+	}
 
-		// if there is an error releasing one of the resources, abort all
-		// subsequent resources and return the error
-		if err != nil {
-			for i := numAcquired; i < len(resources); i++ {
-				resources[i].Abort()
+	for i := 0; i < len(resources); i++ {
+		r := resources[i]
+		if grouped, ok := r.(groupedResource); ok {
+			group := grouped.releaseGroup()
+			end := i + 1
+			for end < len(resources) {
+				next, ok := resources[end].(groupedResource)
+				if !ok || next.releaseGroup() != group {
+					break
+				}
+				end++
 			}
+
+			started = append(started, grouped.startGroupRelease(resources[i:end]))
+			i = end - 1
+			continue
 		}
 
-		numAcquired++
+		if async, ok := r.(asyncResource); ok {
+			started = append(started, async.startRelease())
+			continue
+		}
+
+		finish(i)
+		if failed < 0 && r.Release() != nil {
+			failed = i
+		}
+
+		if failed >= 0 {
+			break
+		}
+	}
+
+	finish(len(resources))
+
+	// if there is an error releasing one of the resources, abort all
+	// subsequent resources
+	if failed >= 0 {
+		for _, r := range resources[failed:] {
+			r.Abort()
+		}
 	}
 
 	return nil
@@ -281,7 +488,7 @@ func ReleaseResources(resources ...ArchetypeResource) error {
 // released according to the order defined by the resource's
 // implementation of `Less`.
 func AbortResources(resources ...ArchetypeResource) error {
-	sort.Sort(SortableArchetypeResource(resources))
+	sortResources(resources)
 
 	for _, r := range resources {
 		if err := r.Abort(); err != nil {
@@ -306,6 +513,8 @@ type GlobalVariable struct {
 	stateServer  *StateServer
 	refs         VarReferences
 	writtenValue interface{}
+
+	ranked // acquisition order, computed on creation
 }
 
 // Variable is a convenience function to create a GlobalVariable struct from
@@ -313,12 +522,15 @@ type GlobalVariable struct {
 // passed to archetypes, and the state represented by this variable will be
 // managed by all peers in the system.
 func (ss *StateServer) Variable(name string) *GlobalVariable {
-	return &GlobalVariable{
+	v := &GlobalVariable{
 		name:         name,
 		stateServer:  ss,
 		refs:         nil,
 		writtenValue: nil,
 	}
+	v.ranked = rankOf(v, name)
+
+	return v
 }
 
 // Acquire wraps the underlying StateServer struct, creating a proper BorrowSpec
@@ -414,11 +626,49 @@ func (r *Receiver) Receive(val *interface{}, result *int) error {
 		*result = RPC_SUCCESS
 	default:
 		*result = MAILBOX_IS_FULL_ERROR
+		mailboxFull.Inc()
 	}
 
 	return nil
 }
 
+// ReceiveBatch receives a batch of messages from the other end of the
+// channel, in order, and stores the result of receiving each of them
+// in `results`. Once the channel is full, the remaining messages of
+// the batch are not received, so that messages are never reordered.
+func (r *Receiver) ReceiveBatch(vals *[]interface{}, results *[]int) error {
+	*results = make([]int, len(*vals))
+	full := false
+
+	for i, val := range *vals {
+		if !full {
+			select {
+			case r.ch <- val:
+				(*results)[i] = RPC_SUCCESS
+				continue
+			default:
+				full = true
+			}
+		}
+
+		(*results)[i] = MAILBOX_IS_FULL_ERROR
+		mailboxFull.Inc()
+	}
+
+	return nil
+}
+
+// ReceiveFrames receives a batch of messages encoded with
+// MessageCodec, one per frame, like ReceiveBatch.
+func (r *Receiver) ReceiveFrames(frames *[]byte, results *[]int) error {
+	vals, err := decodeFrames(MessageCodec, *frames)
+	if err != nil {
+		return err
+	}
+
+	return r.ReceiveBatch(&vals, results)
+}
+
 func mailboxErrorDescription(e int) string {
 	if e == MAILBOX_IS_FULL_ERROR {
 		return "Destination mailbox is full"
@@ -439,14 +689,16 @@ type Mailbox struct {
 	selfNames      []string          // identifiers deployed at the node that created the mailbox
 	configuration  map[string]string // configuration of the system (PlusCal process -> IP address)
 	conns          *Connections      // the set of connections to nodes within the system
-	readAttempts   int               // number of times to attempt a read when no message is buffered
-	waitDuration   int               // how long to wait between two read attempts (in ms)
+	readTimeout    time.Duration     // how long to wait for a message when none is buffered; 0 waits indefinitely
 	readBuf        []interface{}     // messages read from the channel
 	writeBuf       []interface{}     // messages waiting to be sent when the channel is released
+	unsent         int               // number of messages at the start of writeBuf that a previous release failed to send
 	readChan       chan interface{}  // reads are buffered through Go channels
 	timeout        uint              // how long to wait for RPC calls
 	readingAborted bool              // whether we are reading messages from a previously aborted transaction
 	lock           sync.Mutex        // exclusive access to internal buffers
+
+	ranked // acquisition order, computed on creation
 }
 
 // service returns the name of the RPC service associated with this
@@ -455,61 +707,74 @@ func (mbox *Mailbox) service() string {
 	return "Mailbox_" + mbox.name + "_" + strconv.Itoa(mbox.version)
 }
 
-func (mbox *Mailbox) callAsync(function string, args interface{}, ok *int) *rpc.Call {
+func (mbox *Mailbox) callAsync(function string, args interface{}, reply interface{}) *rpc.Call {
 	fName := mbox.service() + "." + function
 	addr := mbox.configuration[mbox.name]
-	return mbox.conns.GetConnection(addr).Go(fName, &args, ok, nil)
-}
-
-func (mbox *Mailbox) sendMessage(msg interface{}) error {
-	var result int
-	call := mbox.callAsync("Receive", msg, &result)
-
-	checkRPCResult := func() error {
-		if result != RPC_SUCCESS {
-			return fmt.Errorf("Mailbox communication error: %s", mailboxErrorDescription(result))
-		}
 
-		return nil
+	conn, err := mbox.conns.Client(addr)
+	if err != nil {
+		return failedCall(err)
 	}
 
+	return conn.Go(fName, args, reply, nil)
+}
+
+// waitCall waits for an RPC call started at time `start` to
+// complete. Returns an error if the call failed or if it did not
+// complete within the timeout of the mailbox.
+func (mbox *Mailbox) waitCall(call *rpc.Call, start time.Time) error {
 	// a timeout of 0 indicates that the system TCP timeout should be
 	// used
 	if mbox.timeout == 0 {
 		<-call.Done
-		if call.Error != nil {
-			return call.Error
-		}
-
-		return checkRPCResult()
+		return mbox.completed(call, start)
 	}
 
-	// send the message asynchronously; if it times out, return an
-	// error
+	timer := time.NewTimer(time.Duration(mbox.timeout)*time.Millisecond - time.Since(start))
+	defer timer.Stop()
+
 	select {
 	case <-call.Done:
-		if call.Error != nil {
-			return call.Error
-		}
-
-		return checkRPCResult()
+		return mbox.completed(call, start)
 
-	case <-time.After(time.Duration(mbox.timeout) * time.Millisecond):
+	case <-timer.C:
 		return fmt.Errorf("Timed out: %v", mbox.service())
 	}
 }
 
+// completed records the latency of a successful RPC call, and returns
+// the error of the call otherwise.
+func (mbox *Mailbox) completed(call *rpc.Call, start time.Time) error {
+	if call.Error == nil {
+		mbox.conns.Latency(mbox.configuration[mbox.name]).Since(start)
+	}
+
+	return call.Error
+}
+
+// tryRead waits for the next message, for at most the read timeout of
+// the mailbox. Returns as soon as a message arrives.
 func (mbox *Mailbox) tryRead() (interface{}, bool) {
-	for i := 0; i < mbox.readAttempts; i++ {
-		select {
-		case msg := <-mbox.readChan:
-			return msg, true
-		default:
-			time.Sleep(time.Duration(mbox.waitDuration) * time.Millisecond)
-		}
+	// avoid creating a timer if a message is already buffered
+	select {
+	case msg := <-mbox.readChan:
+		return msg, true
+	default:
+	}
+
+	if mbox.readTimeout == 0 {
+		return <-mbox.readChan, true
 	}
 
-	return nil, false
+	timer := time.NewTimer(mbox.readTimeout)
+	defer timer.Stop()
+
+	select {
+	case msg := <-mbox.readChan:
+		return msg, true
+	case <-timer.C:
+		return nil, false
+	}
 }
 
 func stringInList(target string, list []string) bool {
@@ -538,20 +803,26 @@ func stringInList(target string, list []string) bool {
 // the reply of a function call. Passing a timeout of 0 causes the
 // runtime to not employ any timeout mechanism (falling back to the
 // underlying system's TCP timeout).
-func MailboxRef(name string, version int, conns *Connections, configuration map[string]string, ids []string, bufferSize uint, timeout uint) (*Mailbox, error) {
+//
+// The `readTimeout` argument indicates how long (in ms) reading from
+// an empty mailbox waits for a message before the read is aborted
+// (and retried), so that the resources held by the reader are not
+// held indefinitely. Passing a read timeout of 0 causes reads to wait
+// until a message arrives.
+func MailboxRef(name string, version int, conns *Connections, configuration map[string]string, ids []string, bufferSize uint, timeout uint, readTimeout uint) (*Mailbox, error) {
 	mbox := &Mailbox{
 		name:           name,
 		version:        version,
 		selfNames:      ids,
 		configuration:  configuration,
 		conns:          conns,
-		readAttempts:   30,
-		waitDuration:   30,
+		readTimeout:    time.Duration(readTimeout) * time.Millisecond,
 		readBuf:        []interface{}{},
 		writeBuf:       []interface{}{},
 		timeout:        timeout,
 		readingAborted: false,
 	}
+	mbox.ranked = rankOf(mbox, mbox.service())
 
 	// if the reference is for the mailbox of the current process,
 	// expose RPC calls that allow other processes to send messages to
@@ -564,6 +835,10 @@ func MailboxRef(name string, version int, conns *Connections, configuration map[
 		if err := conns.ExposeImplementation(mbox.service(), receiver); err != nil {
 			return nil, err
 		}
+
+		metrics.Default.Func(mbox.service()+".depth", func() int64 {
+			return int64(len(readChan))
+		})
 	}
 
 	return mbox, nil
@@ -625,31 +900,77 @@ func (mbox *Mailbox) Write(value interface{}) error {
 // Release sends each message given to Write() to the destination
 // mailbox.
 func (mbox *Mailbox) Release() error {
+	return mbox.startRelease()()
+}
+
+// startRelease sends every message given to Write() to the
+// destination mailbox in a single batch, and returns a function that
+// waits for the destination to receive them. Returns an error if
+// sending any message failed, in which case the messages that were
+// not received are sent again, before any other, on the next release.
+func (mbox *Mailbox) startRelease() func() error {
 	mbox.lock.Lock()
 	defer mbox.lock.Unlock()
 
-	// send each message written to the resource while it was
-	// acquired.  Returns an error if sending any message failed
-	for _, msg := range mbox.writeBuf {
-		if err := mbox.sendMessage(msg); err != nil {
-			return &ResourceInternalError{err.Error()}
-		}
-	}
+	msgs := mbox.writeBuf
 
 	// erase read and write buffers
 	mbox.readBuf = []interface{}{}
 	mbox.writeBuf = []interface{}{}
-	return nil
+	mbox.unsent = 0
+
+	if len(msgs) == 0 {
+		return func() error { return nil }
+	}
+
+	frames, err := encodeFrames(MessageCodec, msgs)
+	if err != nil {
+		return func() error { return &ResourceInternalError{err.Error()} }
+	}
+
+	var results []int
+	start := time.Now()
+	call := mbox.callAsync("ReceiveFrames", &frames, &results)
+
+	return func() error {
+		if err := mbox.waitCall(call, start); err != nil {
+			// the destination may or may not have received the batch
+			mbox.retain(msgs)
+			return &ResourceInternalError{err.Error()}
+		}
+
+		// the destination stops receiving messages once it is full,
+		// so everything from the first failure on was not received
+		for i, result := range results {
+			if result != RPC_SUCCESS {
+				mbox.retain(msgs[i:])
+				return &ResourceInternalError{fmt.Sprintf("Mailbox communication error: %s", mailboxErrorDescription(result))}
+			}
+		}
+
+		return nil
+	}
+}
+
+// retain puts messages that could not be sent back at the start of the
+// write buffer, ahead of any message written since they were sent.
+func (mbox *Mailbox) retain(msgs []interface{}) {
+	mbox.lock.Lock()
+	defer mbox.lock.Unlock()
+
+	mbox.writeBuf = append(append([]interface{}{}, msgs...), mbox.writeBuf...)
+	mbox.unsent += len(msgs)
 }
 
 // Abort erases messages passed using Write and returns.  It keeps the
 // buffer of read messages so that, when the channel is next acquired,
-// the same messages will be read again
+// the same messages will be read again, as well as the messages that
+// a previous release failed to send
 func (mbox *Mailbox) Abort() error {
 	mbox.lock.Lock()
 	defer mbox.lock.Unlock()
 
-	mbox.writeBuf = []interface{}{}
+	mbox.writeBuf = mbox.writeBuf[:mbox.unsent]
 	mbox.readingAborted = true
 	return nil
 }
@@ -672,21 +993,26 @@ func (mbox *Mailbox) Less(other ArchetypeResource) bool {
 type LocalChannelResource struct {
 	name     string           // channel identifier
 	ch       chan interface{} // the underlying Go channel
-	lock     chan int         // guarantees access to the underlying channel is exclusive
+	lock     *fifoLock        // guarantees access to the underlying channel is exclusive
 	readBuf  []interface{}    // keeps track of read values
 	writeBuf []interface{}    // values written to the channel; sent when the resource is released
+
+	ranked // acquisition order, computed on creation
 }
 
 // NewLocalChannel creates a LocalChannelResource. The caller does not
 // need to know about the underlying Go channel.
 func NewLocalChannel(name string, bufferSize int) *LocalChannelResource {
-	return &LocalChannelResource{
+	localCh := &LocalChannelResource{
 		name:     name,
 		lock:     newLock(),
 		ch:       make(chan interface{}, bufferSize),
 		readBuf:  []interface{}{},
 		writeBuf: []interface{}{},
 	}
+	localCh.ranked = rankOf(localCh, name)
+
+	return localCh
 }
 
 // Acquire tries to get exclusive access to the local channel.
@@ -782,15 +1108,20 @@ type FileResource struct {
 	fd       *os.File // the underlying file descriptor.
 	contents []byte   // if the file has been previously read or written, hold contents in buffer
 	dirty    bool     // whether the file has been written
+
+	ranked // acquisition order, computed on creation
 }
 
 // NewFileResource creates a FileResource for the file under `path`.
 func NewFileResource(path string) *FileResource {
-	return &FileResource{
+	file := &FileResource{
 		path:     path,
 		contents: nil,
 		dirty:    false,
 	}
+	file.ranked = rankOf(file, path)
+
+	return file
 }
 
 // Acquire attempts to open the underlying file with appropriate
@@ -872,12 +1203,17 @@ func (file *FileResource) Less(other ArchetypeResource) bool {
 
 type ImmutableResource struct {
 	value interface{}
+
+	ranked // acquisition order, computed on creation
 }
 
 // NewImmutableResource creates a new immutable archetype resource
 // wrapping the `value` passed.
 func NewImmutableResource(value interface{}) *ImmutableResource {
-	return &ImmutableResource{value}
+	resource := &ImmutableResource{value: value}
+	resource.ranked = rankOf(resource, "")
+
+	return resource
 }
 
 // Acquire is a no-op for immutable resources
@@ -919,18 +1255,23 @@ type LocallySharedResource struct {
 	name       string      // resource identifier
 	val        interface{} // the value being shared
 	writtenBuf interface{} // buffer of previous writes
-	lock       chan int    // mutex to guarantee exclusive access
+	lock       *fifoLock   // mutex to guarantee exclusive access
+
+	ranked // acquisition order, computed on creation
 }
 
 // NewLocallySharedResource creates a new shared resource that can be
 // used as a resource archetype
 func NewLocallySharedResource(name string, val interface{}) *LocallySharedResource {
-	return &LocallySharedResource{
+	resource := &LocallySharedResource{
 		name:       name,
 		val:        val,
 		writtenBuf: nil,
 		lock:       newLock(),
 	}
+	resource.ranked = rankOf(resource, name)
+
+	return resource
 }
 
 // Acquire locks the resource for exclusive access
@@ -994,15 +1335,20 @@ type AtomicInteger struct {
 	name         string // used to enforce consistent ordering
 	value        int32  // the current value of the underlying integer
 	writtenValue *int32 // uncommitted write, if any
+
+	ranked // acquisition order, computed on creation
 }
 
 // NewAtomicInteger creates an atomic Integer initialized with the
 // value passed as argument
 func NewAtomicInteger(name string, initial int32) *AtomicInteger {
-	return &AtomicInteger{
+	aint := &AtomicInteger{
 		name:  name,
 		value: initial,
 	}
+	aint.ranked = rankOf(aint, name)
+
+	return aint
 }
 
 // Acquire is a no-op for atomic integers
@@ -1058,6 +1404,8 @@ func (aint *AtomicInteger) Less(other ArchetypeResource) bool {
 type SleepResource struct {
 	name string        // resource name, for ordering
 	unit time.Duration // seconds, milliseconds, ...
+
+	ranked // acquisition order, computed on creation
 }
 
 // NewSleepResource creates a resource that sleeps for the specified
@@ -1065,10 +1413,13 @@ type SleepResource struct {
 // indicates the unit used when the resource is used (i.e., seconds,
 // milliseconds, etc.)
 func NewSleepResource(name string, unit time.Duration) *SleepResource {
-	return &SleepResource{
+	s := &SleepResource{
 		name: name,
 		unit: unit,
 	}
+	s.ranked = rankOf(s, name)
+
+	return s
 }
 
 // Acquire is a no-op for sleep resources
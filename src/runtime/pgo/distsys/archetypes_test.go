@@ -0,0 +1,405 @@
+package distsys
+
+import (
+	"fmt"
+	"sort"
+	"sync"
+	"sync/atomic"
+	"time"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+// mailboxPort is the next loopback port used by mailboxes in these tests
+var mailboxPort = 17200
+
+// loopbackMailboxes creates the mailboxes of processes "P(0)" to
+// "P(n-1)", listening on a loopback port, along with references to
+// each of them from process "P(n)", on another node.
+func loopbackMailboxes(n int, bufferSize, readTimeout uint) (locals, remotes []*Mailbox, stop func()) {
+	localAddr := fmt.Sprintf("127.0.0.1:%d", mailboxPort)
+	remoteAddr := fmt.Sprintf("127.0.0.1:%d", mailboxPort+1)
+	mailboxPort += 2
+
+	configuration := map[string]string{fmt.Sprintf("P(%d)", n): remoteAddr}
+	localNames := make([]string, n)
+	for i := range localNames {
+		localNames[i] = fmt.Sprintf("P(%d)", i)
+		configuration[localNames[i]] = localAddr
+	}
+
+	localConns := NewConnections(localAddr)
+	remoteConns := NewConnections(remoteAddr)
+
+	for _, name := range localNames {
+		local, err := MailboxRef(name, 0, localConns, configuration, localNames, bufferSize, 0, readTimeout)
+		if err != nil {
+			panic(err)
+		}
+
+		remote, err := MailboxRef(name, 0, remoteConns, configuration, []string{fmt.Sprintf("P(%d)", n)}, bufferSize, 0, readTimeout)
+		if err != nil {
+			panic(err)
+		}
+
+		locals = append(locals, local)
+		remotes = append(remotes, remote)
+	}
+
+	return locals, remotes, func() {
+		remoteConns.Close()
+		localConns.Close()
+	}
+}
+
+// loopbackMailbox creates the mailbox of process "P(0)", listening on a
+// loopback port, along with a reference to it from process "P(1)".
+func loopbackMailbox(readTimeout uint) (local, remote *Mailbox, stop func()) {
+	locals, remotes, stop := loopbackMailboxes(1, 10, readTimeout)
+	return locals[0], remotes[0], stop
+}
+
+var _ = Describe("Mailbox", func() {
+	It("reads a message as soon as it arrives", func() {
+		local, remote, stop := loopbackMailbox(10000)
+		defer stop()
+
+		go func() {
+			time.Sleep(50 * time.Millisecond)
+			remote.Write(42)
+			remote.Release()
+		}()
+
+		start := time.Now()
+		msg, err := local.Read()
+		Expect(err).NotTo(HaveOccurred())
+		Expect(msg).To(Equal(42))
+		Expect(time.Since(start)).To(BeNumerically("<", 5*time.Second))
+	})
+
+	It("aborts reads from an empty mailbox after the read timeout", func() {
+		local, _, stop := loopbackMailbox(50)
+		defer stop()
+
+		start := time.Now()
+		_, err := local.Read()
+		Expect(err).To(BeAssignableToTypeOf(&AbortRetryError{}))
+		Expect(time.Since(start)).To(BeNumerically(">=", 50*time.Millisecond))
+	})
+
+	It("reads the messages of an aborted step again", func() {
+		local, remote, stop := loopbackMailbox(1000)
+		defer stop()
+
+		remote.Write(1)
+		remote.Write(2)
+		Expect(remote.Release()).To(Succeed())
+
+		Expect(local.Read()).To(Equal(1))
+		Expect(local.Abort()).To(Succeed())
+
+		Expect(local.Read()).To(Equal(1))
+		Expect(local.Read()).To(Equal(2))
+		Expect(local.Release()).To(Succeed())
+	})
+
+	It("sends the messages of a step to every destination", func() {
+		locals, remotes, stop := loopbackMailboxes(3, 10, 1000)
+		defer stop()
+
+		resources := []ArchetypeResource{}
+		for i, remote := range remotes {
+			remote.Write(i)
+			remote.Write(i + 10)
+			resources = append(resources, remote)
+		}
+		Expect(ReleaseResources(resources...)).To(Succeed())
+
+		for i, local := range locals {
+			Expect(local.Read()).To(Equal(i))
+			Expect(local.Read()).To(Equal(i + 10))
+			Expect(local.Release()).To(Succeed())
+		}
+	})
+
+	It("does not send messages that do not fit in the destination mailbox", func() {
+		locals, remotes, stop := loopbackMailboxes(1, 2, 50)
+		defer stop()
+
+		for i := 0; i < 4; i++ {
+			remotes[0].Write(i)
+		}
+
+		err := remotes[0].Release()
+		Expect(err).To(BeAssignableToTypeOf(&ResourceInternalError{}))
+		Expect(err.Error()).To(ContainSubstring("Destination mailbox is full"))
+
+		Expect(locals[0].Read()).To(Equal(0))
+		Expect(locals[0].Read()).To(Equal(1))
+		_, err = locals[0].Read()
+		Expect(err).To(BeAssignableToTypeOf(&AbortRetryError{}))
+	})
+
+	It("sends the messages that did not fit on the next release", func() {
+		locals, remotes, stop := loopbackMailboxes(1, 2, 50)
+		defer stop()
+
+		for i := 0; i < 4; i++ {
+			remotes[0].Write(i)
+		}
+		Expect(remotes[0].Release()).NotTo(Succeed())
+
+		Expect(locals[0].Read()).To(Equal(0))
+		Expect(locals[0].Read()).To(Equal(1))
+		Expect(locals[0].Release()).To(Succeed())
+
+		// aborting a later step only drops the messages it wrote
+		remotes[0].Write(10)
+		Expect(remotes[0].Abort()).To(Succeed())
+		Expect(remotes[0].Release()).To(Succeed())
+
+		Expect(locals[0].Read()).To(Equal(2))
+		Expect(locals[0].Read()).To(Equal(3))
+		_, err := locals[0].Read()
+		Expect(err).To(BeAssignableToTypeOf(&AbortRetryError{}))
+	})
+})
+
+var _ = Describe("fifoLock", func() {
+	var lock *fifoLock
+
+	BeforeEach(func() {
+		lock = newLock()
+	})
+
+	waiting := func() int {
+		lock.mu.Lock()
+		defer lock.mu.Unlock()
+		return len(lock.waiters)
+	}
+
+	It("is acquired immediately when free", func() {
+		Expect(lock.tryLockFor(0)).To(BeTrue())
+		Expect(lock.tryLockFor(10 * time.Millisecond)).To(BeFalse())
+
+		releaseLock(lock)
+		Expect(lock.tryLockFor(0)).To(BeTrue())
+	})
+
+	It("hands the lock to waiters in the order they asked for it", func() {
+		Expect(tryLock(lock)).To(BeTrue())
+
+		order := make(chan int, 5)
+		for i := 0; i < 5; i++ {
+			go func(i int) {
+				defer GinkgoRecover()
+				Expect(lock.tryLockFor(10 * time.Second)).To(BeTrue())
+				order <- i
+				releaseLock(lock)
+			}(i)
+
+			Eventually(waiting).Should(Equal(i + 1))
+		}
+
+		releaseLock(lock)
+		for i := 0; i < 5; i++ {
+			Eventually(order).Should(Receive(Equal(i)))
+		}
+	})
+
+	It("gives up after the timeout", func() {
+		Expect(tryLock(lock)).To(BeTrue())
+
+		start := time.Now()
+		Expect(lock.tryLockFor(20 * time.Millisecond)).To(BeFalse())
+		Expect(time.Since(start)).To(BeNumerically(">=", 20*time.Millisecond))
+		Expect(waiting()).To(Equal(0))
+
+		releaseLock(lock)
+		Expect(lock.tryLockFor(0)).To(BeTrue())
+	})
+
+	It("ignores releases of a free lock", func() {
+		releaseLock(lock)
+		Expect(lock.tryLockFor(0)).To(BeTrue())
+		Expect(lock.tryLockFor(0)).To(BeFalse())
+	})
+})
+
+var _ = Describe("Resource ordering", func() {
+	It("orders resources by type, then by name", func() {
+		a := NewLocallySharedResource("a", 0)
+		b := NewLocallySharedResource("b", 0)
+		c := NewAtomicInteger("c", 0)
+		ch := NewLocalChannel("z", 1)
+
+		resources := []ArchetypeResource{c, b, ch, a}
+		sortResources(resources)
+		Expect(resources).To(Equal([]ArchetypeResource{ch, a, b, c}))
+	})
+
+	It("orders resources the same way as their implementation of Less", func() {
+		resources := []ArchetypeResource{
+			NewSleepResource("s", time.Millisecond),
+			NewAtomicInteger("i2", 0),
+			NewLocallySharedResource("l", 0),
+			NewAtomicInteger("i1", 0),
+			NewImmutableResource(1),
+			NewFileResource("/tmp/f"),
+			NewMappedFileResource("/tmp/m"),
+			NewLocalChannel("ch", 1),
+		}
+
+		sorted := append([]ArchetypeResource{}, resources...)
+		sortResources(sorted)
+
+		reference := append([]ArchetypeResource{}, resources...)
+		sort.Stable(SortableArchetypeResource(reference))
+
+		Expect(sorted).To(Equal(reference))
+	})
+
+	It("orders resources created without their constructors", func() {
+		ranked := NewLocallySharedResource("b", 0)
+		unranked := &LocallySharedResource{name: "a"}
+
+		resources := []ArchetypeResource{ranked, unranked}
+		sortResources(resources)
+		Expect(resources).To(Equal([]ArchetypeResource{unranked, ranked}))
+	})
+})
+
+// benchmarkMailboxRelease measures steps sending `messages` messages to
+// each of `destinations` mailboxes on another node, releasing the
+// mailboxes of a step together or one at a time.
+func benchmarkMailboxRelease(b *testing.B, destinations, messages int, together bool) {
+	locals, remotes, stop := loopbackMailboxes(destinations, uint(messages*64), 10)
+	defer stop()
+
+	done := make(chan bool)
+	var drained sync.WaitGroup
+	for _, local := range locals {
+		drained.Add(1)
+		go func(local *Mailbox) {
+			defer drained.Done()
+			for {
+				select {
+				case <-done:
+					return
+				default:
+				}
+
+				if _, err := local.Read(); err == nil {
+					local.Release()
+				}
+			}
+		}(local)
+	}
+
+	resources := make([]ArchetypeResource, len(remotes))
+	for i, remote := range remotes {
+		resources[i] = remote
+	}
+	b.ResetTimer()
+
+	for i := 0; i < b.N; i++ {
+		for _, remote := range remotes {
+			for j := 0; j < messages; j++ {
+				remote.Write(j)
+			}
+		}
+
+		if together {
+			ReleaseResources(resources...)
+		} else {
+			for _, resource := range resources {
+				ReleaseResources(resource)
+			}
+		}
+	}
+
+	b.StopTimer()
+	close(done)
+	drained.Wait()
+}
+
+func BenchmarkMailboxRelease1x1(b *testing.B) {
+	benchmarkMailboxRelease(b, 1, 1, true)
+}
+
+func BenchmarkMailboxRelease1x16(b *testing.B) {
+	benchmarkMailboxRelease(b, 1, 16, true)
+}
+
+func BenchmarkMailboxReleaseOneAtATime4x4(b *testing.B) {
+	benchmarkMailboxRelease(b, 4, 4, false)
+}
+
+func BenchmarkMailboxReleaseTogether4x4(b *testing.B) {
+	benchmarkMailboxRelease(b, 4, 4, true)
+}
+
+// benchmarkContendedResource measures steps incrementing a locally
+// shared counter from `workers` goroutines at once.
+func benchmarkContendedResource(b *testing.B, workers int) {
+	counter := NewLocallySharedResource("counter", 0)
+	remaining := int64(b.N)
+
+	var wg sync.WaitGroup
+	b.ResetTimer()
+
+	for w := 0; w < workers; w++ {
+		wg.Add(1)
+		go func() {
+			defer wg.Done()
+			for atomic.AddInt64(&remaining, -1) >= 0 {
+				// retry aborted steps, as archetypes do
+				for AcquireResources(WRITE_ACCESS, counter) != nil {
+				}
+
+				value, _ := counter.Read()
+				counter.Write(value.(int) + 1)
+				ReleaseResources(counter)
+			}
+		}()
+	}
+
+	wg.Wait()
+}
+
+func BenchmarkContendedResource1(b *testing.B) {
+	benchmarkContendedResource(b, 1)
+}
+
+func BenchmarkContendedResource8(b *testing.B) {
+	benchmarkContendedResource(b, 8)
+}
+
+func BenchmarkContendedResource64(b *testing.B) {
+	benchmarkContendedResource(b, 64)
+}
+
+func BenchmarkContendedResource512(b *testing.B) {
+	benchmarkContendedResource(b, 512)
+}
+
+// BenchmarkAcquireRelease measures the overhead of acquiring and releasing
+// the resources of a step, passed in a different order every time.
+func BenchmarkAcquireRelease(b *testing.B) {
+	resources := []ArchetypeResource{
+		NewLocallySharedResource("d", 0),
+		NewAtomicInteger("c", 0),
+		NewLocallySharedResource("b", 0),
+		NewLocalChannel("a", 1),
+	}
+	b.ReportAllocs()
+	b.ResetTimer()
+
+	for i := 0; i < b.N; i++ {
+		AcquireResources(WRITE_ACCESS, resources[i%4], resources[(i+1)%4], resources[(i+2)%4], resources[(i+3)%4])
+		ReleaseResources(resources[i%4], resources[(i+1)%4], resources[(i+2)%4], resources[(i+3)%4])
+	}
+}
@@ -0,0 +1,148 @@
+package distsys
+
+// Archetypes compiled by PGo retry a step whenever one of the resources it
+// uses returns an AbortRetryError. Retrying right away is likely to run into
+// the same conflict, while waiting too long adds latency to steps that were
+// aborted because of a transient failure. A Backoff starts with a short wait,
+// and doubles it (up to a maximum) for every consecutive abort, until a step
+// commits. Waits are randomized, so that processes aborted by the same
+// conflict do not retry in lockstep.
+//
+// Since it sees every step commit or abort, a Backoff also records the
+// number of commits and aborts of each label, and how long steps take to
+// commit (including retries), in the Default metrics registry.
+
+import (
+	"math/rand"
+	"sync/atomic"
+	"time"
+
+	"pgo/metrics"
+)
+
+// RetryStats counts the steps run by the archetypes in the running process.
+type RetryStats struct {
+	Commits uint64        // steps committed
+	Aborts  uint64        // steps aborted (and retried) because of an AbortRetryError
+	Backoff time.Duration // total time spent waiting before retrying aborted steps
+}
+
+// counters behind RetryStatistics, updated atomically
+var (
+	commitCount uint64
+	abortCount  uint64
+	backoffTime int64 // ns
+)
+
+func init() {
+	metrics.Default.Func("archetype.commits", func() int64 {
+		return int64(atomic.LoadUint64(&commitCount))
+	})
+	metrics.Default.Func("archetype.aborts", func() int64 {
+		return int64(atomic.LoadUint64(&abortCount))
+	})
+	metrics.Default.Func("archetype.backoff", func() int64 {
+		return atomic.LoadInt64(&backoffTime)
+	})
+}
+
+// labelStats are the metrics recorded for one label
+type labelStats struct {
+	commits *metrics.Counter
+	aborts  *metrics.Counter
+	latency *metrics.Histogram // from the first attempt at a step to its commit
+}
+
+// RetryStatistics returns the number of steps committed and aborted by the
+// archetypes in the running process so far.
+func RetryStatistics() RetryStats {
+	return RetryStats{
+		Commits: atomic.LoadUint64(&commitCount),
+		Aborts:  atomic.LoadUint64(&abortCount),
+		Backoff: time.Duration(atomic.LoadInt64(&backoffTime)),
+	}
+}
+
+// Backoff determines how long an archetype waits before retrying an aborted
+// step. A Backoff must only be used by one archetype at a time.
+type Backoff struct {
+	min    time.Duration // first wait after a commit
+	max    time.Duration // longest wait
+	next   time.Duration // upper bound of the next wait
+	random *rand.Rand
+
+	labels map[string]*labelStats // metrics of the labels seen so far
+	step   *labelStats            // metrics of the label of the running step, if any
+	start  time.Time              // when the running step was first attempted
+}
+
+// NewBackoff creates a Backoff whose waits grow from `min` to `max`.
+func NewBackoff(min, max time.Duration) *Backoff {
+	if min <= 0 || max < min {
+		panic("invalid backoff bounds")
+	}
+
+	return &Backoff{
+		min:    min,
+		max:    max,
+		next:   min,
+		random: rand.New(rand.NewSource(time.Now().UnixNano())),
+		labels: map[string]*labelStats{},
+	}
+}
+
+// Step records that the step with the given label starts, or is attempted
+// again after an abort. Labels are named after their archetype, as in
+// "Archetype.label".
+func (b *Backoff) Step(label string) {
+	stats, ok := b.labels[label]
+	if !ok {
+		stats = &labelStats{
+			commits: metrics.Default.Counter("label." + label + ".commits"),
+			aborts:  metrics.Default.Counter("label." + label + ".aborts"),
+			latency: metrics.Default.Histogram("label." + label + ".latency"),
+		}
+		b.labels[label] = stats
+	}
+
+	// retries of a step count towards the time it takes to commit
+	if stats != b.step {
+		b.step = stats
+		b.start = time.Now()
+	}
+}
+
+// Wait records that a step was aborted, and waits before it is retried. The
+// wait is chosen at random between half and all of the current bound, which
+// then doubles (up to the maximum).
+func (b *Backoff) Wait() {
+	wait := b.next/2 + time.Duration(b.random.Int63n(int64(b.next-b.next/2)+1))
+	time.Sleep(wait)
+
+	atomic.AddUint64(&abortCount, 1)
+	atomic.AddInt64(&backoffTime, int64(wait))
+
+	if b.step != nil {
+		b.step.aborts.Inc()
+	}
+
+	if b.next < b.max {
+		b.next *= 2
+		if b.next > b.max {
+			b.next = b.max
+		}
+	}
+}
+
+// Reset records that a step was committed. The next abort waits for the
+// minimum duration again.
+func (b *Backoff) Reset() {
+	atomic.AddUint64(&commitCount, 1)
+	b.next = b.min
+
+	if b.step != nil {
+		b.step.commits.Inc()
+		b.step.latency.Since(b.start)
+		b.step = nil
+	}
+}
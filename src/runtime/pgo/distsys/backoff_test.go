@@ -0,0 +1,82 @@
+package distsys
+
+import (
+	"time"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"pgo/metrics"
+)
+
+var _ = Describe("Backoff", func() {
+	It("doubles its bound on consecutive aborts, up to the maximum", func() {
+		backoff := NewBackoff(time.Microsecond, 8*time.Microsecond)
+		Expect(backoff.next).To(Equal(time.Microsecond))
+
+		for _, bound := range []time.Duration{2, 4, 8, 8} {
+			backoff.Wait()
+			Expect(backoff.next).To(Equal(bound * time.Microsecond))
+		}
+	})
+
+	It("goes back to the minimum once a step commits", func() {
+		backoff := NewBackoff(time.Microsecond, 8*time.Microsecond)
+		backoff.Wait()
+		backoff.Wait()
+
+		backoff.Reset()
+		Expect(backoff.next).To(Equal(time.Microsecond))
+	})
+
+	It("waits between half and all of its bound", func() {
+		backoff := NewBackoff(20*time.Millisecond, 20*time.Millisecond)
+
+		start := time.Now()
+		backoff.Wait()
+		Expect(time.Since(start)).To(BeNumerically(">=", 10*time.Millisecond))
+	})
+
+	It("counts commits and aborts", func() {
+		before := RetryStatistics()
+
+		backoff := NewBackoff(time.Microsecond, time.Microsecond)
+		backoff.Wait()
+		backoff.Wait()
+		backoff.Reset()
+
+		after := RetryStatistics()
+		Expect(after.Aborts - before.Aborts).To(Equal(uint64(2)))
+		Expect(after.Commits - before.Commits).To(Equal(uint64(1)))
+		Expect(after.Backoff).To(BeNumerically(">", before.Backoff))
+	})
+
+	It("records the commits and aborts of each label", func() {
+		backoff := NewBackoff(time.Microsecond, time.Microsecond)
+		firstCommits := metrics.Default.Counter("label.Test.first.commits")
+		firstAborts := metrics.Default.Counter("label.Test.first.aborts")
+		secondCommits := metrics.Default.Counter("label.Test.second.commits")
+		firstLatency := metrics.Default.Histogram("label.Test.first.latency")
+
+		// the metrics are global, so only look at what this test adds
+		commits, aborts, second := firstCommits.Value(), firstAborts.Value(), secondCommits.Value()
+		latencies := firstLatency.Snapshot().Count
+
+		backoff.Step("Test.first")
+		backoff.Wait()
+		backoff.Step("Test.first")
+		backoff.Reset()
+		backoff.Step("Test.second")
+		backoff.Reset()
+
+		Expect(firstCommits.Value() - commits).To(Equal(uint64(1)))
+		Expect(firstAborts.Value() - aborts).To(Equal(uint64(1)))
+		Expect(secondCommits.Value() - second).To(Equal(uint64(1)))
+		Expect(firstLatency.Snapshot().Count - latencies).To(Equal(uint64(1)))
+	})
+
+	It("rejects invalid bounds", func() {
+		Expect(func() { NewBackoff(0, time.Second) }).To(Panic())
+		Expect(func() { NewBackoff(time.Second, time.Millisecond) }).To(Panic())
+	})
+})
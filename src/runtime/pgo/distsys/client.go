@@ -1,5 +1,15 @@
 package distsys
 
+import (
+	"net/rpc"
+	"time"
+
+	"pgo/metrics"
+)
+
+// how long it takes to acquire state, whether local or remote
+var stateAcquireLatency = metrics.Default.Histogram("state.acquire")
+
 // stateHandler defines the interface of a state handler. Apart from the definitions
 // of localStateHandler, which manipulate state located within the running node's
 // local store, there is also the possibility that state lives in another node
@@ -20,7 +30,6 @@ type remoteHandler struct {
 // needs to be locked before this function is called since the variable may have
 // moved.
 func (remote remoteHandler) GetState() (VarReferences, error) {
-	conn := remote.stateServer.connections.GetConnection(remote.group.Peer)
 	remote.group.Requester = remote.stateServer.self
 	refs := VarReferences(map[string]*Reference{})
 
@@ -29,18 +38,35 @@ func (remote remoteHandler) GetState() (VarReferences, error) {
 		remote.stateServer.store.Unlock(borrowVar.Name)
 	}
 
+	conn, err := remote.stateServer.connections.Client(remote.group.Peer)
+	if err != nil {
+		return nil, err
+	}
+
+	start := time.Now()
 	if err := conn.Call("StateServer.GetState", remote.group, &refs); err != nil {
 		return nil, err
 	}
 
+	remote.stateServer.connections.Latency(remote.group.Peer).Since(start)
 	return refs, nil
 }
 
 // ReleaseState releases state that lives in another system. This function needs to be
 // called once a counterpart GetState call has succeeded.
 func (remote remoteHandler) ReleaseState(refs VarReferences) error {
+	call := <-remote.startRelease(refs).Done
+	return call.Error
+}
+
+// startRelease sends the request made by ReleaseState without waiting for the
+// response, so that several nodes can release state concurrently.
+func (remote remoteHandler) startRelease(refs VarReferences) *rpc.Call {
 	var ok bool
-	conn := remote.stateServer.connections.GetConnection(remote.group.Peer)
+	conn, err := remote.stateServer.connections.Client(remote.group.Peer)
+	if err != nil {
+		return failedCall(err)
+	}
 
 	// include only references for variables included in the group
 	// being released
@@ -59,11 +85,21 @@ func (remote remoteHandler) ReleaseState(refs VarReferences) error {
 		}
 	}
 
-	if err := conn.Call("StateServer.ReleaseState", &refSlice, &ok); err != nil {
-		return err
+	return conn.Go("StateServer.ReleaseState", &refSlice, &ok, nil)
+}
+
+// startTryGetState sends a TryGetState request for the group of the receiver,
+// without waiting for the response. Unlike GetState, local entries stay locked
+// during the request, since the remote node never waits for the variables.
+func (remote remoteHandler) startTryGetState(reply *TryGetStateReply) *rpc.Call {
+	conn, err := remote.stateServer.connections.Client(remote.group.Peer)
+	if err != nil {
+		return failedCall(err)
 	}
 
-	return nil
+	remote.group.Requester = remote.stateServer.self
+
+	return conn.Go("StateServer.TryGetState", remote.group, reply, nil)
 }
 
 // stateBuilder returns a stateHandler that either manipulates state in the running node's
@@ -81,22 +117,88 @@ func stateBuilder(group *VarReq, ss *StateServer) stateHandler {
 	return remoteHandler{group, ss}
 }
 
+// getState gets the state of the group given from the node holding it, and lets
+// the migration strategy know about the accesses served locally.
+func (ss *StateServer) getState(group *VarReq) (VarReferences, error) {
+	if recorder, ok := ss.migrationStrategy.(LocalAccessRecorder); ok && group.Peer == ss.self {
+		for _, borrowVar := range group.Names {
+			recorder.RecordLocalAccess(borrowVar.Name)
+		}
+	}
+
+	return stateBuilder(group, ss).GetState()
+}
+
 // Acquire receives a BorrowSpec and returns a populated VarReferences struct containing
 // the values of the variables in the spec given, with the requested permissions (i.e.,
-// exclusive or non-exclusive (read-only) access).
+// exclusive or non-exclusive (read-only) access). Variables that are only read, and on
+// which the running node holds a read lease, are read locally (see lease.go).
 func (ss *StateServer) Acquire(spec *BorrowSpec) (VarReferences, error) {
+	start := time.Now()
+	defer stateAcquireLatency.Since(start)
+
+	cached, spec := ss.leases.borrow(spec, start)
+
+	refs, err := ss.acquire(spec)
+	if err != nil {
+		return nil, err
+	}
+
+	ss.leases.store(refs, start)
+	return refs.Merge(cached), nil
+}
+
+// acquire implements Acquire for variables that are not read from a lease.
+//
+// When the variables are held in more than one other node, all of them are first
+// requested at the same time, without waiting for variables that are currently held
+// (see tryAcquire). If that fails, the variables are acquired group by group, in the
+// order of their names, which is slower but cannot deadlock.
+func (ss *StateServer) acquire(spec *BorrowSpec) (VarReferences, error) {
 	op := NewGlobalStateOperation(spec, ss.store, ss.self, ss.connections)
-	allRefs := VarReferences(map[string]*Reference{})
 
 	// lock every variable that is being requested to avoid migrations
 	// while we determine request groups
 	op.Lock()
 
+	if ss.remoteGroups(op.Groups()) > 1 {
+		refs, acquired, err := ss.tryAcquire(op)
+		if err != nil {
+			return nil, err
+		}
+
+		if acquired {
+			return ss.acquireInOrder(op, refs)
+		}
+
+		// start over from an operation that holds nothing
+		op = NewGlobalStateOperation(spec, ss.store, ss.self, ss.connections)
+		op.Lock()
+	}
+
+	return ss.acquireInOrder(op, VarReferences(map[string]*Reference{}))
+}
+
+// remoteGroups returns how many of the groups given are held in other nodes.
+func (ss *StateServer) remoteGroups(groups []*VarReq) int {
+	remote := 0
+	for _, group := range groups {
+		if group.Peer != ss.self {
+			remote++
+		}
+	}
+
+	return remote
+}
+
+// acquireInOrder acquires the variables left in the operation given one group at a
+// time, and adds them to `allRefs`. Every variable left must be locked locally.
+func (ss *StateServer) acquireInOrder(op *GlobalStateOperation, allRefs VarReferences) (VarReferences, error) {
 	for op.HasNext() {
 		group := op.Next()
 		op.UnlockExcept(group)
 
-		refs, err := stateBuilder(group, ss).GetState()
+		refs, err := ss.getState(group)
 		if err != nil {
 			return nil, err
 		}
@@ -111,18 +213,107 @@ func (ss *StateServer) Acquire(spec *BorrowSpec) (VarReferences, error) {
 	return allRefs, nil
 }
 
+// tryAcquire sends a single TryGetState request to every other node holding variables
+// in the operation given, concurrently, while every variable is locked locally. Returns
+// whether every request succeeded, along with the references obtained, in which case
+// the variables that were not acquired (because their owner changed) are still locked
+// locally. Otherwise, the references obtained are released and nothing is locked.
+func (ss *StateServer) tryAcquire(op *GlobalStateOperation) (VarReferences, bool, error) {
+	groups := op.PeerGroups()
+	calls := make([]*rpc.Call, len(groups))
+	replies := make([]*TryGetStateReply, len(groups))
+
+	for i, group := range groups {
+		if group.Peer != ss.self {
+			replies[i] = &TryGetStateReply{}
+			calls[i] = remoteHandler{group, ss}.startTryGetState(replies[i])
+		}
+	}
+
+	var err error
+	for _, call := range calls {
+		if call != nil {
+			if done := <-call.Done; done.Error != nil && err == nil {
+				err = done.Error
+			}
+		}
+	}
+
+	if err != nil {
+		return nil, false, err
+	}
+
+	acquired := true
+	allRefs := VarReferences(map[string]*Reference{})
+	for i, group := range groups {
+		var refs VarReferences
+
+		if group.Peer == ss.self {
+			refs, _ = ss.getState(group)
+		} else if replies[i].Acquired {
+			refs = replies[i].Refs
+		} else {
+			acquired = false
+			continue
+		}
+
+		holds := op.updateRefs(refs, false)
+		op.AckMigrations()
+		allRefs = allRefs.Merge(holds)
+	}
+
+	if acquired {
+		return allRefs, true, nil
+	}
+
+	// give back what was acquired, and unlock the variables that were not
+	op.Unlock()
+	if err := ss.Release(allRefs); err != nil {
+		return nil, false, err
+	}
+
+	return nil, false, nil
+}
+
 // Release receives a set of references to variables, potentially manipulated by
 // the application (after a call to Acquire), and releases any locks that were
-// held, either locally or remotely on a different node in the system.
-func (ss *StateServer) Release(refs VarReferences) error {
+// held, either locally or remotely on a different node in the system. Every node
+// involved is sent a single request, and the requests are sent concurrently.
+// References read from a lease hold nothing, and need no release.
+func (ss *StateServer) Release(allRefs VarReferences) error {
+	refs := VarReferences(map[string]*Reference{})
+	for name, ref := range allRefs {
+		if !ref.Cached {
+			refs.insert(name, ref)
+		}
+	}
+
 	op := NewGlobalStateOperation(refs.ToBorrowSpec(), ss.store, ss.self, ss.connections)
+	calls := []*rpc.Call{}
+
+	for _, group := range op.PeerGroups() {
+		if group.Peer == ss.self {
+			if err := stateBuilder(group, ss).ReleaseState(refs); err != nil {
+				return err
+			}
+
+			continue
+		}
 
-	for _, group := range op.Groups() {
-		if err := stateBuilder(group, ss).ReleaseState(refs); err != nil {
-			return err
+		calls = append(calls, remoteHandler{group, ss}.startRelease(refs))
+	}
+
+	var err error
+	for _, call := range calls {
+		if done := <-call.Done; done.Error != nil && err == nil {
+			err = done.Error
 		}
 	}
 
+	if err != nil {
+		return err
+	}
+
 	// unlock local entries after releasing our locks remotely
 	op.Unlock()
 
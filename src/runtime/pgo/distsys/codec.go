@@ -0,0 +1,521 @@
+package distsys
+
+// Messages sent between archetypes are encoded with a Codec. The default,
+// CompactCodec, writes a one-byte tag followed by the value, for the types
+// generated code uses to represent TLA+ values: booleans, integers, strings,
+// slices and records. Records whose set of fields was defined with
+// DefineRecordType (as code generated by PGo does for the records it
+// infers) are encoded as a number identifying the fields, followed by their
+// values, so that field names are not sent with every message. Since those
+// numbers depend on the order in which record types were defined, values
+// that outlive the program (e.g., those written to disk) are encoded with
+// NamedFields set, which always writes field names. Values of other types
+// are encoded with gob, and must have been registered with DefineCustomType.
+//
+// Encoded values are sent as frames, each prefixed by its length, which can
+// be carried by net/rpc (as a byte slice) or written directly to a stream.
+
+import (
+	"bytes"
+	"encoding/binary"
+	"encoding/gob"
+	"errors"
+	"fmt"
+	"io"
+	"sort"
+	"sync"
+)
+
+// Codec encodes and decodes the values sent between archetypes.
+type Codec interface {
+	// Append appends the encoding of `value` to `buf`, returning the
+	// extended buffer.
+	Append(buf []byte, value interface{}) ([]byte, error)
+
+	// Decode decodes a value encoded by Append.
+	Decode(data []byte) (interface{}, error)
+}
+
+// MessageCodec is the codec used to encode the messages sent to mailboxes.
+// Every node in a system must use the same codec.
+var MessageCodec Codec = CompactCodec{}
+
+// ErrMalformedFrame is returned when decoding data that was not encoded by
+// the same codec or framing.
+var ErrMalformedFrame = errors.New("malformed frame")
+
+// Framing
+// -------
+
+// AppendFrame appends `payload` to `buf`, prefixed by its length.
+func AppendFrame(buf []byte, payload []byte) []byte {
+	buf = appendUvarint(buf, uint64(len(payload)))
+	return append(buf, payload...)
+}
+
+// NextFrame splits the first frame in `buf` from the frames after it.
+func NextFrame(buf []byte) (payload []byte, rest []byte, err error) {
+	length, n := binary.Uvarint(buf)
+	if n <= 0 || uint64(len(buf)-n) < length {
+		return nil, nil, ErrMalformedFrame
+	}
+
+	return buf[n : n+int(length)], buf[n+int(length):], nil
+}
+
+// WriteFrame writes `payload` to a stream, prefixed by its length.
+func WriteFrame(w io.Writer, payload []byte) error {
+	var prefix [binary.MaxVarintLen64]byte
+	n := binary.PutUvarint(prefix[:], uint64(len(payload)))
+
+	if _, err := w.Write(prefix[:n]); err != nil {
+		return err
+	}
+
+	_, err := w.Write(payload)
+	return err
+}
+
+// ReadFrame reads a frame written by WriteFrame from a stream.
+func ReadFrame(r io.ByteReader) ([]byte, error) {
+	length, err := binary.ReadUvarint(r)
+	if err != nil {
+		return nil, err
+	}
+
+	payload := make([]byte, length)
+	for i := range payload {
+		if payload[i], err = r.ReadByte(); err != nil {
+			return nil, err
+		}
+	}
+
+	return payload, nil
+}
+
+// encodeFrames encodes each value given with a codec, in a frame of its own.
+func encodeFrames(codec Codec, values []interface{}) ([]byte, error) {
+	var frames, payload []byte
+	var err error
+
+	for _, value := range values {
+		if payload, err = codec.Append(payload[:0], value); err != nil {
+			return nil, err
+		}
+
+		frames = AppendFrame(frames, payload)
+	}
+
+	return frames, nil
+}
+
+// decodeFrames decodes every frame in `frames` with a codec.
+func decodeFrames(codec Codec, frames []byte) ([]interface{}, error) {
+	values := []interface{}{}
+
+	for len(frames) > 0 {
+		payload, rest, err := NextFrame(frames)
+		if err != nil {
+			return nil, err
+		}
+
+		value, err := codec.Decode(payload)
+		if err != nil {
+			return nil, err
+		}
+
+		values = append(values, value)
+		frames = rest
+	}
+
+	return values, nil
+}
+
+// Gob
+// ---
+
+// GobCodec encodes every value with gob, including its type information.
+type GobCodec struct{}
+
+func (GobCodec) Append(buf []byte, value interface{}) ([]byte, error) {
+	encoded := bytes.NewBuffer(buf)
+	if err := gob.NewEncoder(encoded).Encode(&value); err != nil {
+		return nil, err
+	}
+
+	return encoded.Bytes(), nil
+}
+
+func (GobCodec) Decode(data []byte) (interface{}, error) {
+	var value interface{}
+	if err := gob.NewDecoder(bytes.NewReader(data)).Decode(&value); err != nil {
+		return nil, err
+	}
+
+	return value, nil
+}
+
+// Compact encoding
+// ----------------
+
+// tags identifying the type of each value encoded by CompactCodec
+const (
+	tagNil byte = iota
+	tagFalse
+	tagTrue
+	tagInt
+	tagString
+	tagSlice
+	tagInts
+	tagStrings
+	tagRecord
+	tagDefinedRecord
+	tagGob
+	tagBytes
+)
+
+// recordTypes holds the sets of fields defined with DefineRecordType
+var recordTypes = struct {
+	lock    sync.RWMutex
+	fields  [][]string       // sorted field names, indexed by record type
+	byCount map[int][]uint64 // record types, indexed by their number of fields
+}{byCount: map[int][]uint64{}}
+
+// DefineRecordType defines a set of fields that records (represented as
+// map[string]interface{}) sent between archetypes often have, so that
+// CompactCodec does not need to send their names. Record types are identified
+// by the order they are defined in, which must therefore be the same on every
+// node of the system.
+func DefineRecordType(fields ...string) {
+	sorted := append([]string{}, fields...)
+	sort.Strings(sorted)
+
+	recordTypes.lock.Lock()
+	defer recordTypes.lock.Unlock()
+
+	// defining the same fields again has no effect
+	for _, id := range recordTypes.byCount[len(sorted)] {
+		if stringsEqual(recordTypes.fields[id], sorted) {
+			return
+		}
+	}
+
+	id := uint64(len(recordTypes.fields))
+	recordTypes.fields = append(recordTypes.fields, sorted)
+	recordTypes.byCount[len(sorted)] = append(recordTypes.byCount[len(sorted)], id)
+}
+
+// findRecordType returns the record type with exactly the fields in the
+// record given, if it was defined.
+func findRecordType(record map[string]interface{}) (uint64, []string, bool) {
+	recordTypes.lock.RLock()
+	defer recordTypes.lock.RUnlock()
+
+	for _, id := range recordTypes.byCount[len(record)] {
+		fields := recordTypes.fields[id]
+		matches := true
+
+		for _, field := range fields {
+			if _, ok := record[field]; !ok {
+				matches = false
+				break
+			}
+		}
+
+		if matches {
+			return id, fields, true
+		}
+	}
+
+	return 0, nil, false
+}
+
+func recordTypeFields(id uint64) ([]string, bool) {
+	recordTypes.lock.RLock()
+	defer recordTypes.lock.RUnlock()
+
+	if id >= uint64(len(recordTypes.fields)) {
+		return nil, false
+	}
+
+	return recordTypes.fields[id], true
+}
+
+func stringsEqual(a, b []string) bool {
+	if len(a) != len(b) {
+		return false
+	}
+
+	for i := range a {
+		if a[i] != b[i] {
+			return false
+		}
+	}
+
+	return true
+}
+
+// CompactCodec encodes values without type information for the types used by
+// generated code, and with gob otherwise.
+type CompactCodec struct {
+	// NamedFields makes every record be encoded with its field names, even
+	// if its fields were defined with DefineRecordType, so that it can be
+	// decoded by a program that defined different record types
+	NamedFields bool
+}
+
+func appendUvarint(buf []byte, x uint64) []byte {
+	var scratch [binary.MaxVarintLen64]byte
+	n := binary.PutUvarint(scratch[:], x)
+	return append(buf, scratch[:n]...)
+}
+
+func appendVarint(buf []byte, x int64) []byte {
+	var scratch [binary.MaxVarintLen64]byte
+	n := binary.PutVarint(scratch[:], x)
+	return append(buf, scratch[:n]...)
+}
+
+func appendString(buf []byte, s string) []byte {
+	buf = appendUvarint(buf, uint64(len(s)))
+	return append(buf, s...)
+}
+
+func (codec CompactCodec) Append(buf []byte, value interface{}) ([]byte, error) {
+	var err error
+
+	switch v := value.(type) {
+	case nil:
+		return append(buf, tagNil), nil
+
+	case bool:
+		if v {
+			return append(buf, tagTrue), nil
+		}
+		return append(buf, tagFalse), nil
+
+	case int:
+		return appendVarint(append(buf, tagInt), int64(v)), nil
+
+	case string:
+		return appendString(append(buf, tagString), v), nil
+
+	case []int:
+		buf = appendUvarint(append(buf, tagInts), uint64(len(v)))
+		for _, elem := range v {
+			buf = appendVarint(buf, int64(elem))
+		}
+		return buf, nil
+
+	case []byte:
+		return AppendFrame(append(buf, tagBytes), v), nil
+
+	case []string:
+		buf = appendUvarint(append(buf, tagStrings), uint64(len(v)))
+		for _, elem := range v {
+			buf = appendString(buf, elem)
+		}
+		return buf, nil
+
+	case []interface{}:
+		buf = appendUvarint(append(buf, tagSlice), uint64(len(v)))
+		for _, elem := range v {
+			if buf, err = codec.Append(buf, elem); err != nil {
+				return nil, err
+			}
+		}
+		return buf, nil
+
+	case map[string]interface{}:
+		if id, fields, ok := findRecordType(v); ok && !codec.NamedFields {
+			buf = appendUvarint(append(buf, tagDefinedRecord), id)
+			for _, field := range fields {
+				if buf, err = codec.Append(buf, v[field]); err != nil {
+					return nil, err
+				}
+			}
+			return buf, nil
+		}
+
+		// sort fields so that equal records have the same encoding
+		fields := make([]string, 0, len(v))
+		for field := range v {
+			fields = append(fields, field)
+		}
+		sort.Strings(fields)
+
+		buf = appendUvarint(append(buf, tagRecord), uint64(len(fields)))
+		for _, field := range fields {
+			buf = appendString(buf, field)
+			if buf, err = codec.Append(buf, v[field]); err != nil {
+				return nil, err
+			}
+		}
+		return buf, nil
+
+	default:
+		encoded, err := GobCodec{}.Append(nil, value)
+		if err != nil {
+			return nil, err
+		}
+
+		return AppendFrame(append(buf, tagGob), encoded), nil
+	}
+}
+
+func (codec CompactCodec) Decode(data []byte) (interface{}, error) {
+	value, rest, err := codec.decode(data)
+	if err != nil {
+		return nil, err
+	}
+
+	if len(rest) > 0 {
+		return nil, ErrMalformedFrame
+	}
+
+	return value, nil
+}
+
+// compactReader reads the parts of an encoded value
+type compactReader struct {
+	data []byte
+	err  error
+}
+
+func (r *compactReader) uvarint() uint64 {
+	x, n := binary.Uvarint(r.data)
+	if n <= 0 {
+		r.err = ErrMalformedFrame
+		return 0
+	}
+
+	r.data = r.data[n:]
+	return x
+}
+
+func (r *compactReader) varint() int64 {
+	x, n := binary.Varint(r.data)
+	if n <= 0 {
+		r.err = ErrMalformedFrame
+		return 0
+	}
+
+	r.data = r.data[n:]
+	return x
+}
+
+// length reads the length of a collection, each element of which takes at
+// least one byte
+func (r *compactReader) length() int {
+	n := r.uvarint()
+	if r.err == nil && n > uint64(len(r.data)) {
+		r.err = ErrMalformedFrame
+		return 0
+	}
+
+	return int(n)
+}
+
+func (r *compactReader) string() string {
+	n := r.uvarint()
+	if r.err != nil || n > uint64(len(r.data)) {
+		r.err = ErrMalformedFrame
+		return ""
+	}
+
+	s := string(r.data[:n])
+	r.data = r.data[n:]
+	return s
+}
+
+// decode decodes the value at the start of `data`, returning the bytes after it
+func (codec CompactCodec) decode(data []byte) (interface{}, []byte, error) {
+	if len(data) == 0 {
+		return nil, nil, ErrMalformedFrame
+	}
+
+	r := &compactReader{data: data[1:]}
+	var value interface{}
+
+	switch data[0] {
+	case tagNil:
+		value = nil
+
+	case tagFalse:
+		value = false
+
+	case tagTrue:
+		value = true
+
+	case tagInt:
+		value = int(r.varint())
+
+	case tagString:
+		value = r.string()
+
+	case tagInts:
+		ints := make([]int, r.length())
+		for i := range ints {
+			ints[i] = int(r.varint())
+		}
+		value = ints
+
+	case tagStrings:
+		strs := make([]string, r.length())
+		for i := range strs {
+			strs[i] = r.string()
+		}
+		value = strs
+
+	case tagSlice:
+		elems := make([]interface{}, r.length())
+		for i := 0; i < len(elems) && r.err == nil; i++ {
+			elems[i], r.data, r.err = codec.decode(r.data)
+		}
+		value = elems
+
+	case tagRecord:
+		n := r.length()
+		record := make(map[string]interface{}, n)
+		for i := 0; i < n && r.err == nil; i++ {
+			field := r.string()
+			if r.err == nil {
+				record[field], r.data, r.err = codec.decode(r.data)
+			}
+		}
+		value = record
+
+	case tagDefinedRecord:
+		fields, ok := recordTypeFields(r.uvarint())
+		if !ok {
+			return nil, nil, fmt.Errorf("undefined record type in message")
+		}
+
+		record := make(map[string]interface{}, len(fields))
+		for i := 0; i < len(fields) && r.err == nil; i++ {
+			record[fields[i]], r.data, r.err = codec.decode(r.data)
+		}
+		value = record
+
+	case tagBytes:
+		var data []byte
+		if data, r.data, r.err = NextFrame(r.data); r.err == nil {
+			value = append([]byte{}, data...)
+		}
+
+	case tagGob:
+		var encoded []byte
+		if encoded, r.data, r.err = NextFrame(r.data); r.err == nil {
+			value, r.err = GobCodec{}.Decode(encoded)
+		}
+
+	default:
+		return nil, nil, ErrMalformedFrame
+	}
+
+	if r.err != nil {
+		return nil, nil, r.err
+	}
+
+	return value, r.data, nil
+}
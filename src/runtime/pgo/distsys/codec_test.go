@@ -0,0 +1,164 @@
+package distsys
+
+import (
+	"bufio"
+	"bytes"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+// point is encoded with gob by CompactCodec
+type point struct {
+	X, Y int
+}
+
+func init() {
+	DefineCustomType(point{})
+	DefineCustomType(map[string]interface{}{})
+	DefineRecordType("type", "key", "value", "client")
+}
+
+// typicalMessage is a message like those sent by a key-value store client
+func typicalMessage() map[string]interface{} {
+	return map[string]interface{}{
+		"type":   "put",
+		"key":    "k1",
+		"value":  "v",
+		"client": 3,
+	}
+}
+
+func roundTrip(codec Codec, value interface{}) interface{} {
+	encoded, err := codec.Append(nil, value)
+	Expect(err).NotTo(HaveOccurred())
+
+	decoded, err := codec.Decode(encoded)
+	Expect(err).NotTo(HaveOccurred())
+
+	return decoded
+}
+
+var _ = Describe("Codec", func() {
+	values := []interface{}{
+		nil,
+		true,
+		false,
+		0,
+		-42,
+		1 << 40,
+		"",
+		"hello",
+		[]int{3, -1, 2},
+		[]string{"a", "bc"},
+		[]byte("contents"),
+		[]interface{}{1, "two", []interface{}{false}},
+		typicalMessage(),
+		map[string]interface{}{"undefined": 1, "fields": []interface{}{typicalMessage()}},
+		point{1, 2},
+	}
+
+	It("decodes the values it encodes", func() {
+		for _, value := range values {
+			Expect(roundTrip(CompactCodec{}, value)).To(Equal(value))
+		}
+
+		for _, value := range []interface{}{true, -42, "hello", typicalMessage(), point{1, 2}} {
+			Expect(roundTrip(GobCodec{}, value)).To(Equal(value))
+		}
+	})
+
+	It("encodes records of a defined type without their field names", func() {
+		defined, err := CompactCodec{}.Append(nil, typicalMessage())
+		Expect(err).NotTo(HaveOccurred())
+		Expect(bytes.Contains(defined, []byte("client"))).To(BeFalse())
+
+		msg := typicalMessage()
+		msg["extra"] = true
+		undefined, err := CompactCodec{}.Append(nil, msg)
+		Expect(err).NotTo(HaveOccurred())
+		Expect(bytes.Contains(undefined, []byte("client"))).To(BeTrue())
+	})
+
+	It("rejects malformed data", func() {
+		encoded, err := CompactCodec{}.Append(nil, typicalMessage())
+		Expect(err).NotTo(HaveOccurred())
+
+		for i := 0; i < len(encoded); i++ {
+			_, err := CompactCodec{}.Decode(encoded[:i])
+			Expect(err).To(HaveOccurred())
+		}
+
+		_, err = CompactCodec{}.Decode(append(encoded, 0))
+		Expect(err).To(HaveOccurred())
+	})
+
+	It("splits frames", func() {
+		frames, err := encodeFrames(CompactCodec{}, values)
+		Expect(err).NotTo(HaveOccurred())
+		Expect(decodeFrames(CompactCodec{}, frames)).To(Equal(values))
+
+		_, err = decodeFrames(CompactCodec{}, frames[:len(frames)-1])
+		Expect(err).To(HaveOccurred())
+	})
+
+	It("reads frames written to a stream", func() {
+		var stream bytes.Buffer
+		Expect(WriteFrame(&stream, []byte("first"))).To(Succeed())
+		Expect(WriteFrame(&stream, []byte{})).To(Succeed())
+
+		r := bufio.NewReader(&stream)
+		Expect(ReadFrame(r)).To(Equal([]byte("first")))
+		Expect(ReadFrame(r)).To(Equal([]byte{}))
+
+		_, err := ReadFrame(r)
+		Expect(err).To(HaveOccurred())
+	})
+})
+
+func benchmarkEncode(b *testing.B, codec Codec) {
+	msg := typicalMessage()
+	var buf []byte
+	var err error
+
+	b.ReportAllocs()
+	for i := 0; i < b.N; i++ {
+		if buf, err = codec.Append(buf[:0], msg); err != nil {
+			b.Fatal(err)
+		}
+	}
+	b.SetBytes(int64(len(buf)))
+}
+
+func benchmarkDecode(b *testing.B, codec Codec) {
+	encoded, err := codec.Append(nil, typicalMessage())
+	if err != nil {
+		b.Fatal(err)
+	}
+
+	b.ReportAllocs()
+	b.SetBytes(int64(len(encoded)))
+	for i := 0; i < b.N; i++ {
+		if _, err := codec.Decode(encoded); err != nil {
+			b.Fatal(err)
+		}
+	}
+}
+
+func BenchmarkEncodeGob(b *testing.B) {
+	benchmarkEncode(b, GobCodec{})
+}
+
+func BenchmarkEncodeCompact(b *testing.B) {
+	benchmarkEncode(b, CompactCodec{})
+}
+
+func BenchmarkDecodeGob(b *testing.B) {
+	benchmarkDecode(b, GobCodec{})
+}
+
+func BenchmarkDecodeCompact(b *testing.B) {
+	benchmarkDecode(b, CompactCodec{})
+}
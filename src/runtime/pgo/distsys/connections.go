@@ -6,32 +6,148 @@ package distsys
 // It uses Go's RPC library under the hood. Extensions to this abstraction could involve
 // the definition of a interface that could be implemented by multiple communication methods
 // (i.e., not only RPC but other types of protocols, if needed).
+//
+// A net/rpc client sends any number of concurrent requests over its connection,
+// matching responses to requests as they arrive, but it encodes requests one at a
+// time. Connections therefore keeps a pool of connections to each peer, and spreads
+// requests across them. Connections that fail are replaced the next time they are
+// used, retrying with exponential backoff if the peer cannot be reached. Only the
+// slot of the pool being replaced is locked meanwhile, so requests sent over the
+// other connections to the peer are not held up.
 
 import (
 	"fmt"
 	"net"
 	"net/rpc"
+	"sync"
+	"sync/atomic"
+	"time"
+
+	"pgo/metrics"
 )
 
-// Connections maintain the state of the connections across the processes in the network.
+// ConnectionOptions tune the connections between processes.
+type ConnectionOptions struct {
+	PoolSize     int           // number of connections kept to each peer
+	NoDelay      bool          // whether to disable Nagle's algorithm (TCP_NODELAY)
+	ReadBuffer   int           // size of the receive buffer of each socket, in bytes; 0 keeps the system default
+	WriteBuffer  int           // size of the send buffer of each socket, in bytes; 0 keeps the system default
+	DialAttempts int           // number of times to try connecting to a peer before giving up
+	DialBackoff  time.Duration // wait after the first failed attempt to connect; doubles after every attempt
+	DialTimeout  time.Duration // how long each attempt to connect may take; 0 leaves it to the system
+}
+
+// DefaultConnectionOptions returns the options used by NewConnections.
+func DefaultConnectionOptions() ConnectionOptions {
+	return ConnectionOptions{
+		PoolSize:     4,
+		NoDelay:      true,
+		DialAttempts: 8,
+		DialBackoff:  10 * time.Millisecond,
+		DialTimeout:  time.Second,
+	}
+}
+
+// Connections maintain the state of the connections across the processes in the
+// network. It is safe for concurrent use.
 type Connections struct {
-	address  string                 // the IP:port combination that identifies the current process
-	listener *net.TCPListener       // where the server is listening to, if at all
-	server   *rpc.Server            // RPC server instance, if this process exposes methods to the network
-	network  map[string]*rpc.Client // existing connections to other processes
+	address  string                // the IP:port combination that identifies the current process
+	options  ConnectionOptions     // how connections are established
+	lock     sync.Mutex            // protects the fields below
+	listener *net.TCPListener      // where the server is listening to, if at all
+	server   *rpc.Server           // RPC server instance, if this process exposes methods to the network
+	served   map[*net.TCPConn]bool // connections accepted by the server, being served
+	network  map[string]*peerPool  // existing connections to other processes
+}
+
+// peerPool holds the connections to one peer. Connections are established the
+// first time they are used.
+type peerPool struct {
+	slots   []peerSlot         // connections to the peer
+	next    uint32             // incremented to choose the next connection to use
+	latency *metrics.Histogram // latency of RPC calls to the peer
+}
+
+// peerSlot holds one of the connections to a peer
+type peerSlot struct {
+	lock sync.Mutex // protects conn, and is held while connecting
+	conn *peerConn  // nil until established
+}
+
+// peerConn is one connection to a peer
+type peerConn struct {
+	client *rpc.Client
+	conn   *trackedConn
+}
+
+// trackedConn records whether reading from or writing to a connection failed,
+// after which the RPC client using it can no longer be used.
+type trackedConn struct {
+	net.Conn
+	failed int32
+}
+
+func (conn *trackedConn) Read(p []byte) (int, error) {
+	n, err := conn.Conn.Read(p)
+	if err != nil {
+		atomic.StoreInt32(&conn.failed, 1)
+	}
+
+	return n, err
+}
+
+func (conn *trackedConn) Write(p []byte) (int, error) {
+	n, err := conn.Conn.Write(p)
+	if err != nil {
+		atomic.StoreInt32(&conn.failed, 1)
+	}
+
+	return n, err
+}
+
+func (conn *trackedConn) broken() bool {
+	return atomic.LoadInt32(&conn.failed) != 0
 }
 
-// NewConnections returns an empty connection map.
+// NewConnections returns an empty connection map, using the default options.
 func NewConnections(addr string) *Connections {
+	return NewConnectionsWithOptions(addr, DefaultConnectionOptions())
+}
+
+// NewConnectionsWithOptions returns an empty connection map, using the options given.
+func NewConnectionsWithOptions(addr string, options ConnectionOptions) *Connections {
+	if options.PoolSize < 1 {
+		options.PoolSize = 1
+	}
+
+	if options.DialAttempts < 1 {
+		options.DialAttempts = 1
+	}
+
 	return &Connections{
 		address: addr,
+		options: options,
 		server:  nil,
-		network: map[string]*rpc.Client{},
+		served:  map[*net.TCPConn]bool{},
+		network: map[string]*peerPool{},
+	}
+}
+
+// tune applies the socket options to a connection
+func (c *Connections) tune(conn *net.TCPConn) {
+	conn.SetNoDelay(c.options.NoDelay)
+
+	if c.options.ReadBuffer > 0 {
+		conn.SetReadBuffer(c.options.ReadBuffer)
+	}
+
+	if c.options.WriteBuffer > 0 {
+		conn.SetWriteBuffer(c.options.WriteBuffer)
 	}
 }
 
 // binds to the address given on initialization. Does nothing if this method was
-// already invoked before
+// already invoked before. Must be called with the lock held
 func (c *Connections) prepareRPCServer() error {
 	// server already exists, nothing to do here
 	if c.server != nil {
@@ -51,15 +167,42 @@ func (c *Connections) prepareRPCServer() error {
 
 	c.listener = listener
 	c.server = rpc.NewServer()
-	go c.server.Accept(listener)
+	go c.accept(listener, c.server)
 
 	return nil
 }
 
+// accept serves the connections made to the listener given, until it is closed.
+func (c *Connections) accept(listener *net.TCPListener, server *rpc.Server) {
+	for {
+		conn, err := listener.AcceptTCP()
+		if err != nil {
+			return
+		}
+
+		c.tune(conn)
+
+		c.lock.Lock()
+		c.served[conn] = true
+		c.lock.Unlock()
+
+		go func() {
+			server.ServeConn(conn)
+
+			c.lock.Lock()
+			delete(c.served, conn)
+			c.lock.Unlock()
+		}()
+	}
+}
+
 // ExposeImplementation associates a name with an implementation
 // Other processes may then connect to this node and invoke the
 // exposed methods under the name given.
 func (c *Connections) ExposeImplementation(name string, impl interface{}) error {
+	c.lock.Lock()
+	defer c.lock.Unlock()
+
 	if err := c.prepareRPCServer(); err != nil {
 		return err
 	}
@@ -67,49 +210,156 @@ func (c *Connections) ExposeImplementation(name string, impl interface{}) error
 	return c.server.RegisterName(name, impl)
 }
 
-// ConnectTo builds a TCP connection to a given node in the address given.
+// pool returns the pool of connections to the given address
+func (c *Connections) pool(addr string) *peerPool {
+	c.lock.Lock()
+	defer c.lock.Unlock()
+
+	pool, ok := c.network[addr]
+	if !ok {
+		pool = &peerPool{
+			slots:   make([]peerSlot, c.options.PoolSize),
+			latency: metrics.Default.Histogram("rpc." + addr),
+		}
+		c.network[addr] = pool
+	}
+
+	return pool
+}
+
+// dial establishes a new connection to the given address
+func (c *Connections) dial(addr string) (*peerConn, error) {
+	conn, err := net.DialTimeout("tcp", addr, c.options.DialTimeout)
+	if err != nil {
+		return nil, err
+	}
+
+	if tcpConn, ok := conn.(*net.TCPConn); ok {
+		c.tune(tcpConn)
+	}
+
+	tracked := &trackedConn{Conn: conn}
+	return &peerConn{client: rpc.NewClient(tracked), conn: tracked}, nil
+}
+
+// ConnectTo builds a TCP connection to a given node in the address given. Unlike
+// GetConnection, it tries to connect only once.
 func (c *Connections) ConnectTo(addr string) error {
+	slot := &c.pool(addr).slots[0]
+	slot.lock.Lock()
+	defer slot.lock.Unlock()
+
 	// if the connection already exists, nothing to do here
-	if _, connected := c.network[addr]; connected {
+	if slot.conn != nil && !slot.conn.conn.broken() {
 		return nil
 	}
 
-	client, err := rpc.Dial("tcp", addr)
+	conn, err := c.dial(addr)
 	if err != nil {
 		return err
 	}
 
-	c.network[addr] = client
+	if slot.conn != nil {
+		slot.conn.client.Close()
+	}
+
+	slot.conn = conn
 	return nil
 }
 
+// Client returns a connection to the node with the given address, from the pool
+// of connections to that node. If the connection chosen was not established yet,
+// or has failed, a new one is established, retrying with exponential backoff if
+// the node cannot be reached. Returns an error if every attempt failed.
+func (c *Connections) Client(addr string) (*rpc.Client, error) {
+	pool := c.pool(addr)
+	slot := &pool.slots[atomic.AddUint32(&pool.next, 1)%uint32(len(pool.slots))]
+
+	slot.lock.Lock()
+	defer slot.lock.Unlock()
+
+	if conn := slot.conn; conn != nil {
+		if !conn.conn.broken() {
+			return conn.client, nil
+		}
+
+		conn.client.Close()
+		slot.conn = nil
+	}
+
+	var err error
+	wait := c.options.DialBackoff
+
+	for attempt := 0; attempt < c.options.DialAttempts; attempt++ {
+		if attempt > 0 {
+			time.Sleep(wait)
+			wait *= 2
+		}
+
+		var conn *peerConn
+		if conn, err = c.dial(addr); err == nil {
+			slot.conn = conn
+			return conn.client, nil
+		}
+	}
+
+	return nil, err
+}
+
 // GetConnection returns a connection to the node with the given address. If a
 // connection to that node already exists, it is returned; otherwise, a new
 // connection is established.
 func (c *Connections) GetConnection(addr string) *rpc.Client {
-	conn, ok := c.network[addr]
-	if ok {
-		return conn
-	}
+	client, err := c.Client(addr)
 
 	// an error here should only occur if the initialization protocol was not
-	// used. To properly handle failures, this connection management implementation
-	// could be specialized to deal with scenarios where the node is not reachable
-	if err := c.ConnectTo(addr); err != nil {
+	// used, or if the node is no longer reachable. Callers that can deal with
+	// unreachable nodes should use Client instead
+	if err != nil {
 		panic(fmt.Sprintf("Node at %s is not ready to receive connections (error: %v)", addr, err))
 	}
 
-	return c.network[addr]
+	return client
+}
+
+// Latency returns the histogram callers record the latency of their RPC
+// calls to the node with the given address in.
+func (c *Connections) Latency(addr string) *metrics.Histogram {
+	return c.pool(addr).latency
+}
+
+// failedCall returns a completed RPC call that failed with the error given, for
+// calls that could not be sent.
+func failedCall(err error) *rpc.Call {
+	call := &rpc.Call{Error: err, Done: make(chan *rpc.Call, 1)}
+	call.Done <- call
+
+	return call
 }
 
 // Close terminates all connections to other nodes and stops accepting remote
 // connections from other peers.
 func (c *Connections) Close() {
+	c.lock.Lock()
+	defer c.lock.Unlock()
+
 	if c.listener != nil {
 		c.listener.Close()
 	}
 
-	for _, conn := range c.network {
+	for conn := range c.served {
 		conn.Close()
 	}
+
+	for _, pool := range c.network {
+		for i := range pool.slots {
+			slot := &pool.slots[i]
+			slot.lock.Lock()
+			if slot.conn != nil {
+				slot.conn.client.Close()
+				slot.conn = nil
+			}
+			slot.lock.Unlock()
+		}
+	}
 }
@@ -0,0 +1,182 @@
+package distsys
+
+import (
+	"fmt"
+	"sync"
+	"sync/atomic"
+	"time"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+// EchoService is exposed by the nodes in these tests
+type EchoService struct{}
+
+func (EchoService) Echo(arg *int, reply *int) error {
+	*reply = *arg
+	return nil
+}
+
+// echoPort is the next loopback port used by a node in these tests
+var echoPort = 17300
+
+// echoServer starts a node exposing EchoService, and returns its address.
+func echoServer() (*Connections, string) {
+	addr := fmt.Sprintf("127.0.0.1:%d", echoPort)
+	echoPort++
+
+	conns := NewConnections(addr)
+	if err := conns.ExposeImplementation("Echo", EchoService{}); err != nil {
+		panic(err)
+	}
+
+	return conns, addr
+}
+
+// echo calls EchoService on the node at the address given
+func echo(conns *Connections, addr string, arg int) (int, error) {
+	client, err := conns.Client(addr)
+	if err != nil {
+		return 0, err
+	}
+
+	var reply int
+	err = client.Call("Echo.Echo", &arg, &reply)
+	return reply, err
+}
+
+var _ = Describe("Connections", func() {
+	It("calls other nodes from many goroutines at once", func() {
+		server, addr := echoServer()
+		defer server.Close()
+
+		client := NewConnections("127.0.0.1:0")
+		defer client.Close()
+
+		var wg sync.WaitGroup
+		for i := 0; i < 32; i++ {
+			wg.Add(1)
+			go func(i int) {
+				defer GinkgoRecover()
+				defer wg.Done()
+
+				for j := 0; j < 10; j++ {
+					Expect(echo(client, addr, i*10+j)).To(Equal(i*10 + j))
+				}
+			}(i)
+		}
+		wg.Wait()
+	})
+
+	It("reconnects to nodes that restarted", func() {
+		server, addr := echoServer()
+
+		client := NewConnections("127.0.0.1:0")
+		defer client.Close()
+		Expect(echo(client, addr, 1)).To(Equal(1))
+
+		server.Close()
+		server = NewConnections(addr)
+		Expect(server.ExposeImplementation("Echo", EchoService{})).To(Succeed())
+		defer server.Close()
+
+		Eventually(func() error {
+			_, err := echo(client, addr, 2)
+			return err
+		}).Should(Succeed())
+	})
+
+	It("gives up on nodes that cannot be reached", func() {
+		addr := fmt.Sprintf("127.0.0.1:%d", echoPort)
+		echoPort++
+
+		options := DefaultConnectionOptions()
+		options.DialAttempts = 3
+		options.DialBackoff = time.Millisecond
+		client := NewConnectionsWithOptions("127.0.0.1:0", options)
+		defer client.Close()
+
+		_, err := client.Client(addr)
+		Expect(err).To(HaveOccurred())
+		Expect(func() { client.GetConnection(addr) }).To(Panic())
+	})
+
+	It("gives up on attempts to connect after the dial timeout", func() {
+		options := DefaultConnectionOptions()
+		options.DialAttempts = 1
+		options.DialTimeout = 50 * time.Millisecond
+		client := NewConnectionsWithOptions("127.0.0.1:0", options)
+		defer client.Close()
+
+		// a non-routable address, which never accepts connections
+		start := time.Now()
+		_, err := client.Client("10.255.255.1:80")
+		Expect(err).To(HaveOccurred())
+		Expect(time.Since(start)).To(BeNumerically("<", time.Second))
+	})
+})
+
+// benchmarkRPC measures RPC calls made over the loopback interface by
+// `goroutines` goroutines at once, using `poolSize` connections to the
+// server.
+func benchmarkRPC(b *testing.B, poolSize, goroutines int) {
+	server, addr := echoServer()
+	defer server.Close()
+
+	options := DefaultConnectionOptions()
+	options.PoolSize = poolSize
+	client := NewConnectionsWithOptions("127.0.0.1:0", options)
+	defer client.Close()
+
+	// establish every connection before measuring
+	for i := 0; i < poolSize; i++ {
+		if _, err := echo(client, addr, i); err != nil {
+			b.Fatal(err)
+		}
+	}
+
+	remaining := int64(b.N)
+	var wg sync.WaitGroup
+	b.ResetTimer()
+
+	for g := 0; g < goroutines; g++ {
+		wg.Add(1)
+		go func() {
+			defer wg.Done()
+			for atomic.AddInt64(&remaining, -1) >= 0 {
+				if _, err := echo(client, addr, 42); err != nil {
+					panic(err)
+				}
+			}
+		}()
+	}
+
+	wg.Wait()
+}
+
+func BenchmarkRPCPool1Goroutines1(b *testing.B) {
+	benchmarkRPC(b, 1, 1)
+}
+
+func BenchmarkRPCPool1Goroutines16(b *testing.B) {
+	benchmarkRPC(b, 1, 16)
+}
+
+func BenchmarkRPCPool1Goroutines64(b *testing.B) {
+	benchmarkRPC(b, 1, 64)
+}
+
+func BenchmarkRPCPool4Goroutines16(b *testing.B) {
+	benchmarkRPC(b, 4, 16)
+}
+
+func BenchmarkRPCPool4Goroutines64(b *testing.B) {
+	benchmarkRPC(b, 4, 64)
+}
+
+func BenchmarkRPCPool8Goroutines64(b *testing.B) {
+	benchmarkRPC(b, 8, 64)
+}
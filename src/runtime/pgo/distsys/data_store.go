@@ -5,6 +5,7 @@ import (
 	"fmt"
 	"log"
 	"sync"
+	"time"
 )
 
 // NameNotFoundError occurs when a lookup for an unknown name in the store is made
@@ -15,14 +16,68 @@ func (e NameNotFoundError) Error() string {
 }
 
 // DataEntry represents a single piece of global state that is
-// contained in this node. Entries are protected by a read-write lock
-// in order to make sure that two different nodes trying to read
-// from/write to the same piece of global state concurrently will not
-// lead to inconsistencies in program execution (race conditions)
+// contained in this node. Entries are protected by a lock in order to
+// make sure that two different nodes trying to read from/write to the
+// same piece of global state concurrently will not lead to
+// inconsistencies in program execution (race conditions). Unlike a
+// sync.Mutex, the lock of an entry can also be tried without blocking
+// (see TryLock). The zero value of the lock is unlocked.
 type DataEntry struct {
-	sync.RWMutex             // protects access this entry
-	Value        interface{} // value, which can be of any type
-	Owner        string      // address of the node that currently owns this entry
+	Value interface{} // value, which can be of any type
+	Owner string      // address of the node that currently owns this entry
+
+	guard    sync.Mutex // protects `held` and `released`
+	released *sync.Cond // signalled when the entry is unlocked; created on first wait
+	held     bool       // whether some thread currently holds the entry
+
+	// read leases (see lease.go), protected by the lock of the entry
+	leasedUntil time.Time // when the last read lease granted on this entry expires
+	writtenAt   time.Time // when exclusive access to this entry was last granted
+}
+
+// Lock gives the caller exclusive access to this entry. Blocks if
+// another thread currently holds the lock.
+func (entry *DataEntry) Lock() {
+	entry.guard.Lock()
+	for entry.held {
+		if entry.released == nil {
+			entry.released = sync.NewCond(&entry.guard)
+		}
+		entry.released.Wait()
+	}
+	entry.held = true
+	entry.guard.Unlock()
+}
+
+// TryLock gives the caller exclusive access to this entry if no other
+// thread currently holds the lock, and returns whether it did. Never
+// blocks waiting for the lock.
+func (entry *DataEntry) TryLock() bool {
+	entry.guard.Lock()
+	defer entry.guard.Unlock()
+
+	if entry.held {
+		return false
+	}
+
+	entry.held = true
+	return true
+}
+
+// Unlock releases exclusive access previously held by `Lock()` or a
+// successful `TryLock()`. Panics if the entry is not locked.
+func (entry *DataEntry) Unlock() {
+	entry.guard.Lock()
+	defer entry.guard.Unlock()
+
+	if !entry.held {
+		log.Panic("Local store: unlock of unlocked entry")
+	}
+
+	entry.held = false
+	if entry.released != nil {
+		entry.released.Signal()
+	}
 }
 
 // DataStore implements a volatile store that can be used to keep
@@ -45,6 +100,13 @@ func (store DataStore) Lock(name string) {
 	store.findOrPanic(name).Lock()
 }
 
+// TryLock gives the caller exclusive access to the entry associated
+// with the given `name` if no other thread currently holds the lock,
+// and returns whether it did. Never blocks.
+func (store DataStore) TryLock(name string) bool {
+	return store.findOrPanic(name).TryLock()
+}
+
 // Unlock releases exclusive access previously held by `Lock()`. It is
 // an error to call this function without a previous call to Lock().
 func (store DataStore) Unlock(name string) {
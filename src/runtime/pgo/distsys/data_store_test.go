@@ -1,6 +1,8 @@
 package distsys
 
 import (
+	"time"
+
 	. "github.com/onsi/ginkgo"
 	. "github.com/onsi/gomega"
 
@@ -38,6 +40,34 @@ var _ = Describe("DataStore", func() {
 		})
 	})
 
+	var _ = Describe("TryLock", func() {
+		It("panics if the name given is not known", func() {
+			unknownName := func() {
+				store.TryLock("unknown")
+			}
+
+			Expect(unknownName).To(Panic())
+		})
+
+		It("locks the entry with the name given if it is not locked", func() {
+			Expect(store.TryLock("a")).To(BeTrue())
+
+			// already locked -- fails without blocking
+			Expect(store.TryLock("a")).To(BeFalse())
+
+			// other entries are not affected
+			Expect(store.TryLock("b")).To(BeTrue())
+
+			store.Unlock("a")
+			Expect(store.TryLock("a")).To(BeTrue())
+		})
+
+		It("fails while a call to Lock holds the entry", func() {
+			store.Lock("a")
+			Expect(store.TryLock("a")).To(BeFalse())
+		})
+	})
+
 	var _ = Describe("Unlock", func() {
 		It("panics if the name given is not known", func() {
 			unknownName := func() {
@@ -46,6 +76,24 @@ var _ = Describe("DataStore", func() {
 
 			Expect(unknownName).To(Panic())
 		})
+
+		It("panics if the entry is not locked", func() {
+			Expect(func() { store.Unlock("a") }).To(Panic())
+		})
+
+		It("lets a waiting call to Lock proceed", func() {
+			store.Lock("a")
+
+			locked := make(chan bool)
+			go func() {
+				store.Lock("a")
+				locked <- true
+			}()
+
+			Consistently(locked).ShouldNot(Receive())
+			store.Unlock("a")
+			Eventually(locked).Should(Receive())
+		})
 	})
 
 	var _ = Describe("GetVal", func() {
@@ -115,6 +163,38 @@ var _ = Describe("DataStore", func() {
 			Expect(store.OwnerOf("c")).To(Equal("10.10.10.30"))
 		})
 	})
+
+	var _ = Describe("GrantLease", func() {
+		It("grants leases on entries that were never written", func() {
+			Expect(store.GrantLease("a", time.Minute)).To(BeTrue())
+		})
+
+		It("does not grant leases of no duration", func() {
+			Expect(store.GrantLease("a", 0)).To(BeFalse())
+		})
+
+		It("does not grant leases on entries written recently", func() {
+			store.ExpireLeases("a")
+			Expect(store.GrantLease("a", time.Minute)).To(BeFalse())
+			Expect(store.GrantLease("b", time.Minute)).To(BeTrue())
+		})
+	})
+
+	var _ = Describe("ExpireLeases", func() {
+		It("returns immediately when no lease was granted", func() {
+			start := time.Now()
+			store.ExpireLeases("a")
+			Expect(time.Since(start)).To(BeNumerically("<", 50*time.Millisecond))
+		})
+
+		It("waits until the leases granted expire", func() {
+			Expect(store.GrantLease("a", 100*time.Millisecond)).To(BeTrue())
+
+			start := time.Now()
+			store.ExpireLeases("a")
+			Expect(time.Since(start)).To(BeNumerically(">=", 90*time.Millisecond))
+		})
+	})
 })
 
 func TestDataStore(t *testing.T) {
@@ -7,6 +7,7 @@ import (
 	"log"
 	"sort"
 	"strings"
+	"time"
 )
 
 // UnknownOwnerError happens when a lookup for a certain piece of global
@@ -125,6 +126,10 @@ type Reference struct {
 	Exclusive bool        // whether access to this value is exclusive
 	Ownership bool        // whether the ownership of the state is being moved with the reference
 
+	// Set when the owner granted a read lease on the value (see lease.go)
+	Lease  time.Duration // how long the value may be read after the request was sent
+	Cached bool          // whether the value was read from a lease, without holding the variable
+
 	// Used when Type == REF_MOVED
 	Peer string
 }
@@ -340,6 +345,13 @@ func (global *GlobalStateOperation) Next() *VarReq {
 // obtained either from the local state handler, or from a remote node
 // in the system.
 func (global *GlobalStateOperation) UpdateRefs(refs VarReferences) VarReferences {
+	return global.updateRefs(refs, true)
+}
+
+// updateRefs implements UpdateRefs. The local entries of variables held in
+// another node are locked if `relock` is set; otherwise, the caller must
+// have kept them locked while the references were requested.
+func (global *GlobalStateOperation) updateRefs(refs VarReferences, relock bool) VarReferences {
 	holds := VarReferences(map[string]*Reference{})
 
 	// Updating references for a new group -- clean any previously held
@@ -350,7 +362,7 @@ func (global *GlobalStateOperation) UpdateRefs(refs VarReferences) VarReferences
 	for name, ref := range refs {
 		switch ref.Type {
 		case REF_VAL:
-			if ref.Peer != global.self {
+			if relock && ref.Peer != global.self {
 				global.store.Lock(name)
 			}
 
@@ -505,6 +517,26 @@ func (global *GlobalStateOperation) Groups() []*VarReq {
 	return reqs
 }
 
+// PeerGroups returns the same variables as Groups, but in a single group per
+// node, so that each node needs to be sent at most one request. Groups are
+// ordered by the first variable they contain.
+func (global *GlobalStateOperation) PeerGroups() []*VarReq {
+	reqs := []*VarReq{}
+	byPeer := map[string]*VarReq{}
+
+	for _, group := range global.Groups() {
+		if req, found := byPeer[group.Peer]; found {
+			req.Names = append(req.Names, group.Names...)
+			continue
+		}
+
+		byPeer[group.Peer] = group
+		reqs = append(reqs, group)
+	}
+
+	return reqs
+}
+
 // VarReq represents a request to be sent to another peer in the system. It encapsulates
 // the address of the peer as well as the pieces of state required from it
 type VarReq struct {
@@ -517,6 +549,13 @@ func (req *VarReq) String() string {
 	return fmt.Sprintf("VarReq(Peer=%s, Names=%s)", req.Peer, SortedBorrowSpec(req.Names).String())
 }
 
+// TryGetStateReply is the response to a request for state that should only
+// be granted if none of the variables requested is currently held.
+type TryGetStateReply struct {
+	Acquired bool          // whether the variables were all available
+	Refs     VarReferences // the references to the variables, if acquired
+}
+
 // StateServer represents the current state of the global state at a given time, including
 // all the information the running node currently stores, as well as ownership information
 // for all pieces of global state
@@ -528,6 +567,8 @@ type StateServer struct {
 	store         DataStore         // the underlying state store
 
 	migrationStrategy MigrationStrategy // determines when to migrate data from a node to another
+	leaseDuration     time.Duration     // the duration of the read leases granted, if any
+	leases            *leaseCache       // the values of the variables leased from other nodes
 }
 
 // StateServerRPC wraps the StateServer struct so that only a few methods are
@@ -583,6 +624,8 @@ func NewStateServer(configuration map[string]string, address, coordinator string
 		store:         NewDataStore(entries),
 
 		migrationStrategy: migration,
+		leaseDuration:     DefaultLeaseDuration,
+		leases:            newLeaseCache(),
 	}
 
 	if err := stateServer.connections.ExposeImplementation("StateServer", &StateServerRPC{stateServer}); err != nil {
@@ -592,6 +635,13 @@ func NewStateServer(configuration map[string]string, address, coordinator string
 	return stateServer, nil
 }
 
+// SetLeaseDuration changes the duration of the read leases granted by this node
+// (see lease.go). A duration of zero stops this node from granting leases. Should
+// be called before WaitPeers, while no request is being served.
+func (ss *StateServer) SetLeaseDuration(duration time.Duration) {
+	ss.leaseDuration = duration
+}
+
 // DefineCustomType allows the appplication to use user-defined types
 // (e.g., Go structs) when communicating with other processes compiled
 // by PGo.
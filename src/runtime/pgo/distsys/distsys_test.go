@@ -1,6 +1,9 @@
 package distsys
 
 import (
+	"fmt"
+	"sync/atomic"
+
 	. "github.com/onsi/ginkgo"
 	. "github.com/onsi/gomega"
 
@@ -160,6 +163,30 @@ var _ = Describe("Distsys package", func() {
 				Expect(groups[0].Names[2].Name).To(Equal("c"))
 				Expect(groups[0].Names[2].Exclusive).To(Equal(false))
 			})
+
+			It("Groups a spec in a single group per peer", func() {
+				spec := &BorrowSpec{ReadNames: []string{"a", "b", "c"}, WriteNames: []string{"b"}}
+				op := NewGlobalStateOperation(spec, store, self, nil)
+
+				// 'a' and 'c' are owned by the same peer, but not 'b'
+				store.UpdateOwner("c", store.OwnerOf("a"))
+				Expect(len(op.Groups())).To(Equal(3))
+
+				groups := op.PeerGroups()
+				Expect(len(groups)).To(Equal(2))
+
+				// group 1: 'a' (non-exclusive) and 'c' (non-exclusive)
+				Expect(groups[0].Peer).To(Equal("10.10.10.10"))
+				Expect(len(groups[0].Names)).To(Equal(2))
+				Expect(groups[0].Names[0].Name).To(Equal("a"))
+				Expect(groups[0].Names[1].Name).To(Equal("c"))
+
+				// group 2: 'b' (exclusive)
+				Expect(groups[1].Peer).To(Equal("10.10.10.20"))
+				Expect(len(groups[1].Names)).To(Equal(1))
+				Expect(groups[1].Names[0].Name).To(Equal("b"))
+				Expect(groups[1].Names[0].Exclusive).To(Equal(true))
+			})
 		})
 
 		var _ = Describe("UpdateRefs", func() {
@@ -323,3 +350,119 @@ func TestDistsys(t *testing.T) {
 	RegisterFailHandler(Fail)
 	RunSpecs(t, "Distsys")
 }
+
+// startLoopbackPeers starts a state server for each of `n` peers, listening on
+// consecutive loopback ports from `port`. Peer `i` owns variable "v<i>", whose
+// value is `i`, and variables migrate according to the strategy `migration`
+// returns for the address of each peer.
+func startLoopbackPeers(b *testing.B, n, port int, migration func(string) MigrationStrategy) []*StateServer {
+	configuration := map[string]string{}
+	initValues := map[string]interface{}{}
+	for i := 0; i < n; i++ {
+		configuration[fmt.Sprintf("peer%d", i)] = fmt.Sprintf("127.0.0.1:%d", port+i)
+		initValues[fmt.Sprintf("v%d", i)] = i
+	}
+
+	peers := make([]*StateServer, n)
+	for i := range peers {
+		address := configuration[fmt.Sprintf("peer%d", i)]
+		ss, err := NewStateServer(configuration, address, configuration["peer0"], initValues, migration(address))
+		if err != nil {
+			b.Fatal(err)
+		}
+
+		peers[i] = ss
+	}
+
+	for _, ss := range peers {
+		for i, owner := range peers {
+			name := fmt.Sprintf("v%d", i)
+			ss.store.UpdateOwner(name, owner.self)
+
+			if ss == owner {
+				ss.store.SetVal(name, i)
+			} else {
+				ss.store.SetVal(name, nil)
+
+				if err := ss.connections.ConnectTo(owner.self); err != nil {
+					b.Fatal(err)
+				}
+			}
+		}
+	}
+
+	return peers
+}
+
+func neverMigrate(self string) MigrationStrategy {
+	return NeverMigrate(self)
+}
+
+func stopLoopbackPeers(peers []*StateServer) {
+	for _, ss := range peers {
+		ss.connections.Close()
+	}
+}
+
+// benchmarkAcquire measures the latency of acquiring and releasing one variable
+// owned by each of three other peers, using the `acquire` function given.
+func benchmarkAcquire(b *testing.B, port int, acquire func(*StateServer, *BorrowSpec) (VarReferences, error)) {
+	peers := startLoopbackPeers(b, 4, port, neverMigrate)
+	defer stopLoopbackPeers(peers)
+
+	spec := &BorrowSpec{ReadNames: []string{"v1", "v2"}, WriteNames: []string{"v3"}}
+	b.ResetTimer()
+
+	for i := 0; i < b.N; i++ {
+		refs, err := acquire(peers[0], spec)
+		if err != nil {
+			b.Fatal(err)
+		}
+
+		if err := peers[0].Release(refs); err != nil {
+			b.Fatal(err)
+		}
+	}
+}
+
+// BenchmarkAcquire requests the variables of every peer concurrently.
+func BenchmarkAcquire(b *testing.B) {
+	benchmarkAcquire(b, 17000, (*StateServer).Acquire)
+}
+
+// BenchmarkAcquireInOrder requests the variables of one peer after the other,
+// as Acquire does when a concurrent request fails.
+func BenchmarkAcquireInOrder(b *testing.B) {
+	benchmarkAcquire(b, 17010, func(ss *StateServer, spec *BorrowSpec) (VarReferences, error) {
+		op := NewGlobalStateOperation(spec, ss.store, ss.self, ss.connections)
+		op.Lock()
+
+		return ss.acquireInOrder(op, VarReferences(map[string]*Reference{}))
+	})
+}
+
+// BenchmarkAcquireContended acquires the same variables from every peer at the
+// same time, so that concurrent requests often fail and fall back to ordered
+// ones.
+func BenchmarkAcquireContended(b *testing.B) {
+	peers := startLoopbackPeers(b, 4, 17020, neverMigrate)
+	defer stopLoopbackPeers(peers)
+
+	spec := &BorrowSpec{ReadNames: []string{"v0", "v1", "v2"}, WriteNames: []string{"v3"}}
+	var started int32
+	b.ResetTimer()
+
+	b.RunParallel(func(pb *testing.PB) {
+		ss := peers[int(atomic.AddInt32(&started, 1))%len(peers)]
+		for pb.Next() {
+			refs, err := ss.Acquire(spec)
+			if err != nil {
+				panic(err)
+			}
+
+			if err := ss.Release(refs); err != nil {
+				panic(err)
+			}
+		}
+	})
+}
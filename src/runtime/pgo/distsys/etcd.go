@@ -37,18 +37,30 @@ package distsys
 // 	state.Set("collection", col)
 // 	col = state.GetStringCollection("collection")
 
+// 	// several variables can be read and written in a single request each,
+// 	// if they are always accessed together
+// 	state.InitGroup("0", map[string]interface{}{"count": 42, "project": "PGo"})
+// 	state.GetGroup("0", map[string]interface{}{"count": &count, "project": &project})
+// 	state.SetGroup("0", map[string]interface{}{"count": count + 1, "project": project})
+
 // Implementation Details
 //
-// Global variables are stored in `etcd' as name => hex-encoded string of a gob.
+// Global variables are stored in `etcd' as name => base64-encoded string of a gob.
+// Groups of variables are stored as group => base64-encoded string of a single gob
+// stream containing the name and the value of each variable in the group. Values
+// are base64-encoded since the etcd v2 API returns them in JSON strings, which can
+// not hold arbitrary bytes.
 //
 // This representation is internal and applications need not know about it.
 
 import (
 	"bytes"
 	"context"
+	"encoding/base64"
 	"encoding/gob"
-	"encoding/hex"
 	"fmt"
+	"io"
+	"sort"
 	"time"
 
 	etcd "github.com/coreos/etcd/client"
@@ -56,7 +68,8 @@ import (
 
 // declares the types of global variables supported by PGo at the moment.
 const (
-	LOCK_NAMESPACE = "/locks/"
+	LOCK_NAMESPACE  = "/locks/"
+	GROUP_NAMESPACE = "/groups/"
 )
 
 // A reference to our global state, created via +InitEtcdState+. Used in the
@@ -83,10 +96,21 @@ func NewEtcdState(endpoints []string, timeout int, configuration map[string]stri
 		return nil, err
 	}
 
+	return newEtcdState(c, etcd.NewKeysAPI(c), configuration, address, coordinator, initValues), nil
+}
+
+// NewFakeEtcdState creates a reference to global state kept in the in-process
+// fake etcd store given (see FakeKeysAPI) rather than in an etcd cluster, so
+// that code using EtcdState can be tested without one.
+func NewFakeEtcdState(kv *FakeKeysAPI, configuration map[string]string, address, coordinator string, initValues map[string]interface{}) *EtcdState {
+	return newEtcdState(nil, kv, configuration, address, coordinator, initValues)
+}
+
+func newEtcdState(c etcd.Client, kv etcd.KeysAPI, configuration map[string]string, address, coordinator string, initValues map[string]interface{}) *EtcdState {
 	ret := &EtcdState{
 		NewSyncBarrier(configuration, NewConnections(address), address, coordinator),
 		c,
-		etcd.NewKeysAPI(c),
+		kv,
 	}
 
 	if ret.isCoordinator() && len(initValues) > 0 {
@@ -95,7 +119,7 @@ func NewEtcdState(endpoints []string, timeout int, configuration map[string]stri
 		}
 	}
 
-	return ret, nil
+	return ret
 }
 
 // Sets variable `name' to a given `value'. Contacts the global variable server
@@ -107,7 +131,7 @@ func (self *EtcdState) Set(name string, value interface{}) {
 	if err != nil {
 		panic(fmt.Sprintf("Unable to GobEncode %v, err = %s", value, err.Error()))
 	}
-	s := hex.EncodeToString(buffer.Bytes())
+	s := base64.StdEncoding.EncodeToString(buffer.Bytes())
 	key := prepareKey(name)
 	_, err = self.kv.Set(context.Background(), key, s, nil)
 	if err != nil {
@@ -141,9 +165,9 @@ func (self *EtcdState) Get(name string, variable interface{}) interface{} {
 		panic(fmt.Sprintf("Unable to get %s, err = %s", key, err.Error()))
 	}
 
-	buffer, err := hex.DecodeString(response.Node.Value)
+	buffer, err := base64.StdEncoding.DecodeString(response.Node.Value)
 	if err != nil {
-		panic(fmt.Sprintf("Unable to hex.Decode %s, err = %s", response.Node.Value, err.Error()))
+		panic(fmt.Sprintf("Unable to base64.Decode %s, err = %s", response.Node.Value, err.Error()))
 	}
 
 	decoder := gob.NewDecoder(bytes.NewReader(buffer))
@@ -155,6 +179,76 @@ func (self *EtcdState) Get(name string, variable interface{}) interface{} {
 	return variable
 }
 
+// Sets the variables of the group `group' to their initial `values', if the
+// running node is the coordinator. Every variable of the group must be given.
+func (self *EtcdState) InitGroup(group string, values map[string]interface{}) {
+	if self.isCoordinator() {
+		self.SetGroup(group, values)
+	}
+}
+
+// Sets every variable of the group `group' to the value `values' maps its name
+// to, in a single request to the global variable server. Every variable of the
+// group must be given, even if its value did not change.
+func (self *EtcdState) SetGroup(group string, values map[string]interface{}) {
+	names := make([]string, 0, len(values))
+	for name := range values {
+		names = append(names, name)
+	}
+	sort.Strings(names)
+
+	buffer := bytes.Buffer{}
+	encoder := gob.NewEncoder(&buffer)
+	for _, name := range names {
+		if err := encoder.Encode(name); err != nil {
+			panic(fmt.Sprintf("Unable to GobEncode %s, err = %s", name, err.Error()))
+		}
+		if err := encoder.Encode(values[name]); err != nil {
+			panic(fmt.Sprintf("Unable to GobEncode %v, err = %s", values[name], err.Error()))
+		}
+	}
+
+	s := base64.StdEncoding.EncodeToString(buffer.Bytes())
+	key := prepareGroup(group)
+	if _, err := self.kv.Set(context.Background(), key, s, nil); err != nil {
+		panic(fmt.Sprintf("Unable to set %s to %s, err = %s", key, s, err))
+	}
+}
+
+// Gets the values of the variables of the group `group', in a single request to
+// the global variable server. `variables' maps the name of each variable to a
+// pointer the value is decoded to; variables of the group it does not include
+// are skipped.
+func (self *EtcdState) GetGroup(group string, variables map[string]interface{}) {
+	key := prepareGroup(group)
+	response, err := self.kv.Get(context.Background(), key, nil)
+	if err != nil {
+		panic(fmt.Sprintf("Unable to get %s, err = %s", key, err.Error()))
+	}
+
+	buffer, err := base64.StdEncoding.DecodeString(response.Node.Value)
+	if err != nil {
+		panic(fmt.Sprintf("Unable to base64.Decode %s, err = %s", response.Node.Value, err.Error()))
+	}
+
+	decoder := gob.NewDecoder(bytes.NewReader(buffer))
+	for {
+		var name string
+		err := decoder.Decode(&name)
+		if err == io.EOF {
+			return
+		}
+		if err != nil {
+			panic(fmt.Sprintf("Unable to GobDecode %v, err = %s", buffer, err.Error()))
+		}
+
+		// variables missing from `variables' are decoded to nil, i.e. skipped
+		if err := decoder.Decode(variables[name]); err != nil {
+			panic(fmt.Sprintf("Unable to GobDecode %v, err = %s", buffer, err.Error()))
+		}
+	}
+}
+
 func (self *EtcdState) Lock(who, which string) {
 	key := prepareLock(which)
 	for {
@@ -187,3 +281,8 @@ func prepareKey(k string) string {
 func prepareLock(k string) string {
 	return LOCK_NAMESPACE + k
 }
+
+// given a group k, this method transforms it to the format expected by `etcd'
+func prepareGroup(k string) string {
+	return GROUP_NAMESPACE + k
+}
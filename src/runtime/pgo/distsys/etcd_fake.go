@@ -0,0 +1,149 @@
+package distsys
+
+import (
+	"context"
+	"errors"
+	"sync"
+
+	etcd "github.com/coreos/etcd/client"
+)
+
+// ErrFakeUnsupported is returned by the operations of the etcd KeysAPI that
+// FakeKeysAPI does not implement.
+var ErrFakeUnsupported = errors.New("operation not supported by the fake etcd store")
+
+// FakeKeysAPI is an in-process implementation of the etcd v2 KeysAPI, keeping
+// keys in memory. It supports the operations EtcdState uses, with the same
+// errors as etcd, so that EtcdState (and code generated by PGo using it) can be
+// tested and benchmarked without an etcd cluster. Every EtcdState sharing a
+// FakeKeysAPI sees the same keys. Directories, TTLs and watches are not
+// supported.
+type FakeKeysAPI struct {
+	lock  sync.Mutex
+	index uint64
+	nodes map[string]*etcd.Node
+
+	// Requests counts the requests made to the store.
+	Requests uint64
+}
+
+// NewFakeKeysAPI returns an empty FakeKeysAPI.
+func NewFakeKeysAPI() *FakeKeysAPI {
+	return &FakeKeysAPI{nodes: map[string]*etcd.Node{}}
+}
+
+func (fake *FakeKeysAPI) Get(_ context.Context, key string, _ *etcd.GetOptions) (*etcd.Response, error) {
+	fake.lock.Lock()
+	defer fake.lock.Unlock()
+
+	fake.Requests++
+	node, found := fake.nodes[key]
+	if !found {
+		return nil, fake.keyNotFound(key)
+	}
+
+	return &etcd.Response{Action: "get", Node: copyNode(node), Index: fake.index}, nil
+}
+
+func (fake *FakeKeysAPI) Set(_ context.Context, key, value string, opts *etcd.SetOptions) (*etcd.Response, error) {
+	fake.lock.Lock()
+	defer fake.lock.Unlock()
+
+	fake.Requests++
+	prevNode, found := fake.nodes[key]
+
+	if opts != nil {
+		switch {
+		case opts.PrevExist == etcd.PrevExist && !found:
+			return nil, fake.keyNotFound(key)
+		case opts.PrevExist == etcd.PrevNoExist && found:
+			return nil, fake.nodeExists(key)
+		case opts.PrevValue != "" && (!found || prevNode.Value != opts.PrevValue):
+			return nil, fake.testFailed(key)
+		case opts.PrevIndex != 0 && (!found || prevNode.ModifiedIndex != opts.PrevIndex):
+			return nil, fake.testFailed(key)
+		case opts.TTL != 0 || opts.Dir:
+			return nil, ErrFakeUnsupported
+		}
+	}
+
+	return fake.set(key, value, prevNode), nil
+}
+
+func (fake *FakeKeysAPI) Create(ctx context.Context, key, value string) (*etcd.Response, error) {
+	return fake.Set(ctx, key, value, &etcd.SetOptions{PrevExist: etcd.PrevNoExist})
+}
+
+func (fake *FakeKeysAPI) Update(ctx context.Context, key, value string) (*etcd.Response, error) {
+	return fake.Set(ctx, key, value, &etcd.SetOptions{PrevExist: etcd.PrevExist})
+}
+
+func (fake *FakeKeysAPI) Delete(_ context.Context, key string, opts *etcd.DeleteOptions) (*etcd.Response, error) {
+	fake.lock.Lock()
+	defer fake.lock.Unlock()
+
+	fake.Requests++
+	node, found := fake.nodes[key]
+	if !found {
+		return nil, fake.keyNotFound(key)
+	}
+
+	if opts != nil {
+		switch {
+		case opts.PrevValue != "" && node.Value != opts.PrevValue:
+			return nil, fake.testFailed(key)
+		case opts.PrevIndex != 0 && node.ModifiedIndex != opts.PrevIndex:
+			return nil, fake.testFailed(key)
+		case opts.Recursive || opts.Dir:
+			return nil, ErrFakeUnsupported
+		}
+	}
+
+	delete(fake.nodes, key)
+	fake.index++
+
+	return &etcd.Response{Action: "delete", Node: &etcd.Node{Key: key}, PrevNode: node, Index: fake.index}, nil
+}
+
+func (fake *FakeKeysAPI) CreateInOrder(_ context.Context, _, _ string, _ *etcd.CreateInOrderOptions) (*etcd.Response, error) {
+	return nil, ErrFakeUnsupported
+}
+
+func (fake *FakeKeysAPI) Watcher(_ string, _ *etcd.WatcherOptions) etcd.Watcher {
+	return fakeWatcher{}
+}
+
+// set must be called with the lock held
+func (fake *FakeKeysAPI) set(key, value string, prevNode *etcd.Node) *etcd.Response {
+	fake.index++
+	node := &etcd.Node{Key: key, Value: value, CreatedIndex: fake.index, ModifiedIndex: fake.index}
+	if prevNode != nil {
+		node.CreatedIndex = prevNode.CreatedIndex
+	}
+	fake.nodes[key] = node
+
+	return &etcd.Response{Action: "set", Node: copyNode(node), PrevNode: prevNode, Index: fake.index}
+}
+
+func (fake *FakeKeysAPI) keyNotFound(key string) error {
+	return etcd.Error{Code: etcd.ErrorCodeKeyNotFound, Message: "Key not found", Cause: key, Index: fake.index}
+}
+
+func (fake *FakeKeysAPI) nodeExists(key string) error {
+	return etcd.Error{Code: etcd.ErrorCodeNodeExist, Message: "Key already exists", Cause: key, Index: fake.index}
+}
+
+func (fake *FakeKeysAPI) testFailed(key string) error {
+	return etcd.Error{Code: etcd.ErrorCodeTestFailed, Message: "Compare failed", Cause: key, Index: fake.index}
+}
+
+func copyNode(node *etcd.Node) *etcd.Node {
+	nodeCopy := *node
+	return &nodeCopy
+}
+
+type fakeWatcher struct{}
+
+func (fakeWatcher) Next(_ context.Context) (*etcd.Response, error) {
+	return nil, ErrFakeUnsupported
+}
@@ -0,0 +1,206 @@
+package distsys
+
+import (
+	"context"
+	"fmt"
+	"sync"
+
+	etcd "github.com/coreos/etcd/client"
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+var (
+	fakeConfiguration = map[string]string{"P(1)": "10.0.0.1:1111", "P(2)": "10.0.0.2:2222"}
+	fakeCoordinator   = "10.0.0.1:1111"
+)
+
+var _ = Describe("FakeKeysAPI", func() {
+	var kv *FakeKeysAPI
+
+	BeforeEach(func() {
+		kv = NewFakeKeysAPI()
+	})
+
+	It("returns etcd errors for missing keys", func() {
+		_, err := kv.Get(context.Background(), "/a", nil)
+		Expect(err).To(BeAssignableToTypeOf(etcd.Error{}))
+		Expect(err.(etcd.Error).Code).To(Equal(etcd.ErrorCodeKeyNotFound))
+	})
+
+	It("stores values", func() {
+		_, err := kv.Set(context.Background(), "/a", "10", nil)
+		Expect(err).NotTo(HaveOccurred())
+
+		response, err := kv.Get(context.Background(), "/a", nil)
+		Expect(err).NotTo(HaveOccurred())
+		Expect(response.Node.Value).To(Equal("10"))
+	})
+
+	It("only creates keys that do not exist", func() {
+		_, err := kv.Create(context.Background(), "/a", "10")
+		Expect(err).NotTo(HaveOccurred())
+
+		_, err = kv.Create(context.Background(), "/a", "20")
+		Expect(err.(etcd.Error).Code).To(Equal(etcd.ErrorCodeNodeExist))
+	})
+
+	It("only deletes keys with the previous value given", func() {
+		kv.Set(context.Background(), "/a", "10", nil)
+
+		_, err := kv.Delete(context.Background(), "/a", &etcd.DeleteOptions{PrevValue: "20"})
+		Expect(err.(etcd.Error).Code).To(Equal(etcd.ErrorCodeTestFailed))
+
+		_, err = kv.Delete(context.Background(), "/a", &etcd.DeleteOptions{PrevValue: "10"})
+		Expect(err).NotTo(HaveOccurred())
+
+		_, err = kv.Get(context.Background(), "/a", nil)
+		Expect(err.(etcd.Error).Code).To(Equal(etcd.ErrorCodeKeyNotFound))
+	})
+})
+
+var _ = Describe("EtcdState", func() {
+	var (
+		kv    *FakeKeysAPI
+		state *EtcdState
+	)
+
+	BeforeEach(func() {
+		kv = NewFakeKeysAPI()
+		state = NewFakeEtcdState(kv, fakeConfiguration, fakeCoordinator, fakeCoordinator, map[string]interface{}{
+			"a": 10,
+			"b": []string{"x", "y"},
+		})
+	})
+
+	It("sets initial values from the coordinator", func() {
+		var a int
+		var b []string
+
+		state.Get("a", &a)
+		state.Get("b", &b)
+
+		Expect(a).To(Equal(10))
+		Expect(b).To(Equal([]string{"x", "y"}))
+		Expect(state.Exists("a")).To(BeTrue())
+		Expect(state.Exists("c")).To(BeFalse())
+	})
+
+	It("does not set initial values from other nodes", func() {
+		other := NewFakeEtcdState(NewFakeKeysAPI(), fakeConfiguration, "10.0.0.2:2222", fakeCoordinator, map[string]interface{}{
+			"a": 10,
+		})
+
+		Expect(other.Exists("a")).To(BeFalse())
+	})
+
+	It("reads and writes groups of variables in a single request each", func() {
+		state.InitGroup("0", map[string]interface{}{"c": 30, "d": "thirty"})
+
+		var c int
+		var d string
+		requests := kv.Requests
+		state.GetGroup("0", map[string]interface{}{"c": &c, "d": &d})
+		Expect(kv.Requests).To(Equal(requests + 1))
+		Expect(c).To(Equal(30))
+		Expect(d).To(Equal("thirty"))
+
+		state.SetGroup("0", map[string]interface{}{"c": c + 1, "d": d})
+		Expect(kv.Requests).To(Equal(requests + 2))
+
+		state.GetGroup("0", map[string]interface{}{"c": &c, "d": &d})
+		Expect(c).To(Equal(31))
+		Expect(d).To(Equal("thirty"))
+	})
+
+	It("skips the variables of a group that are not requested", func() {
+		state.InitGroup("0", map[string]interface{}{"c": 30, "d": "thirty", "e": []int{1, 2}})
+
+		var e []int
+		state.GetGroup("0", map[string]interface{}{"e": &e})
+		Expect(e).To(Equal([]int{1, 2}))
+	})
+
+	It("keeps critical sections of concurrent processes atomic", func() {
+		state.InitGroup("0", map[string]interface{}{"counter": 0})
+
+		var wg sync.WaitGroup
+		for p := 0; p < 4; p++ {
+			wg.Add(1)
+			go func(p int) {
+				defer wg.Done()
+				self := fmt.Sprintf("P(%d)", p)
+				for i := 0; i < 25; i++ {
+					var counter int
+					state.Lock(self, "0")
+					state.GetGroup("0", map[string]interface{}{"counter": &counter})
+					state.SetGroup("0", map[string]interface{}{"counter": counter + 1})
+					state.Unlock(self, "0")
+				}
+			}(p)
+		}
+		wg.Wait()
+
+		var counter int
+		state.GetGroup("0", map[string]interface{}{"counter": &counter})
+		Expect(counter).To(Equal(100))
+	})
+})
+
+// benchmarkCriticalSections measures critical sections reading and writing
+// `n` integer variables, as generated by the etcd strategy, against the fake
+// etcd store, with a request per variable or a single request for all.
+func benchmarkCriticalSections(b *testing.B, n int, batch bool) {
+	names := make([]string, n)
+	values := map[string]interface{}{}
+	for i := range names {
+		names[i] = fmt.Sprintf("v%d", i)
+		values[names[i]] = i
+	}
+
+	kv := NewFakeKeysAPI()
+	state := NewFakeEtcdState(kv, fakeConfiguration, fakeCoordinator, fakeCoordinator, values)
+	state.InitGroup("0", values)
+
+	ints := make([]int, n)
+	pointers := map[string]interface{}{}
+	for i, name := range names {
+		pointers[name] = &ints[i]
+	}
+	b.ResetTimer()
+
+	for i := 0; i < b.N; i++ {
+		state.Lock("P(1)", "0")
+		if batch {
+			state.GetGroup("0", pointers)
+		} else {
+			for j, name := range names {
+				state.Get(name, &ints[j])
+			}
+		}
+
+		for j, name := range names {
+			ints[j]++
+			values[name] = ints[j]
+		}
+
+		if batch {
+			state.SetGroup("0", values)
+		} else {
+			for _, name := range names {
+				state.Set(name, values[name])
+			}
+		}
+		state.Unlock("P(1)", "0")
+	}
+}
+
+func BenchmarkEtcdPerVariable(b *testing.B) {
+	benchmarkCriticalSections(b, 8, false)
+}
+
+func BenchmarkEtcdBatched(b *testing.B) {
+	benchmarkCriticalSections(b, 8, true)
+}
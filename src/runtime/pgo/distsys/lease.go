@@ -0,0 +1,129 @@
+package distsys
+
+// Read leases let a node keep reading a variable owned by another node without
+// asking the owner every time. When the owner of a variable serves a
+// non-exclusive request for it, it may grant the requester a lease of a given
+// duration, during which the owner promises not to let anyone write the variable
+// (nor move it to another node). The requester then serves further read-only
+// accesses to the variable from its copy of the value until the lease expires.
+//
+// The requester measures the lease from the time it sent its request, and the
+// owner from the time it granted the lease, which is later. The requester
+// therefore stops using its copy before the owner considers the lease expired,
+// regardless of the offset between the clocks of the two nodes.
+//
+// Owners only grant leases on variables that have not been written for a while,
+// since every write has to wait for the leases on the variable to expire.
+
+import (
+	"sync"
+	"time"
+)
+
+const (
+	// DefaultLeaseDuration is the duration of the read leases granted by a
+	// StateServer, unless changed with SetLeaseDuration
+	DefaultLeaseDuration = 100 * time.Millisecond
+
+	// leaseQuietFactor determines how long a variable must go without being
+	// written before read leases on it are granted, in lease durations
+	leaseQuietFactor = 8
+)
+
+// GrantLease grants a read lease of the given duration on the entry associated
+// with `name`, unless the entry was written recently, and returns whether it did.
+// Invoking this function is only safe if the caller has previously called Lock()
+// on the same name.
+func (store DataStore) GrantLease(name string, duration time.Duration) bool {
+	entry := store.findOrPanic(name)
+	now := time.Now()
+
+	if duration <= 0 || now.Sub(entry.writtenAt) < leaseQuietFactor*duration {
+		return false
+	}
+
+	if expiry := now.Add(duration); expiry.After(entry.leasedUntil) {
+		entry.leasedUntil = expiry
+	}
+
+	return true
+}
+
+// ExpireLeases blocks until every read lease granted on the entry associated with
+// `name` has expired, and records that the entry is about to be written or moved.
+// Invoking this function is only safe if the caller has previously called Lock()
+// on the same name, which prevents new leases from being granted meanwhile.
+func (store DataStore) ExpireLeases(name string) {
+	entry := store.findOrPanic(name)
+
+	if wait := time.Until(entry.leasedUntil); wait > 0 {
+		time.Sleep(wait)
+	}
+
+	entry.writtenAt = time.Now()
+}
+
+// leaseCache holds the values of the variables the running node holds a read
+// lease on.
+type leaseCache struct {
+	lock    sync.Mutex
+	entries map[string]leasedValue
+}
+
+type leasedValue struct {
+	value  interface{}
+	expiry time.Time
+}
+
+func newLeaseCache() *leaseCache {
+	return &leaseCache{entries: map[string]leasedValue{}}
+}
+
+// borrow serves the names in the spec that are only read, and on which a lease
+// is valid at time `now`, from the cache. Returns references to the values
+// served, and a spec of the names that were not. Since the values of the names
+// written are about to change, they are removed from the cache.
+func (cache *leaseCache) borrow(spec *BorrowSpec, now time.Time) (VarReferences, *BorrowSpec) {
+	cache.lock.Lock()
+	defer cache.lock.Unlock()
+
+	refs := VarReferences(map[string]*Reference{})
+	if len(cache.entries) == 0 {
+		return refs, spec
+	}
+
+	rest := &BorrowSpec{ReadNames: []string{}, WriteNames: spec.WriteNames}
+	for _, name := range spec.WriteNames {
+		delete(cache.entries, name)
+	}
+
+	for _, borrowVar := range spec.Sorted() {
+		if borrowVar.Exclusive {
+			continue
+		}
+
+		leased, found := cache.entries[borrowVar.Name]
+		if found && now.Before(leased.expiry) {
+			refs.insert(borrowVar.Name, &Reference{Type: REF_VAL, Value: leased.value, Cached: true})
+			continue
+		}
+
+		delete(cache.entries, borrowVar.Name)
+		rest.ReadNames = append(rest.ReadNames, borrowVar.Name)
+	}
+
+	return refs, rest
+}
+
+// store keeps the values of the references given that come with a lease, which
+// started at time `start`.
+func (cache *leaseCache) store(refs VarReferences, start time.Time) {
+	cache.lock.Lock()
+	defer cache.lock.Unlock()
+
+	for name, ref := range refs {
+		if ref.Type == REF_VAL && ref.Lease > 0 {
+			cache.entries[name] = leasedValue{value: ref.Value, expiry: start.Add(ref.Lease)}
+		}
+	}
+}
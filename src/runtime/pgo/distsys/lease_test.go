@@ -0,0 +1,98 @@
+package distsys
+
+import (
+	"time"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+var _ = Describe("Lease cache", func() {
+	var (
+		cache *leaseCache
+		start time.Time
+	)
+
+	BeforeEach(func() {
+		cache = newLeaseCache()
+		start = time.Now()
+
+		cache.store(VarReferences(map[string]*Reference{
+			"a": &Reference{Type: REF_VAL, Value: 10, Lease: time.Minute},
+			"b": &Reference{Type: REF_VAL, Value: 20, Lease: time.Minute},
+			"c": &Reference{Type: REF_VAL, Value: 30},
+		}), start)
+	})
+
+	It("serves the names read from valid leases", func() {
+		spec := &BorrowSpec{ReadNames: []string{"a", "c"}, WriteNames: []string{}}
+		refs, rest := cache.borrow(spec, start.Add(time.Second))
+
+		Expect(refs).To(Equal(VarReferences(map[string]*Reference{
+			"a": &Reference{Type: REF_VAL, Value: 10, Cached: true},
+		})))
+		Expect(rest.ReadNames).To(Equal([]string{"c"}))
+		Expect(rest.WriteNames).To(BeEmpty())
+	})
+
+	It("does not serve names read from expired leases", func() {
+		spec := &BorrowSpec{ReadNames: []string{"a"}, WriteNames: []string{}}
+		refs, rest := cache.borrow(spec, start.Add(time.Hour))
+
+		Expect(refs).To(BeEmpty())
+		Expect(rest.ReadNames).To(Equal([]string{"a"}))
+	})
+
+	It("does not serve names written, and forgets them", func() {
+		spec := &BorrowSpec{ReadNames: []string{"a", "b"}, WriteNames: []string{"b"}}
+		refs, rest := cache.borrow(spec, start.Add(time.Second))
+
+		Expect(refs).To(HaveKey("a"))
+		Expect(refs).NotTo(HaveKey("b"))
+		Expect(rest.ReadNames).To(BeEmpty())
+		Expect(rest.WriteNames).To(Equal([]string{"b"}))
+
+		spec = &BorrowSpec{ReadNames: []string{"b"}, WriteNames: []string{}}
+		refs, _ = cache.borrow(spec, start.Add(time.Second))
+		Expect(refs).To(BeEmpty())
+	})
+})
+
+// benchmarkReads measures the latency of reading a variable owned by another
+// peer, which is written once every 1000 reads, when the owner grants leases
+// of the given duration.
+func benchmarkReads(b *testing.B, port int, lease time.Duration) {
+	peers := startLoopbackPeers(b, 2, port, neverMigrate)
+	defer stopLoopbackPeers(peers)
+
+	peers[0].SetLeaseDuration(lease)
+	read := &BorrowSpec{ReadNames: []string{"v0"}, WriteNames: []string{}}
+	write := &BorrowSpec{ReadNames: []string{}, WriteNames: []string{"v0"}}
+	b.ResetTimer()
+
+	for i := 0; i < b.N; i++ {
+		spec := read
+		if i%1000 == 999 {
+			spec = write
+		}
+
+		refs, err := peers[1].Acquire(spec)
+		if err != nil {
+			b.Fatal(err)
+		}
+
+		if err := peers[1].Release(refs); err != nil {
+			b.Fatal(err)
+		}
+	}
+}
+
+func BenchmarkReadsWithoutLeases(b *testing.B) {
+	benchmarkReads(b, 17070, 0)
+}
+
+func BenchmarkReadsWithLeases(b *testing.B) {
+	benchmarkReads(b, 17080, DefaultLeaseDuration)
+}
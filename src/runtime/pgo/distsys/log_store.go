@@ -0,0 +1,555 @@
+package distsys
+
+// A LogStore is an archetype resource collection whose resources hold
+// values that persist across restarts, such as the entries of a
+// replicated log or of a key-value store. Unlike FileResource, which
+// rewrites a whole file whenever it is released, committing a value
+// appends a single record to a write-ahead log. The values a step writes
+// to several keys of a store are appended as one record, so that either
+// all of them or none persist.
+//
+// Commits made at the same time (by different archetypes, or by
+// different resources of a single step) are written to the log and synced
+// together (group commit): a single goroutine appends every commit waiting
+// when the previous sync completes, and syncs them once. Reads are served
+// from memory. Once the log grows past a certain size, the current value
+// of every key is written to a snapshot, and the log starts over.
+//
+// Both the log and the snapshot are sequences of records:
+//
+//     length (uvarint) | (key (frame) | value (frame))+ | CRC-32 of keys and values
+//
+// where keys and values are encoded with CompactCodec, writing the field
+// names of every record (see NamedFields). A record that was not
+// completely written before a crash is discarded, along with anything
+// after it, when the log is opened again.
+
+import (
+	"encoding/binary"
+	"errors"
+	"hash/crc32"
+	"io"
+	"io/ioutil"
+	"os"
+	"path"
+	"strings"
+	"sync"
+	"time"
+
+	"pgo/metrics"
+)
+
+// logStoreCodec encodes keys and values so that they can be decoded by
+// later runs of the program, whichever record types those define.
+var logStoreCodec = CompactCodec{NamedFields: true}
+
+const (
+	logFileName      = "log"
+	snapshotFileName = "snapshot"
+)
+
+// metrics recorded by log stores
+var (
+	logStoreCommits     = metrics.Default.Counter("logstore.commits")
+	logStoreSyncs       = metrics.Default.Counter("logstore.syncs")
+	logStoreCompactions = metrics.Default.Counter("logstore.compactions")
+	logStoreSyncLatency = metrics.Default.Histogram("logstore.sync")
+)
+
+// errCorruptRecord is returned when decoding a record that was not
+// completely written.
+var errCorruptRecord = errors.New("corrupt log record")
+
+// LogStoreOptions tune the durability and compaction of a LogStore.
+type LogStoreOptions struct {
+	SyncDelay      time.Duration // how long to wait for more commits before syncing the log; 0 syncs right away
+	CompactionSize int64         // size of the log, in bytes, above which it is compacted into a snapshot
+}
+
+// DefaultLogStoreOptions returns the options used by NewLogStore.
+func DefaultLogStoreOptions() LogStoreOptions {
+	return LogStoreOptions{
+		SyncDelay:      0,
+		CompactionSize: 64 << 20,
+	}
+}
+
+// LogStore implements ArchetypeResourceCollection, mapping each key
+// to a resource whose value is persisted in a write-ahead log stored
+// under a directory.
+type LogStore struct {
+	dir     string                    // directory holding the log and snapshot
+	options LogStoreOptions           // when the log is synced and compacted
+	commits chan *logCommit           // commits waiting to be appended to the log
+	stopped chan struct{}             // closed when the committer exits
+	lock    sync.Mutex                // protects the fields below
+	values  map[string]interface{}    // committed value of each (encoded) key
+	entries map[string]*LogStoreEntry // resources previously returned by Get
+
+	// only used by the committer
+	log     *os.File // the write-ahead log, open for appending
+	logSize int64    // size of the valid records in the log
+}
+
+// logCommit holds the values committed by a step
+type logCommit struct {
+	keys   []string
+	values []interface{} // the value committed for each key
+	record []byte        // the record appended to the log
+	done   chan error    // receives the result of syncing the record
+}
+
+// NewLogStore opens the log store under the directory given, creating
+// it if it does not exist, with the default options.
+func NewLogStore(dir string) (*LogStore, error) {
+	return NewLogStoreWithOptions(dir, DefaultLogStoreOptions())
+}
+
+// NewLogStoreWithOptions opens the log store under the directory
+// given, creating it if it does not exist, with the options given.
+func NewLogStoreWithOptions(dir string, options LogStoreOptions) (*LogStore, error) {
+	if err := os.MkdirAll(dir, 0755); err != nil {
+		return nil, err
+	}
+
+	store := &LogStore{
+		dir:     dir,
+		options: options,
+		commits: make(chan *logCommit, 64),
+		stopped: make(chan struct{}),
+		values:  map[string]interface{}{},
+		entries: map[string]*LogStoreEntry{},
+	}
+
+	// the snapshot holds every value committed before the log was last
+	// compacted; it may not exist yet
+	snapshot, err := ioutil.ReadFile(path.Join(dir, snapshotFileName))
+	if err != nil && !os.IsNotExist(err) {
+		return nil, err
+	}
+
+	if _, err := store.replay(snapshot); err != nil {
+		return nil, err
+	}
+
+	log, err := os.OpenFile(path.Join(dir, logFileName), os.O_RDWR|os.O_CREATE, 0644)
+	if err != nil {
+		return nil, err
+	}
+
+	data, err := ioutil.ReadAll(log)
+	if err != nil {
+		log.Close()
+		return nil, err
+	}
+
+	// discard any record that was not completely written
+	valid, err := store.replay(data)
+	if err == nil && valid < len(data) {
+		err = log.Truncate(int64(valid))
+	}
+	if err == nil {
+		_, err = log.Seek(int64(valid), io.SeekStart)
+	}
+	if err != nil {
+		log.Close()
+		return nil, err
+	}
+
+	store.log = log
+	store.logSize = int64(valid)
+	go store.commitLoop()
+
+	return store, nil
+}
+
+// replay applies the records in `data` to the values of the store, and
+// returns the length of the complete records it contains.
+func (store *LogStore) replay(data []byte) (int, error) {
+	valid := 0
+
+	for valid < len(data) {
+		keys, encoded, n, err := nextRecord(data[valid:])
+		if err != nil {
+			break
+		}
+
+		for i, key := range keys {
+			value, err := logStoreCodec.Decode(encoded[i])
+			if err != nil {
+				return 0, err
+			}
+
+			store.values[key] = value
+		}
+		valid += n
+	}
+
+	return valid, nil
+}
+
+// appendRecord appends to `buf` the record setting each key to the
+// (encoded) value at the same position in `values`.
+func appendRecord(buf []byte, keys []string, values [][]byte) []byte {
+	var payload []byte
+	for i, key := range keys {
+		payload = AppendFrame(payload, []byte(key))
+		payload = AppendFrame(payload, values[i])
+	}
+
+	var checksum [4]byte
+	binary.LittleEndian.PutUint32(checksum[:], crc32.ChecksumIEEE(payload))
+
+	buf = appendUvarint(buf, uint64(len(payload)))
+	buf = append(buf, payload...)
+	return append(buf, checksum[:]...)
+}
+
+// nextRecord decodes the record at the start of `data`, and returns its
+// length.
+func nextRecord(data []byte) (keys []string, values [][]byte, n int, err error) {
+	length, prefix := binary.Uvarint(data)
+	if prefix <= 0 || length > uint64(len(data)-prefix) || uint64(len(data)-prefix)-length < 4 {
+		return nil, nil, 0, errCorruptRecord
+	}
+
+	payload := data[prefix : prefix+int(length)]
+	checksum := data[prefix+int(length) : prefix+int(length)+4]
+	if binary.LittleEndian.Uint32(checksum) != crc32.ChecksumIEEE(payload) || len(payload) == 0 {
+		return nil, nil, 0, errCorruptRecord
+	}
+
+	for rest := payload; len(rest) > 0; {
+		var key, value []byte
+		if key, rest, err = NextFrame(rest); err != nil {
+			return nil, nil, 0, errCorruptRecord
+		}
+		if value, rest, err = NextFrame(rest); err != nil {
+			return nil, nil, 0, errCorruptRecord
+		}
+
+		keys = append(keys, string(key))
+		values = append(values, value)
+	}
+
+	return keys, values, prefix + int(length) + 4, nil
+}
+
+// commitLoop appends commits to the log until the store is closed.
+// Every commit waiting when the log is synced is appended and synced
+// along with the others.
+func (store *LogStore) commitLoop() {
+	defer close(store.stopped)
+
+	for commit := range store.commits {
+		if store.options.SyncDelay > 0 {
+			time.Sleep(store.options.SyncDelay)
+		}
+
+		batch := []*logCommit{commit}
+	gather:
+		for {
+			select {
+			case next, ok := <-store.commits:
+				if !ok {
+					break gather
+				}
+				batch = append(batch, next)
+			default:
+				break gather
+			}
+		}
+
+		err := store.append(batch)
+		for _, commit := range batch {
+			commit.done <- err
+		}
+
+		if err == nil && store.logSize >= store.options.CompactionSize {
+			// the log is still valid if compaction fails; it is
+			// attempted again after the next commit
+			store.compact()
+		}
+	}
+}
+
+// append writes a batch of commits to the log and syncs it, after
+// which the values committed become visible.
+func (store *LogStore) append(batch []*logCommit) error {
+	var buf []byte
+	for _, commit := range batch {
+		buf = append(buf, commit.record...)
+	}
+
+	start := time.Now()
+	_, err := store.log.Write(buf)
+	if err == nil {
+		err = store.log.Sync()
+	}
+
+	if err != nil {
+		// drop whatever part of the batch was written, so that later
+		// commits are not appended after an incomplete record
+		if store.log.Truncate(store.logSize) == nil {
+			store.log.Seek(store.logSize, io.SeekStart)
+		}
+
+		return err
+	}
+
+	logStoreSyncLatency.Since(start)
+	logStoreSyncs.Inc()
+	logStoreCommits.Add(uint64(len(batch)))
+	store.logSize += int64(len(buf))
+
+	store.lock.Lock()
+	for _, commit := range batch {
+		for i, key := range commit.keys {
+			store.values[key] = commit.values[i]
+		}
+	}
+	store.lock.Unlock()
+
+	return nil
+}
+
+// compact writes the current value of every key to a new snapshot,
+// which then replaces the log.
+func (store *LogStore) compact() error {
+	var buf []byte
+
+	// only the committer changes values, so they can be read without
+	// the lock here
+	for key, value := range store.values {
+		encoded, err := logStoreCodec.Append(nil, value)
+		if err != nil {
+			return err
+		}
+
+		buf = appendRecord(buf, []string{key}, [][]byte{encoded})
+	}
+
+	tmpPath := path.Join(store.dir, snapshotFileName+".tmp")
+	tmp, err := os.Create(tmpPath)
+	if err != nil {
+		return err
+	}
+
+	_, err = tmp.Write(buf)
+	if err == nil {
+		err = tmp.Sync()
+	}
+	if closeErr := tmp.Close(); err == nil {
+		err = closeErr
+	}
+	if err == nil {
+		err = os.Rename(tmpPath, path.Join(store.dir, snapshotFileName))
+	}
+	if err != nil {
+		os.Remove(tmpPath)
+		return err
+	}
+
+	// the rename must be durable before the log is truncated, or a crash
+	// could leave the old snapshot along with an empty log
+	if err := syncDir(store.dir); err != nil {
+		return err
+	}
+
+	// the snapshot holds every record in the log, which may now be
+	// discarded. If the process stops before it is, the log is replayed
+	// over the snapshot, to the same effect
+	if err := store.log.Truncate(0); err != nil {
+		return err
+	}
+	if _, err := store.log.Seek(0, io.SeekStart); err != nil {
+		return err
+	}
+
+	store.logSize = 0
+	logStoreCompactions.Inc()
+	return nil
+}
+
+// syncDir syncs the directory given, so that the files created or renamed
+// in it persist.
+func syncDir(dir string) error {
+	f, err := os.Open(dir)
+	if err != nil {
+		return err
+	}
+
+	err = f.Sync()
+	if closeErr := f.Close(); err == nil {
+		err = closeErr
+	}
+	return err
+}
+
+// Get returns the resource holding the value of the key given. Keys
+// may be of any type CompactCodec can encode.
+func (store *LogStore) Get(value interface{}) ArchetypeResource {
+	encoded, err := logStoreCodec.Append(nil, value)
+	if err != nil {
+		panic(err)
+	}
+	key := string(encoded)
+
+	store.lock.Lock()
+	defer store.lock.Unlock()
+
+	entry, ok := store.entries[key]
+	if !ok {
+		entry = &LogStoreEntry{
+			store: store,
+			key:   key,
+			lock:  newLock(),
+		}
+		entry.ranked = rankOf(entry, store.dir+"\x00"+key)
+		store.entries[key] = entry
+	}
+
+	return entry
+}
+
+// Close stops the store once every pending commit is synced. Resources
+// of the store must not be used afterwards.
+func (store *LogStore) Close() error {
+	close(store.commits)
+	<-store.stopped
+
+	return store.log.Close()
+}
+
+// LogStoreEntry is the resource holding the value of one key of a
+// LogStore. Its value is nil until one is committed.
+type LogStoreEntry struct {
+	store   *LogStore
+	key     string      // the key, encoded with logStoreCodec
+	lock    *fifoLock   // mutex to guarantee exclusive access
+	written interface{} // value written in the current step, if any
+	dirty   bool        // whether a value was written in the current step
+
+	ranked // acquisition order, computed on creation
+}
+
+// Acquire locks the entry for exclusive access.
+func (entry *LogStoreEntry) Acquire(_ ResourceAccess) error {
+	if !tryLock(entry.lock) {
+		return &AbortRetryError{"Could not acquire LogStoreEntry"}
+	}
+
+	return nil
+}
+
+// Read returns the value written in the current step, if any, or the
+// committed value otherwise.
+func (entry *LogStoreEntry) Read() (interface{}, error) {
+	if entry.dirty {
+		return entry.written, nil
+	}
+
+	entry.store.lock.Lock()
+	defer entry.store.lock.Unlock()
+
+	return entry.store.values[entry.key], nil
+}
+
+// Write buffers a new value, which is appended to the log when the
+// entry is released.
+func (entry *LogStoreEntry) Write(value interface{}) error {
+	entry.written = value
+	entry.dirty = true
+
+	return nil
+}
+
+// Release commits the value written, if any, and returns once it is
+// durable.
+func (entry *LogStoreEntry) Release() error {
+	return entry.startGroupRelease([]ArchetypeResource{entry})()
+}
+
+// releaseGroup makes ReleaseResources release the entries of a store
+// together.
+func (entry *LogStoreEntry) releaseGroup() interface{} {
+	return entry.store
+}
+
+// startGroupRelease sends the values written to `entries` (entries of
+// the same store) to be appended to the log as a single record, and
+// returns a function that waits for it to be synced. The entries written
+// stay locked until then, so that no other step reads their previous
+// values in the meantime.
+func (entry *LogStoreEntry) startGroupRelease(entries []ArchetypeResource) func() error {
+	commit := &logCommit{done: make(chan error, 1)}
+	var written []*LogStoreEntry
+	var encoded [][]byte
+	var err error
+
+	for _, resource := range entries {
+		other := resource.(*LogStoreEntry)
+		if !other.dirty {
+			releaseLock(other.lock)
+			continue
+		}
+
+		value := other.written
+		other.written = nil
+		other.dirty = false
+		written = append(written, other)
+
+		if err == nil {
+			var buf []byte
+			buf, err = logStoreCodec.Append(nil, value)
+			commit.keys = append(commit.keys, other.key)
+			commit.values = append(commit.values, value)
+			encoded = append(encoded, buf)
+		}
+	}
+
+	// releases the entries written once their values are committed
+	finish := func(err error) error {
+		for _, other := range written {
+			releaseLock(other.lock)
+		}
+
+		if err != nil {
+			return &ResourceInternalError{err.Error()}
+		}
+
+		return nil
+	}
+
+	if err != nil || len(written) == 0 {
+		return func() error { return finish(err) }
+	}
+
+	commit.record = appendRecord(nil, commit.keys, encoded)
+	entry.store.commits <- commit
+
+	return func() error {
+		return finish(<-commit.done)
+	}
+}
+
+// Abort discards the value written, if any, which was not appended to
+// the log.
+func (entry *LogStoreEntry) Abort() error {
+	entry.written = nil
+	entry.dirty = false
+	releaseLock(entry.lock)
+
+	return nil
+}
+
+// Less implements ordering among entries: by directory of their store,
+// then by key.
+func (entry *LogStoreEntry) Less(other ArchetypeResource) bool {
+	otherEntry := other.(*LogStoreEntry)
+	if entry.store.dir != otherEntry.store.dir {
+		return strings.Compare(entry.store.dir, otherEntry.store.dir) < 0
+	}
+
+	return strings.Compare(entry.key, otherEntry.key) < 0
+}
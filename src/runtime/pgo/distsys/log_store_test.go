@@ -0,0 +1,257 @@
+package distsys
+
+import (
+	"fmt"
+	"io/ioutil"
+	"os"
+	"path"
+	"sync"
+	"sync/atomic"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+// commitValue writes a value to the entry of a log store with the given
+// key, in a step of its own
+func commitValue(store *LogStore, key, value interface{}) error {
+	entry := store.Get(key)
+	if err := AcquireResources(WRITE_ACCESS, entry); err != nil {
+		return err
+	}
+
+	if err := entry.Write(value); err != nil {
+		return err
+	}
+
+	return entry.Release()
+}
+
+func readValue(store *LogStore, key interface{}) interface{} {
+	entry := store.Get(key)
+	Expect(entry.Acquire(READ_ACCESS)).To(Succeed())
+	defer entry.Abort()
+
+	value, err := entry.Read()
+	Expect(err).NotTo(HaveOccurred())
+	return value
+}
+
+// withRecordTypes runs `f` as a program that defined only the record types
+// given would, restoring the record types defined before once it returns
+func withRecordTypes(types [][]string, f func()) {
+	recordTypes.lock.Lock()
+	fields, byCount := recordTypes.fields, recordTypes.byCount
+	recordTypes.fields, recordTypes.byCount = nil, map[int][]uint64{}
+	recordTypes.lock.Unlock()
+
+	defer func() {
+		recordTypes.lock.Lock()
+		recordTypes.fields, recordTypes.byCount = fields, byCount
+		recordTypes.lock.Unlock()
+	}()
+
+	for _, t := range types {
+		DefineRecordType(t...)
+	}
+	f()
+}
+
+var _ = Describe("LogStore", func() {
+	var dir string
+
+	BeforeEach(func() {
+		var err error
+		dir, err = ioutil.TempDir("", "logstore")
+		Expect(err).NotTo(HaveOccurred())
+	})
+
+	AfterEach(func() {
+		os.RemoveAll(dir)
+	})
+
+	It("keeps committed values across restarts", func() {
+		store, err := NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+
+		Expect(readValue(store, "k")).To(BeNil())
+		Expect(commitValue(store, "k", "v1")).To(Succeed())
+		Expect(commitValue(store, "k", "v2")).To(Succeed())
+		Expect(commitValue(store, 3, []interface{}{1, "two"})).To(Succeed())
+		Expect(store.Close()).To(Succeed())
+
+		store, err = NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+		defer store.Close()
+
+		Expect(readValue(store, "k")).To(Equal("v2"))
+		Expect(readValue(store, 3)).To(Equal([]interface{}{1, "two"}))
+	})
+
+	It("discards values written in aborted steps", func() {
+		store, err := NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+		defer store.Close()
+
+		entry := store.Get("k")
+		Expect(entry.Acquire(WRITE_ACCESS)).To(Succeed())
+		Expect(entry.Write("aborted")).To(Succeed())
+		Expect(entry.Read()).To(Equal("aborted"))
+		Expect(entry.Abort()).To(Succeed())
+
+		Expect(readValue(store, "k")).To(BeNil())
+	})
+
+	It("commits values from many steps at once", func() {
+		store, err := NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+		defer store.Close()
+
+		var wg sync.WaitGroup
+		for i := 0; i < 32; i++ {
+			wg.Add(1)
+			go func(i int) {
+				defer GinkgoRecover()
+				defer wg.Done()
+
+				for j := 0; j < 10; j++ {
+					Expect(commitValue(store, i, j)).To(Succeed())
+				}
+			}(i)
+		}
+		wg.Wait()
+
+		for i := 0; i < 32; i++ {
+			Expect(readValue(store, i)).To(Equal(9))
+		}
+	})
+
+	It("compacts the log into a snapshot", func() {
+		options := DefaultLogStoreOptions()
+		options.CompactionSize = 256
+		store, err := NewLogStoreWithOptions(dir, options)
+		Expect(err).NotTo(HaveOccurred())
+
+		for i := 0; i < 100; i++ {
+			Expect(commitValue(store, i%10, fmt.Sprintf("value %d", i))).To(Succeed())
+		}
+		Expect(store.Close()).To(Succeed())
+
+		info, err := os.Stat(path.Join(dir, logFileName))
+		Expect(err).NotTo(HaveOccurred())
+		Expect(info.Size()).To(BeNumerically("<", 256))
+
+		store, err = NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+		defer store.Close()
+
+		for i := 0; i < 10; i++ {
+			Expect(readValue(store, i)).To(Equal(fmt.Sprintf("value %d", 90+i)))
+		}
+	})
+
+	It("ignores records that were not completely written", func() {
+		store, err := NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+		Expect(commitValue(store, "k", "complete")).To(Succeed())
+		Expect(store.Close()).To(Succeed())
+
+		// simulate a crash while appending a record
+		record := appendRecord(nil, []string{"k"}, [][]byte{{tagString, 4, 'l', 'o', 's', 't'}})
+		log, err := os.OpenFile(path.Join(dir, logFileName), os.O_WRONLY|os.O_APPEND, 0644)
+		Expect(err).NotTo(HaveOccurred())
+		_, err = log.Write(record[:len(record)-2])
+		Expect(err).NotTo(HaveOccurred())
+		Expect(log.Close()).To(Succeed())
+
+		store, err = NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+		Expect(readValue(store, "k")).To(Equal("complete"))
+
+		// new records are appended after the last complete one
+		Expect(commitValue(store, "k", "after")).To(Succeed())
+		Expect(store.Close()).To(Succeed())
+
+		store, err = NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+		defer store.Close()
+		Expect(readValue(store, "k")).To(Equal("after"))
+	})
+
+	It("commits the values written by a step together", func() {
+		store, err := NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+
+		a, b := store.Get("a"), store.Get("b")
+		Expect(AcquireResources(WRITE_ACCESS, a, b)).To(Succeed())
+		Expect(a.Write(1)).To(Succeed())
+		Expect(b.Write(2)).To(Succeed())
+		Expect(ReleaseResources(a, b)).To(Succeed())
+		Expect(readValue(store, "a")).To(Equal(1))
+		Expect(readValue(store, "b")).To(Equal(2))
+		Expect(store.Close()).To(Succeed())
+
+		// simulate a crash before the end of the record holding both
+		// values was written
+		logPath := path.Join(dir, logFileName)
+		info, err := os.Stat(logPath)
+		Expect(err).NotTo(HaveOccurred())
+		Expect(os.Truncate(logPath, info.Size()-1)).To(Succeed())
+
+		store, err = NewLogStore(dir)
+		Expect(err).NotTo(HaveOccurred())
+		defer store.Close()
+		Expect(readValue(store, "a")).To(BeNil())
+		Expect(readValue(store, "b")).To(BeNil())
+	})
+
+	It("reads records back whichever record types are defined", func() {
+		record := map[string]interface{}{"type": "put", "key": "k", "value": 1}
+
+		withRecordTypes([][]string{{"type", "key", "value"}}, func() {
+			store, err := NewLogStore(dir)
+			Expect(err).NotTo(HaveOccurred())
+			Expect(commitValue(store, record, record)).To(Succeed())
+			Expect(store.Close()).To(Succeed())
+		})
+
+		withRecordTypes([][]string{{"a", "b", "c"}, {"type", "key", "value"}}, func() {
+			store, err := NewLogStore(dir)
+			Expect(err).NotTo(HaveOccurred())
+			defer store.Close()
+
+			Expect(readValue(store, record)).To(Equal(record))
+		})
+	})
+})
+
+// BenchmarkLogStoreCommit measures steps committing a value to a log
+// store from many goroutines at once, which share syncs.
+func BenchmarkLogStoreCommit(b *testing.B) {
+	dir, err := ioutil.TempDir("", "logstore")
+	if err != nil {
+		b.Fatal(err)
+	}
+	defer os.RemoveAll(dir)
+
+	store, err := NewLogStore(dir)
+	if err != nil {
+		b.Fatal(err)
+	}
+	defer store.Close()
+
+	// each goroutine commits to a key of its own
+	var goroutines int32
+
+	b.SetParallelism(16)
+	b.RunParallel(func(pb *testing.PB) {
+		key := int(atomic.AddInt32(&goroutines, 1))
+		for i := 0; pb.Next(); i++ {
+			if err := commitValue(store, key, i); err != nil {
+				panic(err)
+			}
+		}
+	})
+}
@@ -0,0 +1,351 @@
+package distsys
+
+// MappedFileResource gives access to a file like FileResource does, but
+// without opening and reading the file for every step: the file is opened
+// once and mapped in memory (read-only), reads copy the mapping, and
+// releasing the resource only writes back the pages that were modified.
+//
+// Reads return a copy rather than a view of the mapping: values read end up
+// in archetype locals and messages, which outlive the step that read them
+// and may be modified in place, while the mapping is read-only and is
+// replaced whenever the file is resized.
+
+import (
+	"bytes"
+	"os"
+	"path"
+	"strings"
+	"sync"
+
+	"pgo/metrics"
+)
+
+// number of bytes written back to mapped files
+var mappedFileBytesWritten = metrics.Default.Counter("file.written")
+
+// FilePatch can be written to a MappedFileResource to replace part of
+// the file, instead of the whole file. The file grows if the patch
+// extends past its end.
+type FilePatch struct {
+	Offset int64
+	Data   []byte
+}
+
+// MappedFileResource is an archetype resource holding the contents of a
+// file, as a []byte.
+type MappedFileResource struct {
+	path     string      // absolute path to the file
+	lock     *fifoLock   // mutex to guarantee exclusive access
+	fd       *os.File    // the underlying file, opened on first acquisition and kept open
+	data     []byte      // the file, mapped in memory; nil if the file is empty
+	contents []byte      // contents written in the current step, if `replaced`
+	replaced bool        // whether the whole file was written in the current step
+	patches  []FilePatch // parts of the file written in the current step, if not `replaced`
+
+	ranked // acquisition order, computed on creation
+}
+
+// NewMappedFileResource creates a MappedFileResource for the file under
+// `path`. The file is created when the resource is first acquired if it
+// does not exist.
+func NewMappedFileResource(path string) *MappedFileResource {
+	file := &MappedFileResource{
+		path: path,
+		lock: newLock(),
+	}
+	file.ranked = rankOf(file, path)
+
+	return file
+}
+
+// open opens and maps the file, unless that was done before.
+func (file *MappedFileResource) open() error {
+	if file.fd != nil {
+		return nil
+	}
+
+	fd, err := os.OpenFile(file.path, os.O_RDWR|os.O_CREATE, 0644)
+	if err != nil {
+		return err
+	}
+
+	file.fd = fd
+	return file.remap()
+}
+
+// remap maps the file again, once its size has changed
+func (file *MappedFileResource) remap() error {
+	info, err := file.fd.Stat()
+	if err != nil {
+		return err
+	}
+
+	data, err := mapFile(file.fd, int(info.Size()))
+	if err != nil {
+		return err
+	}
+
+	// reads copy the mapping, so nothing refers to the previous one
+	unmapFile(file.data)
+
+	file.data = data
+	return nil
+}
+
+// Acquire locks the file for exclusive access, opening it the first
+// time it is acquired.
+func (file *MappedFileResource) Acquire(_ ResourceAccess) error {
+	if !tryLock(file.lock) {
+		return &AbortRetryError{"Could not acquire MappedFileResource"}
+	}
+
+	if err := file.open(); err != nil {
+		releaseLock(file.lock)
+		return &ResourceInternalError{err.Error()}
+	}
+
+	return nil
+}
+
+// Read returns the contents of the file, including any change written
+// in the current step.
+func (file *MappedFileResource) Read() (interface{}, error) {
+	if !file.replaced && len(file.patches) == 0 {
+		return append([]byte{}, file.data...), nil
+	}
+
+	if !file.replaced {
+		file.contents = append([]byte{}, file.data...)
+		file.replaced = true
+
+		for _, patch := range file.patches {
+			file.contents = applyPatch(file.contents, patch)
+		}
+		file.patches = nil
+	}
+
+	return file.contents, nil
+}
+
+// applyPatch replaces part of `contents`, extending it if needed.
+func applyPatch(contents []byte, patch FilePatch) []byte {
+	end := int(patch.Offset) + len(patch.Data)
+	if end > len(contents) {
+		contents = append(contents, make([]byte, end-len(contents))...)
+	}
+
+	copy(contents[patch.Offset:], patch.Data)
+	return contents
+}
+
+// Write buffers the value written, which is either a []byte replacing
+// the whole file or a FilePatch replacing part of it. Changes are
+// written to the file when the resource is released.
+func (file *MappedFileResource) Write(value interface{}) error {
+	switch v := value.(type) {
+	case []byte:
+		file.contents = v
+		file.replaced = true
+		file.patches = nil
+
+	case FilePatch:
+		if file.replaced {
+			file.contents = applyPatch(file.contents, v)
+		} else {
+			file.patches = append(file.patches, v)
+		}
+
+	default:
+		panic("MappedFileResource can only be written []byte or FilePatch values")
+	}
+
+	return nil
+}
+
+// Release writes back the parts of the file changed in the current step,
+// and unlocks the file. The file stays open.
+func (file *MappedFileResource) Release() error {
+	defer releaseLock(file.lock)
+
+	var err error
+	if file.replaced {
+		err = file.writeBack(file.contents)
+	} else if len(file.patches) > 0 {
+		err = file.writePatches(file.patches)
+	}
+
+	file.contents = nil
+	file.replaced = false
+	file.patches = nil
+
+	if err != nil {
+		return &ResourceInternalError{err.Error()}
+	}
+
+	return nil
+}
+
+// writeBack makes `contents` the new contents of the file, writing only
+// the pages that differ from the current contents.
+func (file *MappedFileResource) writeBack(contents []byte) error {
+	pageSize := os.Getpagesize()
+	size := len(file.data)
+	dirtyStart := -1
+	wrote := false
+
+	// writes the dirty pages found since `dirtyStart`, up to `end`
+	flush := func(end int) error {
+		if dirtyStart < 0 {
+			return nil
+		}
+
+		n, err := file.fd.WriteAt(contents[dirtyStart:end], int64(dirtyStart))
+		mappedFileBytesWritten.Add(uint64(n))
+		dirtyStart = -1
+		wrote = true
+		return err
+	}
+
+	for offset := 0; offset < len(contents); offset += pageSize {
+		end := offset + pageSize
+		if end > len(contents) {
+			end = len(contents)
+		}
+
+		if end <= size && bytes.Equal(contents[offset:end], file.data[offset:end]) {
+			if err := flush(offset); err != nil {
+				return err
+			}
+		} else if dirtyStart < 0 {
+			dirtyStart = offset
+		}
+	}
+
+	if err := flush(len(contents)); err != nil {
+		return err
+	}
+
+	if len(contents) != size {
+		if err := file.fd.Truncate(int64(len(contents))); err != nil {
+			return err
+		}
+
+		return file.remap()
+	}
+
+	if wrote && !mappingIsLive {
+		return file.remap()
+	}
+
+	return nil
+}
+
+// writePatches writes parts of the file in place.
+func (file *MappedFileResource) writePatches(patches []FilePatch) error {
+	size := int64(len(file.data))
+	grown := false
+
+	for _, patch := range patches {
+		n, err := file.fd.WriteAt(patch.Data, patch.Offset)
+		mappedFileBytesWritten.Add(uint64(n))
+		if err != nil {
+			return err
+		}
+
+		if patch.Offset+int64(len(patch.Data)) > size {
+			grown = true
+		}
+	}
+
+	if grown || !mappingIsLive {
+		return file.remap()
+	}
+
+	return nil
+}
+
+// Abort discards any change written in the current step, and unlocks
+// the file.
+func (file *MappedFileResource) Abort() error {
+	file.contents = nil
+	file.replaced = false
+	file.patches = nil
+	releaseLock(file.lock)
+
+	return nil
+}
+
+// Less implements ordering. The file path is used to order instances
+// of MappedFileResource.
+func (file *MappedFileResource) Less(other ArchetypeResource) bool {
+	otherFile := other.(*MappedFileResource)
+	return strings.Compare(file.path, otherFile.path) < 0
+}
+
+// Close unmaps and closes the file.
+func (file *MappedFileResource) Close() error {
+	if file.fd == nil {
+		return nil
+	}
+
+	unmapFile(file.data)
+
+	err := file.fd.Close()
+	file.fd = nil
+	file.data = nil
+
+	return err
+}
+
+// MappedFileSystemDirectory makes the files in a directory available as
+// MappedFileResources, implementing the ArchetypeResourceCollection
+// interface. Resources are kept, along with their open files, across
+// calls to Get.
+type MappedFileSystemDirectory struct {
+	root      string                         // path to the directory under which files will be accessed
+	lock      sync.Mutex                     // protects resources
+	resources map[string]*MappedFileResource // maps previously retrieved files
+}
+
+// NewMappedFileSystemDirectory returns an implementation of
+// ArchetypeResourceCollection for accessing files under a root
+// directory without copying them.
+func NewMappedFileSystemDirectory(root string) *MappedFileSystemDirectory {
+	return &MappedFileSystemDirectory{
+		root:      root,
+		resources: map[string]*MappedFileResource{},
+	}
+}
+
+// Get returns the archetype resource file corresponding to the path
+// (relative to the root) given as argument. The `value` given must be
+// a string.
+func (dir *MappedFileSystemDirectory) Get(value interface{}) ArchetypeResource {
+	relativePath := value.(string)
+
+	dir.lock.Lock()
+	defer dir.lock.Unlock()
+
+	file, ok := dir.resources[relativePath]
+	if !ok {
+		file = NewMappedFileResource(path.Join(dir.root, relativePath))
+		dir.resources[relativePath] = file
+	}
+
+	return file
+}
+
+// Close closes every file retrieved from the directory.
+func (dir *MappedFileSystemDirectory) Close() error {
+	dir.lock.Lock()
+	defer dir.lock.Unlock()
+
+	var err error
+	for _, file := range dir.resources {
+		if closeErr := file.Close(); err == nil {
+			err = closeErr
+		}
+	}
+
+	return err
+}
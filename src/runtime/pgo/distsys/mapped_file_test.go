@@ -0,0 +1,178 @@
+package distsys
+
+import (
+	"bytes"
+	"io/ioutil"
+	"os"
+	"path"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+// readFile reads a file resource in a step of its own
+func readFile(file ArchetypeResource) []byte {
+	Expect(file.Acquire(READ_ACCESS)).To(Succeed())
+	defer file.Release()
+
+	contents, err := file.Read()
+	Expect(err).NotTo(HaveOccurred())
+	return append([]byte{}, contents.([]byte)...)
+}
+
+// writeFile writes a value to a file resource in a step of its own
+func writeFile(file ArchetypeResource, value interface{}) {
+	Expect(file.Acquire(WRITE_ACCESS)).To(Succeed())
+	Expect(file.Write(value)).To(Succeed())
+	Expect(file.Release()).To(Succeed())
+}
+
+var _ = Describe("MappedFileResource", func() {
+	var dir string
+	var fs *MappedFileSystemDirectory
+
+	BeforeEach(func() {
+		var err error
+		dir, err = ioutil.TempDir("", "mapped")
+		Expect(err).NotTo(HaveOccurred())
+
+		fs = NewMappedFileSystemDirectory(dir)
+	})
+
+	AfterEach(func() {
+		fs.Close()
+		os.RemoveAll(dir)
+	})
+
+	It("reads and writes whole files", func() {
+		Expect(ioutil.WriteFile(path.Join(dir, "page.html"), []byte("<html/>"), 0644)).To(Succeed())
+
+		file := fs.Get("page.html")
+		Expect(fs.Get("page.html")).To(BeIdenticalTo(file))
+		Expect(readFile(file)).To(Equal([]byte("<html/>")))
+
+		writeFile(file, []byte("<html>longer</html>"))
+		Expect(readFile(file)).To(Equal([]byte("<html>longer</html>")))
+		Expect(ioutil.ReadFile(path.Join(dir, "page.html"))).To(Equal([]byte("<html>longer</html>")))
+
+		writeFile(file, []byte{})
+		Expect(readFile(file)).To(BeEmpty())
+	})
+
+	It("writes parts of files", func() {
+		file := fs.Get("new")
+		writeFile(file, FilePatch{Offset: 2, Data: []byte("cd")})
+		Expect(readFile(file)).To(Equal([]byte{0, 0, 'c', 'd'}))
+
+		writeFile(file, FilePatch{Offset: 0, Data: []byte("ab")})
+		Expect(readFile(file)).To(Equal([]byte("abcd")))
+
+		// reads in the same step see the patches written
+		Expect(file.Acquire(WRITE_ACCESS)).To(Succeed())
+		Expect(file.Write(FilePatch{Offset: 4, Data: []byte("e")})).To(Succeed())
+		Expect(file.Read()).To(Equal([]byte("abcde")))
+		Expect(file.Write(FilePatch{Offset: 0, Data: []byte("A")})).To(Succeed())
+		Expect(file.Read()).To(Equal([]byte("Abcde")))
+		Expect(file.Release()).To(Succeed())
+
+		Expect(ioutil.ReadFile(path.Join(dir, "new"))).To(Equal([]byte("Abcde")))
+	})
+
+	It("only writes back the pages that changed", func() {
+		pageSize := os.Getpagesize()
+		original := bytes.Repeat([]byte("a"), 4*pageSize)
+		Expect(ioutil.WriteFile(path.Join(dir, "big"), original, 0644)).To(Succeed())
+
+		file := fs.Get("big")
+		contents := readFile(file)
+		contents[2*pageSize+1] = 'b'
+
+		before := mappedFileBytesWritten.Value()
+		writeFile(file, contents)
+		Expect(mappedFileBytesWritten.Value() - before).To(Equal(uint64(pageSize)))
+
+		written, err := ioutil.ReadFile(path.Join(dir, "big"))
+		Expect(err).NotTo(HaveOccurred())
+		Expect(written).To(Equal(contents))
+	})
+
+	It("discards changes when aborted", func() {
+		file := fs.Get("f")
+		writeFile(file, []byte("kept"))
+
+		Expect(file.Acquire(WRITE_ACCESS)).To(Succeed())
+		Expect(file.Write([]byte("discarded"))).To(Succeed())
+		Expect(file.Abort()).To(Succeed())
+
+		Expect(readFile(file)).To(Equal([]byte("kept")))
+	})
+
+	It("returns values that outlive the step", func() {
+		file := fs.Get("shrinking")
+		writeFile(file, bytes.Repeat([]byte("a"), 2*os.Getpagesize()))
+
+		Expect(file.Acquire(READ_ACCESS)).To(Succeed())
+		value, err := file.Read()
+		Expect(err).NotTo(HaveOccurred())
+		Expect(file.Release()).To(Succeed())
+
+		writeFile(file, []byte("short"))
+
+		// the value read may be modified, and is unaffected by later writes
+		contents := value.([]byte)
+		contents[0] = 'b'
+		Expect(contents[1:]).To(Equal(bytes.Repeat([]byte("a"), 2*os.Getpagesize()-1)))
+		Expect(readFile(file)).To(Equal([]byte("short")))
+	})
+})
+
+// benchmarkFileRead measures steps reading a 1MB file with a file
+// resource from the collection given.
+func benchmarkFileRead(b *testing.B, fs func(root string) ArchetypeResourceCollection) {
+	dir, err := ioutil.TempDir("", "mapped")
+	if err != nil {
+		b.Fatal(err)
+	}
+	defer os.RemoveAll(dir)
+
+	if err := ioutil.WriteFile(path.Join(dir, "page"), bytes.Repeat([]byte("x"), 1<<20), 0644); err != nil {
+		b.Fatal(err)
+	}
+
+	files := fs(dir)
+	b.ResetTimer()
+
+	for i := 0; i < b.N; i++ {
+		file := files.Get("page")
+		if err := file.Acquire(READ_ACCESS); err != nil {
+			b.Fatal(err)
+		}
+
+		if _, err := file.Read(); err != nil {
+			b.Fatal(err)
+		}
+
+		if err := file.Release(); err != nil {
+			b.Fatal(err)
+		}
+
+		// FileResource only reads the file once
+		if copying, ok := file.(*FileResource); ok {
+			copying.contents = nil
+		}
+	}
+}
+
+func BenchmarkFileResourceRead(b *testing.B) {
+	benchmarkFileRead(b, func(root string) ArchetypeResourceCollection {
+		return NewFileSystemDirectory(root)
+	})
+}
+
+func BenchmarkMappedFileResourceRead(b *testing.B) {
+	benchmarkFileRead(b, func(root string) ArchetypeResourceCollection {
+		return NewMappedFileSystemDirectory(root)
+	})
+}
@@ -0,0 +1,32 @@
+// +build !darwin,!dragonfly,!freebsd,!linux,!netbsd,!openbsd,!solaris
+
+package distsys
+
+import (
+	"io"
+	"os"
+)
+
+// data returned by mapFile is a copy, which must be read again after the file changes
+const mappingIsLive = false
+
+// mapFile reads the first `size` bytes of a file, on platforms where
+// files cannot be mapped in memory. Unlike a mapping, the data returned
+// does not reflect later changes to the file.
+func mapFile(fd *os.File, size int) ([]byte, error) {
+	if size == 0 {
+		return nil, nil
+	}
+
+	data := make([]byte, size)
+	if _, err := fd.ReadAt(data, 0); err != nil && err != io.EOF {
+		return nil, err
+	}
+
+	return data, nil
+}
+
+// unmapFile releases data returned by mapFile.
+func unmapFile(_ []byte) error {
+	return nil
+}
@@ -0,0 +1,31 @@
+// +build darwin dragonfly freebsd linux netbsd openbsd solaris
+
+package distsys
+
+import (
+	"os"
+	"syscall"
+)
+
+// mappings reflect changes made to the file after they are created
+const mappingIsLive = true
+
+// mapFile maps the first `size` bytes of a file in memory, read-only.
+// Changes made to the file through its descriptor are visible in the
+// mapping.
+func mapFile(fd *os.File, size int) ([]byte, error) {
+	if size == 0 {
+		return nil, nil
+	}
+
+	return syscall.Mmap(int(fd.Fd()), 0, size, syscall.PROT_READ, syscall.MAP_SHARED)
+}
+
+// unmapFile releases a mapping created by mapFile.
+func unmapFile(data []byte) error {
+	if data == nil {
+		return nil
+	}
+
+	return syscall.Munmap(data)
+}
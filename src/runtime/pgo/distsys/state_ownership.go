@@ -2,9 +2,15 @@ package distsys
 
 import (
 	"math/rand"
+	"sync"
 	"time"
+
+	"pgo/metrics"
 )
 
+// number of variables whose ownership moved to another node
+var migrations = metrics.Default.Counter("state.migrations")
+
 const (
 	REF_VAL = iota
 	REF_MOVED
@@ -38,6 +44,121 @@ func (random RandomMigrate) ShouldMigrate(_, _ string) bool {
 	return rand.Float64() > 0.5
 }
 
+// LocalAccessRecorder is implemented by migration strategies that take into
+// account the accesses the running node makes to the variables it owns, which
+// are served locally, without consulting ShouldMigrate.
+type LocalAccessRecorder interface {
+	RecordLocalAccess(name string)
+}
+
+const (
+	// DefaultMigrationWindow is the number of recent accesses to a variable
+	// AdaptiveMigrate considers by default
+	DefaultMigrationWindow = 16
+
+	// DefaultMigrationThreshold is the share of the recent accesses to a
+	// variable a node must have made for AdaptiveMigrate to move the
+	// variable to it by default
+	DefaultMigrationThreshold = 0.75
+)
+
+// AdaptiveMigrate moves a variable to the node that accesses it most. The
+// owner of a variable remembers which node made each of its last `window`
+// accesses, including its own (see LocalAccessRecorder), and moves the
+// variable to the node requesting it once that node made at least `threshold`
+// of them. Since a variable only moves once the window of its new owner is
+// full, and a threshold above one half requires clear dominance, variables
+// accessed evenly by several nodes stay where they are rather than moving back
+// and forth.
+type AdaptiveMigrate struct {
+	self      string
+	window    int
+	threshold float64
+
+	lock     sync.Mutex
+	accesses map[string]*accessWindow
+}
+
+// accessWindow is a ring buffer of the nodes that made the last accesses to
+// a variable, along with how many of them each node made.
+type accessWindow struct {
+	requesters []string
+	next       int
+	counts     map[string]int
+}
+
+// NewAdaptiveMigrate returns an AdaptiveMigrate strategy with the default window
+// and threshold.
+func NewAdaptiveMigrate(self string) *AdaptiveMigrate {
+	return NewAdaptiveMigrateWith(self, DefaultMigrationWindow, DefaultMigrationThreshold)
+}
+
+// NewAdaptiveMigrateWith returns an AdaptiveMigrate strategy considering the
+// last `window` accesses to a variable, and moving the variable to a node that
+// made at least `threshold` (a fraction between 0 and 1) of them.
+func NewAdaptiveMigrateWith(self string, window int, threshold float64) *AdaptiveMigrate {
+	if window < 1 {
+		window = 1
+	}
+
+	return &AdaptiveMigrate{
+		self:      self,
+		window:    window,
+		threshold: threshold,
+		accesses:  map[string]*accessWindow{},
+	}
+}
+
+func (adaptive *AdaptiveMigrate) ShouldMigrate(name, requester string) bool {
+	adaptive.lock.Lock()
+	defer adaptive.lock.Unlock()
+
+	accesses := adaptive.record(name, requester)
+	if requester == adaptive.self || len(accesses.requesters) < adaptive.window {
+		return false
+	}
+
+	if float64(accesses.counts[requester]) < adaptive.threshold*float64(adaptive.window) {
+		return false
+	}
+
+	// the variable is leaving: if it ever comes back, its history starts over
+	delete(adaptive.accesses, name)
+	return true
+}
+
+func (adaptive *AdaptiveMigrate) RecordLocalAccess(name string) {
+	adaptive.lock.Lock()
+	defer adaptive.lock.Unlock()
+
+	adaptive.record(name, adaptive.self)
+}
+
+// record must be called with the lock held
+func (adaptive *AdaptiveMigrate) record(name, requester string) *accessWindow {
+	accesses, found := adaptive.accesses[name]
+	if !found {
+		accesses = &accessWindow{counts: map[string]int{}}
+		adaptive.accesses[name] = accesses
+	}
+
+	if len(accesses.requesters) < adaptive.window {
+		accesses.requesters = append(accesses.requesters, requester)
+	} else {
+		evicted := accesses.requesters[accesses.next]
+		accesses.counts[evicted]--
+		if accesses.counts[evicted] == 0 {
+			delete(accesses.counts, evicted)
+		}
+
+		accesses.requesters[accesses.next] = requester
+		accesses.next = (accesses.next + 1) % adaptive.window
+	}
+	accesses.counts[requester]++
+
+	return accesses
+}
+
 type RefHandler interface {
 	GetRef() *Reference
 }
@@ -57,6 +178,7 @@ func refBuilder(handler *requestStateHandler, variable *BorrowSpecVariable) RefH
 			exclusive:         variable.Exclusive,
 			store:             handler.store,
 			migrationStrategy: handler.migrationStrategy,
+			leaseDuration:     handler.leaseDuration,
 		}
 	}
 
@@ -72,14 +194,25 @@ type RefValHandler struct {
 	store     DataStore
 
 	migrationStrategy MigrationStrategy
+	leaseDuration     time.Duration // the duration of the read lease to grant, if any
 }
 
 func (refhandler RefValHandler) GetRef() *Reference {
 	var peer string
+	var lease time.Duration
 	val := refhandler.store.GetVal(refhandler.name)
 	moveOwnership := refhandler.migrationStrategy.ShouldMigrate(refhandler.name, refhandler.requester)
 
+	if refhandler.exclusive || moveOwnership {
+		// nobody may read the previous value from a lease once it changes
+		refhandler.store.ExpireLeases(refhandler.name)
+	} else if refhandler.store.GrantLease(refhandler.name, refhandler.leaseDuration) {
+		lease = refhandler.leaseDuration
+	}
+
 	if moveOwnership {
+		migrations.Inc()
+
 		// update our ownership table to reflect the migration
 		refhandler.store.UpdateOwner(refhandler.name, refhandler.requester)
 
@@ -99,6 +232,7 @@ func (refhandler RefValHandler) GetRef() *Reference {
 		Exclusive: refhandler.exclusive,
 		Ownership: moveOwnership,
 		Peer:      peer,
+		Lease:     lease,
 	}
 }
 
@@ -182,6 +316,7 @@ type requestStateHandler struct {
 	ownershipMiss bool      // whether some variable in `group` is not owned by this node
 
 	migrationStrategy MigrationStrategy
+	leaseDuration     time.Duration // the duration of the read leases to grant, if any
 }
 
 func (handler requestStateHandler) GetState() (VarReferences, error) {
@@ -197,6 +332,30 @@ func (handler requestStateHandler) GetState() (VarReferences, error) {
 	return refs, nil
 }
 
+// TryGetState behaves like GetState if none of the variables in the group is
+// currently held, and returns false without taking any of them otherwise.
+// Since it never waits for a variable, requests from a node that holds some
+// variables while it asks for others cannot deadlock.
+func (handler requestStateHandler) TryGetState() (VarReferences, bool) {
+	for i, borrowVar := range handler.group.Names {
+		if !handler.store.TryLock(borrowVar.Name) {
+			for _, lockedVar := range handler.group.Names[:i] {
+				handler.store.Unlock(lockedVar.Name)
+			}
+
+			return nil, false
+		}
+	}
+
+	refs := VarReferences(map[string]*Reference{})
+	for _, borrowVar := range handler.group.Names {
+		ref := refBuilder(&handler, borrowVar).GetRef()
+		refs.insert(borrowVar.Name, ref)
+	}
+
+	return refs, true
+}
+
 func (handler requestStateHandler) ReleaseState(refs VarReferences) error {
 	for name, ref := range refs {
 		if ref.Exclusive {
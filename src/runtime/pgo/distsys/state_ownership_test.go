@@ -1,6 +1,8 @@
 package distsys
 
 import (
+	"time"
+
 	. "github.com/onsi/ginkgo"
 	. "github.com/onsi/gomega"
 
@@ -155,6 +157,152 @@ var _ = Describe("State Ownership", func() {
 				}))
 			})
 		})
+
+		var _ = Describe("read leases", func() {
+			BeforeEach(func() {
+				store.UpdateOwner("a", self)
+				store.UpdateOwner("c", self)
+
+				stateHandler.requester = "10.10.10.40"
+				stateHandler.leaseDuration = time.Minute
+			})
+
+			It("grants a lease on the variables read only", func() {
+				refs, _ := stateHandler.GetState()
+
+				Expect(refs["a"].Lease).To(Equal(time.Duration(0)))
+				Expect(refs["c"].Lease).To(Equal(time.Minute))
+			})
+
+			It("grants no lease when the variable was written recently", func() {
+				group.Names[0].Exclusive = false
+				store.ExpireLeases("a")
+
+				refs, _ := stateHandler.GetState()
+
+				Expect(refs["a"].Lease).To(Equal(time.Duration(0)))
+				Expect(refs["c"].Lease).To(Equal(time.Minute))
+			})
+		})
+
+		var _ = Describe("TryGetState", func() {
+			BeforeEach(func() {
+				store.UpdateOwner("a", self)
+				store.UpdateOwner("c", self)
+			})
+
+			It("returns the same references as GetState when no variable is held", func() {
+				refs, acquired := stateHandler.TryGetState()
+				Expect(acquired).To(BeTrue())
+				Expect(len(refs)).To(Equal(2))
+
+				Expect(refs["a"]).To(Equal(&Reference{
+					Type:      REF_VAL,
+					Peer:      self,
+					Value:     10,
+					Exclusive: true,
+					Ownership: false,
+				}))
+				Expect(refs["c"]).To(Equal(&Reference{
+					Type:      REF_VAL,
+					Peer:      self,
+					Value:     30,
+					Exclusive: false,
+					Ownership: false,
+				}))
+
+				// the variables are now held
+				Expect(store.TryLock("a")).To(BeFalse())
+				Expect(store.TryLock("c")).To(BeFalse())
+			})
+
+			It("holds no variable when one of them is already held", func() {
+				store.Lock("c")
+
+				refs, acquired := stateHandler.TryGetState()
+				Expect(acquired).To(BeFalse())
+				Expect(refs).To(BeNil())
+
+				// 'a' was released after 'c' could not be locked
+				Expect(store.TryLock("a")).To(BeTrue())
+			})
+
+			It("does not migrate variables when one of them is already held", func() {
+				stateHandler.requester = "10.10.10.40"
+				stateHandler.migrationStrategy = AlwaysMigrate(self)
+				store.Lock("c")
+
+				_, acquired := stateHandler.TryGetState()
+				Expect(acquired).To(BeFalse())
+
+				Expect(store.OwnerOf("a")).To(Equal(self))
+				Expect(store.GetVal("a")).To(Equal(10))
+			})
+		})
+	})
+})
+
+var _ = Describe("AdaptiveMigrate", func() {
+	var (
+		strategy *AdaptiveMigrate
+		self     = "10.10.10.1"
+		peer1    = "10.10.10.10"
+		peer2    = "10.10.10.20"
+	)
+
+	BeforeEach(func() {
+		strategy = NewAdaptiveMigrateWith(self, 4, 0.75)
+	})
+
+	It("does not migrate before the window is full", func() {
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeTrue())
+	})
+
+	It("does not migrate when no requester dominates", func() {
+		for i := 0; i < 20; i++ {
+			Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+			Expect(strategy.ShouldMigrate("a", peer2)).To(BeFalse())
+		}
+	})
+
+	It("counts local accesses", func() {
+		for i := 0; i < 20; i++ {
+			strategy.RecordLocalAccess("a")
+			Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+		}
+	})
+
+	It("only considers the most recent accesses", func() {
+		Expect(strategy.ShouldMigrate("a", peer2)).To(BeFalse())
+		Expect(strategy.ShouldMigrate("a", peer2)).To(BeFalse())
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+
+		// the window slides past the accesses of peer2
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeTrue())
+	})
+
+	It("tracks every variable separately", func() {
+		for i := 0; i < 3; i++ {
+			Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+			Expect(strategy.ShouldMigrate("b", peer2)).To(BeFalse())
+		}
+
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeTrue())
+		Expect(strategy.ShouldMigrate("b", peer2)).To(BeTrue())
+	})
+
+	It("starts over when a variable migrates", func() {
+		for i := 0; i < 3; i++ {
+			Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
+		}
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeTrue())
+
+		// the variable came back
+		Expect(strategy.ShouldMigrate("a", peer1)).To(BeFalse())
 	})
 })
 
@@ -162,3 +310,53 @@ func TestStateOwnership(t *testing.T) {
 	RegisterFailHandler(Fail)
 	RunSpecs(t, "StateOwnership")
 }
+
+// benchmarkSkewedAccess measures the latency of accessing a single variable,
+// initially owned by peer 0, from peers 1 and 2, where peer 1 makes nine in
+// ten of the accesses.
+func benchmarkSkewedAccess(b *testing.B, port int, migration func(string) MigrationStrategy) {
+	peers := startLoopbackPeers(b, 3, port, migration)
+	defer stopLoopbackPeers(peers)
+
+	spec := &BorrowSpec{WriteNames: []string{"v0"}}
+	b.ResetTimer()
+
+	for i := 0; i < b.N; i++ {
+		ss := peers[1]
+		if i%10 == 0 {
+			ss = peers[2]
+		}
+
+		refs, err := ss.Acquire(spec)
+		if err != nil {
+			b.Fatal(err)
+		}
+
+		refs.Set("v0", refs.Get("v0").(int)+1)
+		if err := ss.Release(refs); err != nil {
+			b.Fatal(err)
+		}
+	}
+}
+
+func BenchmarkSkewedAccessNeverMigrate(b *testing.B) {
+	benchmarkSkewedAccess(b, 17030, neverMigrate)
+}
+
+func BenchmarkSkewedAccessAlwaysMigrate(b *testing.B) {
+	benchmarkSkewedAccess(b, 17040, func(self string) MigrationStrategy {
+		return AlwaysMigrate(self)
+	})
+}
+
+func BenchmarkSkewedAccessRandomMigrate(b *testing.B) {
+	benchmarkSkewedAccess(b, 17050, func(self string) MigrationStrategy {
+		return NewRandomMigrate(self)
+	})
+}
+
+func BenchmarkSkewedAccessAdaptiveMigrate(b *testing.B) {
+	benchmarkSkewedAccess(b, 17060, func(self string) MigrationStrategy {
+		return NewAdaptiveMigrate(self)
+	})
+}
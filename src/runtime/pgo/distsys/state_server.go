@@ -19,6 +19,7 @@ func (iface *StateServerRPC) GetState(req *VarReq, refs *VarReferences) error {
 		self:      iface.server.self,
 
 		migrationStrategy: iface.server.migrationStrategy,
+		leaseDuration:     iface.server.leaseDuration,
 	}
 
 	state, err := handler.GetState()
@@ -30,6 +31,25 @@ func (iface *StateServerRPC) GetState(req *VarReq, refs *VarReferences) error {
 	return nil
 }
 
+// TryGetState is an RPC call similar to GetState, except that the state is
+// only given to the caller if none of the variables requested is currently
+// held, in which case `reply.Acquired` is set. Otherwise, the call returns
+// immediately, without holding any variable.
+func (iface *StateServerRPC) TryGetState(req *VarReq, reply *TryGetStateReply) error {
+	handler := requestStateHandler{
+		group:     req,
+		requester: req.Requester,
+		store:     iface.server.store,
+		self:      iface.server.self,
+
+		migrationStrategy: iface.server.migrationStrategy,
+		leaseDuration:     iface.server.leaseDuration,
+	}
+
+	reply.Refs, reply.Acquired = handler.TryGetState()
+	return nil
+}
+
 // ReleaseState is an RPC call used by nodes in the system in order to release
 // state previously held with a counterpart GetState() call. The references passed
 // to this function *must* be owned by the current node.
@@ -0,0 +1,404 @@
+// Package metrics collects statistics about programs generated by PGo:
+// how often each step commits and aborts, how long resources take to be
+// acquired, how full mailboxes are, how long RPC calls to each peer take,
+// and so on. Counters and histograms are updated with atomic operations
+// only, so that recording an event never blocks the program.
+//
+// Metrics are kept in a Registry, usually Default, under a name of the form
+// "component.metric". They can be served over HTTP with expvar (along with
+// the runtime profiles), or written to a file when the program exits; see
+// Start.
+package metrics
+
+import (
+	"encoding/json"
+	"expvar"
+	"fmt"
+	"io"
+	"net"
+	"net/http"
+	"os"
+	"runtime/pprof"
+	"strconv"
+	"strings"
+	"sync"
+	"sync/atomic"
+	"time"
+)
+
+const (
+	// AddressVariable names the environment variable holding the address
+	// (host:port) metrics are served on by Start, if any.
+	AddressVariable = "PGO_METRICS_ADDR"
+
+	// FileVariable names the environment variable holding the path of the
+	// file metrics are written to when the program exits, if any.
+	FileVariable = "PGO_METRICS_FILE"
+)
+
+// Counter counts events.
+type Counter struct {
+	value uint64
+}
+
+// Add adds `n` to the counter.
+func (c *Counter) Add(n uint64) {
+	atomic.AddUint64(&c.value, n)
+}
+
+// Inc adds one to the counter.
+func (c *Counter) Inc() {
+	atomic.AddUint64(&c.value, 1)
+}
+
+// Value returns the current value of the counter.
+func (c *Counter) Value() uint64 {
+	return atomic.LoadUint64(&c.value)
+}
+
+// Gauge holds a value that can go up and down, such as the length of a queue.
+type Gauge struct {
+	value int64
+}
+
+// Set sets the value of the gauge.
+func (g *Gauge) Set(value int64) {
+	atomic.StoreInt64(&g.value, value)
+}
+
+// Add adds `delta` (which may be negative) to the gauge.
+func (g *Gauge) Add(delta int64) {
+	atomic.AddInt64(&g.value, delta)
+}
+
+// Value returns the current value of the gauge.
+func (g *Gauge) Value() int64 {
+	return atomic.LoadInt64(&g.value)
+}
+
+// numBuckets is the number of buckets of a histogram. Bucket 0 counts
+// durations under 1µs, bucket i durations under 2^i µs, and the last
+// bucket every longer duration (over 9 minutes).
+const numBuckets = 30
+
+// Histogram records the distribution of durations, such as latencies.
+type Histogram struct {
+	count   uint64
+	sum     int64 // ns
+	max     int64 // ns
+	buckets [numBuckets]uint64
+}
+
+// HistogramSnapshot summarizes the durations observed by a histogram.
+// Quantiles are approximate: they are the upper bound of the bucket the
+// quantile falls into.
+type HistogramSnapshot struct {
+	Count uint64
+	Mean  time.Duration
+	Max   time.Duration
+	P50   time.Duration
+	P90   time.Duration
+	P99   time.Duration
+}
+
+func bucketOf(d time.Duration) int {
+	bucket := 0
+	for us := d / time.Microsecond; us > 0 && bucket < numBuckets-1; us >>= 1 {
+		bucket++
+	}
+
+	return bucket
+}
+
+// bucketBound returns the upper bound of the durations in a bucket
+func bucketBound(bucket int) time.Duration {
+	return time.Duration(1<<uint(bucket)) * time.Microsecond
+}
+
+// Observe records a duration.
+func (h *Histogram) Observe(d time.Duration) {
+	atomic.AddUint64(&h.buckets[bucketOf(d)], 1)
+	atomic.AddUint64(&h.count, 1)
+	atomic.AddInt64(&h.sum, int64(d))
+
+	for {
+		max := atomic.LoadInt64(&h.max)
+		if int64(d) <= max || atomic.CompareAndSwapInt64(&h.max, max, int64(d)) {
+			return
+		}
+	}
+}
+
+// Since records the time elapsed since `start`.
+func (h *Histogram) Since(start time.Time) {
+	h.Observe(time.Since(start))
+}
+
+// Snapshot summarizes the durations observed so far. Durations observed while
+// the snapshot is taken may be only partially accounted for.
+func (h *Histogram) Snapshot() HistogramSnapshot {
+	var buckets [numBuckets]uint64
+	var total uint64
+	for i := range buckets {
+		buckets[i] = atomic.LoadUint64(&h.buckets[i])
+		total += buckets[i]
+	}
+
+	snapshot := HistogramSnapshot{
+		Count: atomic.LoadUint64(&h.count),
+		Max:   time.Duration(atomic.LoadInt64(&h.max)),
+	}
+
+	if snapshot.Count > 0 {
+		snapshot.Mean = time.Duration(atomic.LoadInt64(&h.sum) / int64(snapshot.Count))
+	}
+
+	quantile := func(q float64) time.Duration {
+		var seen uint64
+		for i, n := range buckets {
+			seen += n
+			if seen > 0 && float64(seen) >= q*float64(total) {
+				if bound := bucketBound(i); bound < snapshot.Max {
+					return bound
+				}
+				return snapshot.Max
+			}
+		}
+
+		return 0
+	}
+
+	snapshot.P50 = quantile(0.5)
+	snapshot.P90 = quantile(0.9)
+	snapshot.P99 = quantile(0.99)
+	return snapshot
+}
+
+// Registry holds metrics by name. Looking up a metric takes a lock, so
+// callers that record events often should keep the metrics they use.
+type Registry struct {
+	lock    sync.RWMutex
+	metrics map[string]interface{} // *Counter, *Gauge, *Histogram or func() int64
+}
+
+// NewRegistry returns an empty registry.
+func NewRegistry() *Registry {
+	return &Registry{metrics: map[string]interface{}{}}
+}
+
+// Default is the registry the PGo runtime records its metrics in.
+var Default = NewRegistry()
+
+// lookup returns the metric with the given name, creating it with `create`
+// if it does not exist yet.
+func (r *Registry) lookup(name string, create func() interface{}) interface{} {
+	r.lock.RLock()
+	metric, ok := r.metrics[name]
+	r.lock.RUnlock()
+
+	if ok {
+		return metric
+	}
+
+	r.lock.Lock()
+	defer r.lock.Unlock()
+
+	if metric, ok = r.metrics[name]; !ok {
+		metric = create()
+		r.metrics[name] = metric
+	}
+
+	return metric
+}
+
+// Counter returns the counter with the given name, creating it if needed.
+// Panics if a metric of another kind has that name.
+func (r *Registry) Counter(name string) *Counter {
+	counter, ok := r.lookup(name, func() interface{} { return &Counter{} }).(*Counter)
+	if !ok {
+		panic(fmt.Sprintf("metric %s is not a counter", name))
+	}
+
+	return counter
+}
+
+// Gauge returns the gauge with the given name, creating it if needed.
+// Panics if a metric of another kind has that name.
+func (r *Registry) Gauge(name string) *Gauge {
+	gauge, ok := r.lookup(name, func() interface{} { return &Gauge{} }).(*Gauge)
+	if !ok {
+		panic(fmt.Sprintf("metric %s is not a gauge", name))
+	}
+
+	return gauge
+}
+
+// Histogram returns the histogram with the given name, creating it if needed.
+// Panics if a metric of another kind has that name.
+func (r *Registry) Histogram(name string) *Histogram {
+	histogram, ok := r.lookup(name, func() interface{} { return &Histogram{} }).(*Histogram)
+	if !ok {
+		panic(fmt.Sprintf("metric %s is not a histogram", name))
+	}
+
+	return histogram
+}
+
+// Func registers a metric whose value is computed by calling `f` whenever the
+// registry is read, replacing any metric with the same name. This avoids
+// recording values that can be read directly, such as the length of a channel.
+func (r *Registry) Func(name string, f func() int64) {
+	r.lock.Lock()
+	defer r.lock.Unlock()
+
+	r.metrics[name] = f
+}
+
+// Snapshot returns the current value of every metric, by name.
+func (r *Registry) Snapshot() map[string]interface{} {
+	r.lock.RLock()
+	defer r.lock.RUnlock()
+
+	snapshot := make(map[string]interface{}, len(r.metrics))
+	for name, metric := range r.metrics {
+		switch m := metric.(type) {
+		case *Counter:
+			snapshot[name] = m.Value()
+		case *Gauge:
+			snapshot[name] = m.Value()
+		case *Histogram:
+			snapshot[name] = m.Snapshot()
+		case func() int64:
+			snapshot[name] = m()
+		}
+	}
+
+	return snapshot
+}
+
+// WriteJSON writes the current value of every metric to `w`, as a JSON object.
+func (r *Registry) WriteJSON(w io.Writer) error {
+	encoded, err := json.MarshalIndent(r.Snapshot(), "", "  ")
+	if err != nil {
+		return err
+	}
+
+	_, err = w.Write(append(encoded, '\n'))
+	return err
+}
+
+// WriteFile writes the current value of every metric to a file, as a JSON object.
+func (r *Registry) WriteFile(path string) error {
+	file, err := os.Create(path)
+	if err != nil {
+		return err
+	}
+
+	if err := r.WriteJSON(file); err != nil {
+		file.Close()
+		return err
+	}
+
+	return file.Close()
+}
+
+var publishOnce sync.Once
+
+// Serve exposes the metrics in the Default registry over HTTP on the address
+// given, at /debug/vars (as the "pgo" expvar variable), along with the pprof
+// profiles at /debug/pprof/.
+func Serve(addr string) error {
+	listener, err := net.Listen("tcp", addr)
+	if err != nil {
+		return err
+	}
+
+	publishOnce.Do(func() {
+		expvar.Publish("pgo", expvar.Func(func() interface{} {
+			return Default.Snapshot()
+		}))
+	})
+
+	go http.Serve(listener, newServeMux())
+	return nil
+}
+
+// newServeMux returns the handler of the metrics server. The profiles are
+// served here rather than by importing net/http/pprof, which would expose
+// them on http.DefaultServeMux of every program using this package.
+func newServeMux() *http.ServeMux {
+	mux := http.NewServeMux()
+	mux.Handle("/debug/vars", expvar.Handler())
+	mux.HandleFunc("/debug/pprof/", serveProfile)
+	mux.HandleFunc("/debug/pprof/profile", serveCPUProfile)
+	return mux
+}
+
+// serveProfile writes the runtime profile named by the request path, such as
+// /debug/pprof/heap, in the format given by its "debug" parameter (as
+// pprof.Profile.WriteTo), or lists the profiles available at /debug/pprof/.
+func serveProfile(w http.ResponseWriter, r *http.Request) {
+	name := strings.TrimPrefix(r.URL.Path, "/debug/pprof/")
+	if name == "" {
+		w.Header().Set("Content-Type", "text/plain; charset=utf-8")
+		for _, profile := range pprof.Profiles() {
+			fmt.Fprintf(w, "%s %d\n", profile.Name(), profile.Count())
+		}
+		return
+	}
+
+	profile := pprof.Lookup(name)
+	if profile == nil {
+		http.NotFound(w, r)
+		return
+	}
+
+	debug, _ := strconv.Atoi(r.FormValue("debug"))
+	if debug > 0 {
+		w.Header().Set("Content-Type", "text/plain; charset=utf-8")
+	} else {
+		w.Header().Set("Content-Type", "application/octet-stream")
+	}
+	profile.WriteTo(w, debug)
+}
+
+// serveCPUProfile profiles the CPU for the number of seconds given by the
+// "seconds" parameter (30 by default) and writes the profile.
+func serveCPUProfile(w http.ResponseWriter, r *http.Request) {
+	seconds, err := strconv.Atoi(r.FormValue("seconds"))
+	if err != nil || seconds <= 0 {
+		seconds = 30
+	}
+
+	w.Header().Set("Content-Type", "application/octet-stream")
+	if err := pprof.StartCPUProfile(w); err != nil {
+		http.Error(w, fmt.Sprintf("Could not enable CPU profiling: %v", err), http.StatusInternalServerError)
+		return
+	}
+	time.Sleep(time.Duration(seconds) * time.Second)
+	pprof.StopCPUProfile()
+}
+
+// Start exposes the metrics in the Default registry as configured by the
+// environment: if PGO_METRICS_ADDR is set, they are served on that address
+// (see Serve), and if PGO_METRICS_FILE is set, they are written to that file
+// when the function returned is called, typically when the program exits.
+// Metrics are optional, so failures are reported on stderr only.
+func Start() func() {
+	if addr := os.Getenv(AddressVariable); addr != "" {
+		if err := Serve(addr); err != nil {
+			fmt.Fprintf(os.Stderr, "Could not serve metrics on %s: %v\n", addr, err)
+		}
+	}
+
+	path := os.Getenv(FileVariable)
+	return func() {
+		if path == "" {
+			return
+		}
+
+		if err := Default.WriteFile(path); err != nil {
+			fmt.Fprintf(os.Stderr, "Could not write metrics to %s: %v\n", path, err)
+		}
+	}
+}
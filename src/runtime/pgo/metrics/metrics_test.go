@@ -0,0 +1,149 @@
+package metrics
+
+import (
+	"bytes"
+	"encoding/json"
+	"io/ioutil"
+	"net/http"
+	"os"
+	"path/filepath"
+	"sync"
+	"time"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+var _ = Describe("Metrics", func() {
+	It("counts events from many goroutines", func() {
+		counter := &Counter{}
+		gauge := &Gauge{}
+
+		var wg sync.WaitGroup
+		for i := 0; i < 8; i++ {
+			wg.Add(1)
+			go func() {
+				defer wg.Done()
+				for j := 0; j < 1000; j++ {
+					counter.Inc()
+					gauge.Add(1)
+				}
+			}()
+		}
+		wg.Wait()
+
+		Expect(counter.Value()).To(Equal(uint64(8000)))
+		Expect(gauge.Value()).To(Equal(int64(8000)))
+	})
+
+	It("summarizes the durations it observes", func() {
+		histogram := &Histogram{}
+		for i := 1; i <= 100; i++ {
+			histogram.Observe(time.Duration(i) * time.Millisecond)
+		}
+
+		snapshot := histogram.Snapshot()
+		Expect(snapshot.Count).To(Equal(uint64(100)))
+		Expect(snapshot.Max).To(Equal(100 * time.Millisecond))
+		Expect(snapshot.Mean).To(Equal(50500 * time.Microsecond))
+
+		// quantiles are bounded by the next power of two (in µs)
+		Expect(snapshot.P50).To(BeNumerically(">=", 50*time.Millisecond))
+		Expect(snapshot.P50).To(BeNumerically("<=", 100*time.Millisecond))
+		Expect(snapshot.P99).To(Equal(100 * time.Millisecond))
+	})
+
+	It("returns the same metric for the same name", func() {
+		registry := NewRegistry()
+		Expect(registry.Counter("a")).To(BeIdenticalTo(registry.Counter("a")))
+		Expect(registry.Histogram("b")).To(BeIdenticalTo(registry.Histogram("b")))
+		Expect(func() { registry.Gauge("a") }).To(Panic())
+	})
+
+	It("writes every metric as JSON", func() {
+		registry := NewRegistry()
+		registry.Counter("steps").Add(3)
+		registry.Gauge("depth").Set(-1)
+		registry.Histogram("latency").Observe(time.Millisecond)
+		registry.Func("computed", func() int64 { return 42 })
+
+		var out bytes.Buffer
+		Expect(registry.WriteJSON(&out)).To(Succeed())
+
+		var decoded map[string]interface{}
+		Expect(json.Unmarshal(out.Bytes(), &decoded)).To(Succeed())
+		Expect(decoded).To(HaveKeyWithValue("steps", 3.0))
+		Expect(decoded).To(HaveKeyWithValue("depth", -1.0))
+		Expect(decoded).To(HaveKeyWithValue("computed", 42.0))
+		Expect(decoded["latency"]).To(HaveKeyWithValue("Count", 1.0))
+	})
+
+	It("is configured by the environment", func() {
+		dir, err := ioutil.TempDir("", "metrics")
+		Expect(err).NotTo(HaveOccurred())
+		defer os.RemoveAll(dir)
+
+		path := filepath.Join(dir, "metrics.json")
+		os.Setenv(AddressVariable, "127.0.0.1:17400")
+		os.Setenv(FileVariable, path)
+		defer os.Unsetenv(AddressVariable)
+		defer os.Unsetenv(FileVariable)
+
+		Default.Counter("test.started").Inc()
+		stop := Start()
+
+		response, err := http.Get("http://127.0.0.1:17400/debug/vars")
+		Expect(err).NotTo(HaveOccurred())
+		body, err := ioutil.ReadAll(response.Body)
+		response.Body.Close()
+		Expect(err).NotTo(HaveOccurred())
+		Expect(string(body)).To(ContainSubstring("test.started"))
+
+		stop()
+		written, err := ioutil.ReadFile(path)
+		Expect(err).NotTo(HaveOccurred())
+		Expect(string(written)).To(ContainSubstring("test.started"))
+	})
+
+	It("serves profiles without registering them globally", func() {
+		Expect(Serve("127.0.0.1:17401")).To(Succeed())
+
+		response, err := http.Get("http://127.0.0.1:17401/debug/pprof/goroutine?debug=1")
+		Expect(err).NotTo(HaveOccurred())
+		body, err := ioutil.ReadAll(response.Body)
+		response.Body.Close()
+		Expect(err).NotTo(HaveOccurred())
+		Expect(response.StatusCode).To(Equal(http.StatusOK))
+		Expect(string(body)).To(ContainSubstring("goroutine"))
+
+		request, err := http.NewRequest("GET", "http://127.0.0.1/debug/pprof/", nil)
+		Expect(err).NotTo(HaveOccurred())
+		_, pattern := http.DefaultServeMux.Handler(request)
+		Expect(pattern).To(BeEmpty())
+	})
+})
+
+func TestMetrics(t *testing.T) {
+	RegisterFailHandler(Fail)
+	RunSpecs(t, "Metrics")
+}
+
+func BenchmarkCounter(b *testing.B) {
+	counter := &Counter{}
+	b.RunParallel(func(pb *testing.PB) {
+		for pb.Next() {
+			counter.Inc()
+		}
+	})
+}
+
+func BenchmarkHistogram(b *testing.B) {
+	histogram := &Histogram{}
+	b.RunParallel(func(pb *testing.PB) {
+		for pb.Next() {
+			histogram.Observe(time.Millisecond)
+		}
+	})
+}
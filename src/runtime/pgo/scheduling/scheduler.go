@@ -0,0 +1,173 @@
+// Package scheduling bounds how many processes of a program generated by
+// PGo run at the same time, and decides which of the others run next.
+package scheduling
+
+import (
+	"math/rand"
+	"sync"
+	"sync/atomic"
+	"time"
+)
+
+// Policy decides which waiting process runs when a worker becomes
+// available.
+type Policy int
+
+const (
+	// RoundRobin runs waiting processes in the order they started
+	// waiting.
+	RoundRobin Policy = iota
+
+	// Random runs a waiting process chosen uniformly at random.
+	Random
+
+	// EnabledFirst runs processes that completed their last step
+	// before processes that are retrying a step after a failed await,
+	// each in the order they started waiting. A retrying process may
+	// wait indefinitely while other processes keep making progress.
+	EnabledFirst
+)
+
+// Scheduler runs processes on a fixed number of workers. A process
+// occupies a worker from the time it enters the scheduler until it exits
+// it, except while it is blocked, and gives its worker up to a waiting
+// process between steps. Workers are handed over directly, so a
+// process which is not scheduled sleeps rather than contending for the
+// locks of the program.
+type Scheduler struct {
+	waiting int32 // accessed atomically; kept first for 64-bit alignment
+
+	lock     sync.Mutex
+	policy   Policy
+	idle     int
+	ready    []chan struct{}
+	retrying []chan struct{}
+	random   *rand.Rand
+}
+
+// NewScheduler creates a scheduler running at most `workers` processes
+// at a time, and choosing the next process according to `policy`.
+func NewScheduler(workers int, policy Policy) *Scheduler {
+	if workers < 1 {
+		workers = 1
+	}
+
+	return &Scheduler{
+		policy: policy,
+		idle:   workers,
+		random: rand.New(rand.NewSource(time.Now().UnixNano())),
+	}
+}
+
+// Enter blocks until the calling process is given a worker to run its
+// first step on.
+func (s *Scheduler) Enter() {
+	s.acquire(false)
+}
+
+// Exit gives the worker of the calling process, which has no more steps
+// to run, to the next process.
+func (s *Scheduler) Exit() {
+	s.release()
+}
+
+// Yield lets the next process run if one is waiting for a worker, in
+// which case the calling process waits for its next turn. It is called
+// between the steps of a process, while it holds no lock.
+func (s *Scheduler) Yield() {
+	if atomic.LoadInt32(&s.waiting) == 0 {
+		return
+	}
+
+	s.lock.Lock()
+	next := s.dequeue()
+	if next == nil {
+		s.lock.Unlock()
+		return
+	}
+	turn := s.enqueue(false)
+	s.lock.Unlock()
+
+	close(next)
+	<-turn
+}
+
+// Block gives the worker of the calling process to the next process,
+// before the calling process waits for another one, e.g. after a failed
+// await. The calling process must call Unblock before its next step.
+func (s *Scheduler) Block() {
+	s.release()
+}
+
+// Unblock blocks until the calling process, which is about to retry a
+// step after calling Block, is given a worker again.
+func (s *Scheduler) Unblock() {
+	s.acquire(true)
+}
+
+func (s *Scheduler) acquire(retrying bool) {
+	s.lock.Lock()
+	if s.idle > 0 {
+		s.idle--
+		s.lock.Unlock()
+		return
+	}
+	turn := s.enqueue(retrying)
+	s.lock.Unlock()
+
+	<-turn
+}
+
+func (s *Scheduler) release() {
+	s.lock.Lock()
+	next := s.dequeue()
+	if next == nil {
+		s.idle++
+	}
+	s.lock.Unlock()
+
+	if next != nil {
+		close(next)
+	}
+}
+
+// enqueue must be called with the lock held
+func (s *Scheduler) enqueue(retrying bool) chan struct{} {
+	turn := make(chan struct{})
+	if retrying && s.policy == EnabledFirst {
+		s.retrying = append(s.retrying, turn)
+	} else {
+		s.ready = append(s.ready, turn)
+	}
+	atomic.AddInt32(&s.waiting, 1)
+
+	return turn
+}
+
+// dequeue must be called with the lock held. Returns nil if no process
+// is waiting.
+func (s *Scheduler) dequeue() chan struct{} {
+	var next chan struct{}
+	switch {
+	case len(s.ready) > 0 && s.policy == Random:
+		i := s.random.Intn(len(s.ready))
+		next = s.ready[i]
+		last := len(s.ready) - 1
+		s.ready[i] = s.ready[last]
+		s.ready[last] = nil
+		s.ready = s.ready[:last]
+	case len(s.ready) > 0:
+		next = s.ready[0]
+		s.ready[0] = nil
+		s.ready = s.ready[1:]
+	case len(s.retrying) > 0:
+		next = s.retrying[0]
+		s.retrying[0] = nil
+		s.retrying = s.retrying[1:]
+	default:
+		return nil
+	}
+	atomic.AddInt32(&s.waiting, -1)
+
+	return next
+}
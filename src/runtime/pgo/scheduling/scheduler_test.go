@@ -0,0 +1,150 @@
+package scheduling
+
+import (
+	"sync"
+	"sync/atomic"
+	"time"
+
+	. "github.com/onsi/ginkgo"
+	. "github.com/onsi/gomega"
+
+	"testing"
+)
+
+// runProcesses runs `n` processes of `steps` steps each, and returns the
+// largest number of processes that were running a step at the same time
+func runProcesses(s *Scheduler, n, steps int) int32 {
+	var running, maxRunning int32
+	var wg sync.WaitGroup
+	for i := 0; i < n; i++ {
+		wg.Add(1)
+		go func() {
+			defer wg.Done()
+			s.Enter()
+			defer s.Exit()
+			for step := 0; step < steps; step++ {
+				current := atomic.AddInt32(&running, 1)
+				for {
+					max := atomic.LoadInt32(&maxRunning)
+					if current <= max || atomic.CompareAndSwapInt32(&maxRunning, max, current) {
+						break
+					}
+				}
+				time.Sleep(time.Microsecond)
+				atomic.AddInt32(&running, -1)
+				s.Yield()
+			}
+		}()
+	}
+	wg.Wait()
+
+	return maxRunning
+}
+
+// waitForWaiting waits until `n` processes are waiting for a worker
+func waitForWaiting(s *Scheduler, n int32) {
+	Eventually(func() int32 { return atomic.LoadInt32(&s.waiting) }).Should(Equal(n))
+}
+
+var _ = Describe("Scheduler", func() {
+	for _, policy := range []Policy{RoundRobin, Random, EnabledFirst} {
+		policy := policy
+
+		It("runs at most as many processes as there are workers", func() {
+			Expect(runProcesses(NewScheduler(3, policy), 20, 10)).To(BeNumerically("<=", 3))
+		})
+	}
+
+	It("runs waiting processes in order with round-robin", func() {
+		s := NewScheduler(1, RoundRobin)
+		s.Enter()
+
+		order := make(chan int, 3)
+		for i := 0; i < 3; i++ {
+			i := i
+			go func() {
+				s.Enter()
+				order <- i
+				s.Exit()
+			}()
+			waitForWaiting(s, int32(i+1))
+		}
+
+		s.Exit()
+		Expect(<-order).To(Equal(0))
+		Expect(<-order).To(Equal(1))
+		Expect(<-order).To(Equal(2))
+	})
+
+	It("lets a yielding process run after the processes waiting before it", func() {
+		s := NewScheduler(1, RoundRobin)
+		s.Enter()
+
+		order := make(chan string, 2)
+		go func() {
+			s.Enter()
+			order <- "waiting"
+			s.Exit()
+		}()
+		waitForWaiting(s, 1)
+
+		s.Yield()
+		order <- "yielding"
+		s.Exit()
+		Expect(<-order).To(Equal("waiting"))
+		Expect(<-order).To(Equal("yielding"))
+	})
+
+	It("does not block a yielding process when nothing is waiting", func() {
+		s := NewScheduler(1, RoundRobin)
+		s.Enter()
+		s.Yield()
+		s.Exit()
+	})
+
+	It("runs enabled processes before retrying ones with enabled-first", func() {
+		s := NewScheduler(1, EnabledFirst)
+		s.Enter()
+
+		order := make(chan string, 2)
+		go func() {
+			s.Unblock()
+			order <- "retrying"
+			s.Exit()
+		}()
+		waitForWaiting(s, 1)
+		go func() {
+			s.Enter()
+			order <- "enabled"
+			s.Exit()
+		}()
+		waitForWaiting(s, 2)
+
+		s.Block()
+		Expect(<-order).To(Equal("enabled"))
+		Expect(<-order).To(Equal("retrying"))
+	})
+
+	It("gives the worker of a blocked process to another process", func() {
+		s := NewScheduler(1, Random)
+		s.Enter()
+
+		done := make(chan bool)
+		go func() {
+			s.Enter()
+			s.Exit()
+			done <- true
+		}()
+		waitForWaiting(s, 1)
+
+		s.Block()
+		Eventually(done).Should(Receive())
+		s.Unblock()
+		s.Exit()
+	})
+})
+
+func TestScheduler(t *testing.T) {
+	RegisterFailHandler(Fail)
+	RunSpecs(t, "Scheduler")
+}
@@ -13,6 +13,7 @@ import (
 	"time"
 
 	"pgo/distsys"
+	"pgo/metrics"
 )
 
 const (
@@ -21,6 +22,7 @@ const (
 
 	CLIENT_POOL_SIZE   = 100
 	CONNECTION_TIMEOUT = 1000 // time out RPC calls after 1s
+	READ_TIMEOUT       = 1000 // abort reads from an empty mailbox after 1s
 
 	GET = iota
 	PUT
@@ -183,7 +185,7 @@ func fatal(msg string) {
 }
 
 func makeMailboxRef(name string, version int) *distsys.Mailbox {
-	mbox, err := distsys.MailboxRef(name, version, connections, configuration, []string{id}, MAILBOX_SIZE, CONNECTION_TIMEOUT)
+	mbox, err := distsys.MailboxRef(name, version, connections, configuration, []string{id}, MAILBOX_SIZE, CONNECTION_TIMEOUT, READ_TIMEOUT)
 	if err != nil {
 		panic(err)
 	}
@@ -284,6 +286,9 @@ func dumpStorage() {
 }
 
 func main() {
+	// exposes runtime metrics when PGO_METRICS_ADDR or PGO_METRICS_FILE is set
+	defer metrics.Start()()
+
 	// if role == "Replica" {
 	// 	f, err := ioutil.TempFile("/tmp", "replica.prof")
 	// 	if err != nil {
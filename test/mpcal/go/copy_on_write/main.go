@@ -0,0 +1,50 @@
+package main
+
+import (
+	"copy_on_write"
+	"fmt"
+	"pgo/distsys"
+)
+
+// clock is an archetype resource whose value is the number of times it
+// was read, including reads in aborted steps
+type clock struct {
+	ticks int
+}
+
+func (c *clock) Acquire(_ distsys.ResourceAccess) error {
+	return nil
+}
+
+func (c *clock) Read() (interface{}, error) {
+	c.ticks++
+	return c.ticks, nil
+}
+
+func (c *clock) Write(_ interface{}) error {
+	panic("clock is read-only")
+}
+
+func (c *clock) Release() error {
+	return nil
+}
+
+func (c *clock) Abort() error {
+	return nil
+}
+
+func (c *clock) Less(_ distsys.ArchetypeResource) bool {
+	return false
+}
+
+func main() {
+	out := distsys.NewLocalChannel("out", 1)
+
+	go func() {
+		if err := copy_on_write.ACounter(0, &clock{}, out); err != nil {
+			panic(err)
+		}
+	}()
+
+	fmt.Println(out.Receive())
+}
@@ -5,6 +5,7 @@ import (
 	"load_balancer"
 	"os"
 	"pgo/distsys"
+	"pgo/metrics"
 	"strconv"
 	"strings"
 )
@@ -18,6 +19,7 @@ var barrier *distsys.SyncBarrier
 
 const (
 	MAILBOX_SIZE = 10
+	READ_TIMEOUT = 1000 // abort reads from an empty mailbox after 1s
 )
 
 func init() {
@@ -46,7 +48,7 @@ func init() {
 }
 
 func makeMailboxRef(name string) *distsys.Mailbox {
-	mbox, err := distsys.MailboxRef(name, 0, connections, configuration, []string{id}, MAILBOX_SIZE, 0)
+	mbox, err := distsys.MailboxRef(name, 0, connections, configuration, []string{id}, MAILBOX_SIZE, 0, READ_TIMEOUT)
 	if err != nil {
 		panic(err)
 	}
@@ -62,6 +64,9 @@ func waitBarrier() {
 }
 
 func main() {
+	// exposes runtime metrics when PGO_METRICS_ADDR or PGO_METRICS_FILE is set
+	defer metrics.Start()()
+
 	mailboxes := []distsys.ArchetypeResource{}
 	mailboxes = append(mailboxes, makeMailboxRef("ALoadBalancer(0)"))
 
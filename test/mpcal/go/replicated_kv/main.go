@@ -11,6 +11,7 @@ import (
 	"time"
 
 	"pgo/distsys"
+	"pgo/metrics"
 )
 
 const (
@@ -18,6 +19,7 @@ const (
 	CLOCK_UPDATE_TICK = 200 // clock update 0.2s
 
 	CONNECTION_TIMEOUT = 1000 // time out RPC calls after 1s
+	READ_TIMEOUT       = 1000 // abort reads from an empty mailbox after 1s
 
 	REPLICA_STATUS_CHECK = 5 // print replica database state every 5 seconds
 
@@ -146,7 +148,7 @@ func fatal(msg string) {
 }
 
 func makeMailboxRef(name string) *distsys.Mailbox {
-	mbox, err := distsys.MailboxRef(name, 0, connections, configuration, []string{id}, MAILBOX_SIZE, CONNECTION_TIMEOUT)
+	mbox, err := distsys.MailboxRef(name, 0, connections, configuration, []string{id}, MAILBOX_SIZE, CONNECTION_TIMEOUT, READ_TIMEOUT)
 	if err != nil {
 		panic(err)
 	}
@@ -261,6 +263,9 @@ func storageStatusCheck() {
 }
 
 func main() {
+	// exposes runtime metrics when PGO_METRICS_ADDR or PGO_METRICS_FILE is set
+	defer metrics.Start()()
+
 	var commands []Command
 
 	// parse  command line options  soon to avoid finding  out invalid
@@ -0,0 +1,72 @@
+--------------------------- MODULE copy_on_write ---------------------------
+(***************************************************************************)
+(* Modifies a local variable in place before an await which fails the     *)
+(* first few times it is checked, so that the step modifying the local is *)
+(* aborted and retried.                                                    *)
+(***************************************************************************)
+
+EXTENDS Naturals, Sequences, TLC
+
+(***************************************************************************
+--mpcal CopyOnWrite {
+  \* Clock models a clock which ticks every time it is read. In the
+  \* implementation, the clock keeps ticking when the step reading it
+  \* is aborted.
+  mapping macro Clock {
+      read {
+          $variable := $variable + 1;
+          yield $variable;
+      }
+
+      write {
+          assert(FALSE);
+          yield $value;
+      }
+  }
+
+  \* ACounter increments the first element of `counts` before an await,
+  \* and the second one after it. Since aborted steps are rolled back,
+  \* both end up being incremented exactly once, however many times the
+  \* await fails.
+  archetype ACounter(clock, ref out)
+  variables counts = <<0, 0>>;
+  {
+      count:
+        counts[1] := counts[1] + 1;
+        await clock >= 3;
+        counts[2] := counts[2] + 1;
+
+      report:
+        out := counts;
+  }
+
+  variables time = 0, output = <<>>;
+
+  fair process (Counter = 0) == instance ACounter(time, ref output)
+      mapping time via Clock;
+}
+
+\* BEGIN PLUSCAL TRANSLATION
+--algorithm CopyOnWrite {
+    variables time = 0, output = <<>>, clockRead, clockWrite, outWrite;
+    fair process (Counter = 0)
+    variables counts = <<0, 0>>;
+    {
+        count:
+            counts[1] := (counts[1]) + (1);
+            clockWrite := (time) + (1);
+            clockRead := clockWrite;
+            await (clockRead) >= (3);
+            counts[2] := (counts[2]) + (1);
+            time := clockWrite;
+        report:
+            outWrite := counts;
+            output := outWrite;
+    
+    }
+}
+\* END PLUSCAL TRANSLATION
+
+
+***************************************************************************)
+=============================================================================
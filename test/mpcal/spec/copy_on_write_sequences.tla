@@ -0,0 +1,74 @@
+----------------------- MODULE copy_on_write_sequences -----------------------
+(***************************************************************************)
+(* Like copy_on_write, but the step modifies an element of a sequence of   *)
+(* functions in place (through another local), before it is aborted and   *)
+(* retried.                                                                *)
+(***************************************************************************)
+
+EXTENDS Naturals, Sequences, TLC
+
+(***************************************************************************
+--mpcal CopyOnWriteSequences {
+  \* Clock models a clock which ticks every time it is read. In the
+  \* implementation, the clock keeps ticking when the step reading it
+  \* is aborted.
+  mapping macro Clock {
+      read {
+          $variable := $variable + 1;
+          yield $variable;
+      }
+
+      write {
+          assert(FALSE);
+          yield $value;
+      }
+  }
+
+  \* ACounter increments an entry of the function in `counts` before an
+  \* await, through `row`, which shares that function. Since aborted steps
+  \* are rolled back, the entry ends up being incremented exactly once,
+  \* however many times the await fails.
+  archetype ACounter(clock, ref out)
+  variables counts = <<[i \in 1..2 |-> 0]>>, row = [i \in 1..2 |-> 0];
+  {
+      count:
+        row := counts[1];
+        row[1] := row[1] + 1;
+        await clock >= 3;
+        counts[1] := row;
+
+      report:
+        out := counts;
+  }
+
+  variables time = 0, output = <<>>;
+
+  fair process (Counter = 0) == instance ACounter(time, ref output)
+      mapping time via Clock;
+}
+
+\* BEGIN PLUSCAL TRANSLATION
+--algorithm CopyOnWriteSequences {
+    variables time = 0, output = <<>>, clockRead, clockWrite, outWrite;
+    fair process (Counter = 0)
+    variables counts = <<[i \in 1..2 |-> 0]>>, row = [i \in 1..2 |-> 0];
+    {
+        count:
+            row := counts[1];
+            row[1] := (row[1]) + (1);
+            clockWrite := (time) + (1);
+            clockRead := clockWrite;
+            await (clockRead) >= (3);
+            counts[1] := row;
+            time := clockWrite;
+        report:
+            outWrite := counts;
+            output := outWrite;
+    
+    }
+}
+\* END PLUSCAL TRANSLATION
+
+
+***************************************************************************)
+=============================================================================
@@ -22,6 +22,7 @@ public class ExampleCodeGenRunTest {
 				{
 						"Euclid.tla",
 						Collections.singletonMap("N", "5"),
+						Collections.emptyMap(),
 						Collections.singletonList("{24 1 have gcd 1}"),
 				},
 				{
@@ -32,6 +33,7 @@ public class ExampleCodeGenRunTest {
 								put("iters", "1");
 							}
 						},
+						Collections.emptyMap(),
 						Collections.singletonList("1"),
 				},
 				{
@@ -42,6 +44,7 @@ public class ExampleCodeGenRunTest {
 								put("iters", "64");
 							}
 						},
+						Collections.emptyMap(),
 						IntStream.rangeClosed(1, 64)
 								.boxed().map(Object::toString).collect(Collectors.toList()),
 				},
@@ -53,6 +56,7 @@ public class ExampleCodeGenRunTest {
 								put("iters", "1");
 							}
 						},
+						Collections.emptyMap(),
 						Arrays.asList("1", "2"),
 				},
 				{
@@ -63,6 +67,7 @@ public class ExampleCodeGenRunTest {
 								put("iters", "1");
 							}
 						},
+						Collections.emptyMap(),
 						IntStream.rangeClosed(1, 64)
 								.boxed().map(Object::toString).collect(Collectors.toList()),
 				},
@@ -74,6 +79,7 @@ public class ExampleCodeGenRunTest {
 								put("iters", "32");
 							}
 						},
+						Collections.emptyMap(),
 						IntStream.rangeClosed(1, 32*32)
 								.boxed().map(Object::toString).collect(Collectors.toList()),
 				},
@@ -85,32 +91,134 @@ public class ExampleCodeGenRunTest {
 								put("iters", "64");
 							}
 						},
+						Collections.emptyMap(),
 						IntStream.rangeClosed(1, 64*64)
 								.boxed().map(Object::toString).collect(Collectors.toList()),
 				},
+				// with optimistic atomicity, contended increments start over, and must only
+				// print once they commit
+				{
+						"counter.tla",
+						new HashMap<String, String>() {
+							{
+								put("procs", "32");
+								put("iters", "32");
+							}
+						},
+						Collections.singletonMap("atomicity", "optimistic"),
+						IntStream.rangeClosed(1, 32*32)
+								.boxed().map(Object::toString).collect(Collectors.toList()),
+				},
+				// every process but one waits for its turn on each iteration
+				{
+						"round_robin.tla",
+						new HashMap<String, String>() {
+							{
+								put("procs", "4");
+								put("iters", "8");
+							}
+						},
+						Collections.emptyMap(),
+						IntStream.rangeClosed(1, 4*8)
+								.boxed().map(Object::toString).collect(Collectors.toList()),
+				},
+				{
+						"round_robin.tla",
+						new HashMap<String, String>() {
+							{
+								put("procs", "4");
+								put("iters", "8");
+							}
+						},
+						Collections.singletonMap("atomicity", "optimistic"),
+						IntStream.rangeClosed(1, 4*8)
+								.boxed().map(Object::toString).collect(Collectors.toList()),
+				},
+				// with a lock per variable, waiting processes are woken up by the processes
+				// writing to the variables their await reads
+				{
+						"round_robin.tla",
+						new HashMap<String, String>() {
+							{
+								put("procs", "4");
+								put("iters", "8");
+							}
+						},
+						Collections.singletonMap("atomicity", "per-variable"),
+						IntStream.rangeClosed(1, 4*8)
+								.boxed().map(Object::toString).collect(Collectors.toList()),
+				},
+				// processes whose await fails give up their worker to the next process, and
+				// wait for another one before trying again
+				{
+						"round_robin.tla",
+						new HashMap<String, String>() {
+							{
+								put("procs", "4");
+								put("iters", "8");
+							}
+						},
+						Collections.singletonMap("scheduler", "round-robin"),
+						IntStream.rangeClosed(1, 4*8)
+								.boxed().map(Object::toString).collect(Collectors.toList()),
+				},
+				{
+						"round_robin.tla",
+						new HashMap<String, String>() {
+							{
+								put("procs", "4");
+								put("iters", "8");
+							}
+						},
+						Collections.singletonMap("scheduler", "enabled-first"),
+						IntStream.rangeClosed(1, 4*8)
+								.boxed().map(Object::toString).collect(Collectors.toList()),
+				},
+				{
+						"round_robin.tla",
+						new HashMap<String, String>() {
+							{
+								put("procs", "4");
+								put("iters", "8");
+							}
+						},
+						new HashMap<String, Object>() {
+							{
+								put("atomicity", "optimistic");
+								put("scheduler", "round-robin");
+							}
+						},
+						IntStream.rangeClosed(1, 4*8)
+								.boxed().map(Object::toString).collect(Collectors.toList()),
+				},
 				{
 						"Queens.tla",
 						Collections.singletonMap("N", "1"),
+						Collections.emptyMap(),
 						Collections.singletonList("[[1]]"),
 				},
 				{
 						"Queens.tla",
 						Collections.singletonMap("N", "2"),
+						Collections.emptyMap(),
 						Collections.singletonList("[]"),
 				},
 				{
 						"Queens.tla",
 						Collections.singletonMap("N", "3"),
+						Collections.emptyMap(),
 						Collections.singletonList("[]"),
 				},
 				{
 						"Queens.tla",
 						Collections.singletonMap("N", "4"),
+						Collections.emptyMap(),
 						Collections.singletonList("[[2 4 1 3] [3 1 4 2]]"),
 				},
 				{
 						"Queens.tla",
 						Collections.singletonMap("N", "5"),
+						Collections.emptyMap(),
 						Collections.singletonList(
 								"[[1 3 5 2 4] [1 4 2 5 3] [2 4 1 3 5] [2 5 3 1 4] [3 1 4 2 5]"
 										+ " [3 5 2 4 1] [4 1 3 5 2] [4 2 5 3 1] [5 2 4 1 3] [5 3 1 4 2]]"),
@@ -118,6 +226,7 @@ public class ExampleCodeGenRunTest {
 				{
 						"Queens.tla",
 						Collections.singletonMap("N", "9"),
+						Collections.emptyMap(),
 						Collections.singletonList(
 								"[[1 3 6 8 2 4 9 7 5] [1 3 7 2 8 5 9 4 6] [1 3 8 6 9 2 5 7 4] [1 4 2 8 6 9 3 5 7] "
 										+ "[1 4 6 3 9 2 8 5 7] [1 4 6 8 2 5 3 9 7] [1 4 7 3 8 2 5 9 6] [1 4 7 9 2 5 8 6 3] "
@@ -208,22 +317,62 @@ public class ExampleCodeGenRunTest {
 										+ "[9 6 3 1 8 5 2 4 7] [9 6 3 7 2 8 5 1 4] [9 6 4 2 8 5 7 1 3] [9 6 4 7 1 8 2 5 3] "
 										+ "[9 6 8 2 4 1 7 5 3] [9 7 2 4 1 8 5 3 6] [9 7 3 8 2 5 1 6 4] [9 7 4 2 8 6 1 3 5]]")
 				},
+				// Queens extends and compares sequences throughout
+				{
+						"Queens.tla",
+						Collections.singletonMap("N", "4"),
+						Collections.singletonMap("sequences", "persistent"),
+						Collections.singletonList("[[2 4 1 3] [3 1 4 2]]"),
+				},
+				{
+						"Queens.tla",
+						Collections.singletonMap("N", "5"),
+						Collections.singletonMap("sequences", "persistent"),
+						Collections.singletonList(
+								"[[1 3 5 2 4] [1 4 2 5 3] [2 4 1 3 5] [2 5 3 1 4] [3 1 4 2 5]"
+										+ " [3 5 2 4 1] [4 1 3 5 2] [4 2 5 3 1] [5 2 4 1 3] [5 3 1 4 2]]"),
+				},
+				// with optimisations, literals read in place are shared, while literals that
+				// are modified afterwards are still built every time
+				{
+						"Diagonal.tla",
+						Collections.singletonMap("N", "3"),
+						Collections.emptyMap(),
+						Collections.singletonList("{[[1 0 0] [0 2 0] [0 0 3]] 3}"),
+				},
+				{
+						"Diagonal.tla",
+						Collections.singletonMap("N", "3"),
+						Collections.singletonMap("optimise", true),
+						Collections.singletonList("{[[1 0 0] [0 2 0] [0 0 3]] 3}"),
+				},
+				{
+						"Queens.tla",
+						Collections.singletonMap("N", "5"),
+						Collections.singletonMap("optimise", true),
+						Collections.singletonList(
+								"[[1 3 5 2 4] [1 4 2 5 3] [2 4 1 3 5] [2 5 3 1 4] [3 1 4 2 5]"
+										+ " [3 5 2 4 1] [4 1 3 5 2] [4 2 5 3 1] [5 2 4 1 3] [5 3 1 4 2]]"),
+				},
 		});
 	}
 
 	private String fileName;
 	private Map<String, String> constants;
+	private Map<String, Object> codeGenOptions;
 	private List<String> expected;
 
-	public ExampleCodeGenRunTest(String fileName, Map<String, String> constants, List<String> expected) {
+	public ExampleCodeGenRunTest(String fileName, Map<String, String> constants, Map<String, Object> codeGenOptions,
+	                             List<String> expected) {
 		this.fileName = fileName;
 		this.constants = constants;
+		this.codeGenOptions = codeGenOptions;
 		this.expected = expected;
 	}
 
 	@Test
 	public void test() throws IOException {
-		testCompileFile(Paths.get("examples", fileName), constants, compiledOutputPath ->
+		testCompileFile(Paths.get("examples", fileName), constants, codeGenOptions, compiledOutputPath ->
 				testRunGoCode(compiledOutputPath, expected));
 	}
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package pgo;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONObject;
 import org.junit.Test;
@@ -23,8 +25,24 @@ public class ExpressionCodeGenRunTest {
 		return new IntegrationTestingUtils.KeyValue(key, value);
 	}
 
+	// every expression is compiled and run once with each of these code generation options
+	private static final List<Map<String, Object>> codeGenVariants = Arrays.asList(
+			Collections.emptyMap(),
+			Collections.singletonMap("sequences", "persistent"),
+			Collections.singletonMap("optimise", true));
+
 	@Parameters
-	public static List<Object[]> data(){
+	public static List<Object[]> data() {
+		List<Object[]> data = new ArrayList<>();
+		for (Map<String, Object> codeGenOptions : codeGenVariants) {
+			for (Object[] expression : expressions()) {
+				data.add(new Object[] {expression[0], expression[1], codeGenOptions, expression[2]});
+			}
+		}
+		return data;
+	}
+
+	private static List<Object[]> expressions() {
 		return Arrays.asList(new Object[][] {
 			// case expression tests
 			{
@@ -230,6 +248,63 @@ public class ExpressionCodeGenRunTest {
 				Collections.singletonList("false"),
 			},
 
+			// tuples and records: comparing and sorting with the generated comparison functions
+			{
+				// {<<2, "a">>, <<1, "b">>, <<1, "a">>} ;; sorted by element
+				set(idexp("t1"), idexp("t2"), idexp("t3")),
+				Arrays.asList(
+						kv("t1", tuple(num(2), str("a"))),
+						kv("t2", tuple(num(1), str("b"))),
+						kv("t3", tuple(num(1), str("a")))
+				),
+				Collections.singletonList("[{1 a} {1 b} {2 a}]"),
+			},
+			{
+				// <<1, "b">> \in {<<2, "a">>, <<1, "b">>, <<1, "a">>} ;; TRUE
+				binop(
+						"\\in",
+						tuple(num(1), str("b")),
+						set(idexp("t1"), idexp("t2"), idexp("t3"))
+				),
+				Arrays.asList(
+						kv("t1", tuple(num(2), str("a"))),
+						kv("t2", tuple(num(1), str("b"))),
+						kv("t3", tuple(num(1), str("a")))
+				),
+				Collections.singletonList("true"),
+			},
+			{
+				// <<1, "c">> = <<1, "b">> ;; FALSE
+				binop("=", idexp("t1"), idexp("t2")),
+				Arrays.asList(
+						kv("t1", tuple(num(1), str("c"))),
+						kv("t2", tuple(num(1), str("b")))
+				),
+				Collections.singletonList("false"),
+			},
+			{
+				// {[a |-> 2, b |-> "x"], [a |-> 1, b |-> "y"], [a |-> 1, b |-> "x"]} =
+				//   {[a |-> 1, b |-> "x"], [a |-> 2, b |-> "x"], [a |-> 1, b |-> "y"]} ;; TRUE
+				// (records are maps, whose printed key order varies between Go versions, so the sets
+				// are compared rather than printed)
+				binop("=", set(idexp("r1"), idexp("r2"), idexp("r3")), set(idexp("r3"), idexp("r1"), idexp("r2"))),
+				Arrays.asList(
+						kv("r1", record(field(id("a"), num(2)), field(id("b"), str("x")))),
+						kv("r2", record(field(id("a"), num(1)), field(id("b"), str("y")))),
+						kv("r3", record(field(id("a"), num(1)), field(id("b"), str("x"))))
+				),
+				Collections.singletonList("true"),
+			},
+			{
+				// {[a |-> 1, b |-> "x"], [a |-> 1, b |-> "x"]} = {[a |-> 1, b |-> "x"]} ;; TRUE
+				binop("=", set(idexp("r1"), idexp("r2")), set(idexp("r1"))),
+				Arrays.asList(
+						kv("r1", record(field(id("a"), num(1)), field(id("b"), str("x")))),
+						kv("r2", record(field(id("a"), num(1)), field(id("b"), str("x"))))
+				),
+				Collections.singletonList("true"),
+			},
+
 				// quantified universals
 			{
 				universal(
@@ -330,23 +405,44 @@ public class ExpressionCodeGenRunTest {
 				opcall("Cardinality", set()),
 				Collections.emptyList(),
 				Collections.singletonList("0")
-			}
+			},
+			// optimisation tests: constant folding, common subexpressions, copies and
+			// unused temporaries
+			{
+				binop("-", binop("+", num(1), binop("*", num(2), num(3))), idexp("a")),
+				Collections.singletonList(kv("a", num(2))),
+				Collections.singletonList("5"),
+			},
+			{
+				binop("*", binop("+", idexp("a"), idexp("b")), binop("+", idexp("a"), idexp("b"))),
+				Arrays.asList(kv("a", num(2)), kv("b", num(3))),
+				Collections.singletonList("25"),
+			},
+			{
+				binop("+", idexp("b"), binop("*", idexp("b"), idexp("a"))),
+				Arrays.asList(kv("a", num(4)), kv("b", idexp("a"))),
+				Collections.singletonList("20"),
+			},
 		});
 	}
 
 	private TLAExpression result;
 	private List<IntegrationTestingUtils.KeyValue> vars;
+	private Map<String, Object> codeGenOptions;
 	private List<String> expected;
 
-	public ExpressionCodeGenRunTest(TLAExpression result, List<IntegrationTestingUtils.KeyValue> vars, List<String> expected) {
+	public ExpressionCodeGenRunTest(TLAExpression result, List<IntegrationTestingUtils.KeyValue> vars,
+	                                Map<String, Object> codeGenOptions, List<String> expected) {
 		this.result = result;
 		this.vars = vars;
+		this.codeGenOptions = codeGenOptions;
 		this.expected = expected;
 	}
 
 	@Test
 	public void test() throws IOException {
 		// try to run the compiled Go code, check that it prints the right thing
-		testCompileExpression(result, vars, compiledOutputPath -> testRunGoCode(compiledOutputPath, expected));
+		testCompileExpression(result, vars, codeGenOptions,
+				compiledOutputPath -> testRunGoCode(compiledOutputPath, expected));
 	}
 }
@@ -96,12 +96,23 @@ public class IntegrationTestingUtils {
 	// See testRunGoCode and testRunGoCodeShouldPanic below for runner examples
 	static void testCompileFile(Path filePath, Map<String, String> constants, TestRunner<Path> runner)
 			throws IOException {
-		testCompile(ignored -> filePath, constants, runner);
+		testCompileFile(filePath, constants, Collections.emptyMap(), runner);
+	}
+
+	// codeGenOptions are written to the +codegen+ section of the configuration (see PGoCodeGenOptions)
+	static void testCompileFile(Path filePath, Map<String, String> constants, Map<String, Object> codeGenOptions,
+	                            TestRunner<Path> runner) throws IOException {
+		testCompile(ignored -> filePath, constants, codeGenOptions, runner);
 	}
 
 	// See testRunGoCode and testRunGoCodeShouldPanic below for runner examples
 	static void testCompileExpression(TLAExpression result, List<KeyValue> vars, TestRunner<Path> runner)
 			throws IOException {
+		testCompileExpression(result, vars, Collections.emptyMap(), runner);
+	}
+
+	static void testCompileExpression(TLAExpression result, List<KeyValue> vars, Map<String, Object> codeGenOptions,
+	                                  TestRunner<Path> runner) throws IOException {
 		testCompile(tempDirPath -> {
 			Path inputFilePath = tempDirPath.resolve("Test.tla");
 			// generate test TLA+ file
@@ -145,10 +156,11 @@ public class IntegrationTestingUtils {
 				out.write("====");
 			}
 			return inputFilePath;
-		}, Collections.emptyMap(), runner);
+		}, Collections.emptyMap(), codeGenOptions, runner);
 	}
 
-	private static void testCompile(TestSetup setup, Map<String, String> constants, TestRunner<Path> runner)
+	private static void testCompile(TestSetup setup, Map<String, String> constants,
+	                                Map<String, Object> codeGenOptions, TestRunner<Path> runner)
 			throws IOException {
 		Path tempDirPath = Files.createTempDirectory("pgotest");
 		File tempDir = tempDirPath.toFile();
@@ -176,6 +188,10 @@ public class IntegrationTestingUtils {
 					config.put("constants", consts);
 				}
 
+				if (codeGenOptions.size() > 0) {
+					config.put("codegen", new JSONObject(codeGenOptions));
+				}
+
 				config.write(w);
 			}
 
@@ -198,6 +214,11 @@ public class IntegrationTestingUtils {
 
 	static void testCompileMPCal(Path spec, String pack, Map<String, String> constants, TestRunner<Path> runner)
 			throws IOException {
+		testCompileMPCal(spec, pack, constants, Collections.emptyMap(), runner);
+	}
+
+	static void testCompileMPCal(Path spec, String pack, Map<String, String> constants,
+	                             Map<String, Object> codeGenOptions, TestRunner<Path> runner) throws IOException {
 		Path tempDirPath = Files.createTempDirectory("mpcaltest");
 		File tempDir = tempDirPath.toFile();
 		Path generatedConfigPath = tempDirPath.resolve("config.json");
@@ -218,6 +239,10 @@ public class IntegrationTestingUtils {
 					config.put("constants", consts);
 				}
 
+				if (codeGenOptions.size() > 0) {
+					config.put("codegen", new JSONObject(codeGenOptions));
+				}
+
 				config.write(w);
 			}
 
@@ -237,6 +262,8 @@ public class IntegrationTestingUtils {
 	static void testRunGoCode(Path codePath, List<String> expected) throws IOException {
 		// try to run the compiled Go code, check that it prints the right thing
 		ProcessBuilder pb = new ProcessBuilder("go", "run", codePath.toString());
+		// the compiler copies the PGo runtime next to the generated code
+		pb.environment().put("GOPATH", codePath.getParent().toString());
 		Process p = pb.start();
 		// print stderr in case it says something interesting
 		try (InputStream err = p.getErrorStream();
@@ -255,6 +282,8 @@ public class IntegrationTestingUtils {
 	static void testRunGoCodeShouldPanic(Path codePath, List<String> expected) throws IOException {
 		// try to run the compiled Go code, check that it panics
 		ProcessBuilder pb = new ProcessBuilder("go", "run", codePath.toString());
+		// the compiler copies the PGo runtime next to the generated code
+		pb.environment().put("GOPATH", codePath.getParent().toString());
 		Process p = pb.start();
 		try (InputStream err = p.getErrorStream();
 			InputStreamReader r = new InputStreamReader(err);
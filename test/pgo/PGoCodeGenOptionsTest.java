@@ -0,0 +1,175 @@
+package pgo;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PGoCodeGenOptionsTest {
+
+	// parsed JSON object for the configuration file used in the tests
+	private JSONObject config;
+
+	@Before
+	public void setup() {
+		String configStr = "{\n" +
+				"  \"build\": {\n" +
+				"    \"output_dir\": \"gen\",\n" +
+				"    \"dest_package\": \"out\"\n" +
+				"  },\n" +
+				"  \"codegen\": {\n" +
+				"    \"local_strategy\": \"copy-on-write\"\n" +
+				"  }\n" +
+				"}\n";
+		config = new JSONObject(configStr);
+	}
+
+	// the codegen section is optional, and every option has a default
+	@Test
+	public void testNoCodeGenSection() throws PGoOptionException {
+		config.remove(PGoCodeGenOptions.CODEGEN_FIELD);
+		assertEquals(PGoCodeGenOptions.LOCAL_SNAPSHOT, options().localStrategy);
+	}
+
+	@Test
+	public void testDefaultLocalStrategy() throws PGoOptionException {
+		getCodeGen().remove(PGoCodeGenOptions.LOCAL_STRATEGY_FIELD);
+		assertEquals(PGoCodeGenOptions.LOCAL_SNAPSHOT, options().localStrategy);
+	}
+
+	@Test
+	public void testCopyOnWriteLocalStrategy() throws PGoOptionException {
+		assertEquals(PGoCodeGenOptions.LOCAL_COPY_ON_WRITE, options().localStrategy);
+	}
+
+	// configuration is invalid if an unknown local variable strategy is used
+	@Test(expected = PGoOptionException.class)
+	public void testInvalidLocalStrategy() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.LOCAL_STRATEGY_FIELD, "invalid");
+		options();
+	}
+
+	// type errors are reported as a +PGoOptionException+ rather than a stack trace
+	@Test(expected = PGoOptionException.class)
+	public void testMalformedLocalStrategy() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.LOCAL_STRATEGY_FIELD, new JSONObject());
+		options();
+	}
+
+	@Test
+	public void testDefaultSequences() throws PGoOptionException {
+		assertEquals(PGoCodeGenOptions.SEQUENCES_SLICES, options().sequences);
+	}
+
+	@Test
+	public void testPersistentSequences() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.SEQUENCES_FIELD, PGoCodeGenOptions.SEQUENCES_PERSISTENT);
+		assertEquals(PGoCodeGenOptions.SEQUENCES_PERSISTENT, options().sequences);
+	}
+
+	// configuration is invalid if an unknown sequence representation is used
+	@Test(expected = PGoOptionException.class)
+	public void testInvalidSequences() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.SEQUENCES_FIELD, "invalid");
+		options();
+	}
+
+	@Test
+	public void testNoOptimisationByDefault() throws PGoOptionException {
+		assertFalse(options().optimise);
+	}
+
+	@Test
+	public void testEnableOptimisation() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.OPTIMISE_FIELD, true);
+		assertTrue(options().optimise);
+	}
+
+	// configuration is invalid if optimise is not a boolean
+	@Test(expected = PGoOptionException.class)
+	public void testMalformedOptimise() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.OPTIMISE_FIELD, "sometimes");
+		options();
+	}
+
+	@Test
+	public void testDefaultAtomicity() throws PGoOptionException {
+		assertEquals(PGoCodeGenOptions.ATOMICITY_LOCK_GROUPS, options().atomicity);
+	}
+
+	@Test
+	public void testPerVariableAtomicity() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.ATOMICITY_FIELD, PGoCodeGenOptions.ATOMICITY_PER_VARIABLE);
+		assertEquals(PGoCodeGenOptions.ATOMICITY_PER_VARIABLE, options().atomicity);
+	}
+
+	@Test
+	public void testOptimisticAtomicity() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.ATOMICITY_FIELD, PGoCodeGenOptions.ATOMICITY_OPTIMISTIC);
+		assertEquals(PGoCodeGenOptions.ATOMICITY_OPTIMISTIC, options().atomicity);
+	}
+
+	// configuration is invalid if an unknown atomicity mode is used
+	@Test(expected = PGoOptionException.class)
+	public void testInvalidAtomicity() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.ATOMICITY_FIELD, "per-label");
+		options();
+	}
+
+	@Test
+	public void testDefaultScheduler() throws PGoOptionException {
+		assertEquals(PGoCodeGenOptions.SCHEDULER_GOROUTINES, options().scheduler);
+	}
+
+	@Test
+	public void testEnabledFirstScheduler() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.SCHEDULER_FIELD, PGoCodeGenOptions.SCHEDULER_ENABLED_FIRST);
+		assertEquals(PGoCodeGenOptions.SCHEDULER_ENABLED_FIRST, options().scheduler);
+	}
+
+	// configuration is invalid if an unknown scheduler is used
+	@Test(expected = PGoOptionException.class)
+	public void testInvalidScheduler() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.SCHEDULER_FIELD, "fifo");
+		options();
+	}
+
+	@Test
+	public void testDefaultBackoff() throws PGoOptionException {
+		PGoCodeGenOptions options = options();
+		assertTrue(options.backoffMin > 0);
+		assertTrue(options.backoffMax >= options.backoffMin);
+	}
+
+	@Test
+	public void testBackoff() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.BACKOFF_MIN_FIELD, 50);
+		getCodeGen().put(PGoCodeGenOptions.BACKOFF_MAX_FIELD, 2000);
+		assertEquals(50, options().backoffMin);
+		assertEquals(2000, options().backoffMax);
+	}
+
+	// configuration is invalid if backoff starts at zero
+	@Test(expected = PGoOptionException.class)
+	public void testZeroBackoff() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.BACKOFF_MIN_FIELD, 0);
+		options();
+	}
+
+	// configuration is invalid if the maximum backoff is less than the minimum
+	@Test(expected = PGoOptionException.class)
+	public void testInvertedBackoff() throws PGoOptionException {
+		getCodeGen().put(PGoCodeGenOptions.BACKOFF_MIN_FIELD, 2000);
+		getCodeGen().put(PGoCodeGenOptions.BACKOFF_MAX_FIELD, 50);
+		options();
+	}
+
+	private JSONObject getCodeGen() {
+		return config.getJSONObject(PGoCodeGenOptions.CODEGEN_FIELD);
+	}
+
+	private PGoCodeGenOptions options() throws PGoOptionException {
+		return new PGoCodeGenOptions(config);
+	}
+}
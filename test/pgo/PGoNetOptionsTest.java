@@ -105,6 +105,39 @@ public class PGoNetOptionsTest {
 		assertEquals(3, options().getStateOptions().timeout);
 	}
 
+	@Test
+	public void testDefaultMigration() throws PGoOptionException {
+		assertEquals(PGoNetOptions.StateOptions.MIGRATION_RANDOM, options().getStateOptions().migration);
+	}
+
+	@Test
+	public void testAdaptiveMigration() throws PGoOptionException {
+		getNetworking().getJSONObject(PGoNetOptions.STATE_FIELD).put("migration", "adaptive");
+		assertEquals(PGoNetOptions.StateOptions.MIGRATION_ADAPTIVE, options().getStateOptions().migration);
+	}
+
+	// configuration is invalid if an unknown migration strategy is used
+	@Test(expected = PGoOptionException.class)
+	public void testInvalidMigration() throws PGoOptionException {
+		getNetworking().getJSONObject(PGoNetOptions.STATE_FIELD).put("migration", "invalid");
+		options();
+	}
+
+	@Test
+	public void testBatchedEtcd() throws PGoOptionException {
+		assertFalse(options().getStateOptions().batch);
+		getNetworking().getJSONObject(PGoNetOptions.STATE_FIELD).put("batch", true);
+		assertTrue(options().getStateOptions().batch);
+	}
+
+	// only the etcd strategy supports batched access
+	@Test(expected = PGoOptionException.class)
+	public void testBatchedStateServer() throws PGoOptionException {
+		getNetworking().getJSONObject(PGoNetOptions.STATE_FIELD).put("strategy", "state-server");
+		getNetworking().getJSONObject(PGoNetOptions.STATE_FIELD).put("batch", true);
+		options();
+	}
+
 	// when the configuration file misses a required field (e.g., "state" or "channels"),
 	// we throw a +PGoOptionException+, so that the user sees a proper error message
 	// instead of a stack trace.
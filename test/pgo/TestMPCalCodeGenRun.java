@@ -22,12 +22,16 @@ public class TestMPCalCodeGenRun {
     private String spec;
     String pack;
     private Map<String, String> constants;
+    private Map<String, Object> codeGenOptions;
     List<IntegrationTestingUtils.MPCalRunDefinition> processes;
 
-    public TestMPCalCodeGenRun(String spec, String pack, Map<String, String> constants, List<IntegrationTestingUtils.MPCalRunDefinition> processes) {
+    public TestMPCalCodeGenRun(String spec, String pack, Map<String, String> constants,
+                               Map<String, Object> codeGenOptions,
+                               List<IntegrationTestingUtils.MPCalRunDefinition> processes) {
         this.spec = spec;
         this.pack = pack;
         this.constants = constants;
+        this.codeGenOptions = codeGenOptions;
         this.processes = processes;
     }
 
@@ -57,6 +61,7 @@ public class TestMPCalCodeGenRun {
                             put("GET_PAGE", "200");
                             put("NUM_SERVERS", "2");
                         }},
+                        Collections.emptyMap(),
                         Arrays.asList(
                                 mpcalRunDef(
                                         "AClient(3)",
@@ -96,6 +101,7 @@ public class TestMPCalCodeGenRun {
                             put("GET_PAGE", "200");
                             put("NUM_SERVERS", "2");
                         }},
+                        Collections.emptyMap(),
                         Arrays.asList(
                                 mpcalRunDef(
                                         "AClient(3)",
@@ -135,6 +141,7 @@ public class TestMPCalCodeGenRun {
                             put("GET_PAGE", "200");
                             put("NUM_SERVERS", "2");
                         }},
+                        Collections.emptyMap(),
                         Arrays.asList(
                                 mpcalRunDef(
                                         "AClient(3)",
@@ -180,6 +187,7 @@ public class TestMPCalCodeGenRun {
                         put("GET_RESPONSE", "\"get_response\"");
                         put("PUT_RESPONSE", "\"put_response\"");
                     }},
+                    Collections.emptyMap(),
                     Arrays.asList(
                             mpcalRunDef(
                                     "Client(3)",
@@ -266,6 +274,7 @@ public class TestMPCalCodeGenRun {
                             put("GET_RESPONSE", "\"get_response\"");
                             put("PUT_RESPONSE", "\"put_response\"");
                         }},
+                        Collections.emptyMap(),
                         Arrays.asList(
                                 mpcalRunDef(
                                         "Replica(0)",
@@ -302,6 +311,72 @@ public class TestMPCalCodeGenRun {
                                         strInputStream(Collections.emptyList())
                                 )
                         )
+                },
+
+                // A step modifies a local in place, then aborts a few times on a failed await:
+                // the local must be rolled back each time, however locals are saved
+                {
+                        "copy_on_write.tla",
+                        "copy_on_write",
+                        Collections.emptyMap(),
+                        Collections.emptyMap(),
+                        Collections.singletonList(
+                                mpcalRunDef(
+                                        "ACounter(0)",
+                                        Collections.emptyList(),
+                                        strInputStream(Collections.singletonList("[1 1]"))
+                                )
+                        )
+                },
+
+                {
+                        "copy_on_write.tla",
+                        "copy_on_write",
+                        Collections.emptyMap(),
+                        Collections.singletonMap("local_strategy", "copy-on-write"),
+                        Collections.singletonList(
+                                mpcalRunDef(
+                                        "ACounter(0)",
+                                        Collections.emptyList(),
+                                        strInputStream(Collections.singletonList("[1 1]"))
+                                )
+                        )
+                },
+
+                // Same, but the element modified belongs to a persistent sequence, which copies of
+                // the sequence must not share
+                {
+                        "copy_on_write_sequences.tla",
+                        "copy_on_write_sequences",
+                        Collections.emptyMap(),
+                        new HashMap<String, Object>() {{
+                            put("local_strategy", "snapshot");
+                            put("sequences", "persistent");
+                        }},
+                        Collections.singletonList(
+                                mpcalRunDef(
+                                        "ACounter(0)",
+                                        Collections.emptyList(),
+                                        strInputStream(Collections.singletonList("[[{1 1} {2 0}]]"))
+                                )
+                        )
+                },
+
+                {
+                        "copy_on_write_sequences.tla",
+                        "copy_on_write_sequences",
+                        Collections.emptyMap(),
+                        new HashMap<String, Object>() {{
+                            put("local_strategy", "copy-on-write");
+                            put("sequences", "persistent");
+                        }},
+                        Collections.singletonList(
+                                mpcalRunDef(
+                                        "ACounter(0)",
+                                        Collections.emptyList(),
+                                        strInputStream(Collections.singletonList("[[{1 1} {2 0}]]"))
+                                )
+                        )
                 }
         });
     }
@@ -311,7 +386,7 @@ public class TestMPCalCodeGenRun {
     public void test() throws IOException {
         File goDir = Paths.get("test", "mpcal", "go", FilenameUtils.removeExtension(spec)).toFile();
 
-        testCompileMPCal(Paths.get("test", "mpcal", "spec", spec), pack, constants,
+        testCompileMPCal(Paths.get("test", "mpcal", "spec", spec), pack, constants, codeGenOptions,
                 outputPath -> {
                     List<File> directories = new ArrayList<>();
 
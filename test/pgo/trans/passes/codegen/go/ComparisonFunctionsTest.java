@@ -0,0 +1,90 @@
+package pgo.trans.passes.codegen.go;
+
+import org.junit.Test;
+import pgo.model.golang.*;
+import pgo.model.golang.builder.GoModuleBuilder;
+import pgo.model.golang.type.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ComparisonFunctionsTest {
+
+	// struct{e0 int; e1 string}, as generated for a tuple <<1, "a">>
+	private static final GoType tuple = new GoStructType(Arrays.asList(
+			new GoStructTypeField("e0", GoBuiltins.Int),
+			new GoStructTypeField("e1", GoBuiltins.String)));
+	// struct{key int; value string}, the elements of a function [x \in 1..2 |-> "a"]
+	private static final GoType record = new GoStructType(Arrays.asList(
+			new GoStructTypeField("key", GoBuiltins.Int),
+			new GoStructTypeField("value", GoBuiltins.String)));
+	private static final GoType ints = new GoSliceType(GoBuiltins.Int);
+
+	private static List<String> declarationNames(GoModuleBuilder builder) {
+		List<String> names = new ArrayList<>();
+		for (GoDeclaration declaration : builder.getModule().getDeclarations()) {
+			if (declaration instanceof GoFunctionDeclaration) {
+				names.add(((GoFunctionDeclaration) declaration).getName());
+			} else if (declaration instanceof GoTypeDeclaration) {
+				names.add(((GoTypeDeclaration) declaration).getName());
+			}
+		}
+		return names;
+	}
+
+	@Test
+	public void testLessThanIsGeneratedOncePerType() {
+		GoModuleBuilder builder = new GoModuleBuilder("test", "main");
+		GoVariableName tupleLessThan = ComparisonFunctions.lessThan(builder, tuple);
+		assertEquals(tupleLessThan, ComparisonFunctions.lessThan(builder, tuple));
+		GoVariableName intsLessThan = ComparisonFunctions.lessThan(builder, ints);
+		assertNotEquals(tupleLessThan, intsLessThan);
+		assertEquals(intsLessThan, ComparisonFunctions.lessThan(builder, new GoSliceType(GoBuiltins.Int)));
+		assertEquals(Arrays.asList("pgoLessThan", "pgoLessThan0"), declarationNames(builder));
+	}
+
+	@Test
+	public void testEqualIsGeneratedOncePerType() {
+		GoModuleBuilder builder = new GoModuleBuilder("test", "main");
+		GoVariableName tupleEqual = ComparisonFunctions.equal(builder, tuple);
+		GoVariableName intsEqual = ComparisonFunctions.equal(builder, ints);
+		assertEquals(tupleEqual, ComparisonFunctions.equal(builder, tuple));
+		assertEquals(intsEqual, ComparisonFunctions.equal(builder, ints));
+		assertNotEquals(tupleEqual, intsEqual);
+		assertEquals(Arrays.asList("pgoEqual", "pgoEqual0"), declarationNames(builder));
+	}
+
+	@Test
+	public void testSortableIsGeneratedOncePerType() {
+		GoModuleBuilder builder = new GoModuleBuilder("test", "main");
+		GoTypeName sortable = ComparisonFunctions.sortable(builder, tuple);
+		assertEquals(sortable, ComparisonFunctions.sortable(builder, tuple));
+		// Less compares tuples with pgoLessThan, which is shared with the other comparisons
+		ComparisonFunctions.lessThan(builder, tuple);
+		assertEquals(Arrays.asList("pgoLessThan", "pgoSortable", "Len", "Less", "Swap"), declarationNames(builder));
+	}
+
+	@Test
+	public void testSearchIsGeneratedOncePerTypeAndKey() {
+		GoModuleBuilder builder = new GoModuleBuilder("test", "main");
+		GoVariableName byKey = ComparisonFunctions.search(builder, record, GoBuiltins.Int, "key");
+		assertEquals(byKey, ComparisonFunctions.search(builder, record, GoBuiltins.Int, "key"));
+		GoVariableName byElement = ComparisonFunctions.search(builder, record, record, null);
+		assertNotEquals(byKey, byElement);
+		assertEquals(byElement, ComparisonFunctions.search(builder, record, record, null));
+		// searching by whole element compares records with pgoLessThan
+		assertEquals(Arrays.asList("pgoSearch", "pgoLessThan", "pgoSearch0"), declarationNames(builder));
+	}
+
+	@Test
+	public void testHelpersAreEmittedAfterOtherDeclarations() {
+		GoModuleBuilder builder = new GoModuleBuilder("test", "main");
+		ComparisonFunctions.lessThan(builder, tuple);
+		builder.defineFunction("main").getBlockBuilder().close();
+		assertEquals(Arrays.asList("main", "pgoLessThan"), declarationNames(builder));
+	}
+}
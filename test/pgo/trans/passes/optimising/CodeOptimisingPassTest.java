@@ -0,0 +1,190 @@
+package pgo.trans.passes.optimising;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import pgo.model.golang.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class CodeOptimisingPassTest {
+
+	private static final GoVariableName a = new GoVariableName("a");
+	private static final GoVariableName b = new GoVariableName("b");
+	private static final GoVariableName x = new GoVariableName("x");
+	private static final GoVariableName y = new GoVariableName("y");
+	private static final GoVariableName tmp = new GoVariableName("tmp");
+
+	@Parameters
+	public static List<Object[]> data() {
+		return Arrays.asList(new Object[][] {
+				// return 1 + 2 * 3
+				{
+						Collections.singletonList(ret(binop(GoBinop.Operation.PLUS, num(1),
+								binop(GoBinop.Operation.TIMES, num(2), num(3))))),
+						Collections.singletonList(ret(num(7))),
+				},
+				// division by zero panics at run time (and is rejected by the Go compiler
+				// when constant), so it is left alone
+				{
+						Collections.singletonList(ret(binop(GoBinop.Operation.DIVIDE, num(1), num(0)))),
+						Collections.singletonList(ret(binop(GoBinop.Operation.DIVIDE, num(1), num(0)))),
+				},
+				// return true && a < b
+				{
+						Collections.singletonList(ret(binop(GoBinop.Operation.AND, GoBuiltins.True,
+								binop(GoBinop.Operation.LT, a, b)))),
+						Collections.singletonList(ret(binop(GoBinop.Operation.LT, a, b))),
+				},
+				// x := a + b
+				// y := a + b
+				// return x * y
+				{
+						Arrays.asList(
+								define(x, binop(GoBinop.Operation.PLUS, a, b)),
+								define(y, binop(GoBinop.Operation.PLUS, a, b)),
+								ret(binop(GoBinop.Operation.TIMES, x, y))),
+						Arrays.asList(
+								define(tmp, binop(GoBinop.Operation.PLUS, a, b)),
+								ret(binop(GoBinop.Operation.TIMES, tmp, tmp))),
+				},
+				// x := 2
+				// return a - x
+				{
+						Arrays.asList(
+								define(x, num(2)),
+								ret(binop(GoBinop.Operation.MINUS, a, x))),
+						Collections.singletonList(ret(binop(GoBinop.Operation.MINUS, a, num(2)))),
+				},
+				// x := a - b
+				// return a
+				{
+						Arrays.asList(
+								define(x, binop(GoBinop.Operation.MINUS, a, b)),
+								ret(a)),
+						Collections.singletonList(ret(a)),
+				},
+				// calls may have side effects, so their results are kept
+				// x := g(a)
+				// return a
+				{
+						Arrays.asList(
+								define(x, new GoCall(new GoVariableName("g"), Collections.singletonList(a))),
+								ret(a)),
+						Arrays.asList(
+								define(x, new GoCall(new GoVariableName("g"), Collections.singletonList(a))),
+								ret(a)),
+				},
+				// defining a closure does not run it, so an unused one is removed
+				// x := func() { g(a) }
+				// return a
+				{
+						Arrays.asList(
+								define(x, closure(new GoExpressionStatement(
+										new GoCall(new GoVariableName("g"), Collections.singletonList(a))))),
+								ret(a)),
+						Collections.singletonList(ret(a)),
+				},
+				// x := func() { g(a) }
+				// x()
+				// return a
+				{
+						Arrays.asList(
+								define(x, closure(new GoExpressionStatement(
+										new GoCall(new GoVariableName("g"), Collections.singletonList(a))))),
+								new GoExpressionStatement(new GoCall(x, Collections.emptyList())),
+								ret(a)),
+						Arrays.asList(
+								define(x, closure(new GoExpressionStatement(
+										new GoCall(new GoVariableName("g"), Collections.singletonList(a))))),
+								new GoExpressionStatement(new GoCall(x, Collections.emptyList())),
+								ret(a)),
+				},
+				// x is modified, so it is not a copy of a
+				// x := a
+				// x = b
+				// return x
+				{
+						Arrays.asList(
+								define(x, a),
+								new GoAssignmentStatement(Collections.singletonList(x), false, Collections.singletonList(b)),
+								ret(x)),
+						Arrays.asList(
+								define(x, a),
+								new GoAssignmentStatement(Collections.singletonList(x), false, Collections.singletonList(b)),
+								ret(x)),
+				},
+				// x is incremented between the two occurrences of x + a
+				// x := b
+				// y := x + a
+				// x++
+				// return x + a + y
+				{
+						Arrays.asList(
+								define(x, b),
+								define(y, binop(GoBinop.Operation.PLUS, x, a)),
+								new GoIncDec(true, x),
+								ret(binop(GoBinop.Operation.PLUS, binop(GoBinop.Operation.PLUS, x, a), y))),
+						Arrays.asList(
+								define(x, b),
+								define(y, binop(GoBinop.Operation.PLUS, x, a)),
+								new GoIncDec(true, x),
+								ret(binop(GoBinop.Operation.PLUS, binop(GoBinop.Operation.PLUS, x, a), y))),
+				},
+		});
+	}
+
+	private List<GoStatement> body;
+	private List<GoStatement> expected;
+
+	public CodeOptimisingPassTest(List<GoStatement> body, List<GoStatement> expected) {
+		this.body = body;
+		this.expected = expected;
+	}
+
+	@Test
+	public void test() {
+		GoModule module = new GoModule("test", new GoVariableName("main"), Collections.emptyList(),
+				Collections.singletonList(function(body)));
+		GoModule optimised = CodeOptimisingPass.perform(module);
+		assertEquals(Collections.singletonList(function(expected)), optimised.getDeclarations());
+	}
+
+	private static GoFunctionDeclaration function(List<GoStatement> statements) {
+		return new GoFunctionDeclaration(
+				"f",
+				null,
+				Arrays.asList(
+						new GoFunctionParameter("a", GoBuiltins.Int),
+						new GoFunctionParameter("b", GoBuiltins.Int)),
+				Collections.singletonList(new GoFunctionParameter(null, GoBuiltins.Int)),
+				new GoBlock(statements));
+	}
+
+	private static GoExpression num(int value) {
+		return new GoIntLiteral(value);
+	}
+
+	private static GoExpression binop(GoBinop.Operation op, GoExpression lhs, GoExpression rhs) {
+		return new GoBinop(op, lhs, rhs);
+	}
+
+	private static GoExpression closure(GoStatement... statements) {
+		return new GoAnonymousFunction(Collections.emptyList(), Collections.emptyList(),
+				new GoBlock(Arrays.asList(statements)));
+	}
+
+	private static GoStatement define(GoVariableName name, GoExpression value) {
+		return new GoAssignmentStatement(Collections.singletonList(name), true, Collections.singletonList(value));
+	}
+
+	private static GoStatement ret(GoExpression value) {
+		return new GoReturn(Collections.singletonList(value));
+	}
+}
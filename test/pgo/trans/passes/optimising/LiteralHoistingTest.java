@@ -0,0 +1,113 @@
+package pgo.trans.passes.optimising;
+
+import org.junit.Test;
+import pgo.model.golang.*;
+import pgo.model.golang.type.GoSliceType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LiteralHoistingTest {
+
+	private static final GoVariableName n = new GoVariableName("N");
+	private static final GoVariableName x = new GoVariableName("x");
+	private static final GoVariableName literal = new GoVariableName("pgoLiteral");
+	private static final GoExpression oneToN = new GoSliceLiteral(GoBuiltins.Int, Arrays.asList(new GoIntLiteral(1), n));
+
+	// var N int
+	// func init() { N = 4 }
+	private static List<GoDeclaration> constants() {
+		return Arrays.asList(
+				new GoVariableDeclaration("N", GoBuiltins.Int, null),
+				function("init", Collections.emptyList(), Collections.singletonList(
+						new GoAssignmentStatement(Collections.singletonList(n), false,
+								Collections.singletonList(new GoIntLiteral(4))))));
+	}
+
+	private static GoDeclaration function(String name, List<GoFunctionParameter> arguments, List<GoStatement> body) {
+		return new GoFunctionDeclaration(name, null, arguments, Collections.emptyList(), new GoBlock(body));
+	}
+
+	private static GoModule module(List<GoDeclaration> declarations) {
+		return new GoModule("test", new GoVariableName("main"), Collections.emptyList(), declarations);
+	}
+
+	private static GoStatement rangeOver(GoExpression expression) {
+		return new GoForRange(
+				Arrays.asList(new GoVariableName("_"), x),
+				true,
+				expression,
+				new GoBlock(Collections.singletonList(new GoExpressionStatement(
+						new GoCall(new GoVariableName("print"), Collections.singletonList(x))))));
+	}
+
+	@Test
+	public void testHoistRangeOverConstantLiteral() {
+		GoModule module = module(Arrays.asList(
+				constants().get(0),
+				constants().get(1),
+				function("main", Collections.emptyList(), Collections.singletonList(rangeOver(oneToN)))));
+		GoModule expected = module(Arrays.asList(
+				constants().get(0),
+				new GoVariableDeclaration("pgoLiteral", new GoSliceType(GoBuiltins.Int), null),
+				constants().get(1),
+				function("init", Collections.emptyList(), Collections.singletonList(
+						new GoAssignmentStatement(Collections.singletonList(literal), false,
+								Collections.singletonList(oneToN)))),
+				function("main", Collections.emptyList(), Collections.singletonList(rangeOver(literal)))));
+		assertEquals(expected.getDeclarations(), LiteralHoisting.perform(module).getDeclarations());
+	}
+
+	@Test
+	public void testHoistReadOnlyArgument() {
+		// func size(s []int) int { return len(s) }
+		GoDeclaration size = new GoFunctionDeclaration(
+				"size",
+				null,
+				Collections.singletonList(new GoFunctionParameter("s", new GoSliceType(GoBuiltins.Int))),
+				Collections.singletonList(new GoFunctionParameter(null, GoBuiltins.Int)),
+				new GoBlock(Collections.singletonList(new GoReturn(Collections.singletonList(
+						new GoCall(new GoVariableName("len"), Collections.singletonList(new GoVariableName("s"))))))));
+		GoModule module = module(Arrays.asList(
+				constants().get(0),
+				constants().get(1),
+				function("main", Collections.emptyList(), Collections.singletonList(new GoExpressionStatement(
+						new GoCall(new GoVariableName("size"), Collections.singletonList(oneToN))))),
+				size));
+		List<GoDeclaration> result = LiteralHoisting.perform(module).getDeclarations();
+		assertEquals(
+				function("main", Collections.emptyList(), Collections.singletonList(new GoExpressionStatement(
+						new GoCall(new GoVariableName("size"), Collections.singletonList(literal))))),
+				result.get(4));
+	}
+
+	@Test
+	public void testEscapingLiteralIsNotHoisted() {
+		// x := []int{1, N}
+		// x[0] = 2
+		GoModule module = module(Arrays.asList(
+				constants().get(0),
+				constants().get(1),
+				function("main", Collections.emptyList(), Arrays.asList(
+						new GoAssignmentStatement(Collections.singletonList(x), true, Collections.singletonList(oneToN)),
+						new GoAssignmentStatement(
+								Collections.singletonList(new GoIndexExpression(x, new GoIntLiteral(0))), false,
+								Collections.singletonList(new GoIntLiteral(2)))))));
+		assertEquals(module.getDeclarations(), LiteralHoisting.perform(module).getDeclarations());
+	}
+
+	@Test
+	public void testLiteralOfModifiedVariableIsNotHoisted() {
+		// N is not a constant, since it is modified outside of init
+		GoModule module = module(Arrays.asList(
+				constants().get(0),
+				constants().get(1),
+				function("main", Collections.emptyList(), Arrays.asList(
+						new GoIncDec(true, n),
+						rangeOver(oneToN)))));
+		assertEquals(module.getDeclarations(), LiteralHoisting.perform(module).getDeclarations());
+	}
+}